@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2008-2010, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution. * Neither the name of Matthias Mann nor
+ * the names of its contributors may be used to endorse or promote products derived from this software without specific prior
+ * written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.badlogic.gdx.twl.renderer;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix4;
+
+import de.matthiasmann.twl.Rect;
+
+/**
+ * A Batch which clips axis aligned quads against the active clip region of
+ * the renderer before passing them to the real batch. This keeps all
+ * vertices in one batch when the clip region changes.
+ *
+ * <p>Quads which are not axis aligned and cross the clip region edge, and
+ * all draw calls which don't pass vertices, fall back to the GL scissor
+ * test.</p>
+ *
+ * @author Matthias Mann
+ */
+final class ClippingBatch implements Batch {
+
+    private static final int VERTEX_SIZE = 5;
+    private static final int QUAD_SIZE = 4 * VERTEX_SIZE;
+
+    private final GdxRenderer renderer;
+    private final Batch batch;
+    private final float[] clipped;
+
+    ClippingBatch (GdxRenderer renderer, Batch batch) {
+        this.renderer = renderer;
+        this.batch = batch;
+        this.clipped = new float[QUAD_SIZE];
+    }
+
+    @Override
+    public void draw (Texture texture, float[] v, int offset, int count) {
+        renderer.releaseScissor();
+        if (!renderer.clipActive) {
+            batch.draw(texture, v, offset, count);
+            return;
+        }
+        final Rect clip = renderer.clipRectTemp;
+        if (clip.isEmpty()) {
+            return;
+        }
+        final float cx0 = clip.getX();
+        final float cy0 = clip.getY();
+        final float cx1 = clip.getRight();
+        final float cy1 = clip.getBottom();
+
+        final int end = offset + count;
+        int runStart = offset;
+        int i = offset;
+        for (; i + QUAD_SIZE <= end; i += QUAD_SIZE) {
+            float minX = Math.min(Math.min(v[i + X1], v[i + X2]), Math.min(v[i + X3], v[i + X4]));
+            float maxX = Math.max(Math.max(v[i + X1], v[i + X2]), Math.max(v[i + X3], v[i + X4]));
+            float minY = Math.min(Math.min(v[i + Y1], v[i + Y2]), Math.min(v[i + Y3], v[i + Y4]));
+            float maxY = Math.max(Math.max(v[i + Y1], v[i + Y2]), Math.max(v[i + Y3], v[i + Y4]));
+            if (minX >= cx0 && minY >= cy0 && maxX <= cx1 && maxY <= cy1) {
+                // completely inside - extend the current run
+                continue;
+            }
+            if (runStart < i) {
+                batch.draw(texture, v, runStart, i - runStart);
+            }
+            runStart = i + QUAD_SIZE;
+            if (minX >= cx1 || minY >= cy1 || maxX <= cx0 || maxY <= cy0) {
+                // completely outside
+                continue;
+            }
+            if (isAxisAligned(v, i)) {
+                clipQuad(v, i, cx0, cy0, cx1, cy1);
+                batch.draw(texture, clipped, 0, QUAD_SIZE);
+            } else {
+                renderer.applyScissor();
+                batch.draw(texture, v, i, QUAD_SIZE);
+                renderer.releaseScissor();
+            }
+        }
+        if (runStart < end) {
+            batch.draw(texture, v, runStart, end - runStart);
+        }
+    }
+
+    /**
+     * Checks that the quad has the vertex layout used by Sprite and
+     * BitmapFontCache without rotation: U only depends on X and V only on Y.
+     */
+    private static boolean isAxisAligned (float[] v, int i) {
+        return v[i + X1] == v[i + X2] && v[i + X3] == v[i + X4] &&
+                v[i + Y1] == v[i + Y4] && v[i + Y2] == v[i + Y3] &&
+                v[i + U1] == v[i + U2] && v[i + U3] == v[i + U4] &&
+                v[i + V1] == v[i + V4] && v[i + V2] == v[i + V3];
+    }
+
+    private void clipQuad (float[] v, int i, float cx0, float cy0, float cx1, float cy1) {
+        final float[] c = clipped;
+        System.arraycopy(v, i, c, 0, QUAD_SIZE);
+
+        float xa = v[i + X1], xb = v[i + X3];
+        float ua = v[i + U1], ub = v[i + U3];
+        float ya = v[i + Y1], yb = v[i + Y2];
+        float va = v[i + V1], vb = v[i + V2];
+
+        float nxa = clamp(xa, cx0, cx1);
+        float nxb = clamp(xb, cx0, cx1);
+        float nya = clamp(ya, cy0, cy1);
+        float nyb = clamp(yb, cy0, cy1);
+
+        float nua = ua, nub = ub, nva = va, nvb = vb;
+        if (xa != xb) {
+            float du = (ub - ua) / (xb - xa);
+            nua = ua + (nxa - xa) * du;
+            nub = ua + (nxb - xa) * du;
+        }
+        if (ya != yb) {
+            float dv = (vb - va) / (yb - ya);
+            nva = va + (nya - ya) * dv;
+            nvb = va + (nyb - ya) * dv;
+        }
+
+        c[X1] = nxa; c[Y1] = nya; c[U1] = nua; c[V1] = nva;
+        c[X2] = nxa; c[Y2] = nyb; c[U2] = nua; c[V2] = nvb;
+        c[X3] = nxb; c[Y3] = nyb; c[U3] = nub; c[V3] = nvb;
+        c[X4] = nxb; c[Y4] = nya; c[U4] = nub; c[V4] = nva;
+    }
+
+    private static float clamp (float value, float min, float max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    @Override
+    public void draw (Texture texture, float x, float y, float originX, float originY, float width, float height, float scaleX,
+                      float scaleY, float rotation, int srcX, int srcY, int srcWidth, int srcHeight, boolean flipX, boolean flipY) {
+        renderer.applyScissor();
+        batch.draw(texture, x, y, originX, originY, width, height, scaleX, scaleY, rotation, srcX, srcY, srcWidth, srcHeight, flipX, flipY);
+    }
+
+    @Override
+    public void draw (Texture texture, float x, float y, float width, float height, int srcX, int srcY, int srcWidth,
+                      int srcHeight, boolean flipX, boolean flipY) {
+        renderer.applyScissor();
+        batch.draw(texture, x, y, width, height, srcX, srcY, srcWidth, srcHeight, flipX, flipY);
+    }
+
+    @Override
+    public void draw (Texture texture, float x, float y, int srcX, int srcY, int srcWidth, int srcHeight) {
+        renderer.applyScissor();
+        batch.draw(texture, x, y, srcX, srcY, srcWidth, srcHeight);
+    }
+
+    @Override
+    public void draw (Texture texture, float x, float y, float width, float height, float u, float v, float u2, float v2) {
+        renderer.applyScissor();
+        batch.draw(texture, x, y, width, height, u, v, u2, v2);
+    }
+
+    @Override
+    public void draw (Texture texture, float x, float y) {
+        renderer.applyScissor();
+        batch.draw(texture, x, y);
+    }
+
+    @Override
+    public void draw (Texture texture, float x, float y, float width, float height) {
+        renderer.applyScissor();
+        batch.draw(texture, x, y, width, height);
+    }
+
+    @Override
+    public void draw (TextureRegion region, float x, float y) {
+        renderer.applyScissor();
+        batch.draw(region, x, y);
+    }
+
+    @Override
+    public void draw (TextureRegion region, float x, float y, float width, float height) {
+        renderer.applyScissor();
+        batch.draw(region, x, y, width, height);
+    }
+
+    @Override
+    public void draw (TextureRegion region, float x, float y, float originX, float originY, float width, float height,
+                      float scaleX, float scaleY, float rotation) {
+        renderer.applyScissor();
+        batch.draw(region, x, y, originX, originY, width, height, scaleX, scaleY, rotation);
+    }
+
+    @Override
+    public void draw (TextureRegion region, float x, float y, float originX, float originY, float width, float height,
+                      float scaleX, float scaleY, float rotation, boolean clockwise) {
+        renderer.applyScissor();
+        batch.draw(region, x, y, originX, originY, width, height, scaleX, scaleY, rotation, clockwise);
+    }
+
+    @Override
+    public void begin () {
+        batch.begin();
+    }
+
+    @Override
+    public void end () {
+        batch.end();
+    }
+
+    @Override
+    public void setColor (Color tint) {
+        batch.setColor(tint);
+    }
+
+    @Override
+    public void setColor (float r, float g, float b, float a) {
+        batch.setColor(r, g, b, a);
+    }
+
+    @Override
+    public void setColor (float color) {
+        batch.setColor(color);
+    }
+
+    @Override
+    public Color getColor () {
+        return batch.getColor();
+    }
+
+    @Override
+    public void flush () {
+        batch.flush();
+    }
+
+    @Override
+    public void disableBlending () {
+        batch.disableBlending();
+    }
+
+    @Override
+    public void enableBlending () {
+        batch.enableBlending();
+    }
+
+    @Override
+    public void setBlendFunction (int srcFunc, int dstFunc) {
+        batch.setBlendFunction(srcFunc, dstFunc);
+    }
+
+    @Override
+    public int getBlendSrcFunc () {
+        return batch.getBlendSrcFunc();
+    }
+
+    @Override
+    public int getBlendDstFunc () {
+        return batch.getBlendDstFunc();
+    }
+
+    @Override
+    public Matrix4 getProjectionMatrix () {
+        return batch.getProjectionMatrix();
+    }
+
+    @Override
+    public Matrix4 getTransformMatrix () {
+        return batch.getTransformMatrix();
+    }
+
+    @Override
+    public void setProjectionMatrix (Matrix4 projection) {
+        batch.setProjectionMatrix(projection);
+    }
+
+    @Override
+    public void setTransformMatrix (Matrix4 transform) {
+        batch.setTransformMatrix(transform);
+    }
+
+    @Override
+    public void setShader (ShaderProgram shader) {
+        batch.setShader(shader);
+    }
+
+    @Override
+    public boolean isBlendingEnabled () {
+        return batch.isBlendingEnabled();
+    }
+
+    @Override
+    public void dispose () {
+        batch.dispose();
+    }
+}
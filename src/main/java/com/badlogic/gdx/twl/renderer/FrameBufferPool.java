@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2008-2010, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution. * Neither the name of Matthias Mann nor
+ * the names of its contributors may be used to endorse or promote products derived from this software without specific prior
+ * written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.badlogic.gdx.twl.renderer;
+
+import java.util.ArrayList;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+
+/**
+ * A pool of frame buffers used for offscreen rendering.
+ *
+ * <p>Requested sizes are rounded up to a small set of bucket sizes so that
+ * frame buffers can be reused by widgets of similar size. Released frame
+ * buffers are kept in LRU order and are disposed when the memory used by
+ * all frame buffers exceeds the configured limit.</p>
+ *
+ * <p>Frame buffers which are in use are never disposed by the pool, which
+ * means that the limit can be exceeded temporarily.</p>
+ *
+ * @author Matthias Mann
+ */
+class FrameBufferPool {
+
+    static final int MIN_SIZE = 64;
+    static final int POW2_LIMIT = 512;
+    static final int STEP_SIZE = 256;
+
+    static final class Entry {
+        final int width;
+        final int height;
+        FrameBuffer frameBuffer;
+
+        Entry (int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        long getMemorySize () {
+            return memorySize(width, height);
+        }
+    }
+
+    private final ArrayList<Entry> free;
+    private final ArrayList<Entry> inUse;
+    private long maxMemory;
+    private long usedMemory;
+
+    FrameBufferPool (long maxMemory) {
+        this.free = new ArrayList<Entry>();
+        this.inUse = new ArrayList<Entry>();
+        this.maxMemory = maxMemory;
+    }
+
+    long getMaxMemory () {
+        return maxMemory;
+    }
+
+    void setMaxMemory (long maxMemory) {
+        this.maxMemory = maxMemory;
+        trim(maxMemory);
+    }
+
+    long getUsedMemory () {
+        return usedMemory;
+    }
+
+    int getNumFree () {
+        return free.size();
+    }
+
+    int getNumInUse () {
+        return inUse.size();
+    }
+
+    /**
+     * Returns a frame buffer which is at least as large as the requested size.
+     *
+     * @param width the requested width
+     * @param height the requested height
+     * @return the pool entry
+     */
+    Entry acquire (int width, int height) {
+        final int bucketWidth = bucketSize(width);
+        final int bucketHeight = bucketSize(height);
+        // search from the end to get the most recently used frame buffer
+        for (int i = free.size(); i-- > 0;) {
+            Entry e = free.get(i);
+            if (e.width == bucketWidth && e.height == bucketHeight) {
+                free.remove(i);
+                inUse.add(e);
+                return e;
+            }
+        }
+        final long size = memorySize(bucketWidth, bucketHeight);
+        trim(maxMemory - size);
+        Entry e = new Entry(bucketWidth, bucketHeight);
+        createFrameBuffer(e);
+        usedMemory += size;
+        inUse.add(e);
+        return e;
+    }
+
+    /**
+     * Returns a frame buffer to the pool.
+     *
+     * @param e the pool entry - can be null
+     */
+    void release (Entry e) {
+        if (e != null && inUse.remove(e)) {
+            free.add(e);
+            trim(maxMemory);
+        }
+    }
+
+    /**
+     * Checks if the entry is a good fit for the requested size.
+     *
+     * @param e the pool entry
+     * @param width the requested width
+     * @param height the requested height
+     * @return true if the entry would also be returned by {@link #acquire(int, int) }
+     */
+    static boolean isMatching (Entry e, int width, int height) {
+        return e.width == bucketSize(width) && e.height == bucketSize(height);
+    }
+
+    /**
+     * Disposes all frame buffers - including those which are still in use.
+     */
+    void dispose () {
+        for (int i = 0, n = free.size(); i < n; i++) {
+            disposeFrameBuffer(free.get(i));
+        }
+        for (int i = 0, n = inUse.size(); i < n; i++) {
+            disposeFrameBuffer(inUse.get(i));
+        }
+        free.clear();
+        inUse.clear();
+        usedMemory = 0;
+    }
+
+    private void trim (long limit) {
+        while (usedMemory > limit && !free.isEmpty()) {
+            Entry e = free.remove(0);
+            usedMemory -= e.getMemorySize();
+            disposeFrameBuffer(e);
+        }
+    }
+
+    void createFrameBuffer (Entry e) {
+        e.frameBuffer = new FrameBuffer(Pixmap.Format.RGBA8888, e.width, e.height, false);
+    }
+
+    void disposeFrameBuffer (Entry e) {
+        if (e.frameBuffer != null) {
+            e.frameBuffer.dispose();
+            e.frameBuffer = null;
+        }
+    }
+
+    /**
+     * Rounds the size up to the next power of two for small sizes and to
+     * the next multiple of {@link #STEP_SIZE} for large sizes.
+     *
+     * @param size the requested size
+     * @return the bucket size
+     */
+    static int bucketSize (int size) {
+        if (size <= MIN_SIZE) {
+            return MIN_SIZE;
+        }
+        if (size <= POW2_LIMIT) {
+            return Integer.highestOneBit(size - 1) << 1;
+        }
+        return (size + STEP_SIZE - 1) / STEP_SIZE * STEP_SIZE;
+    }
+
+    static long memorySize (int width, int height) {
+        return (long)width * height * 4;
+    }
+}
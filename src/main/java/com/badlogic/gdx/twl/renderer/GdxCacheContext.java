@@ -33,6 +33,7 @@ public class GdxCacheContext implements CacheContext {
     final GdxRenderer renderer;
     private final ObjectMap<String, GdxTexture> textures = new ObjectMap();
     private boolean valid = true;
+    PixmapLoader pixmapLoader;
 
     GdxCacheContext (GdxRenderer renderer) {
         this.renderer = renderer;
@@ -45,7 +46,11 @@ public class GdxCacheContext implements CacheContext {
             if (!valid) {
                 throw new IllegalStateException("CacheContext has been destroyed.");
             }
-            texture = new GdxTexture(renderer, handle);
+            if (pixmapLoader != null) {
+                texture = new GdxTexture(renderer, handle, pixmapLoader.loadPixmap(handle));
+            } else {
+                texture = new GdxTexture(renderer, handle);
+            }
             textures.put(urlString, texture);
         }
         return texture;
@@ -81,7 +81,7 @@ public class GdxFont implements Font {
         x += fontState.offsetX;
         y += fontState.offsetY + yOffset;
         bitmapFont.setColor(fontState.color.getRedFloat(), fontState.color.getGreenFloat(), fontState.color.getBlueFloat(), fontState.color.getAlphaFloat());
-        int width = MathUtils.ceilPositive(bitmapFont.draw(renderer.batch, str, x, y, start, end).width);
+        int width = MathUtils.ceilPositive(bitmapFont.draw(renderer.drawBatch, str, x, y, start, end).width);
         drawLine(fontState, x, y, width, fontState.color);
         return width;
     }
@@ -101,7 +101,7 @@ public class GdxFont implements Font {
         x += fontState.offsetX;
         y += fontState.offsetY + yOffset;
         bitmapFont.setColor(fontState.color.getRedFloat(), fontState.color.getGreenFloat(), fontState.color.getBlueFloat(), fontState.color.getAlphaFloat());
-        return MathUtils.ceilPositive(bitmapFont.drawMultiLine(renderer.batch, str, x, y, width, gdxAlignment[align.ordinal()]).width);
+        return MathUtils.ceilPositive(bitmapFont.drawMultiLine(renderer.drawBatch, str, x, y, width, gdxAlignment[align.ordinal()]).width);
     }
 
     @Override
@@ -217,7 +217,7 @@ public class GdxFont implements Font {
             GdxFont.FontState fontState = evalFontState(as);
             setColors(fontState.color.getRedFloat(), fontState.color.getGreenFloat(), fontState.color.getBlueFloat(), fontState.color.getAlphaFloat());
             setPosition(x + fontState.offsetX, y + fontState.offsetY);
-            draw(renderer.batch);
+            draw(renderer.drawBatch);
         }
 
         public int getWidth () {
@@ -76,7 +76,7 @@ public class GdxImage implements Image, SupportsDrawRepeat {
             drawTiled(x, y, width, height);
         } else {
             sprite.setBounds(x, y, width, height);
-            sprite.draw(renderer.batch);
+            sprite.draw(renderer.drawBatch);
         }
     }
 
@@ -98,7 +98,7 @@ public class GdxImage implements Image, SupportsDrawRepeat {
             while (xi < repeatCountX) {
                 int nx = ++xi * width / repeatCountX;
                 sprite.setBounds(x + cx, y, nx - cx, rowHeight);
-                sprite.draw(renderer.batch);
+                sprite.draw(renderer.drawBatch);
                 cx = nx;
             }
 
@@ -116,7 +116,7 @@ public class GdxImage implements Image, SupportsDrawRepeat {
             int cntX = repeatCountX;
             while (cntX-- > 0) {
                 sprite.setBounds(curX, y, w, h);
-                sprite.draw(renderer.batch);
+                sprite.draw(renderer.drawBatch);
                 curX += w;
             }
             y += h;
@@ -150,7 +150,7 @@ public class GdxImage implements Image, SupportsDrawRepeat {
             while (cx-- > 0) {
                 int x1 = x0 + width;
                 sprite.setBounds(x0, y, x1, y1);
-                sprite.draw(renderer.batch);
+                sprite.draw(renderer.drawBatch);
                 x0 = x1;
             }
             y = y1;
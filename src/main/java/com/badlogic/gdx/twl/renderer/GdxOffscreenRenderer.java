@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2008-2010, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution. * Neither the name of Matthias Mann nor
+ * the names of its contributors may be used to endorse or promote products derived from this software without specific prior
+ * written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.badlogic.gdx.twl.renderer;
+
+import java.util.ArrayList;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.glutils.FrameBuffer;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import de.matthiasmann.twl.Widget;
+import de.matthiasmann.twl.renderer.OffscreenRenderer;
+import de.matthiasmann.twl.renderer.OffscreenSurface;
+
+/**
+ * An OffscreenRenderer which renders into pooled frame buffers.
+ *
+ * <p>A surface keeps its frame buffer until it is destroyed or until the
+ * widget needs a frame buffer of a different size class. This means that a
+ * widget which doesn't need repainting can reuse the cached content every
+ * frame without any rendering into the frame buffer.</p>
+ *
+ * <p>Offscreen rendering can be nested.</p>
+ *
+ * @author Matthias Mann
+ * @see #setMaxMemory(long)
+ */
+public class GdxOffscreenRenderer implements OffscreenRenderer {
+
+    /** The default memory limit for pooled frame buffers: 32 MB */
+    public static final long DEFAULT_MAX_MEMORY = 32L << 20;
+
+    static final class Target {
+        final Matrix4 projection = new Matrix4();
+        GdxOffscreenSurface surface;
+        int x;
+        int y;
+    }
+
+    final GdxRenderer renderer;
+    private final FrameBufferPool pool;
+    private final ArrayList<Target> targets;
+    private final Matrix4 projection;
+    private int numActive;
+    private boolean failed;
+
+    GdxOffscreenRenderer (GdxRenderer renderer) {
+        this.renderer = renderer;
+        this.pool = new FrameBufferPool(DEFAULT_MAX_MEMORY);
+        this.targets = new ArrayList<Target>();
+        this.projection = new Matrix4();
+    }
+
+    public long getMaxMemory () {
+        return pool.getMaxMemory();
+    }
+
+    /**
+     * Sets the amount of memory which can be used by frame buffers before
+     * unused frame buffers are disposed in least recently used order.
+     *
+     * <p>Frame buffers which are used by a surface are not affected by
+     * this limit.</p>
+     *
+     * @param maxMemory the memory limit in bytes
+     */
+    public void setMaxMemory (long maxMemory) {
+        if (maxMemory < 0) {
+            throw new IllegalArgumentException("maxMemory");
+        }
+        pool.setMaxMemory(maxMemory);
+    }
+
+    /**
+     * Returns the estimated memory used by all frame buffers - including
+     * frame buffers which are currently used by surfaces.
+     *
+     * @return the used memory in bytes
+     */
+    public long getUsedMemory () {
+        return pool.getUsedMemory();
+    }
+
+    /**
+     * Returns the number of unused frame buffers in the pool.
+     *
+     * @return the number of unused frame buffers
+     */
+    public int getNumPooledFrameBuffers () {
+        return pool.getNumFree();
+    }
+
+    @Override
+    public OffscreenSurface startOffscreenRendering (Widget widget, OffscreenSurface oldSurface,
+                                                     int x, int y, int width, int height) {
+        if (failed || !renderer.isRendering()) {
+            return null;
+        }
+        width = Math.max(1, width);
+        height = Math.max(1, height);
+
+        GdxOffscreenSurface surface = null;
+        if (oldSurface instanceof GdxOffscreenSurface &&
+                ((GdxOffscreenSurface)oldSurface).offscreenRenderer == this) {
+            surface = (GdxOffscreenSurface)oldSurface;
+            if (surface.entry != null && !FrameBufferPool.isMatching(surface.entry, width, height)) {
+                pool.release(surface.entry);
+                surface.entry = null;
+            }
+        } else {
+            surface = new GdxOffscreenSurface(this);
+        }
+        if (surface.entry == null) {
+            try {
+                surface.entry = pool.acquire(width, height);
+            } catch (GdxRuntimeException ex) {
+                // frame buffers are not supported - don't try again
+                failed = true;
+                return null;
+            }
+        }
+        surface.setSize(width, height);
+
+        renderer.batch.flush();
+
+        if (numActive == targets.size()) {
+            targets.add(new Target());
+        }
+        Target target = targets.get(numActive++);
+        target.projection.set(renderer.batch.getProjectionMatrix());
+        target.surface = surface;
+        target.x = x;
+        target.y = y;
+
+        final FrameBuffer fbo = surface.entry.frameBuffer;
+        fbo.begin();
+        renderer.disableScissor();
+        Gdx.gl.glClearColor(0, 0, 0, 0);
+        Gdx.gl.glClear(Gdx.gl.GL_COLOR_BUFFER_BIT);
+
+        setProjection(x, y, fbo);
+        renderer.startRenderTarget(x, y, width, height, fbo.getHeight());
+        return surface;
+    }
+
+    @Override
+    public void endOffscreenRendering () {
+        if (numActive == 0) {
+            throw new IllegalStateException("no offscreen rendering active");
+        }
+        renderer.batch.flush();
+
+        Target target = targets.get(--numActive);
+        renderer.batch.setProjectionMatrix(target.projection);
+        target.surface = null;
+
+        if (numActive > 0) {
+            Target outer = targets.get(numActive - 1);
+            FrameBuffer fbo = outer.surface.entry.frameBuffer;
+            fbo.begin();
+            renderer.endRenderTarget(outer.x, outer.y, fbo.getHeight());
+        } else {
+            FrameBuffer.unbind();
+            Gdx.gl.glViewport(0, 0, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
+            renderer.endRenderTarget(0, 0, 0);
+        }
+    }
+
+    /**
+     * Disposes all frame buffers. Surfaces created by this renderer can't be
+     * used after this call.
+     */
+    public void dispose () {
+        pool.dispose();
+        failed = true;
+    }
+
+    void releaseSurface (GdxOffscreenSurface surface) {
+        pool.release(surface.entry);
+        surface.entry = null;
+    }
+
+    private void setProjection (int x, int y, FrameBuffer fbo) {
+        // keep the Y axis pointing down like the screen projection
+        projection.setToOrtho(x, x + fbo.getWidth(), y + fbo.getHeight(), y, 0, 1);
+        renderer.batch.setProjectionMatrix(projection);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2008-2010, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution. * Neither the name of Matthias Mann nor
+ * the names of its contributors may be used to endorse or promote products derived from this software without specific prior
+ * written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.badlogic.gdx.twl.renderer;
+
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.Sprite;
+
+import de.matthiasmann.twl.Color;
+import de.matthiasmann.twl.renderer.AnimationState;
+import de.matthiasmann.twl.renderer.Image;
+import de.matthiasmann.twl.renderer.OffscreenSurface;
+
+/**
+ * An offscreen surface backed by a pooled frame buffer.
+ *
+ * <p>Destroying the surface returns the frame buffer to the pool of the
+ * {@link GdxOffscreenRenderer} which created it.</p>
+ *
+ * @author Matthias Mann
+ */
+public class GdxOffscreenSurface implements OffscreenSurface {
+
+    final GdxOffscreenRenderer offscreenRenderer;
+    final Sprite sprite;
+    FrameBufferPool.Entry entry;
+    private int width;
+    private int height;
+
+    GdxOffscreenSurface (GdxOffscreenRenderer offscreenRenderer) {
+        this.offscreenRenderer = offscreenRenderer;
+        this.sprite = new Sprite();
+    }
+
+    void setSize (int width, int height) {
+        this.width = width;
+        this.height = height;
+        // frame buffer content is stored bottom up, so the widget occupies
+        // the top rows of the texture and the sprite must not be flipped
+        Texture texture = entry.frameBuffer.getColorBufferTexture();
+        sprite.setTexture(texture);
+        sprite.setRegion(0, entry.height - height, width, height);
+    }
+
+    @Override
+    public int getWidth () {
+        return width;
+    }
+
+    @Override
+    public int getHeight () {
+        return height;
+    }
+
+    @Override
+    public void draw (AnimationState as, int x, int y) {
+        draw(as, x, y, width, height);
+    }
+
+    @Override
+    public void draw (AnimationState as, int x, int y, int width, int height) {
+        drawTinted(Color.WHITE, x, y, width, height);
+    }
+
+    void drawTinted (Color color, int x, int y, int width, int height) {
+        if (entry != null && entry.frameBuffer != null) {
+            sprite.setColor(offscreenRenderer.renderer.getColor(color));
+            sprite.setBounds(x, y, width, height);
+            sprite.draw(offscreenRenderer.renderer.drawBatch);
+        }
+    }
+
+    @Override
+    public Image createTintedVersion (Color color) {
+        if (color == null) throw new IllegalArgumentException("color cannot be null.");
+        return new TintedSurface(this, color);
+    }
+
+    @Override
+    public void destroy () {
+        offscreenRenderer.releaseSurface(this);
+    }
+
+    static final class TintedSurface implements Image {
+        private final GdxOffscreenSurface surface;
+        private final Color color;
+
+        TintedSurface (GdxOffscreenSurface surface, Color color) {
+            this.surface = surface;
+            this.color = color;
+        }
+
+        @Override
+        public int getWidth () {
+            return surface.getWidth();
+        }
+
+        @Override
+        public int getHeight () {
+            return surface.getHeight();
+        }
+
+        @Override
+        public void draw (AnimationState as, int x, int y) {
+            surface.drawTinted(color, x, y, surface.getWidth(), surface.getHeight());
+        }
+
+        @Override
+        public void draw (AnimationState as, int x, int y, int width, int height) {
+            surface.drawTinted(color, x, y, width, height);
+        }
+
+        @Override
+        public Image createTintedVersion (Color color) {
+            if (color == null) throw new IllegalArgumentException("color cannot be null.");
+            return new TintedSurface(surface, this.color.multiply(color));
+        }
+    }
+}
@@ -30,6 +30,7 @@ import com.badlogic.gdx.InputProcessorQueue;
 import com.badlogic.gdx.assets.AssetManager;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.g2d.Batch;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.twl.input.GdxInput;
@@ -57,16 +58,29 @@ public class GdxRenderer implements Renderer, LineRenderer {
 
     private GdxCacheContext cacheContext;
     private boolean hasScissor;
-    private final TintStack tintStateRoot = new TintStack();
-    private TintStack tintStack = tintStateRoot;
+    // tint colors in r, g, b, a order - entry 0 is the root and is never modified
+    private float[] tintStack;
+    private int tintTop;
+    private FloatBuffer lineBuffer;
     private final Color tempColor = new Color(1, 1, 1, 1);
     private boolean rendering;
     private int width, height;
     private Input input;
     final SpriteBatch batch;
+    Batch drawBatch;
+    private final ClippingBatch clippingBatch;
 
     private final ClipStack clipStack;
     protected final Rect clipRectTemp;
+    private final Rect scissorRect;
+    private boolean cpuClipping;
+    boolean clipActive;
+    private int clipFlushes;
+    private int lastClipFlushes;
+    private int lastRenderCalls;
+    // origin and height of the active render target - a height of 0 means the screen
+    private int targetX, targetY, targetHeight;
+    private GdxOffscreenRenderer offscreenRenderer;
 
     private FontMapper fontMapper;
     private AssetManager assetManager;
@@ -74,9 +88,17 @@ public class GdxRenderer implements Renderer, LineRenderer {
     public GdxRenderer (SpriteBatch batch, AssetManager assetManager, InputProcessorQueue inputProcessor) {
         input = new GdxInput(inputProcessor);
         this.batch = batch;
+        this.drawBatch = batch;
+        this.tintStack = new float[4 * 8];
+        this.tintStack[0] = 1 / 255f;
+        this.tintStack[1] = 1 / 255f;
+        this.tintStack[2] = 1 / 255f;
+        this.tintStack[3] = 1 / 255f;
+        this.clippingBatch = new ClippingBatch(this, batch);
         this.assetManager = assetManager;
         clipStack = new ClipStack();
         clipRectTemp = new Rect();
+        scissorRect = new Rect();
     }
 
     public AssetManager getAssetManager() {
@@ -119,7 +141,13 @@ public class GdxRenderer implements Renderer, LineRenderer {
 
     @Override
     public boolean startRendering() {
-        tintStack = tintStateRoot;
+        tintTop = 0;
+        clipStack.clearStack();
+        clipActive = false;
+        clipFlushes = 0;
+        targetX = 0;
+        targetY = 0;
+        targetHeight = 0;
         batch.begin();
         rendering = true;
         return true;
@@ -129,6 +157,8 @@ public class GdxRenderer implements Renderer, LineRenderer {
     public void endRendering() {
         rendering = false;
         batch.end();
+        lastRenderCalls = batch.renderCalls;
+        lastClipFlushes = clipFlushes;
         if (hasScissor) {
             Gdx.gl.glDisable(Gdx.gl.GL_SCISSOR_TEST);
             hasScissor = false;
@@ -136,20 +166,165 @@ public class GdxRenderer implements Renderer, LineRenderer {
     }
 
     public void setClipRect () {
-        if (rendering) batch.flush();
-        final Rect rect = clipRectTemp;
-        if (clipStack.getClipRect(rect)) {
-            Gdx.gl.glScissor(rect.getX(), Gdx.graphics.getHeight() - rect.getBottom(), rect.getWidth(), rect.getHeight());
-            if (!hasScissor) {
-                Gdx.gl.glEnable(Gdx.gl.GL_SCISSOR_TEST);
-                hasScissor = true;
+        clipActive = clipStack.getClipRect(clipRectTemp);
+        if (cpuClipping) {
+            // scissor state is updated lazily - see applyScissor and releaseScissor
+            return;
+        }
+        if (rendering) {
+            batch.flush();
+            clipFlushes++;
+        }
+        if (clipActive) {
+            setScissor(clipRectTemp);
+        } else if (hasScissor) {
+            Gdx.gl.glDisable(Gdx.gl.GL_SCISSOR_TEST);
+            hasScissor = false;
+        }
+    }
+
+    /**
+     * Controls if clipping of images and text is done on the CPU.
+     *
+     * <p>When enabled axis aligned quads are clipped against the active clip
+     * region before they are added to the sprite batch. This avoids a batch
+     * flush and scissor change on every {@link #clipEnter(int, int, int, int) }
+     * and {@link #clipLeave() }. Rotated content and lines still use the
+     * scissor test.</p>
+     *
+     * @param cpuClipping true to enable CPU clipping - default is false
+     * @throws IllegalStateException when called during rendering
+     * @see #getClipFlushCount()
+     */
+    public void setCpuClipping (boolean cpuClipping) {
+        if (rendering) {
+            throw new IllegalStateException("rendering");
+        }
+        this.cpuClipping = cpuClipping;
+        this.drawBatch = cpuClipping ? clippingBatch : batch;
+    }
+
+    public boolean isCpuClipping () {
+        return cpuClipping;
+    }
+
+    /**
+     * Returns the number of sprite batch flushes caused by clip region
+     * changes during the last frame.
+     *
+     * @return the number of flushes caused by clipping
+     */
+    public int getClipFlushCount () {
+        return lastClipFlushes;
+    }
+
+    /**
+     * Returns the number of draw calls issued by the sprite batch
+     * during the last frame.
+     *
+     * @return the number of draw calls
+     * @see SpriteBatch#renderCalls
+     */
+    public int getRenderCallCount () {
+        return lastRenderCalls;
+    }
+
+    /**
+     * Makes sure that the GL scissor test matches the active clip region.
+     * Must be called before drawing content which can't be clipped on the CPU.
+     */
+    void applyScissor () {
+        if (!cpuClipping) {
+            return;
+        }
+        if (clipActive) {
+            if (!hasScissor || !isSameRect(scissorRect, clipRectTemp)) {
+                flushForClip();
+                setScissor(clipRectTemp);
             }
         } else if (hasScissor) {
+            flushForClip();
             Gdx.gl.glDisable(Gdx.gl.GL_SCISSOR_TEST);
             hasScissor = false;
         }
     }
 
+    /**
+     * Makes sure that an active GL scissor test doesn't cut content which
+     * was already clipped on the CPU.
+     */
+    void releaseScissor () {
+        if (hasScissor && (!clipActive || !containsRect(scissorRect, clipRectTemp))) {
+            flushForClip();
+            Gdx.gl.glDisable(Gdx.gl.GL_SCISSOR_TEST);
+            hasScissor = false;
+        }
+    }
+
+    private void flushForClip () {
+        if (rendering) {
+            batch.flush();
+            clipFlushes++;
+        }
+    }
+
+    void disableScissor () {
+        if (hasScissor) {
+            Gdx.gl.glDisable(Gdx.gl.GL_SCISSOR_TEST);
+            hasScissor = false;
+        }
+    }
+
+    /**
+     * Called after a frame buffer has been bound. Rendering is restricted to
+     * the specified area and starts with an untinted color.
+     */
+    void startRenderTarget (int x, int y, int width, int height, int targetHeight) {
+        this.targetX = x;
+        this.targetY = y;
+        this.targetHeight = targetHeight;
+        pushGlobalTintColor(1, 1, 1, 1);
+        System.arraycopy(tintStack, 0, tintStack, tintTop, 4);
+        clipStack.pushDisable();
+        clipStack.push(x, y, width, height);
+        setClipRect();
+    }
+
+    /**
+     * Called after the previous render target has been bound again.
+     */
+    void endRenderTarget (int x, int y, int targetHeight) {
+        disableScissor();
+        this.targetX = x;
+        this.targetY = y;
+        this.targetHeight = targetHeight;
+        popGlobalTintColor();
+        clipStack.pop();
+        clipStack.pop();
+        setClipRect();
+    }
+
+    private void setScissor (Rect rect) {
+        final int surfaceHeight = (targetHeight != 0) ? targetHeight : Gdx.graphics.getHeight();
+        Gdx.gl.glScissor(rect.getX() - targetX, surfaceHeight - (rect.getBottom() - targetY),
+                rect.getWidth(), rect.getHeight());
+        scissorRect.set(rect);
+        if (!hasScissor) {
+            Gdx.gl.glEnable(Gdx.gl.GL_SCISSOR_TEST);
+            hasScissor = true;
+        }
+    }
+
+    private static boolean isSameRect (Rect a, Rect b) {
+        return a.getX() == b.getX() && a.getY() == b.getY() &&
+                a.getRight() == b.getRight() && a.getBottom() == b.getBottom();
+    }
+
+    private static boolean containsRect (Rect outer, Rect inner) {
+        return outer.getX() <= inner.getX() && outer.getY() <= inner.getY() &&
+                outer.getRight() >= inner.getRight() && outer.getBottom() >= inner.getBottom();
+    }
+
     @Override
     public Font loadFont(FileHandle url, StateSelect select, FontParameter... parameterList) throws IOException {
         if(url == null) {
@@ -226,21 +401,36 @@ public class GdxRenderer implements Renderer, LineRenderer {
 
     @Override
     public void pushGlobalTintColor (float r, float g, float b, float a) {
-        tintStack = tintStack.push(r, g, b, a);
+        final int top = tintTop;
+        final int next = top + 4;
+        if (next == tintStack.length) {
+            float[] newStack = new float[tintStack.length * 2];
+            System.arraycopy(tintStack, 0, newStack, 0, tintStack.length);
+            tintStack = newStack;
+        }
+        final float[] stack = tintStack;
+        stack[next    ] = stack[top    ] * r;
+        stack[next + 1] = stack[top + 1] * g;
+        stack[next + 2] = stack[top + 2] * b;
+        stack[next + 3] = stack[top + 3] * a;
+        tintTop = next;
     }
 
     @Override
     public void popGlobalTintColor () {
-        tintStack = tintStack.previous;
+        if (tintTop > 0) {
+            tintTop -= 4;
+        }
     }
 
     public Color getColor (de.matthiasmann.twl.Color color) {
         Color tempColor = this.tempColor;
-        TintStack tintStack = this.tintStack;
-        tempColor.r = tintStack.r * (color.getR() & 255);
-        tempColor.g = tintStack.g * (color.getG() & 255);
-        tempColor.b = tintStack.b * (color.getB() & 255);
-        tempColor.a = tintStack.a * (color.getA() & 255);
+        final float[] stack = tintStack;
+        final int top = tintTop;
+        tempColor.r = stack[top    ] * (color.getR() & 255);
+        tempColor.g = stack[top + 1] * (color.getG() & 255);
+        tempColor.b = stack[top + 2] * (color.getB() & 255);
+        tempColor.a = stack[top + 3] * (color.getA() & 255);
         return tempColor;
     }
 
@@ -249,30 +439,11 @@ public class GdxRenderer implements Renderer, LineRenderer {
             cacheContext.destroy();
             cacheContext = null;
         }
-        batch.dispose();
-    }
-
-    static private class TintStack extends Color {
-        final TintStack previous;
-
-        public TintStack () {
-            super(1 / 255f, 1 / 255f, 1 / 255f, 1 / 255f);
-            this.previous = this;
-        }
-
-        private TintStack (TintStack prev) {
-            super(prev.r, prev.g, prev.b, prev.a);
-            this.previous = prev;
-        }
-
-        public TintStack push (float r, float g, float b, float a) {
-            TintStack next = new TintStack(this);
-            next.r = this.r * r;
-            next.g = this.g * g;
-            next.b = this.b * b;
-            next.a = this.a * a;
-            return next;
+        if (offscreenRenderer != null) {
+            offscreenRenderer.dispose();
+            offscreenRenderer = null;
         }
+        batch.dispose();
     }
 
     @Override
@@ -299,9 +470,34 @@ public class GdxRenderer implements Renderer, LineRenderer {
     }
 
     @Override
-    public OffscreenRenderer getOffscreenRenderer () {
-        // this is the same as in LWJGLRenderer in the main TWL project
-        return null;
+    public void clipClear () {
+        if (clipStack.isClipEmpty()) {
+            return;
+        }
+        if (rendering) {
+            batch.flush();
+        }
+        // with CPU clipping the scissor state is only updated on demand
+        applyScissor();
+        Gdx.gl.glClearColor(0, 0, 0, 0);
+        Gdx.gl.glClear(Gdx.gl.GL_COLOR_BUFFER_BIT);
+    }
+
+    @Override
+    public boolean getClipRect (Rect rect) {
+        return clipStack.getClipRect(rect);
+    }
+
+    @Override
+    public GdxOffscreenRenderer getOffscreenRenderer () {
+        if (offscreenRenderer == null) {
+            offscreenRenderer = new GdxOffscreenRenderer(this);
+        }
+        return offscreenRenderer;
+    }
+
+    boolean isRendering () {
+        return rendering;
     }
 
     @Override
@@ -327,23 +523,39 @@ public class GdxRenderer implements Renderer, LineRenderer {
         }
         if (numPts >= 2) {
             if (Gdx.gl != null) {
+                applyScissor();
                 //tintStack.push(color.getRedFloat(), color.getGreenFloat(), color.getBlueFloat(), color.getAlphaFloat());
                 Gdx.gl.glDisable(Gdx.gl.GL_TEXTURE_2D);
                 Gdx.gl.glLineWidth(width);
-                FloatBuffer fb = BufferUtils.newFloatBuffer(pts.length);
-                fb.put(pts);
-                fb.position(0);
+                FloatBuffer fb = fillLineBuffer(pts, numPts);
                 Gdx.gl.glEnableVertexAttribArray(0);
                 Gdx.gl.glVertexAttribPointer(0, 2, Gdx.gl.GL_FLOAT, false, 0, fb);
                 Gdx.gl.glBlendColor(color.getRedFloat(), color.getGreenFloat(), color.getBlueFloat(), color.getAlphaFloat());
                 Gdx.gl.glDrawArrays((drawAsLoop ? Gdx.gl.GL_LINE_LOOP : Gdx.gl.GL_LINE_STRIP), 0, numPts);
-                Gdx.gl.glBlendColor(tintStack.r, tintStack.g, tintStack.b, tintStack.a);
+                Gdx.gl.glBlendColor(tintStack[tintTop], tintStack[tintTop + 1], tintStack[tintTop + 2], tintStack[tintTop + 3]);
                 Gdx.gl.glDisableVertexAttribArray(0);
                 Gdx.gl.glEnable(Gdx.gl.GL_TEXTURE_2D);
             }
         }
     }
 
+    /**
+     * Copies the line vertices into a reusable buffer which only grows
+     * when more vertices are needed.
+     */
+    FloatBuffer fillLineBuffer (float[] pts, int numPts) {
+        final int numFloats = numPts * 2;
+        FloatBuffer fb = lineBuffer;
+        if (fb == null || fb.capacity() < numFloats) {
+            fb = BufferUtils.newFloatBuffer(Math.max(64, numFloats));
+            lineBuffer = fb;
+        }
+        fb.clear();
+        fb.put(pts, 0, numFloats);
+        fb.flip();
+        return fb;
+    }
+
     /**
      * Controls if the mouse cursor is rendered via SW or HW cursors.
      * HW cursors have reduced support for transparency and cursor size.
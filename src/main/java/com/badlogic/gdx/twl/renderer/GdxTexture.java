@@ -23,6 +23,8 @@
 package com.badlogic.gdx.twl.renderer;
 
 import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.glutils.FileTextureData;
 
 import de.matthiasmann.twl.Color;
 import de.matthiasmann.twl.renderer.Image;
@@ -42,6 +44,19 @@ public class GdxTexture implements Texture, Resource {
         texture = new com.badlogic.gdx.graphics.Texture(textureFile);
     }
 
+    /**
+     * Creates a texture from an already decoded pixmap. The result is the
+     * same as loading the texture file directly.
+     *
+     * @param renderer the renderer
+     * @param textureFile the texture file - used when the GL context is lost
+     * @param pixmap the decoded texture file - ownership is transferred to the texture
+     */
+    public GdxTexture (GdxRenderer renderer, FileHandle textureFile, Pixmap pixmap) {
+        this.renderer = renderer;
+        texture = new com.badlogic.gdx.graphics.Texture(new FileTextureData(textureFile, pixmap, null, false));
+    }
+
     public com.badlogic.gdx.graphics.Texture getTexture() {
         return texture;
     }
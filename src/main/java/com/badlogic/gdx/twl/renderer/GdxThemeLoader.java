@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2008-2010, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution. * Neither the name of Matthias Mann nor
+ * the names of its contributors may be used to endorse or promote products derived from this software without specific prior
+ * written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.badlogic.gdx.twl.renderer;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap;
+
+import de.matthiasmann.twl.theme.ThemeManager;
+
+/**
+ * Loads a theme while the referenced textures are decoded in the background.
+ *
+ * <p>A worker scans the theme files for texture references and decodes
+ * each texture on the supplied executor while the theme XML is parsed on
+ * the calling thread. The GL textures are still created on the calling
+ * thread. When the parser needs a texture which has not been decoded yet
+ * it is decoded on the calling thread. The resulting ThemeManager is
+ * identical to one loaded by {@link ThemeManager#createThemeManager(com.badlogic.gdx.files.FileHandle, de.matthiasmann.twl.renderer.Renderer) }.</p>
+ *
+ * <p>Font pages are not prefetched: this backend takes bitmap fonts from the
+ * {@link com.badlogic.gdx.assets.AssetManager}, which has loaded them
+ * before the theme is parsed. See
+ * {@link de.matthiasmann.twl.renderer.lwjgl.LWJGLThemeLoader} for the
+ * LWJGL renderer, which decodes textures and font pages itself.</p>
+ *
+ * <p>This class is not available with GWT.</p>
+ *
+ * @author Matthias Mann
+ */
+public class GdxThemeLoader implements PixmapLoader {
+
+    private final Executor executor;
+    private final ConcurrentHashMap<String, FutureTask<Pixmap>> pixmaps;
+    private final AtomicLong decodeTime;
+    private final AtomicInteger numPrefetched;
+    private boolean done;
+    private volatile Thread loadingThread;
+    private volatile long scanTime;
+    private long waitTime;
+
+    /**
+     * Creates a new theme loader.
+     *
+     * @param executor the executor used to scan the theme and decode textures
+     */
+    public GdxThemeLoader (Executor executor) {
+        if (executor == null) {
+            throw new NullPointerException("executor");
+        }
+        this.executor = executor;
+        this.pixmaps = new ConcurrentHashMap<String, FutureTask<Pixmap>>();
+        this.decodeTime = new AtomicLong();
+        this.numPrefetched = new AtomicInteger();
+    }
+
+    public ThemeManager loadTheme (FileHandle handle, GdxRenderer renderer) throws IOException {
+        return loadTheme(handle, renderer, renderer.createNewCacheContext(), null);
+    }
+
+    /**
+     * Loads the specified theme.
+     *
+     * <p>Must be called on the thread which owns the GL context.</p>
+     *
+     * @param handle the theme file
+     * @param renderer the renderer
+     * @param cacheContext the cache context into which the resources are loaded
+     * @param constants constants which are exposed to the theme, can be null
+     * @return a new ThemeManager
+     * @throws IOException if an error occured while loading
+     * @see ThemeManager#createThemeManager(com.badlogic.gdx.files.FileHandle, de.matthiasmann.twl.renderer.Renderer, de.matthiasmann.twl.renderer.CacheContext, java.util.Map)
+     */
+    public ThemeManager loadTheme (final FileHandle handle, GdxRenderer renderer, GdxCacheContext cacheContext,
+                                   Map<String, Object> constants) throws IOException {
+        if (cacheContext.pixmapLoader != null) {
+            throw new IllegalStateException("cacheContext is already used by a theme loader");
+        }
+        synchronized (this) {
+            done = false;
+        }
+        pixmaps.clear();
+        decodeTime.set(0);
+        numPrefetched.set(0);
+        scanTime = 0;
+        waitTime = 0;
+        loadingThread = Thread.currentThread();
+
+        executor.execute(new Runnable() {
+            public void run () {
+                scan(handle);
+            }
+        });
+
+        cacheContext.pixmapLoader = this;
+        try {
+            return ThemeManager.createThemeManager(handle, renderer, cacheContext, constants);
+        } finally {
+            cacheContext.pixmapLoader = null;
+            finish();
+            loadingThread = null;
+        }
+    }
+
+    /**
+     * Returns the time the background worker spent scanning the theme files
+     * for textures during the last {@link #loadTheme}.
+     *
+     * @return the scan time in milliseconds
+     */
+    public long getScanTimeMillis () {
+        return scanTime / 1000000;
+    }
+
+    /**
+     * Returns the time spent decoding textures on all threads during the
+     * last {@link #loadTheme}.
+     *
+     * @return the decode time in milliseconds
+     */
+    public long getDecodeTimeMillis () {
+        return decodeTime.get() / 1000000;
+    }
+
+    /**
+     * Returns the time the loading thread spent waiting for or decoding
+     * textures during the last {@link #loadTheme}.
+     *
+     * @return the wait time in milliseconds
+     */
+    public long getWaitTimeMillis () {
+        return waitTime / 1000000;
+    }
+
+    /**
+     * Returns the number of textures which were decoded by a worker thread during
+     * the last {@link #loadTheme}.
+     *
+     * @return the number of prefetched textures
+     */
+    public int getNumPrefetchedTextures () {
+        return numPrefetched.get();
+    }
+
+    @Override
+    public Pixmap loadPixmap (FileHandle handle) throws IOException {
+        final long startTime = System.nanoTime();
+        final String key = handle.toString();
+        FutureTask<Pixmap> task = new DecodeTask(handle);
+        FutureTask<Pixmap> existing = pixmaps.putIfAbsent(key, task);
+        if (existing != null) {
+            task = existing;
+        }
+        // decode on this thread if no worker has started it yet
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw (IOException)(new IOException("Interrupted while decoding: " + handle).initCause(ex));
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw (IOException)(new IOException("Unable to decode: " + handle).initCause(cause));
+        } finally {
+            // keep the (consumed) task so that the scanner doesn't decode it again
+            pixmaps.put(key, CONSUMED);
+            waitTime += System.nanoTime() - startTime;
+        }
+    }
+
+    void scan (FileHandle handle) {
+        final long startTime = System.nanoTime();
+        try {
+            ThemeManager.scanTextureFiles(handle, new ThemeManager.TextureFileVisitor() {
+                public void textureFile (FileHandle textureFile, String format) {
+                    // Pixmaps are decoded in their native format
+                    prefetch(textureFile);
+                }
+
+                public void fontFile (FileHandle fontFile) {
+                    // the AssetManager has already loaded the font pages
+                }
+            });
+        } catch (Exception ex) {
+            // errors are reported by the theme loading
+        } finally {
+            scanTime = System.nanoTime() - startTime;
+        }
+    }
+
+    void prefetch (FileHandle handle) {
+        FutureTask<Pixmap> task = new DecodeTask(handle);
+        synchronized (this) {
+            if (done || pixmaps.putIfAbsent(handle.toString(), task) != null) {
+                return;
+            }
+        }
+        executor.execute(task);
+    }
+
+    private void finish () {
+        synchronized (this) {
+            done = true;
+        }
+        // drop pixmaps which were not used - this only happens when loading failed
+        for (FutureTask<Pixmap> task : pixmaps.values()) {
+            if (task != CONSUMED && !task.cancel(false)) {
+                // the task has already completed - running tasks dispose their result
+                try {
+                    Pixmap pixmap = task.get();
+                    if (pixmap != null) {
+                        pixmap.dispose();
+                    }
+                } catch (Exception ex) {
+                    // ignore
+                }
+            }
+        }
+        pixmaps.clear();
+    }
+
+    static final FutureTask<Pixmap> CONSUMED = new FutureTask<Pixmap>(new Callable<Pixmap>() {
+        public Pixmap call () {
+            return null;
+        }
+    });
+
+    synchronized boolean isDone () {
+        return done;
+    }
+
+    /**
+     * Decodes a pixmap. When the theme loading has already finished the
+     * decoded pixmap is disposed instead of being stored in the task.
+     */
+    final class DecodeTask extends FutureTask<Pixmap> {
+        DecodeTask (FileHandle handle) {
+            super(new Decoder(handle));
+        }
+
+        @Override
+        protected void set (Pixmap pixmap) {
+            synchronized (GdxThemeLoader.this) {
+                if (done && pixmap != null) {
+                    pixmap.dispose();
+                    pixmap = null;
+                }
+                super.set(pixmap);
+            }
+        }
+    }
+
+    final class Decoder implements Callable<Pixmap> {
+        private final FileHandle handle;
+
+        Decoder (FileHandle handle) {
+            this.handle = handle;
+        }
+
+        public Pixmap call () {
+            if (isDone()) {
+                return null;
+            }
+            final long startTime = System.nanoTime();
+            try {
+                return new Pixmap(handle);
+            } finally {
+                decodeTime.addAndGet(System.nanoTime() - startTime);
+                if (Thread.currentThread() != loadingThread) {
+                    numPrefetched.incrementAndGet();
+                }
+            }
+        }
+    }
+}
@@ -30,15 +30,37 @@
 package de.matthiasmann.twl;
 
 /**
- *
+ * <p>The states are stored as bit sets indexed by the {@link StateKey} ID.
+ * The change times are stored densely in the order of the keys which have
+ * been set in this instance. An animation state with a parent also keeps a
+ * flattened copy of the effective state bits which is rebuilt when any
+ * animation state of the parent chain has changed.</p>
+ * 
  * @author Matthias Mann
  */
 public class AnimationState implements de.matthiasmann.twl.renderer.AnimationState {
 
+    private static final long[] EMPTY = new long[0];
+    
     private final AnimationState parent;
     
-    private State[] stateTable;
+    /**
+     * Change counter shared by all animation states of a parent chain
+     */
+    private final int[] chainVersion;
+    
+    private long[] defined;
+    private long[] active;
+    private long[] shouldAnimate;
+    private long[] changedTimes;
+    private int numDefined;
+    
+    private long[] flatActive;
+    private long[] flatShouldAnimate;
+    private int flatVersion;
+    
     private GUI gui;
+    Widget owner;
 
     /**
      * Create a new animation state with optional parent.
@@ -52,7 +74,14 @@ public class AnimationState implements de.matthiasmann.twl.renderer.AnimationSta
      */
     public AnimationState(AnimationState parent, int size) {
         this.parent = parent;
-        this.stateTable = new State[size];
+        this.chainVersion = (parent != null) ? parent.chainVersion : new int[1];
+        this.flatVersion = chainVersion[0] - 1;
+        
+        int words = (size + 63) >>> 6;
+        this.defined = (words > 0) ? new long[words] : EMPTY;
+        this.active = (words > 0) ? new long[words] : EMPTY;
+        this.shouldAnimate = (words > 0) ? new long[words] : EMPTY;
+        this.changedTimes = EMPTY;
     }
     
     /**
@@ -81,10 +110,8 @@ public class AnimationState implements de.matthiasmann.twl.renderer.AnimationSta
         this.gui = gui;
         
         long curTime = getCurrentTime();
-        for(State s : stateTable) {
-            if(s != null) {
-                s.lastChangedTime = curTime;
-            }
+        for(int i=0 ; i<numDefined ; i++) {
+            changedTimes[i] = curTime;
         }
     }
 
@@ -96,14 +123,18 @@ public class AnimationState implements de.matthiasmann.twl.renderer.AnimationSta
      * @return time since last state change is ms.
      */
     public int getAnimationTime(StateKey stateKey) {
-        State state = getState(stateKey);
-        if(state != null) {
-            return (int)Math.min(Integer.MAX_VALUE, getCurrentTime() - state.lastChangedTime);
-        }
-        if(parent != null) {
-            return parent.getAnimationTime(stateKey);
+        int id = stateKey.getID();
+        AnimationState as = this;
+        for(;;) {
+            int idx = as.getTimeIndex(id);
+            if(idx >= 0) {
+                return (int)Math.min(Integer.MAX_VALUE, as.getCurrentTime() - as.changedTimes[idx]);
+            }
+            if(as.parent == null) {
+                return (int)as.getCurrentTime() & ((1<<31)-1);
+            }
+            as = as.parent;
         }
-        return (int)getCurrentTime() & ((1<<31)-1);
     }
 
     /**
@@ -113,14 +144,28 @@ public class AnimationState implements de.matthiasmann.twl.renderer.AnimationSta
      * @return true if the state is set
      */
     public boolean getAnimationState(StateKey stateKey) {
-        State state = getState(stateKey);
-        if(state != null) {
-            return state.active;
+        if(parent != null && flatVersion != chainVersion[0]) {
+            updateFlat();
         }
-        if(parent != null) {
-            return parent.getAnimationState(stateKey);
+        return isSet((parent != null) ? flatActive : active, stateKey.getID());
+    }
+
+    /**
+     * Returns the active states for 64 state keys as a bit mask. Bit
+     * {@code n} is set when the state key with ID {@code index*64+n}
+     * is active. States which are not set in this instance are taken
+     * from the parent.
+     *
+     * @param index the index of the 64 bit word
+     * @return the active states as bit mask
+     * @see #getAnimationState(de.matthiasmann.twl.renderer.AnimationState.StateKey)
+     */
+    public long getActiveStateBits(int index) {
+        if(parent != null && flatVersion != chainVersion[0]) {
+            updateFlat();
         }
-        return false;
+        long[] bits = (parent != null) ? flatActive : active;
+        return (index < bits.length) ? bits[index] : 0;
     }
 
     /**
@@ -132,14 +177,10 @@ public class AnimationState implements de.matthiasmann.twl.renderer.AnimationSta
      * @return true if single shot animations should run or not.
      */
     public boolean getShouldAnimateState(StateKey stateKey) {
-        State state = getState(stateKey);
-        if(state != null) {
-            return state.shouldAnimate;
-        }
-        if(parent != null) {
-            return parent.getShouldAnimateState(stateKey);
+        if(parent != null && flatVersion != chainVersion[0]) {
+            updateFlat();
         }
-        return false;
+        return isSet((parent != null) ? flatShouldAnimate : shouldAnimate, stateKey.getID());
     }
 
     /**
@@ -166,11 +207,14 @@ public class AnimationState implements de.matthiasmann.twl.renderer.AnimationSta
      * @see #resetAnimationTime(de.matthiasmann.twl.renderer.AnimationState.StateKey)
      */
     public void setAnimationState(StateKey stateKey, boolean active) {
-        State state = getOrCreate(stateKey);
-        if(state.active != active) {
-            state.active = active;
-            state.lastChangedTime = getCurrentTime();
-            state.shouldAnimate = true;
+        int id = stateKey.getID();
+        int idx = getOrCreate(id);
+        if(isSet(this.active, id) != active) {
+            this.active[id >>> 6] ^= 1L << id;
+            this.shouldAnimate[id >>> 6] |= 1L << id;
+            changedTimes[idx] = getCurrentTime();
+            chainVersion[0]++;
+            stateChanged();
         }
     }
 
@@ -196,9 +240,12 @@ public class AnimationState implements de.matthiasmann.twl.renderer.AnimationSta
      * @see #getShouldAnimateState(de.matthiasmann.twl.renderer.AnimationState.StateKey) 
      */
     public void resetAnimationTime(StateKey stateKey) {
-        State state = getOrCreate(stateKey);
-        state.lastChangedTime = getCurrentTime();
-        state.shouldAnimate = true;
+        int id = stateKey.getID();
+        int idx = getOrCreate(id);
+        changedTimes[idx] = getCurrentTime();
+        shouldAnimate[id >>> 6] |= 1L << id;
+        chainVersion[0]++;
+        stateChanged();
     }
 
     /**
@@ -221,50 +268,121 @@ public class AnimationState implements de.matthiasmann.twl.renderer.AnimationSta
      * @see #getShouldAnimateState(de.matthiasmann.twl.renderer.AnimationState.StateKey)
      */
     public void dontAnimate(StateKey stateKey) {
-        State state = getState(stateKey);
-        if(state != null) {
-            state.shouldAnimate = false;
+        int id = stateKey.getID();
+        if(isSet(defined, id) && isSet(shouldAnimate, id)) {
+            shouldAnimate[id >>> 6] &= ~(1L << id);
+            chainVersion[0]++;
         }
     }
 
-    private State getState(StateKey stateKey) {
-        int id = stateKey.getID();
-        if(id < stateTable.length) {
-            return stateTable[id];
+    private static boolean isSet(long[] bits, int id) {
+        int word = id >>> 6;
+        return word < bits.length && (bits[word] & (1L << id)) != 0;
+    }
+
+    /**
+     * Returns the index into {@code changedTimes} for the specified key
+     * which is the number of defined keys with a smaller ID.
+     * 
+     * @param id the state key ID
+     * @return the index or -1 if the state was not set in this instance
+     */
+    private int getTimeIndex(int id) {
+        if(!isSet(defined, id)) {
+            return -1;
         }
-        return null;
+        return getRank(id);
+    }
+    
+    private int getRank(int id) {
+        int word = id >>> 6;
+        int rank = Long.bitCount(defined[word] & ((1L << id) - 1));
+        for(int i=0 ; i<word ; i++) {
+            rank += Long.bitCount(defined[i]);
+        }
+        return rank;
     }
 
-    private State getOrCreate(StateKey stateKey) {
-        int id = stateKey.getID();
-        if(id < stateTable.length) {
-            State state = stateTable[id];
-            if(state != null) {
-                return state;
-            }
+    private int getOrCreate(int id) {
+        if(isSet(defined, id)) {
+            return getRank(id);
         }
         return createState(id);
     }
 
-    private State createState(int id) {
-        if(id >= stateTable.length) {
-            State[] newTable = new State[id+1];
-            System.arraycopy(stateTable, 0, newTable, 0, stateTable.length);
-            stateTable = newTable;
+    private int createState(int id) {
+        int word = id >>> 6;
+        if(word >= defined.length) {
+            defined = grow(defined, word + 1);
+            active = grow(active, word + 1);
+            shouldAnimate = grow(shouldAnimate, word + 1);
         }
-        State state = new State();
-        state.lastChangedTime = getCurrentTime();
-        stateTable[id] = state;
-        return state;
+        int idx = getRank(id);
+        if(numDefined == changedTimes.length) {
+            changedTimes = grow(changedTimes, Math.max(4, numDefined * 2));
+        }
+        System.arraycopy(changedTimes, idx, changedTimes, idx+1, numDefined - idx);
+        changedTimes[idx] = getCurrentTime();
+        numDefined++;
+        defined[word] |= 1L << id;
+        chainVersion[0]++;
+        return idx;
+    }
+    
+    private static long[] grow(long[] array, int size) {
+        long[] newArray = new long[size];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
     }
 
-    private long getCurrentTime() {
-        return (gui != null) ? gui.curTime : 0;
+    /**
+     * Rebuilds the flattened state bits from the own state and the
+     * flattened state bits of the parent.
+     */
+    private void updateFlat() {
+        long[] parentActive;
+        long[] parentShouldAnimate;
+        if(parent.parent != null) {
+            if(parent.flatVersion != chainVersion[0]) {
+                parent.updateFlat();
+            }
+            parentActive = parent.flatActive;
+            parentShouldAnimate = parent.flatShouldAnimate;
+        } else {
+            parentActive = parent.active;
+            parentShouldAnimate = parent.shouldAnimate;
+        }
+        
+        int words = Math.max(defined.length, parentActive.length);
+        if(flatActive == null || flatActive.length != words) {
+            flatActive = new long[words];
+            flatShouldAnimate = new long[words];
+        }
+        for(int i=0 ; i<words ; i++) {
+            long inherited = (i < defined.length) ? ~defined[i] : -1L;
+            long a = 0;
+            long s = 0;
+            if(i < parentActive.length) {
+                a = parentActive[i] & inherited;
+                s = parentShouldAnimate[i] & inherited;
+            }
+            if(i < defined.length) {
+                a |= active[i];
+                s |= shouldAnimate[i];
+            }
+            flatActive[i] = a;
+            flatShouldAnimate[i] = s;
+        }
+        flatVersion = chainVersion[0];
+    }
+
+    private void stateChanged() {
+        if(gui != null && owner != null) {
+            gui.animationStateChanged(owner);
+        }
     }
 
-    static final class State {
-        long lastChangedTime;
-        boolean active;
-        boolean shouldAnimate;
+    private long getCurrentTime() {
+        return (gui != null) ? gui.curTime : 0;
     }
 }
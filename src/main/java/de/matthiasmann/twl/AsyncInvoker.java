@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executes jobs in the background and reports their completion in the GUI
+ * thread via {@link GUI#invokeLater(java.lang.Runnable) }.
+ * 
+ * <p>The jobs are executed by a pluggable {@link Executor}. By default a
+ * single daemon thread is used which is created on the first job.</p>
+ * 
+ * <p>This class is not available on GWT.</p>
+ * 
+ * @author Matthias Mann
+ */
+public class AsyncInvoker {
+
+    private final GUI gui;
+    private final Executor executor;
+    private final boolean ownsExecutor;
+
+    /**
+     * Creates an AsyncInvoker which uses a single background thread.
+     * @param gui the GUI used to invoke the completion listeners
+     */
+    public AsyncInvoker(GUI gui) {
+        this(gui, Executors.newSingleThreadExecutor(new TF()), true);
+    }
+
+    /**
+     * Creates an AsyncInvoker which uses the specified executor.
+     * The executor is not shut down by {@link #shutdown() }.
+     * 
+     * @param gui the GUI used to invoke the completion listeners
+     * @param executor the executor which executes the jobs
+     * @see #newVirtualThreadExecutor() 
+     */
+    public AsyncInvoker(GUI gui, Executor executor) {
+        this(gui, executor, false);
+    }
+
+    private AsyncInvoker(GUI gui, Executor executor, boolean ownsExecutor) {
+        if(gui == null) {
+            throw new NullPointerException("gui");
+        }
+        if(executor == null) {
+            throw new NullPointerException("executor");
+        }
+        this.gui = gui;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    public GUI getGUI() {
+        return gui;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Performs a job async in the background. After the job has completed (normally
+     * or by throwing an exception) the completion listener is executed via
+     * {@link GUI#invokeLater(java.lang.Runnable) }
+     *
+     * If the job is canceled before it is started then the listener is not executed.
+     *
+     * This method is thread safe.
+     *
+     * @param <V> the result type of the job
+     * @param job the job to execute
+     * @param listener the listener which will be called once the job is finished
+     * @return a Future representing pending completion of the job
+     */
+    public<V> Future<V> invokeAsync(Callable<V> job, GUI.AsyncCompletionListener<V> listener) {
+        if(job == null) {
+            throw new IllegalArgumentException("job is null");
+        }
+        return submit(new AC<V>(job, null, null, listener));
+    }
+
+    /**
+     * Performs a job async in the background. After the job has completed (normally
+     * or by throwing an exception) the completion listener is executed via
+     * {@link GUI#invokeLater(java.lang.Runnable) }
+     *
+     * If the job is canceled before it is started then the listener is not executed.
+     *
+     * This method is thread safe.
+     *
+     * @param <V> the result type of the listener. The job always returns null.
+     * @param job the job to execute
+     * @param listener the listener which will be called once the job is finished
+     * @return a Future representing pending completion of the job
+     */
+    public<V> Future<V> invokeAsync(Runnable job, GUI.AsyncCompletionListener<V> listener) {
+        if(job == null) {
+            throw new IllegalArgumentException("job is null");
+        }
+        return submit(new AC<V>(null, job, null, listener));
+    }
+
+    /**
+     * Like {@link #invokeAsync(java.util.concurrent.Callable, de.matthiasmann.twl.GUI.AsyncCompletionListener) }
+     * but the completion is reported via {@link GUI#invokeLater(java.lang.Object, java.lang.Runnable) }.
+     * When several jobs with the same key complete before the GUI thread
+     * processes them only the completion of the last job is reported.
+     *
+     * @param <V> the result type of the job
+     * @param key the key used to drop superseded completions
+     * @param job the job to execute
+     * @param listener the listener which will be called once the job is finished
+     * @return a Future representing pending completion of the job
+     */
+    public<V> Future<V> invokeAsync(Object key, Callable<V> job, GUI.AsyncCompletionListener<V> listener) {
+        if(key == null) {
+            throw new IllegalArgumentException("key is null");
+        }
+        if(job == null) {
+            throw new IllegalArgumentException("job is null");
+        }
+        return submit(new AC<V>(job, null, key, listener));
+    }
+
+    /**
+     * Shuts down the executor if it was created by this AsyncInvoker.
+     */
+    public void shutdown() {
+        if(ownsExecutor) {
+            ((ExecutorService)executor).shutdown();
+        }
+    }
+
+    /**
+     * Creates an executor which starts a new virtual thread for each job.
+     * Virtual threads require Java 21 or newer - on older JVMs a cached
+     * thread pool with daemon threads is returned.
+     * 
+     * @return a new ExecutorService
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService)m.invoke(null);
+        } catch (Exception ex) {
+            Logger.getLogger(AsyncInvoker.class.getName()).log(Level.FINE,
+                    "Virtual threads not available", ex);
+            return Executors.newCachedThreadPool(new TF());
+        }
+    }
+
+    private<V> Future<V> submit(AC<V> ac) {
+        if(ac.listener == null) {
+            throw new IllegalArgumentException("listener is null");
+        }
+        FutureTask<V> task = new FutureTask<V>(ac);
+        executor.execute(task);
+        return task;
+    }
+
+    class AC<V> implements Callable<V>, Runnable {
+        private final Callable<V> jobC;
+        private final Runnable jobR;
+        private final Object key;
+        final GUI.AsyncCompletionListener<V> listener;
+        private V result;
+        private Exception exception;
+
+        AC(Callable<V> jobC, Runnable jobR, Object key, GUI.AsyncCompletionListener<V> listener) {
+            this.jobC = jobC;
+            this.jobR = jobR;
+            this.key = key;
+            this.listener = listener;
+        }
+
+        public V call() throws Exception {
+            try {
+                if(jobC != null) {
+                    result = jobC.call();
+                } else {
+                    jobR.run();
+                }
+                complete();
+                return result;
+            } catch(Exception ex) {
+                exception = ex;
+                complete();
+                throw ex;
+            }
+        }
+
+        private void complete() {
+            if(key != null) {
+                gui.invokeLater(key, this);
+            } else {
+                gui.invokeLater(this);
+            }
+        }
+
+        public void run() {
+            if(exception != null) {
+                listener.failed(exception);
+            } else {
+                listener.completed(result);
+            }
+        }
+    }
+
+    static class TF implements ThreadFactory {
+        static final AtomicInteger poolNumber = new AtomicInteger(1);
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        final String prefix;
+
+        TF() {
+            this.prefix = "GUI-" + poolNumber.getAndIncrement() + "-invokeAsync-";
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, prefix + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY);
+            return t;
+        }
+    }
+}
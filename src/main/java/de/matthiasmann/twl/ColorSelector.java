@@ -297,6 +297,7 @@ public class ColorSelector extends DialogLayout {
             previewTintAnimator.setColor(getColor());
         }
         updateHexEditField();
+        repaint();
     }
 
     protected void setColor(int argb) {
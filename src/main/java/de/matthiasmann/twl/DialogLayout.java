@@ -125,6 +125,12 @@ public class DialogLayout extends Widget {
 
     private Group horz;
     private Group vert;
+    
+    /**
+     * Incremented when the size of any spring may have changed.
+     * Groups cache their sizes until this value changes.
+     */
+    int springsVersion;
 
     /**
      * Debugging aid. Captures the stack trace where one of the group was last assigned.
@@ -316,6 +322,7 @@ public class DialogLayout extends Widget {
             setLargeGap(themeInfo.getParameterValue("largeGap", true, Dimension.class, Dimension.ZERO));
             setDefaultGap(themeInfo.getParameterValue("defaultGap", true, Dimension.class, Dimension.ZERO));
             namedGaps = themeInfo.getParameterMap("namedGaps");
+            springsVersion++;
         } finally {
             blockInvalidateLayoutTree = false;
         }
@@ -406,11 +413,15 @@ public class DialogLayout extends Widget {
             isPrepared = false;
         }
         if(!isPrepared) {
+            boolean changed = false;
             for(WidgetSpring s : widgetSprings.values()) {
                 if(includeInvisibleWidgets || s.w.isVisible()) {
-                    s.prepare();
+                    changed |= s.prepare();
                 }
             }
+            if(changed) {
+                springsVersion++;
+            }
             isPrepared = true;
         }
     }
@@ -583,10 +594,12 @@ public class DialogLayout extends Widget {
     
     protected void layoutGroupsChanged() {
         redoDefaultGaps = true;
+        springsVersion++;
         maybeInvalidateLayoutTree();
     }
     
     protected void maybeInvalidateLayoutTree() {
+        springsVersion++;
         if(horz != null && vert != null && !blockInvalidateLayoutTree) {
             invalidateLayout();
         }
@@ -648,7 +661,17 @@ public class DialogLayout extends Widget {
             this.alignment = Alignment.FILL;
         }
 
-        void prepare() {
+        /**
+         * Reads the current position and size constraints of the widget.
+         * @return true if any of the size constraints has changed
+         */
+        boolean prepare() {
+            int oldMinWidth = minWidth;
+            int oldMinHeight = minHeight;
+            int oldMaxWidth = maxWidth;
+            int oldMaxHeight = maxHeight;
+            int oldPrefWidth = prefWidth;
+            int oldPrefHeight = prefHeight;
             this.x = w.getX();
             this.y = w.getY();
             this.width = w.getWidth();
@@ -660,6 +683,9 @@ public class DialogLayout extends Widget {
             this.prefWidth = computeSize(minWidth, w.getPreferredWidth(), maxWidth);
             this.prefHeight = computeSize(minHeight, w.getPreferredHeight(), maxHeight);
             this.flags = 0;
+            return oldMinWidth != minWidth || oldMinHeight != minHeight ||
+                    oldMaxWidth != maxWidth || oldMaxHeight != maxHeight ||
+                    oldPrefWidth != prefWidth || oldPrefHeight != prefHeight;
         }
 
         @Override
@@ -849,6 +875,46 @@ public class DialogLayout extends Widget {
     public abstract class Group extends Spring {
         final ArrayList<Spring> springs = new ArrayList<Spring>();
         boolean alreadyAdded;
+        
+        // cached sizes per axis - valid while cachedVersion == springsVersion
+        final int[] cachedVersion = new int[] { -1, -1 };
+        final int[] cachedMin = new int[2];
+        final int[] cachedPref = new int[2];
+        final int[] cachedMax = new int[2];
+
+        @Override
+        final int getMinSize(int axis) {
+            validateCache(axis);
+            return cachedMin[axis];
+        }
+
+        @Override
+        final int getPrefSize(int axis) {
+            validateCache(axis);
+            return cachedPref[axis];
+        }
+
+        @Override
+        final int getMaxSize(int axis) {
+            validateCache(axis);
+            return cachedMax[axis];
+        }
+        
+        private void validateCache(int axis) {
+            if(cachedVersion[axis] != springsVersion) {
+                computeSizes(axis);
+                cachedVersion[axis] = springsVersion;
+            }
+        }
+        
+        /**
+         * Computes the min, preferred and max size of this group and
+         * stores them in {@code cachedMin}, {@code cachedPref} and
+         * {@code cachedMax}.
+         * 
+         * @param axis the axis
+         */
+        abstract void computeSizes(int axis);
 
         void checkGroup(DialogLayout owner) {
             if(DialogLayout.this != owner) {
@@ -1052,6 +1118,7 @@ public class DialogLayout extends Widget {
          * Remove all default gaps from this and child groups
          */
         public void removeDefaultGaps() {
+            springsVersion++;
             for(int i=springs.size() ; i-->0 ;) {
                 Spring s = springs.get(i);
                 if(s instanceof GapSpring) {
@@ -1068,6 +1135,7 @@ public class DialogLayout extends Widget {
          * Add a default gap between all children except if the neighbour is already a Gap.
          */
         public void addDefaultGap() {
+            springsVersion++;
             for(int i=0 ; i<springs.size() ; i++) {
                 Spring s = springs.get(i);
                 if(s instanceof Group) {
@@ -1165,46 +1233,29 @@ public class DialogLayout extends Widget {
         }
 
         @Override
-        int getMinSize(int axis) {
-            int size = 0;
-            for(int i=0,n=springs.size() ; i<n ; i++) {
-                Spring s = springs.get(i);
-                if(includeInvisibleWidgets || s.isVisible()) {
-                    size += s.getMinSize(axis);
-                }
-            }
-            return size;
-        }
-
-        @Override
-        int getPrefSize(int axis) {
-            int size = 0;
-            for(int i=0,n=springs.size() ; i<n ; i++) {
-                Spring s = springs.get(i);
-                if(includeInvisibleWidgets || s.isVisible()) {
-                    size += s.getPrefSize(axis);
-                }
-            }
-            return size;
-        }
-
-        @Override
-        int getMaxSize(int axis) {
-            int size = 0;
+        void computeSizes(int axis) {
+            int minSize = 0;
+            int prefSize = 0;
+            int maxSize = 0;
             boolean hasMax = false;
             for(int i=0,n=springs.size() ; i<n ; i++) {
                 Spring s = springs.get(i);
                 if(includeInvisibleWidgets || s.isVisible()) {
+                    int pref = s.getPrefSize(axis);
                     int max = s.getMaxSize(axis);
+                    minSize += s.getMinSize(axis);
+                    prefSize += pref;
                     if(max > 0) {
-                        size += max;
+                        maxSize += max;
                         hasMax = true;
                     } else {
-                        size += s.getPrefSize(axis);
+                        maxSize += pref;
                     }
                 }
             }
-            return hasMax ? size : 0;
+            cachedMin[axis] = minSize;
+            cachedPref[axis] = prefSize;
+            cachedMax[axis] = hasMax ? maxSize : 0;
         }
         
         /**
@@ -1323,39 +1374,21 @@ public class DialogLayout extends Widget {
         }
 
         @Override
-        int getMinSize(int axis) {
-            int size = 0;
-            for(int i=0,n=springs.size() ; i<n ; i++) {
-                Spring s = springs.get(i);
-                if(includeInvisibleWidgets || s.isVisible()) {
-                    size = Math.max(size, s.getMinSize(axis));
-                }
-            }
-            return size;
-        }
-
-        @Override
-        int getPrefSize(int axis) {
-            int size = 0;
-            for(int i=0,n=springs.size() ; i<n ; i++) {
-                Spring s = springs.get(i);
-                if(includeInvisibleWidgets || s.isVisible()) {
-                    size = Math.max(size, s.getPrefSize(axis));
-                }
-            }
-            return size;
-        }
-
-        @Override
-        int getMaxSize(int axis) {
-            int size = 0;
+        void computeSizes(int axis) {
+            int minSize = 0;
+            int prefSize = 0;
+            int maxSize = 0;
             for(int i=0,n=springs.size() ; i<n ; i++) {
                 Spring s = springs.get(i);
                 if(includeInvisibleWidgets || s.isVisible()) {
-                    size = Math.max(size, s.getMaxSize(axis));
+                    minSize = Math.max(minSize, s.getMinSize(axis));
+                    prefSize = Math.max(prefSize, s.getPrefSize(axis));
+                    maxSize = Math.max(maxSize, s.getMaxSize(axis));
                 }
             }
-            return size;
+            cachedMin[axis] = minSize;
+            cachedPref[axis] = prefSize;
+            cachedMax[axis] = maxSize;
         }
 
         @Override
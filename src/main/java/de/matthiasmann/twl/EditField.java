@@ -32,6 +32,8 @@ package de.matthiasmann.twl;
 import de.matthiasmann.twl.model.AutoCompletionDataSource;
 import de.matthiasmann.twl.model.DefaultEditFieldModel;
 import de.matthiasmann.twl.model.EditFieldModel;
+import de.matthiasmann.twl.model.MultiLineEditFieldModel;
+import de.matthiasmann.twl.model.ObservableCharSequence;
 import de.matthiasmann.twl.model.StringAttributes;
 import de.matthiasmann.twl.model.StringModel;
 import de.matthiasmann.twl.renderer.AnimationState.StateKey;
@@ -40,7 +42,9 @@ import de.matthiasmann.twl.utils.TextUtil;
 import de.matthiasmann.twl.utils.CallbackSupport;
 import de.matthiasmann.twl.renderer.Font;
 import de.matthiasmann.twl.renderer.Font2;
+import de.matthiasmann.twl.renderer.FontCache;
 import de.matthiasmann.twl.renderer.Image;
+import java.util.ArrayList;
 
 /**
  * A text edit control.
@@ -79,6 +83,7 @@ public class EditField extends Widget {
     }
 
     final EditFieldModel editBuffer;
+    private final MultiLineEditFieldModel lineIndex;
     private final TextRenderer textRenderer;
     private PasswordMasker passwordMasking;
     private Runnable modelChangeListener;
@@ -108,6 +113,10 @@ public class EditField extends Widget {
     private boolean forwardUnhandledKeysToCallback;
     private boolean autoCompletionOnSetText = true;
     boolean scrollToCursorOnSizeChange = true;
+    private int modelUpdateDelay;
+    private boolean modelUpdatePending;
+    private Timer modelUpdateTimer;
+    private int[] lineStarts;
 
     private EditFieldAutoCompletionWindow autoCompletionWindow;
     private int autoCompletionHeight = 100;
@@ -122,9 +131,13 @@ public class EditField extends Widget {
      * the EditField always creates it's animation state with the passed
      * one as parent.
      *
+     * If the edit field model implements {@link MultiLineEditFieldModel}
+     * then it's line index is used for all line computations.
+     *
      * @param parentAnimationState
      * @param editFieldModel the edit field model to use
      * @see AnimationState#AnimationState(de.matthiasmann.twl.AnimationState) 
+     * @see de.matthiasmann.twl.model.GapBufferEditFieldModel
      */
     public EditField(AnimationState parentAnimationState, EditFieldModel editFieldModel) {
         super(parentAnimationState, true);
@@ -134,6 +147,8 @@ public class EditField extends Widget {
         }
 
         this.editBuffer = editFieldModel;
+        this.lineIndex = (editFieldModel instanceof MultiLineEditFieldModel)
+                ? (MultiLineEditFieldModel)editFieldModel : null;
         this.textRenderer = new TextRenderer(getAnimationState());
         this.passwordChar = '*';
 
@@ -293,7 +308,51 @@ public class EditField extends Widget {
         return model;
     }
 
+    public int getModelUpdateDelay() {
+        return modelUpdateDelay;
+    }
+
+    /**
+     * Sets the delay after the last edit before the text is written to the
+     * model. With a delay of 0 (the default) the model is updated after
+     * every edit which copies the complete text each time.
+     * 
+     * <p>A pending update is also written when the edit field looses
+     * keyboard focus or is removed from the GUI.</p>
+     * 
+     * @param modelUpdateDelay the delay in milliseconds, 0 to update immediately
+     * @see #flushModelUpdate()
+     */
+    public void setModelUpdateDelay(int modelUpdateDelay) {
+        if(modelUpdateDelay < 0) {
+            throw new IllegalArgumentException("modelUpdateDelay");
+        }
+        this.modelUpdateDelay = modelUpdateDelay;
+        if(modelUpdateTimer != null) {
+            modelUpdateTimer.stop();
+            modelUpdateTimer.setDelay(Math.max(1, modelUpdateDelay));
+        }
+        if(modelUpdateDelay == 0) {
+            flushModelUpdate();
+        }
+    }
+
+    /**
+     * Writes a pending text change to the model.
+     * @see #setModelUpdateDelay(int)
+     */
+    public void flushModelUpdate() {
+        if(modelUpdateTimer != null) {
+            modelUpdateTimer.stop();
+        }
+        if(modelUpdatePending) {
+            modelUpdatePending = false;
+            updateModel();
+        }
+    }
+
     public void setModel(StringModel model) {
+        flushModelUpdate();
         removeModelChangeListener();
         if(this.model != null) {
             this.model.removeCallback(modelChangeListener);
@@ -486,10 +545,19 @@ public class EditField extends Widget {
     protected void afterAddToGUI(GUI gui) {
         super.afterAddToGUI(gui);
         addModelChangeListener();
+        modelUpdateTimer = gui.createTimer();
+        modelUpdateTimer.setDelay(Math.max(1, modelUpdateDelay));
+        modelUpdateTimer.setCallback(new Runnable() {
+            public void run() {
+                flushModelUpdate();
+            }
+        });
     }
 
     @Override
     protected void beforeRemoveFromGUI(GUI gui) {
+        flushModelUpdate();
+        modelUpdateTimer = null;
         removeModelChangeListener();
         super.beforeRemoveFromGUI(gui);
     }
@@ -833,17 +901,15 @@ public class EditField extends Widget {
     }
 
     private void updateText(boolean updateAutoCompletion, boolean fromModel, int key) {
-        if(model != null && !fromModel) {
-            try {
-                model.setValue(getText());
-                if(errorMsgFromModel) {
-                    setErrorMessage(null);
-                }
-            } catch(Exception ex) {
-                if(errorMsg == null || errorMsgFromModel) {
-                    setErrorMessage(ex.getMessage());
-                    errorMsgFromModel = true;
-                }
+        if(fromModel) {
+            modelUpdatePending = false;
+        } else if(model != null) {
+            if(modelUpdateDelay > 0 && modelUpdateTimer != null) {
+                modelUpdatePending = true;
+                modelUpdateTimer.stop();
+                modelUpdateTimer.start();
+            } else {
+                updateModel();
             }
         }
         updateTextDisplay();
@@ -860,6 +926,22 @@ public class EditField extends Widget {
         }
     }
 
+    private void updateModel() {
+        if(model != null) {
+            try {
+                model.setValue(getText());
+                if(errorMsgFromModel) {
+                    setErrorMessage(null);
+                }
+            } catch(Exception ex) {
+                if(errorMsg == null || errorMsgFromModel) {
+                    setErrorMessage(ex.getMessage());
+                    errorMsgFromModel = true;
+                }
+            }
+        }
+    }
+
     private void updateTextDisplay() {
         textRenderer.setCharSequence(passwordMasking != null ? passwordMasking : editBuffer);
         textRenderer.cacheDirty = true;
@@ -1054,7 +1136,7 @@ public class EditField extends Widget {
 
     protected void modelChanged() {
         String modelText = model.getValue();
-        if(editBuffer.length() != modelText.length() || !getText().equals(modelText)) {
+        if(!TextUtil.contentEquals(editBuffer, modelText)) {
             setText(modelText, true);
         }
     }
@@ -1075,7 +1157,86 @@ public class EditField extends Widget {
         return 0;
     }
 
+    /**
+     * Returns the number of lines in the edit buffer. Uses the line index of
+     * the model if available, otherwise an index which is build on demand
+     * after each change.
+     * 
+     * @return the number of lines - at least 1
+     */
+    protected int getNumLines() {
+        if(lineIndex != null) {
+            return lineIndex.getNumLines();
+        }
+        return getLineStarts().length;
+    }
+    
+    /**
+     * Returns the index of the first character of the specified line.
+     * @param line the line number (0 based)
+     * @return the start index of the line
+     * @see #getNumLines()
+     */
+    protected int getLineStart(int line) {
+        if(lineIndex != null) {
+            return lineIndex.getLineStart(line);
+        }
+        return getLineStarts()[line];
+    }
+
+    /**
+     * Returns the line number which contains the specified index. Unlike
+     * {@link #computeLineNumber(int) } this uses the same on demand index as
+     * {@link #getLineStart(int) } and is intended for painting.
+     *
+     * @param index the character index
+     * @return the line number (0 based)
+     */
+    int getLineNumber(int index) {
+        if(lineIndex != null) {
+            return lineIndex.getLineNumber(index);
+        }
+        final int[] starts = getLineStarts();
+        int lo = 0;
+        int hi = starts.length - 1;
+        while(lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if(starts[mid] <= index) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+    
+    private int[] getLineStarts() {
+        int[] starts = lineStarts;
+        if(starts == null) {
+            final EditFieldModel eb = this.editBuffer;
+            final int length = eb.length();
+            int count = 1;
+            for(int i=0 ; i<length ; i++) {
+                if(eb.charAt(i) == '\n') {
+                    count++;
+                }
+            }
+            starts = new int[count];
+            count = 1;
+            for(int i=0 ; i<length ; i++) {
+                if(eb.charAt(i) == '\n') {
+                    starts[count++] = i + 1;
+                }
+            }
+            lineStarts = starts;
+        }
+        return starts;
+    }
+
     protected int computeLineNumber(int cursorPos) {
+        if(lineIndex != null) {
+            return lineIndex.getLineNumber(cursorPos);
+        }
         final EditFieldModel eb = this.editBuffer;
         int lineNr = 0;
         for(int i=0 ; i<cursorPos ; i++) {
@@ -1090,6 +1251,9 @@ public class EditField extends Widget {
         if(!multiLine) {
             return 0;
         }
+        if(lineIndex != null) {
+            return lineIndex.getLineStart(lineIndex.getLineNumber(cursorPos));
+        }
         final EditFieldModel eb = this.editBuffer;
         while(cursorPos > 0 && eb.charAt(cursorPos-1) != '\n') {
             cursorPos--;
@@ -1103,6 +1267,9 @@ public class EditField extends Widget {
         if(!multiLine) {
             return endIndex;
         }
+        if(lineIndex != null) {
+            return lineIndex.getLineEnd(lineIndex.getLineNumber(cursorPos));
+        }
         while(cursorPos < endIndex && eb.charAt(cursorPos) != '\n') {
             cursorPos++;
         }
@@ -1134,6 +1301,10 @@ public class EditField extends Widget {
                 y -= textRenderer.computeTextY();
                 int lineHeight = font.getLineHeight();
                 int endIndex = lineEnd;
+                if(lineIndex != null) {
+                    int line = (y < 0) ? 0 : Math.min(y / Math.max(1, lineHeight), lineIndex.getNumLines() - 1);
+                    return computeCursorPosFromX(x, lineIndex.getLineStart(line), lineIndex.getLineEnd(line));
+                }
                 for(;;) {
                     lineEnd = computeLineEnd(lineStart);
 
@@ -1171,6 +1342,8 @@ public class EditField extends Widget {
             int xpos = textRenderer.lastTextX + computeRelativeCursorPositionX(cursorPos);
             int ypos = textRenderer.computeTextY() + computeRelativeCursorPositionY(cursorPos);
             cursorImage.draw(getAnimationState(), xpos, ypos, cursorImage.getWidth(), getLineHeight());
+            // the cursor image is usually animated (blinking)
+            repaint(xpos, ypos, cursorImage.getWidth(), getLineHeight());
         }
         super.paintOverlay(gui);
     }
@@ -1221,6 +1394,7 @@ public class EditField extends Widget {
     @Override
     protected void keyboardFocusLost() {
         super.keyboardFocusLost();
+        flushModelUpdate();
         if(errorInfoWindow != null) {
             errorInfoWindow.closeInfo();
         }
@@ -1241,14 +1415,24 @@ public class EditField extends Widget {
         }
     }
 
-    public class TextRenderer extends TextWidget {
+    public class TextRenderer extends TextWidget implements ObservableCharSequence.Callback {
         int lastTextX;
         int lastScrollPos;
         AttributedStringFontCache cache;
         boolean cacheDirty;
+        
+        /** the range of lines which intersect the clip area - only valid for multi line */
+        int firstVisibleLine;
+        int lastVisibleLine;
+        
+        private final Rect clipRect;
+        private final ArrayList<LineCache> lineCaches;
+        private int paintCount;
 
         protected TextRenderer(AnimationState animState) {
             super(animState);
+            this.clipRect = new Rect();
+            this.lineCaches = new ArrayList<LineCache>();
         }
 
         @Override
@@ -1259,6 +1443,12 @@ public class EditField extends Widget {
             lastScrollPos = hasFocusOrPopup() ? scrollPos : 0;
             lastTextX = computeTextX();
             Font font = getFont();
+            if(multiLine) {
+                computeVisibleLines(gui, font);
+            } else {
+                firstVisibleLine = 0;
+                lastVisibleLine = 0;
+            }
             if(attributes != null && font instanceof Font2) {
                 paintWithAttributes((Font2)font);
             } else if(hasSelection() && hasFocusOrPopup()) {
@@ -1267,10 +1457,157 @@ public class EditField extends Widget {
                 } else {
                     paintWithSelection(0, editBuffer.length(), computeTextY());
                 }
+            } else if(multiLine && font != null && getAlignment().fontHAlignment == HAlignment.LEFT) {
+                paintVisibleLines(font);
             } else {
                 paintLabelText(getAnimationState());
             }
         }
+        
+        /**
+         * Computes the range of lines which intersect the current clip
+         * rectangle and this widget.
+         * @param gui the GUI
+         * @param font the font - can be null
+         */
+        protected void computeVisibleLines(GUI gui, Font font) {
+            int top = getY();
+            int bottom = getBottom();
+            if(gui.getRenderer().getClipRect(clipRect)) {
+                top = Math.max(top, clipRect.getY());
+                bottom = Math.min(bottom, clipRect.getBottom());
+            }
+            int lineHeight = (font != null) ? Math.max(1, font.getLineHeight()) : 1;
+            int textY = computeTextY();
+            int numLines = getNumLines();
+            firstVisibleLine = Math.max(0, (top - textY) / lineHeight);
+            lastVisibleLine = Math.min(numLines - 1, (bottom - textY - 1) / lineHeight);
+        }
+        
+        /**
+         * Draws all visible lines. Each line is cached in it's own
+         * {@link FontCache} which is kept until the line is changed or
+         * scrolled out of view.
+         * @param font the font
+         */
+        protected void paintVisibleLines(Font font) {
+            final AnimationState as = getAnimationState();
+            final CharSequence text = getCharSequence();
+            final int lineHeight = font.getLineHeight();
+            final int x = lastTextX;
+            int y = computeTextY() + firstVisibleLine * lineHeight;
+            int cacheIdx = 0;
+            paintCount++;
+            
+            for(int line=firstVisibleLine ; line<=lastVisibleLine ; line++,y+=lineHeight) {
+                int lineStart = getLineStart(line);
+                int lineEnd = computeLineEnd(lineStart);
+                if(lineEnd > lineStart) {
+                    FontCache lineCache = null;
+                    if(isCache()) {
+                        cacheIdx = findLineCache(lineStart, lineEnd, cacheIdx);
+                        if(cacheIdx < 0) {
+                            cacheIdx = ~cacheIdx;
+                            FontCache fc = font.cacheText(null, text, lineStart, lineEnd);
+                            if(fc != null) {
+                                lineCaches.add(cacheIdx, new LineCache(lineStart, lineEnd, fc));
+                            }
+                        }
+                        if(cacheIdx < lineCaches.size()) {
+                            LineCache lc = lineCaches.get(cacheIdx);
+                            if(lc.start == lineStart) {
+                                lc.lastPaint = paintCount;
+                                lineCache = lc.cache;
+                            }
+                        }
+                    }
+                    if(lineCache != null) {
+                        lineCache.draw(as, x, y);
+                    } else {
+                        font.drawText(as, x, y, text, lineStart, lineEnd);
+                    }
+                }
+            }
+            
+            // release lines which are no longer visible
+            for(int i=lineCaches.size() ; i-->0 ;) {
+                LineCache lc = lineCaches.get(i);
+                if(lc.lastPaint != paintCount) {
+                    lc.cache.destroy();
+                    lineCaches.remove(i);
+                }
+            }
+        }
+        
+        private int findLineCache(int lineStart, int lineEnd, int startIdx) {
+            final ArrayList<LineCache> lcs = lineCaches;
+            int idx = startIdx;
+            while(idx < lcs.size() && lcs.get(idx).start < lineStart) {
+                idx++;
+            }
+            if(idx < lcs.size()) {
+                LineCache lc = lcs.get(idx);
+                if(lc.start == lineStart) {
+                    if(lc.end == lineEnd) {
+                        return idx;
+                    }
+                    lc.cache.destroy();
+                    lcs.remove(idx);
+                }
+            }
+            return ~idx;
+        }
+        
+        int getNumLineCaches() {
+            return lineCaches.size();
+        }
+        
+        private void destroyLineCaches() {
+            for(int i=0,n=lineCaches.size() ; i<n ; i++) {
+                lineCaches.get(i).cache.destroy();
+            }
+            lineCaches.clear();
+        }
+
+        public void charactersChanged(int start, int oldCount, int newCount) {
+            lineStarts = null;
+            final int end = start + oldCount;
+            final int delta = newCount - oldCount;
+            for(int i=lineCaches.size() ; i-->0 ;) {
+                LineCache lc = lineCaches.get(i);
+                if(lc.end < start) {
+                    break;
+                }
+                if(lc.start > end) {
+                    lc.start += delta;
+                    lc.end += delta;
+                } else {
+                    lc.cache.destroy();
+                    lineCaches.remove(i);
+                }
+            }
+        }
+
+        @Override
+        public void setFont(Font font) {
+            super.setFont(font);
+            // the cached lines were rendered with the old font
+            destroyLineCaches();
+        }
+
+        @Override
+        protected void afterAddToGUI(GUI gui) {
+            super.afterAddToGUI(gui);
+            lineStarts = null;
+            editBuffer.addCallback(this);
+        }
+
+        @Override
+        protected void beforeRemoveFromGUI(GUI gui) {
+            editBuffer.removeCallback(this);
+            destroyLineCaches();
+            super.beforeRemoveFromGUI(gui);
+        }
 
         protected void paintWithSelection(int lineStart, int lineEnd, int yoff) {
             int selStart = selectionStart;
@@ -1287,28 +1624,34 @@ public class EditField extends Widget {
         }
 
         protected void paintMultiLineWithSelection() {
-            final EditFieldModel eb = editBuffer;
-            int lineStart = 0;
-            int endIndex = eb.length();
-            int yoff = computeTextY();
             int lineHeight = getLineHeight();
-            while(lineStart < endIndex) {
+            int yoff = computeTextY() + firstVisibleLine * lineHeight;
+            for(int line=firstVisibleLine ; line<=lastVisibleLine ; line++) {
+                int lineStart = getLineStart(line);
                 int lineEnd = computeLineEnd(lineStart);
 
                 paintWithSelection(lineStart, lineEnd, yoff);
 
                 yoff += lineHeight;
-                lineStart = lineEnd + 1;
             }
         }
         
         protected void paintMultiLineSelectionBackground() {
+            if(lastVisibleLine < firstVisibleLine) {
+                return;
+            }
             int lineHeight = getLineHeight();
-            int lineStart = computeLineStart(selectionStart);
-            int lineNumber = computeLineNumber(lineStart);
-            int endIndex = selectionEnd;
-            int yoff = computeTextY() + lineHeight * lineNumber;
+            int lineNumber = getLineNumber(selectionStart);
+            int lineStart = getLineStart(lineNumber);
             int xstart = lastTextX + computeRelativeCursorPositionX(lineStart, selectionStart);
+            if(lineNumber < firstVisibleLine) {
+                lineNumber = firstVisibleLine;
+                lineStart = getLineStart(lineNumber);
+                xstart = getInnerX();
+            }
+            // stop after the last visible line
+            int endIndex = Math.min(selectionEnd, computeLineEnd(getLineStart(lastVisibleLine)) + 1);
+            int yoff = computeTextY() + lineHeight * lineNumber;
             while(lineStart < endIndex) {
                 int lineEnd = computeLineEnd(lineStart);
                 int xend;
@@ -1373,6 +1716,20 @@ public class EditField extends Widget {
                 cache.destroy();
                 cache = null;
             }
+            destroyLineCaches();
+        }
+    }
+    
+    static final class LineCache {
+        int start;
+        int end;
+        final FontCache cache;
+        int lastPaint;
+
+        LineCache(int start, int end, FontCache cache) {
+            this.start = start;
+            this.end = end;
+            this.cache = cache;
         }
     }
 
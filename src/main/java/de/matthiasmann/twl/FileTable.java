@@ -39,14 +39,20 @@ import de.matthiasmann.twl.model.TableSingleSelectionModel;
 import de.matthiasmann.twl.utils.CallbackSupport;
 import de.matthiasmann.twl.utils.NaturalSortComparator;
 import java.text.DateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * A table showing the content of a folder.
  * Uses FileSystemModel.
  * Supports sorting and filtering.
+ * 
+ * <p>When a {@link ListingExecutor} is set then folders are listed in the
+ * background and the entries are added to the table in batches.</p>
  *
  * @author Matthias Mann
  */
@@ -69,6 +75,33 @@ public class FileTable extends Table {
         public void sortingChanged();
     }
 
+    /**
+     * Executes the background part of an asynchronous folder listing.
+     * 
+     * <p>On desktop this is usually a thin wrapper around a
+     * {@code java.util.concurrent.Executor}.</p>
+     */
+    public interface ListingExecutor {
+        /**
+         * Executes the given job on a background thread.
+         * @param job the job
+         */
+        public void execute(Runnable job);
+    }
+
+    /**
+     * The number of entries in the first batch of an asynchronous listing.
+     * Every following batch is twice as large up to {@link #MAX_LISTING_BATCH_SIZE}
+     */
+    public static final int MIN_LISTING_BATCH_SIZE = 64;
+    public static final int MAX_LISTING_BATCH_SIZE = 4096;
+
+    /**
+     * The maximum number of files which {@link #updateFiles(java.lang.Object[], java.lang.Object[]) }
+     * updates individually. Larger updates will refresh the complete table.
+     */
+    public static final int MAX_INCREMENTAL_UPDATES = 256;
+
     private final FileTableModel fileTableModel;
     private final Runnable selectionChangedListener;
     private TableSelectionModel fileTableSelectionModel;
@@ -83,6 +116,10 @@ public class FileTable extends Table {
 
     private FileSystemModel fsm;
     private Object currentFolder;
+    
+    private ListingExecutor listingExecutor;
+    private FolderListing folderListing;
+    private ArrayList<Object> pendingSelection;
 
     private Callback[] fileTableCallbacks;
 
@@ -151,19 +188,34 @@ public class FileTable extends Table {
         }
     }
 
+    /**
+     * Selects the specified file and scrolls it into view.
+     * 
+     * <p>If an asynchronous listing is in progress and the file was not yet
+     * listed then it will be selected once it is listed.</p>
+     * 
+     * @param file the file to select
+     * @return true if the file is already part of the table
+     */
     public boolean setSelection(Object file) {
         fileTableSelectionModel.clearSelection();
+        pendingSelection = null;
         int idx = fileTableModel.findFile(file);
         if(idx >= 0) {
             fileTableSelectionModel.addSelection(idx, idx);
             scrollToRow(idx);
             return true;
         }
+        if(folderListing != null) {
+            pendingSelection = new ArrayList<Object>();
+            pendingSelection.add(file);
+        }
         return false;
     }
     
     public void clearSelection() {
         fileTableSelectionModel.clearSelection();
+        pendingSelection = null;
     }
 
     public void setSortColumn(SortColumn column) {
@@ -229,7 +281,56 @@ public class FileTable extends Table {
         refreshFileTable();
     }
 
+    public ListingExecutor getListingExecutor() {
+        return listingExecutor;
+    }
+
+    /**
+     * Sets the executor used to list folders in the background.
+     * 
+     * <p>The executor is only used while this table is part of a GUI tree.
+     * The entries are handed to the GUI thread in batches via
+     * {@link GUI#invokeLater(java.lang.Runnable) } and merged into the
+     * table with one insert event per run of new rows.</p>
+     * 
+     * <p>{@link FileSystemModel#listFolder(java.lang.Object, de.matthiasmann.twl.model.FileSystemModel.FileFilter) }
+     * returns the complete folder content, so the first batch is only
+     * delivered after the whole folder has been listed. The batches spread
+     * the per entry file attribute queries and the table updates.</p>
+     * 
+     * @param listingExecutor the executor or null to list folders synchronously
+     */
+    public void setListingExecutor(ListingExecutor listingExecutor) {
+        this.listingExecutor = listingExecutor;
+    }
+
+    /**
+     * Returns true while an asynchronous folder listing is in progress.
+     * @return true while an asynchronous folder listing is in progress
+     */
+    public boolean isListingInProgress() {
+        return folderListing != null;
+    }
+
+    /**
+     * Cancels an asynchronous folder listing which is in progress.
+     * Entries which have already been added stay in the table.
+     */
+    public void cancelListing() {
+        if(folderListing != null) {
+            folderListing.canceled = true;
+            folderListing = null;
+        }
+        pendingSelection = null;
+    }
+
     public void refreshFileTable() {
+        cancelListing();
+        GUI gui = getGUI();
+        if(listingExecutor != null && gui != null && fsm != null && !isRoot()) {
+            startListing(gui);
+            return;
+        }
         Object[] objs = collectObjects();
         if(objs != null) {
             int lastFileIdx = objs.length;
@@ -254,6 +355,58 @@ public class FileTable extends Table {
         }
     }
 
+    /**
+     * Updates the table after files in the current folder have been
+     * created, modified or deleted without listing the folder again.
+     * 
+     * <p>Each file is inserted, updated or removed individually so that the
+     * selection and scroll position are kept. When too many files have
+     * changed or a listing is in progress then the table is refreshed.</p>
+     * 
+     * @param changed files which have been created or modified - can be null
+     * @param deleted files which have been deleted - can be null
+     * @see #refreshFileTable()
+     * @see #MAX_INCREMENTAL_UPDATES
+     */
+    public void updateFiles(Object[] changed, Object[] deleted) {
+        if(fsm == null || isRoot()) {
+            return;
+        }
+        int numChanged = (changed != null) ? changed.length : 0;
+        int numDeleted = (deleted != null) ? deleted.length : 0;
+        if(folderListing != null || numChanged + numDeleted > MAX_INCREMENTAL_UPDATES) {
+            refreshFileTable();
+            return;
+        }
+        for(int i=0 ; i<numDeleted ; i++) {
+            int idx = fileTableModel.findFile(deleted[i]);
+            if(idx >= 0) {
+                fileTableModel.removeEntry(idx);
+            }
+        }
+        if(numChanged > 0) {
+            FileFilter filter = createFileFilter();
+            Comparator<Entry> fileComparator = sortOrder.map(sortColumn.comparator);
+            for(int i=0 ; i<numChanged ; i++) {
+                Object file = changed[i];
+                int idx = fileTableModel.findFile(file);
+                if(fsm.getFile(fsm.getPath(file)) == null ||
+                        (filter != null && !filter.accept(fsm, file))) {
+                    if(idx >= 0) {
+                        fileTableModel.removeEntry(idx);
+                    }
+                } else {
+                    Entry e = new Entry(fsm, file, false);
+                    if(idx >= 0) {
+                        fileTableModel.updateEntry(idx, e, fileComparator);
+                    } else {
+                        fileTableModel.insertEntry(e, fileComparator);
+                    }
+                }
+            }
+        }
+    }
+
     protected void selectionChanged() {
         if(fileTableCallbacks != null) {
             for(Callback cb : fileTableCallbacks) {
@@ -279,11 +432,15 @@ public class FileTable extends Table {
         if(isRoot()) {
             return fsm.listRoots();
         }
+        return fsm.listFolder(currentFolder, createFileFilter());
+    }
+
+    private FileFilter createFileFilter() {
         FileFilter filter = fileFilter;
         if(filter != null || !getShowFolders() || !getShowHidden()) {
             filter = new FileFilterWrapper(filter, getShowFolders(), getShowHidden());
         }
-        return fsm.listFolder(currentFolder, filter);
+        return filter;
     }
     
     private void sortFilesAndUpdateModel(Entry[] entries, int numFolders) {
@@ -294,6 +451,93 @@ public class FileTable extends Table {
         restoreSnapshot(snapshot);
     }
 
+    private void startListing(GUI gui) {
+        // keep the selection of the previous content so that it can be
+        // restored when the entries are listed again
+        Entry[] selected = getSelection();
+        if(selected.length > 0) {
+            pendingSelection = new ArrayList<Object>(selected.length);
+            for(Entry e : selected) {
+                pendingSelection.add(e.obj);
+            }
+        }
+        fileTableModel.setData(EMPTY, 0);
+        if(tableSearchWindow != null) {
+            tableSearchWindow.cancelSearch();
+        }
+        folderListing = new FolderListing(gui, fsm, currentFolder, createFileFilter());
+        listingExecutor.execute(folderListing);
+    }
+
+    void addListingBatch(FolderListing listing, Entry[] batch, boolean finished) {
+        if(listing != folderListing) {
+            // superseded by another listing
+            return;
+        }
+        if(finished) {
+            folderListing = null;
+        }
+        if(batch.length == 0) {
+            return;
+        }
+
+        int numFolders = 0;
+        int lastFileIdx = batch.length;
+        Entry[] tmp = new Entry[batch.length];
+        for(Entry e : batch) {
+            if(e.isFolder) {
+                tmp[numFolders++] = e;
+            } else {
+                tmp[--lastFileIdx] = e;
+            }
+        }
+        Comparator<Entry> fileComparator = sortOrder.map(sortColumn.comparator);
+        Arrays.sort(tmp, 0, numFolders, NameComparator.instance);
+        Arrays.sort(tmp, numFolders, tmp.length, fileComparator);
+        fileTableModel.insertSorted(tmp, numFolders, fileComparator);
+
+        if(pendingSelection != null) {
+            selectPendingEntries(batch);
+        }
+        if(finished) {
+            pendingSelection = null;
+        }
+    }
+
+    private void selectPendingEntries(Entry[] batch) {
+        final ArrayList<Object> pending = pendingSelection;
+        for(Entry e : batch) {
+            for(int i=0,n=pending.size() ; i<n ; i++) {
+                if(e.fsm.equals(e.obj, pending.get(i))) {
+                    pending.remove(i);
+                    int idx = fileTableModel.findEntry(e);
+                    if(idx >= 0) {
+                        fileTableSelectionModel.addSelection(idx, idx);
+                        scrollToRow(idx);
+                    }
+                    break;
+                }
+            }
+        }
+        if(pending.isEmpty()) {
+            pendingSelection = null;
+        }
+    }
+
+    static void merge(Entry[] a, int aIdx, int aEnd, Entry[] b, int bIdx, int bEnd,
+            Comparator<Entry> comparator, Entry[] dst, int dstIdx) {
+        while(aIdx < aEnd && bIdx < bEnd) {
+            if(comparator.compare(a[aIdx], b[bIdx]) <= 0) {
+                dst[dstIdx++] = a[aIdx++];
+            } else {
+                dst[dstIdx++] = b[bIdx++];
+            }
+        }
+        System.arraycopy(a, aIdx, dst, dstIdx, aEnd - aIdx);
+        dstIdx += aEnd - aIdx;
+        System.arraycopy(b, bIdx, dst, dstIdx, bEnd - bIdx);
+    }
+
     @Override
     protected void columnHeaderClicked(int column) {
         super.columnHeaderClicked(column);
@@ -413,6 +657,96 @@ public class FileTable extends Table {
             fireRowsInserted(0, getNumRows());
         }
 
+        void insertEntry(Entry e, Comparator<Entry> fileComparator) {
+            final int idx = e.isFolder
+                    ? findInsertPos(e, 0, numFolders, NameComparator.instance)
+                    : findInsertPos(e, numFolders, entries.length, fileComparator);
+            Entry[] newEntries = new Entry[entries.length + 1];
+            System.arraycopy(entries, 0, newEntries, 0, idx);
+            System.arraycopy(entries, idx, newEntries, idx+1, entries.length - idx);
+            newEntries[idx] = e;
+            entries = newEntries;
+            if(e.isFolder) {
+                numFolders++;
+            }
+            fireRowsInserted(idx, 1);
+        }
+
+        /**
+         * Merges sorted entries into the model. The first {@code numNewFolders}
+         * entries must be folders sorted by name, the remaining entries files
+         * sorted by {@code fileComparator}.
+         * 
+         * <p>Each run of adjacent new entries is reported with one rowsInserted
+         * event in ascending order, so the table keeps its selection, lead
+         * and scroll position without a snapshot.</p>
+         */
+        void insertSorted(Entry[] sorted, int numNewFolders, Comparator<Entry> fileComparator) {
+            final Entry[] oldEntries = entries;
+            final int oldNumFolders = numFolders;
+            Entry[] merged = new Entry[oldEntries.length + sorted.length];
+            merge(oldEntries, 0, oldNumFolders, sorted, 0, numNewFolders,
+                    NameComparator.instance, merged, 0);
+            merge(oldEntries, oldNumFolders, oldEntries.length, sorted, numNewFolders, sorted.length,
+                    fileComparator, merged, oldNumFolders + numNewFolders);
+            entries = merged;
+            numFolders = oldNumFolders + numNewFolders;
+            
+            // the new entries appear in the merged array in the same order
+            // as in the sorted array
+            int idx = 0;
+            for(int i=0 ; i<sorted.length ;) {
+                while(merged[idx] != sorted[i]) {
+                    idx++;
+                }
+                int start = idx;
+                do {
+                    idx++;
+                    i++;
+                } while(i < sorted.length && merged[idx] == sorted[i]);
+                fireRowsInserted(start, idx - start);
+            }
+        }
+
+        void removeEntry(int idx) {
+            Entry[] newEntries = new Entry[entries.length - 1];
+            System.arraycopy(entries, 0, newEntries, 0, idx);
+            System.arraycopy(entries, idx+1, newEntries, idx, newEntries.length - idx);
+            entries = newEntries;
+            if(idx < numFolders) {
+                numFolders--;
+            }
+            fireRowsDeleted(idx, 1);
+        }
+
+        void updateEntry(int idx, Entry e, Comparator<Entry> fileComparator) {
+            Comparator<Entry> comparator = e.isFolder ? NameComparator.instance : fileComparator;
+            int start = e.isFolder ? 0 : numFolders;
+            int end = e.isFolder ? numFolders : entries.length;
+            if(e.isFolder == (idx < numFolders) &&
+                    (idx == start || comparator.compare(entries[idx-1], e) <= 0) &&
+                    (idx+1 == end || comparator.compare(e, entries[idx+1]) <= 0)) {
+                // still at the right position
+                entries[idx] = e;
+                fireRowsChanged(idx, 1);
+            } else {
+                removeEntry(idx);
+                insertEntry(e, fileComparator);
+            }
+        }
+
+        private int findInsertPos(Entry e, int lo, int hi, Comparator<Entry> comparator) {
+            while(lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if(comparator.compare(entries[mid], e) <= 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
         static String COLUMN_HEADER[] = {"File name", "Type", "Size", "Last modified"};
 
         public String getColumnHeaderText(int column) {
@@ -529,6 +863,70 @@ public class FileTable extends Table {
         }
     }
 
+    /**
+     * Lists a folder on a background thread and hands the entries in
+     * batches to the GUI thread.
+     */
+    final class FolderListing implements Runnable {
+        final GUI gui;
+        final FileSystemModel fsm;
+        final Object folder;
+        final FileFilter filter;
+        volatile boolean canceled;
+
+        FolderListing(GUI gui, FileSystemModel fsm, Object folder, FileFilter filter) {
+            this.gui = gui;
+            this.fsm = fsm;
+            this.folder = folder;
+            this.filter = filter;
+        }
+
+        public void run() {
+            try {
+                listFolder();
+            } catch(Exception ex) {
+                Logger.getLogger(FileTable.class.getName()).log(Level.SEVERE,
+                        "Exception while listing folder", ex);
+                gui.invokeLater(new ListingBatch(this, EMPTY, true));
+            }
+        }
+
+        private void listFolder() {
+            Object[] objs = canceled ? null : fsm.listFolder(folder, filter);
+            if(objs == null || objs.length == 0) {
+                gui.invokeLater(new ListingBatch(this, EMPTY, true));
+                return;
+            }
+            int batchSize = MIN_LISTING_BATCH_SIZE;
+            for(int idx=0 ; idx<objs.length && !canceled ;) {
+                int count = Math.min(batchSize, objs.length - idx);
+                Entry[] batch = new Entry[count];
+                for(int i=0 ; i<count ; i++) {
+                    batch[i] = new Entry(fsm, objs[idx+i], false);
+                }
+                idx += count;
+                gui.invokeLater(new ListingBatch(this, batch, idx == objs.length));
+                batchSize = Math.min(batchSize * 2, MAX_LISTING_BATCH_SIZE);
+            }
+        }
+    }
+
+    final class ListingBatch implements Runnable {
+        final FolderListing listing;
+        final Entry[] entries;
+        final boolean finished;
+
+        ListingBatch(FolderListing listing, Entry[] entries, boolean finished) {
+            this.listing = listing;
+            this.entries = entries;
+            this.finished = finished;
+        }
+
+        public void run() {
+            addListingBatch(listing, entries, finished);
+        }
+    }
+
     static class StateSnapshot {
         final Entry leadEntry;
         final Entry anchorEntry;
@@ -0,0 +1,430 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl;
+
+import de.matthiasmann.twl.model.FileSystemModel;
+import de.matthiasmann.twl.model.FileSystemTreeModel;
+import de.matthiasmann.twl.model.NIOFileSystemModel;
+import de.matthiasmann.twl.model.TreeTableNode;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches the folders shown by {@link FileTable}s and {@link FileSystemTreeModel}s
+ * using a {@link WatchService} and applies the changes incrementally.
+ *
+ * <p>Events are collected on a background thread and coalesced per folder and
+ * file name. They are applied at most once per frame from the GUI thread.
+ * When the watch service reports an overflow the affected folder is listed
+ * again.</p>
+ *
+ * <p>The cached attributes of the changed files are removed from all
+ * {@link NIOFileSystemModel}s used by the watched widgets before the
+ * changes are applied.</p>
+ *
+ * <p>Only {@link File} and {@link Path} based file system models can be
+ * watched. This class is not available on GWT.</p>
+ *
+ * @author Matthias Mann
+ */
+public class FolderWatcher {
+
+    public static final int DEFAULT_SYNC_INTERVAL = 250;
+    
+    private final GUI gui;
+    private final WatchService watchService;
+    private final Thread thread;
+    private final Timer syncTimer;
+    private final ArrayList<FileTable> fileTables;
+    private final ArrayList<FileSystemTreeModel> treeModels;
+    private final HashMap<Path, WatchedFolder> watchedFolders;
+    private final AtomicBoolean flushScheduled;
+    private final Runnable flushTask;
+
+    private HashMap<Path, PendingChanges> pendingChanges;
+    private volatile boolean closed;
+
+    /**
+     * Creates a new folder watcher for the default file system.
+     * 
+     * @param gui the GUI used to apply the changes
+     * @throws IOException if the watch service could not be created
+     */
+    public FolderWatcher(GUI gui) throws IOException {
+        if(gui == null) {
+            throw new NullPointerException("gui");
+        }
+        this.gui = gui;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.fileTables = new ArrayList<FileTable>();
+        this.treeModels = new ArrayList<FileSystemTreeModel>();
+        this.watchedFolders = new HashMap<Path, WatchedFolder>();
+        this.flushScheduled = new AtomicBoolean();
+        this.pendingChanges = new HashMap<Path, PendingChanges>();
+        this.flushTask = new Runnable() {
+            public void run() {
+                flush();
+            }
+        };
+        
+        this.syncTimer = gui.createTimer();
+        syncTimer.setDelay(DEFAULT_SYNC_INTERVAL);
+        syncTimer.setContinuous(true);
+        syncTimer.setCallback(new Runnable() {
+            public void run() {
+                sync();
+            }
+        });
+        
+        this.thread = new Thread(new Runnable() {
+            public void run() {
+                processEvents();
+            }
+        }, "TWL FolderWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Watches the current folder of the specified file table.
+     * @param fileTable the file table
+     */
+    public void watchFileTable(FileTable fileTable) {
+        if(!fileTables.contains(fileTable)) {
+            fileTables.add(fileTable);
+            sync();
+        }
+    }
+
+    public void unwatchFileTable(FileTable fileTable) {
+        if(fileTables.remove(fileTable)) {
+            sync();
+        }
+    }
+
+    /**
+     * Watches all folders of the tree model which have been listed.
+     * @param treeModel the tree model
+     */
+    public void watchTreeModel(FileSystemTreeModel treeModel) {
+        if(!treeModels.contains(treeModel)) {
+            treeModels.add(treeModel);
+            sync();
+        }
+    }
+
+    public void unwatchTreeModel(FileSystemTreeModel treeModel) {
+        if(treeModels.remove(treeModel)) {
+            sync();
+        }
+    }
+
+    /**
+     * Updates the set of watched folders. This is called periodically
+     * but can also be called directly after the folder of a watched
+     * file table was changed.
+     */
+    public void sync() {
+        if(closed) {
+            return;
+        }
+        LinkedHashMap<Path, Object> folders = new LinkedHashMap<Path, Object>();
+        for(int i=0,n=fileTables.size() ; i<n ; i++) {
+            Object folder = fileTables.get(i).getCurrentFolder();
+            Path path = toPath(folder);
+            if(path != null) {
+                folders.put(path, folder);
+            }
+        }
+        for(int i=0,n=treeModels.size() ; i<n ; i++) {
+            collectLoadedFolders(treeModels.get(i), folders);
+        }
+        
+        for(Iterator<WatchedFolder> iter=watchedFolders.values().iterator() ; iter.hasNext() ;) {
+            WatchedFolder wf = iter.next();
+            if(!wf.key.isValid() || !folders.containsKey(wf.path)) {
+                wf.key.cancel();
+                iter.remove();
+            }
+        }
+        
+        for(Map.Entry<Path, Object> e : folders.entrySet()) {
+            Path path = e.getKey();
+            WatchedFolder wf = watchedFolders.get(path);
+            if(wf == null) {
+                try {
+                    WatchKey key = path.register(watchService,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE,
+                            StandardWatchEventKinds.ENTRY_MODIFY);
+                    wf = new WatchedFolder(path, key);
+                    watchedFolders.put(path, wf);
+                } catch (IOException ex) {
+                    getLogger().log(Level.WARNING, "Can't watch folder: " + path, ex);
+                    continue;
+                } catch (ClosedWatchServiceException ex) {
+                    return;
+                }
+            }
+            wf.folder = e.getValue();
+        }
+        
+        if(watchedFolders.isEmpty()) {
+            syncTimer.stop();
+        } else if(!syncTimer.isRunning()) {
+            syncTimer.start();
+        }
+    }
+
+    /**
+     * Stops watching all folders and terminates the background thread.
+     */
+    public void close() {
+        closed = true;
+        syncTimer.stop();
+        watchedFolders.clear();
+        fileTables.clear();
+        treeModels.clear();
+        try {
+            watchService.close();
+        } catch (IOException ex) {
+            getLogger().log(Level.WARNING, "Can't close watch service", ex);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    void processEvents() {
+        while(!closed) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException ex) {
+                continue;
+            } catch (ClosedWatchServiceException ex) {
+                return;
+            }
+            Path path = (Path)key.watchable();
+            synchronized(this) {
+                PendingChanges pc = pendingChanges.get(path);
+                if(pc == null) {
+                    pc = new PendingChanges();
+                    pendingChanges.put(path, pc);
+                }
+                for(WatchEvent<?> event : key.pollEvents()) {
+                    WatchEvent.Kind<?> kind = event.kind();
+                    if(kind == StandardWatchEventKinds.OVERFLOW) {
+                        pc.overflow = true;
+                    } else {
+                        // the last event for a name wins
+                        String name = event.context().toString();
+                        pc.files.put(name, (kind == StandardWatchEventKinds.ENTRY_DELETE)
+                                ? Boolean.TRUE : Boolean.FALSE);
+                    }
+                }
+            }
+            key.reset();
+            if(flushScheduled.compareAndSet(false, true)) {
+                gui.invokeLater(flushTask);
+            }
+        }
+    }
+
+    void flush() {
+        flushScheduled.set(false);
+        HashMap<Path, PendingChanges> changes;
+        synchronized(this) {
+            if(pendingChanges.isEmpty()) {
+                return;
+            }
+            changes = pendingChanges;
+            pendingChanges = new HashMap<Path, PendingChanges>();
+        }
+        if(closed) {
+            return;
+        }
+        
+        ArrayList<NIOFileSystemModel> cachingModels = collectCachingModels();
+        ArrayList<Object> changed = new ArrayList<Object>();
+        ArrayList<Object> deleted = new ArrayList<Object>();
+        for(Map.Entry<Path, PendingChanges> e : changes.entrySet()) {
+            WatchedFolder wf = watchedFolders.get(e.getKey());
+            if(wf == null) {
+                continue;
+            }
+            PendingChanges pc = e.getValue();
+            boolean overflow = pc.overflow;
+            changed.clear();
+            deleted.clear();
+            if(!overflow) {
+                for(Map.Entry<String, Boolean> f : pc.files.entrySet()) {
+                    Object file = resolve(wf.folder, f.getKey());
+                    if(file == null) {
+                        overflow = true;
+                        break;
+                    }
+                    if(f.getValue()) {
+                        deleted.add(file);
+                    } else {
+                        changed.add(file);
+                    }
+                }
+            }
+            
+            // the file system models must not return stale attributes
+            for(int i=0,n=cachingModels.size() ; i<n ; i++) {
+                NIOFileSystemModel nio = cachingModels.get(i);
+                if(overflow) {
+                    nio.clearCache();
+                } else {
+                    invalidate(nio, changed);
+                    invalidate(nio, deleted);
+                }
+            }
+            
+            Object[] changedArr = changed.toArray();
+            Object[] deletedArr = deleted.toArray();
+            for(int i=0,n=fileTables.size() ; i<n ; i++) {
+                FileTable fileTable = fileTables.get(i);
+                if(wf.path.equals(toPath(fileTable.getCurrentFolder()))) {
+                    if(overflow) {
+                        fileTable.refreshFileTable();
+                    } else {
+                        fileTable.updateFiles(changedArr, deletedArr);
+                    }
+                }
+            }
+            for(int i=0,n=treeModels.size() ; i<n ; i++) {
+                FileSystemTreeModel treeModel = treeModels.get(i);
+                if(overflow) {
+                    treeModel.refreshFolder(wf.folder);
+                } else {
+                    treeModel.updateFolder(wf.folder, changedArr, deletedArr);
+                }
+            }
+        }
+    }
+
+    private ArrayList<NIOFileSystemModel> collectCachingModels() {
+        ArrayList<NIOFileSystemModel> result = new ArrayList<NIOFileSystemModel>();
+        for(int i=0,n=fileTables.size() ; i<n ; i++) {
+            addCachingModel(result, fileTables.get(i).getFileSystemModel());
+        }
+        for(int i=0,n=treeModels.size() ; i<n ; i++) {
+            addCachingModel(result, treeModels.get(i).getFileSystemModel());
+        }
+        return result;
+    }
+    
+    private static void addCachingModel(ArrayList<NIOFileSystemModel> list, FileSystemModel fsm) {
+        if(fsm instanceof NIOFileSystemModel && !list.contains(fsm)) {
+            list.add((NIOFileSystemModel)fsm);
+        }
+    }
+    
+    private static void invalidate(NIOFileSystemModel nio, ArrayList<Object> files) {
+        for(int i=0,n=files.size() ; i<n ; i++) {
+            Object file = files.get(i);
+            if(file instanceof Path) {
+                nio.invalidate(file);
+            }
+        }
+    }
+
+    private static void collectLoadedFolders(TreeTableNode node, Map<Path, Object> folders) {
+        for(int i=0,n=node.getNumChildren() ; i<n ; i++) {
+            FileSystemTreeModel.FolderNode child = (FileSystemTreeModel.FolderNode)node.getChild(i);
+            if(child.isLoaded()) {
+                Path path = toPath(child.getFolder());
+                if(path != null) {
+                    folders.put(path, child.getFolder());
+                }
+                collectLoadedFolders(child, folders);
+            }
+        }
+    }
+
+    static Path toPath(Object folder) {
+        if(folder instanceof Path) {
+            return ((Path)folder).toAbsolutePath();
+        }
+        if(folder instanceof File) {
+            return ((File)folder).toPath().toAbsolutePath();
+        }
+        return null;
+    }
+    
+    static Object resolve(Object folder, String name) {
+        if(folder instanceof Path) {
+            return ((Path)folder).resolve(name);
+        }
+        if(folder instanceof File) {
+            return new File((File)folder, name);
+        }
+        return null;
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(FolderWatcher.class.getName());
+    }
+    
+    static final class WatchedFolder {
+        final Path path;
+        final WatchKey key;
+        Object folder;
+
+        WatchedFolder(Path path, WatchKey key) {
+            this.path = path;
+            this.key = key;
+        }
+    }
+    
+    static final class PendingChanges {
+        final LinkedHashMap<String, Boolean> files = new LinkedHashMap<String, Boolean>();
+        boolean overflow;
+    }
+}
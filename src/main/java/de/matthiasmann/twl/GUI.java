@@ -34,6 +34,7 @@ import de.matthiasmann.twl.renderer.AnimationState.StateKey;
 import de.matthiasmann.twl.renderer.MouseCursor;
 import de.matthiasmann.twl.renderer.Renderer;
 import de.matthiasmann.twl.theme.ThemeManager;
+import de.matthiasmann.twl.utils.DirtyRegion;
 import java.util.ArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -54,6 +55,8 @@ public final class GUI extends Widget {
      * A completion listener for async jobs. It is invoked via
      * {@link #invokeLater(java.lang.Runnable) }
      *
+     * @see AsyncInvoker
+     *
      * @param <V> the result type of the async job
      */
     public interface AsyncCompletionListener<V> {
@@ -77,6 +80,7 @@ public final class GUI extends Widget {
     private static final int KEYREPEAT_INITIAL_DELAY = 250; // ms
     private static final int KEYREPEAT_INTERVAL_DELAY = 1000/30;    // ms
     private static final int NO_REPEAT = 0;
+    private static final int MAX_DIRTY_RECTS = 8;
     
     private int tooltipOffsetX = 0;
     private int tooltipOffsetY = 0;
@@ -91,6 +95,19 @@ public final class GUI extends Widget {
     
     private Widget rootPane;
     boolean hasInvalidLayouts;
+    
+    private final Rect cullClipRect;
+    private int numCulledWidgets;
+    
+    boolean partialRedraw;
+    private int animationRepaintTime = 1000;
+    private final DirtyRegion dirtyRegion;
+    private final DirtyRegion drawRegion;
+    private DirtyRegion[] dirtyHistory;
+    private final Rect drawRect;
+    private Widget[] animatedWidgets;
+    private long[] animatedWidgetsEndTime;
+    private int numAnimatedWidgets;
 
     final Event event;
     private boolean wasInside;
@@ -128,13 +145,12 @@ public final class GUI extends Widget {
     private boolean hadOpenTooltip;
     private long tooltipClosedTime;
     
-    final ArrayList<Timer> activeTimers;
-    //final ExecutorService executorService;
+    final TimerQueue timerQueue;
+    long timerTime;
+    private long timerSequence;
     
-    private final Object invokeLock;
-    private Runnable[] invokeLaterQueue;
-    private int invokeLaterQueueSize;
-    private Runnable[] invokeRunnables;
+    private final InvokeLaterQueue invokeLaterQueue;
+    private int invokeRunablesTimeBudget;
     
     /**
      * Constructs a new GUI manager with the given renderer and a default root
@@ -184,6 +200,13 @@ public final class GUI extends Widget {
         this.renderer = renderer;
         this.input = input;
         this.event = new Event();
+        this.cullClipRect = new Rect();
+        this.dirtyRegion = new DirtyRegion(MAX_DIRTY_RECTS);
+        this.drawRegion = new DirtyRegion(MAX_DIRTY_RECTS);
+        this.dirtyHistory = new DirtyRegion[0];
+        this.drawRect = new Rect();
+        this.animatedWidgets = new Widget[16];
+        this.animatedWidgetsEndTime = new long[16];
         this.rootPane = rootPane;
         this.rootPane.setFocusKeyEnabled(false);
 
@@ -194,11 +217,8 @@ public final class GUI extends Widget {
         this.tooltipWindow = new TooltipWindow();
         this.tooltipWindow.setVisible(false);
         
-        this.activeTimers = new ArrayList<Timer>();
-        //this.executorService =  Executors.newSingleThreadExecutor(new TF());    // thread creatation is lazy
-        this.invokeLock = new Object();
-        this.invokeLaterQueue = new Runnable[16];
-        this.invokeRunnables = new Runnable[16];
+        this.timerQueue = new TimerQueue();
+        this.invokeLaterQueue = new InvokeLaterQueue();
         
         setTheme("");
         setFocusKeyEnabled(false);
@@ -293,75 +313,59 @@ public final class GUI extends Widget {
 
     /**
      * Queues a Runnable to be executed in the GUI main loop.
-     * This method is thread safe.
+     * This method is thread safe and does not block.
      * 
      * @param runnable  the Runnable to execute
      * @see Widget#getGUI()
+     * @see AsyncInvoker
      */
     public void invokeLater(Runnable runnable) {
         if(runnable == null) {
             throw new IllegalArgumentException("runnable is null");
         }
-        synchronized(invokeLock) {
-            if(invokeLaterQueueSize == invokeLaterQueue.length) {
-                growInvokeLaterQueue();
-            }
-            invokeLaterQueue[invokeLaterQueueSize++] = runnable;
-        }
+        invokeLaterQueue.add(runnable);
     }
 
     /**
-     * Performs a job async in the background. After the job has completed (normally
-     * or by throwing an exception) the completion listener is executed via
-     * {@link #invokeLater(java.lang.Runnable) }
-     *
-     * If the job is canceled before it is started then the listener is not executed.
-     *
-     * This method is thread safe.
-     *
-     * @param <V> the result type of the job
-     * @param job the job to execute
-     * @param listener the listener which will be called once the job is finished
-     * @return a Future representing pending completion of the job
-     * @see Widget#getGUI()
+     * Queues a Runnable to be executed in the GUI main loop. If a Runnable
+     * with the same key is still pending then it is replaced by this one.
+     * 
+     * <p>The Runnable is executed at the position of the first still pending
+     * Runnable with this key. This is useful for threads which post frequent
+     * updates of the same value - only the latest update is executed.</p>
+     * 
+     * This method is thread safe and does not block.
+     * 
+     * @param key the key used to identify superseded Runnables
+     * @param runnable  the Runnable to execute
      */
-    /*
-    public<V> Future<V> invokeAsync(Callable<V> job, AsyncCompletionListener<V> listener) {
-        if(job == null) {
-            throw new IllegalArgumentException("job is null");
+    public void invokeLater(Object key, Runnable runnable) {
+        if(key == null) {
+            throw new IllegalArgumentException("key is null");
         }
-        if(listener == null) {
-            throw new IllegalArgumentException("listener is null");
+        if(runnable == null) {
+            throw new IllegalArgumentException("runnable is null");
         }
-        return executorService.submit((Callable<V>)new AC<V>(job, null, listener));
-    }*/
+        invokeLaterQueue.add(key, runnable);
+    }
+
+    public int getInvokeRunablesTimeBudget() {
+        return invokeRunablesTimeBudget;
+    }
 
     /**
-     * Performs a job async in the background. After the job has completed (normally
-     * or by throwing an exception) the completion listener is executed via
-     * {@link #invokeLater(java.lang.Runnable) }
-     *
-     * If the job is canceled before it is started then the listener is not executed.
-     *
-     * This method is thread safe.
-     *
-     * @param <V> the result type of the listener. The job always returns null.
-     * @param job the job to execute
-     * @param listener the listener which will be called once the job is finished
-     * @return a Future representing pending completion of the job
-     * @see Widget#getGUI() 
+     * Limits the time spent in {@link #invokeRunables() } per frame. When
+     * the limit is reached the remaining Runnables are executed in the next
+     * frame. At least one Runnable is executed per frame.
+     * 
+     * @param invokeRunablesTimeBudget the time budget in milliseconds, or 0 for no limit
      */
-    /*
-    public<V> Future<V> invokeAsync(Runnable job, AsyncCompletionListener<V> listener) {
-        if(job == null) {
-            throw new IllegalArgumentException("job is null");
-        }
-        if(listener == null) {
-            throw new IllegalArgumentException("listener is null");
+    public void setInvokeRunablesTimeBudget(int invokeRunablesTimeBudget) {
+        if(invokeRunablesTimeBudget < 0) {
+            throw new IllegalArgumentException("invokeRunablesTimeBudget");
         }
-        return executorService.submit((Callable<V>)new AC<V>(null, job, listener));
+        this.invokeRunablesTimeBudget = invokeRunablesTimeBudget;
     }
-    */
     
     public boolean requestToolTip(Widget widget, int x, int y,
             Object content, Alignment alignment) {
@@ -601,67 +605,284 @@ public final class GUI extends Widget {
      * 
      * <p>This method must be called exactly once after a call to {@code updateTime}.</p>
      * 
+     * <p>Running timers are kept ordered by their deadline, so the cost of
+     * this method depends only on the number of timers which expire.
+     * Each timer fires at most once per call.</p>
+     * 
      * @see #updateTime() 
      */
     public void updateTimers() {
-        for(int i=0 ; i<activeTimers.size() ;) {
-            if(!activeTimers.get(i).tick(deltaTime)) {
-                activeTimers.remove(i);
-            } else {
-                i++;
+        final long now = timerTime + deltaTime;
+        timerTime = now;
+        Timer timer;
+        while((timer = timerQueue.peek()) != null && timer.deadline <= now) {
+            timerQueue.poll();
+            if(timer.fire(now)) {
+                scheduleTimer(timer, timer.deadline);
             }
         }
     }
+    
+    /**
+     * Returns the number of running timers.
+     * @return the number of running timers
+     */
+    public int getNumActiveTimers() {
+        return timerQueue.size();
+    }
+    
+    void scheduleTimer(Timer timer, long deadline) {
+        timer.deadline = deadline;
+        timer.sequence = timerSequence++;
+        timerQueue.add(timer);
+    }
 
     /**
-     * Invokes all queued {@code Runnable} objects.
+     * Invokes all queued {@code Runnable} objects. Runnables which are queued
+     * while this method is executing are invoked on the next call.
      * 
      * @see #invokeLater(java.lang.Runnable) 
+     * @see #setInvokeRunablesTimeBudget(int) 
      */
     public void invokeRunables() {
-        Runnable[] runnables = null;
-        int count;
-        synchronized(invokeLock) {
-            count = invokeLaterQueueSize;
-            if(count > 0) {
-                invokeLaterQueueSize = 0;
-                runnables = invokeLaterQueue;
-                invokeLaterQueue = invokeRunnables;
-                invokeRunnables = runnables;
+        final InvokeLaterQueue queue = invokeLaterQueue;
+        final int timeBudget = invokeRunablesTimeBudget;
+        int count = queue.fetch();
+        long endTime = (timeBudget > 0) ? renderer.getTimeMillis() + timeBudget : 0;
+        while(count-- > 0) {
+            Runnable r = queue.poll();
+            if(r != null) {
+                try {
+                    r.run();
+                } catch (Throwable ex) {
+                    Logger.getLogger(GUI.class.getName()).log(Level.SEVERE, "Exception in runnable", ex);
+                }
+                if(timeBudget > 0 && renderer.getTimeMillis() >= endTime) {
+                    break;
+                }
             }
         }
-        for(int i=0 ; i<count ;) {
-            Runnable r = runnables[i];
-            runnables[i++] = null;
-            try {
-                r.run();
-            } catch (Throwable ex) {
-                Logger.getLogger(GUI.class.getName()).log(Level.SEVERE, "Exception in runnable", ex);
+    }
+
+    /**
+     * Returns true if partial redraw mode is enabled.
+     * @return true if partial redraw mode is enabled
+     * @see #setPartialRedraw(boolean) 
+     */
+    public boolean isPartialRedraw() {
+        return partialRedraw;
+    }
+
+    /**
+     * Enables or disables the partial redraw mode.
+     * 
+     * <p>In partial redraw mode widgets report the areas which have changed
+     * (layout, position, size, visibility, animation state changes, tint
+     * fades or explicit calls to {@link Widget#repaint() }). The tables
+     * repaint on selection changes, {@link ProgressBar}, {@link ValueAdjuster}
+     * and {@link Graph} repaint on model changes. Custom widgets which change
+     * their appearance from a timer or model callback must call
+     * {@link Widget#repaint() } themselves.
+     * {@link #draw() } then only redraws the merged dirty areas using
+     * clipped passes or draws nothing at all when no area is dirty.</p>
+     * 
+     * <p>The previous frame content outside of the dirty areas must be
+     * preserved by the application - eg by not clearing the frame buffer
+     * or by rendering into a texture. When the back buffer content is swapped
+     * use {@link #setPartialRedrawBufferCount(int) }. Each dirty area is
+     * cleared with {@link Renderer#clipClear() } before it is redrawn so
+     * translucent images and antialiased text do not accumulate. Content
+     * which the application renders below the GUI is cleared too.</p>
+     * 
+     * <p>Enabling partial redraw mode marks the whole GUI as dirty.</p>
+     * 
+     * @param partialRedraw true to enable partial redraw mode - default is false
+     * @see #isRedrawNeeded() 
+     */
+    public void setPartialRedraw(boolean partialRedraw) {
+        if(this.partialRedraw != partialRedraw) {
+            this.partialRedraw = partialRedraw;
+            dirtyRegion.clear();
+            for(DirtyRegion region : dirtyHistory) {
+                region.clear();
+            }
+            clearAnimatedWidgets();
+            repaint();
+        }
+    }
+
+    /**
+     * Returns the number of frame buffers which are cycled by the application.
+     * @return the number of frame buffers
+     * @see #setPartialRedrawBufferCount(int) 
+     */
+    public int getPartialRedrawBufferCount() {
+        return dirtyHistory.length + 1;
+    }
+
+    /**
+     * Sets the number of frame buffers which are cycled by the application.
+     * In partial redraw mode the dirty areas of the last {@code count}
+     * frames are redrawn so that each buffer is brought up to date.
+     * 
+     * @param count the number of buffers - 1 when the frame buffer content
+     *              is preserved, 2 for double buffering etc. Default is 1.
+     * @throws IllegalArgumentException if count &lt; 1
+     */
+    public void setPartialRedrawBufferCount(int count) {
+        if(count < 1) {
+            throw new IllegalArgumentException("count < 1");
+        }
+        DirtyRegion[] newHistory = new DirtyRegion[count - 1];
+        for(int i=0 ; i<newHistory.length ; i++) {
+            newHistory[i] = new DirtyRegion(MAX_DIRTY_RECTS);
+        }
+        dirtyHistory = newHistory;
+        repaint();
+    }
+
+    /**
+     * Returns how long a widget is redrawn after an animation state change.
+     * @return the time in milliseconds
+     * @see #setAnimationRepaintTime(int) 
+     */
+    public int getAnimationRepaintTime() {
+        return animationRepaintTime;
+    }
+
+    /**
+     * Sets how long a widget is redrawn every frame after an animation state
+     * change in partial redraw mode. This allows animated theme images
+     * (eg fades between states) to complete.
+     * 
+     * @param animationRepaintTime the time in milliseconds - default is 1000
+     * @throws IllegalArgumentException if animationRepaintTime &lt; 0
+     */
+    public void setAnimationRepaintTime(int animationRepaintTime) {
+        if(animationRepaintTime < 0) {
+            throw new IllegalArgumentException("animationRepaintTime < 0");
+        }
+        this.animationRepaintTime = animationRepaintTime;
+    }
+
+    /**
+     * Checks if the next call to {@link #draw() } would render anything.
+     * 
+     * <p>Always returns true when partial redraw mode is disabled. This can
+     * be used to throttle the frame rate while the UI is idle.</p>
+     * 
+     * @return true if a redraw is needed
+     * @see #setPartialRedraw(boolean) 
+     */
+    public boolean isRedrawNeeded() {
+        if(!partialRedraw || numAnimatedWidgets > 0 || !dirtyRegion.isEmpty()) {
+            return true;
+        }
+        for(DirtyRegion region : dirtyHistory) {
+            if(!region.isEmpty()) {
+                return true;
             }
         }
+        return isDragOverlayActive();
     }
 
     /**
      * Renders all visible widgets. Calls {@code startRendering} before and
      * {@code endRendering} after rendering all widgets.
+     * 
+     * <p>In partial redraw mode only the dirty areas are rendered and
+     * {@code startRendering} is not called when nothing is dirty.</p>
      *
      * @see Renderer#startRendering()
      * @see Renderer#endRendering() 
+     * @see #setPartialRedraw(boolean) 
      */
     public void draw() {
+        numCulledWidgets = 0;
+        if(partialRedraw) {
+            drawPartial();
+            return;
+        }
         if(renderer.startRendering()) {
             try {
                 drawWidget(this);
-                
-                if(dragActive && boundDragPopup == null && lastMouseDownWidget != null) {
-                    lastMouseDownWidget.paintDragOverlay(this,
-                            event.mouseX, event.mouseY, event.modifier);
+                drawDragOverlay();
+            } finally {
+                renderer.endRendering();
+            }
+        }
+    }
+    
+    private void drawPartial() {
+        updateAnimatedWidgets();
+        if(isDragOverlayActive()) {
+            // the drag overlay can paint anywhere
+            repaint();
+        }
+        
+        final DirtyRegion region = drawRegion;
+        region.clear();
+        region.add(dirtyRegion);
+        for(DirtyRegion prev : dirtyHistory) {
+            region.add(prev);
+        }
+        region.intersect(getX(), getY(), getWidth(), getHeight());
+        
+        if(dirtyHistory.length > 0) {
+            DirtyRegion oldest = dirtyHistory[dirtyHistory.length-1];
+            System.arraycopy(dirtyHistory, 0, dirtyHistory, 1, dirtyHistory.length-1);
+            oldest.clear();
+            oldest.add(dirtyRegion);
+            dirtyHistory[0] = oldest;
+        }
+        
+        // widgets can mark areas dirty while painting - these are for the next frame
+        dirtyRegion.clear();
+        
+        if(!region.isEmpty() && renderer.startRendering()) {
+            try {
+                final Rect rect = drawRect;
+                for(int i=0,n=region.getNumRects() ; i<n ; i++) {
+                    region.getRect(i, rect);
+                    renderer.clipEnter(rect);
+                    try {
+                        // translucent content must not blend over the previous frame
+                        renderer.clipClear();
+                        drawWidget(this);
+                        drawDragOverlay();
+                    } finally {
+                        renderer.clipLeave();
+                    }
                 }
             } finally {
                 renderer.endRendering();
             }
         }
     }
+    
+    private boolean isDragOverlayActive() {
+        return dragActive && boundDragPopup == null && lastMouseDownWidget != null;
+    }
+    
+    private void drawDragOverlay() {
+        if(isDragOverlayActive()) {
+            lastMouseDownWidget.paintDragOverlay(this,
+                    event.mouseX, event.mouseY, event.modifier);
+        }
+    }
+
+    /**
+     * Returns the number of widgets which were skipped during the last call
+     * to {@link #draw() } because they were outside of the active clip region.
+     * 
+     * <p>Children of culled widgets are not counted.</p>
+     * 
+     * @return the number of culled widgets
+     * @see Widget#setPaintCulling(boolean) 
+     */
+    public int getNumCulledWidgets() {
+        return numCulledWidgets;
+    }
 
     /**
      * Sets the cursor from the widget under the mouse
@@ -1375,10 +1596,71 @@ public final class GUI extends Widget {
         }
     }
     
-    private void growInvokeLaterQueue() {
-        Runnable[] tmp = new Runnable[invokeLaterQueueSize*2];
-        System.arraycopy(invokeLaterQueue, 0, tmp, 0, invokeLaterQueueSize);
-        invokeLaterQueue = tmp;
+    void addDirtyRect(int x, int y, int w, int h) {
+        dirtyRegion.add(x, y, w, h);
+    }
+    
+    void animationStateChanged(Widget owner) {
+        if(partialRedraw) {
+            owner.repaint();
+            if(animationRepaintTime > 0) {
+                addAnimatedWidget(owner, curTime + animationRepaintTime);
+            }
+        }
+    }
+    
+    private void addAnimatedWidget(Widget widget, long endTime) {
+        for(int i=0 ; i<numAnimatedWidgets ; i++) {
+            if(animatedWidgets[i] == widget) {
+                animatedWidgetsEndTime[i] = endTime;
+                return;
+            }
+        }
+        if(numAnimatedWidgets == animatedWidgets.length) {
+            Widget[] newWidgets = new Widget[numAnimatedWidgets*2];
+            long[] newEndTime = new long[numAnimatedWidgets*2];
+            System.arraycopy(animatedWidgets, 0, newWidgets, 0, numAnimatedWidgets);
+            System.arraycopy(animatedWidgetsEndTime, 0, newEndTime, 0, numAnimatedWidgets);
+            animatedWidgets = newWidgets;
+            animatedWidgetsEndTime = newEndTime;
+        }
+        animatedWidgets[numAnimatedWidgets] = widget;
+        animatedWidgetsEndTime[numAnimatedWidgets] = endTime;
+        numAnimatedWidgets++;
+    }
+    
+    private void updateAnimatedWidgets() {
+        for(int i=numAnimatedWidgets ; i-->0 ;) {
+            Widget widget = animatedWidgets[i];
+            if(widget.getGUI() == this && curTime < animatedWidgetsEndTime[i]) {
+                widget.repaint();
+            } else {
+                int last = --numAnimatedWidgets;
+                animatedWidgets[i] = animatedWidgets[last];
+                animatedWidgetsEndTime[i] = animatedWidgetsEndTime[last];
+                animatedWidgets[last] = null;
+            }
+        }
+    }
+    
+    private void clearAnimatedWidgets() {
+        for(int i=0 ; i<numAnimatedWidgets ; i++) {
+            animatedWidgets[i] = null;
+        }
+        numAnimatedWidgets = 0;
+    }
+
+    boolean cullPaint(int x, int y, int w, int h) {
+        final Rect rect = cullClipRect;
+        if(!renderer.getClipRect(rect)) {
+            rect.setXYWH(getX(), getY(), getWidth(), getHeight());
+        }
+        if(x > rect.getRight() || y > rect.getBottom() ||
+                x + w < rect.getX() || y + h < rect.getY()) {
+            numCulledWidgets++;
+            return true;
+        }
+        return false;
     }
 
     static class TooltipWindow extends Container {
@@ -1413,62 +1695,4 @@ public final class GUI extends Widget {
             }
         }
     }
-
-    /*
-    class AC<V> implements Callable<V>, Runnable {
-        private final Callable<V> jobC;
-        private final Runnable jobR;
-        private final AsyncCompletionListener<V> listener;
-        private V result;
-        private Exception exception;
-
-        AC(Callable<V> jobC, Runnable jobR, AsyncCompletionListener<V> listener) {
-            this.jobC = jobC;
-            this.jobR = jobR;
-            this.listener = listener;
-        }
-
-        public V call() throws Exception {
-            try {
-                if(jobC != null) {
-                    result = jobC.call();
-                } else {
-                    jobR.run();
-                }
-                invokeLater(this);
-                return result;
-            } catch(Exception ex) {
-                exception = ex;
-                invokeLater(this);
-                throw ex;
-            }
-        }
-
-        public void run() {
-            if(exception != null) {
-                listener.failed(exception);
-            } else {
-                listener.completed(result);
-            }
-        }
-    }*/
-
-    /*
-    static class TF implements ThreadFactory {
-        static final AtomicInteger poolNumber = new AtomicInteger(1);
-        final AtomicInteger threadNumber = new AtomicInteger(1);
-        final String prefix;
-
-        TF() {
-            this.prefix = "GUI-" + poolNumber.getAndIncrement() + "-invokeAsync-";
-        }
-
-        public Thread newThread(Runnable r) {
-            Thread t = new Thread(r, prefix + threadNumber.getAndIncrement());
-            t.setDaemon(true);
-            t.setPriority(Thread.NORM_PRIORITY);
-            return t;
-        }
-    }
-    */
 }
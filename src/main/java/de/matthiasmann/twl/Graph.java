@@ -34,6 +34,7 @@ import de.matthiasmann.twl.utils.TextUtil;
 import de.matthiasmann.twl.model.GraphLineModel;
 import de.matthiasmann.twl.model.GraphModel;
 import de.matthiasmann.twl.renderer.LineRenderer;
+import de.matthiasmann.twl.utils.WithRunnableCallback;
 import java.util.Arrays;
 
 /**
@@ -43,6 +44,7 @@ import java.util.Arrays;
 public class Graph extends Widget {
 
     private final GraphArea area;
+    private final Runnable modelCallback;
 
     GraphModel model;
     private ParameterMap themeLineStyles;
@@ -55,6 +57,7 @@ public class Graph extends Widget {
     public Graph() {
         area = new GraphArea();
         area.setClip(true);
+        modelCallback = new ModelCallback();
         add(area);
     }
 
@@ -67,9 +70,27 @@ public class Graph extends Widget {
         return model;
     }
 
+    /**
+     * Sets the graph model.
+     *
+     * <p>If the model implements {@link WithRunnableCallback} then the graph
+     * repaints itself when the model reports a change. Otherwise the
+     * application must call {@link #repaint() } after changing the model
+     * when partial redraw is used.</p>
+     *
+     * @param model the graph model
+     * @see GUI#setPartialRedraw(boolean) 
+     */
     public void setModel(GraphModel model) {
+        if(this.model instanceof WithRunnableCallback) {
+            ((WithRunnableCallback)this.model).removeCallback(modelCallback);
+        }
         this.model = model;
+        if(model instanceof WithRunnableCallback) {
+            ((WithRunnableCallback)model).addCallback(modelCallback);
+        }
         invalidateLineStyles();
+        repaint();
     }
 
     public int getSizeMultipleX() {
@@ -207,6 +228,12 @@ public class Graph extends Widget {
         layoutChildFullInnerArea(area);
     }
     
+    class ModelCallback implements Runnable {
+        public void run() {
+            repaint();
+        }
+    }
+
     static class LineStyle {
         String name = "";
         Color color = Color.WHITE;
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The queue behind {@link GUI#invokeLater(java.lang.Runnable) }.
+ * 
+ * <p>Any thread can add entries without locking: new entries are pushed
+ * onto a lock free stack. Only the GUI thread removes entries: it takes
+ * the whole stack at once and stores it in FIFO order in a private
+ * buffer.</p>
+ * 
+ * <p>For GWT a single threaded version of this class is provided as
+ * super source.</p>
+ * 
+ * @author Matthias Mann
+ */
+final class InvokeLaterQueue {
+
+    private final AtomicReference<Node> stack;
+    private final ConcurrentHashMap<Object, Runnable> coalesced;
+    
+    // only accessed by the GUI thread
+    private Runnable[] pending;
+    private int pendingStart;
+    private int pendingEnd;
+
+    InvokeLaterQueue() {
+        this.stack = new AtomicReference<Node>();
+        this.coalesced = new ConcurrentHashMap<Object, Runnable>();
+        this.pending = new Runnable[16];
+    }
+
+    /**
+     * Adds a runnable. This method is thread safe.
+     * @param runnable the runnable
+     */
+    void add(Runnable runnable) {
+        Node node = new Node(runnable);
+        Node head;
+        do {
+            head = stack.get();
+            node.next = head;
+        } while(!stack.compareAndSet(head, node));
+    }
+
+    /**
+     * Adds a runnable which replaces a still pending runnable with the same
+     * key. This method is thread safe.
+     * @param key the key
+     * @param runnable the runnable
+     */
+    void add(Object key, Runnable runnable) {
+        if(coalesced.put(key, runnable) == null) {
+            add(new Coalesced(key));
+        }
+    }
+
+    /**
+     * Moves all added runnables into the pending buffer.
+     * Must only be called from the GUI thread.
+     * @return the number of pending runnables
+     */
+    int fetch() {
+        Node node = stack.getAndSet(null);
+        if(node != null) {
+            int count = 0;
+            for(Node n=node ; n!=null ; n=n.next) {
+                count++;
+            }
+            int size = pendingEnd - pendingStart;
+            if(pendingEnd + count > pending.length) {
+                Runnable[] tmp = pending;
+                if(size + count > tmp.length) {
+                    tmp = new Runnable[Math.max(tmp.length * 2, size + count)];
+                }
+                System.arraycopy(pending, pendingStart, tmp, 0, size);
+                if(tmp == pending) {
+                    Arrays.fill(tmp, size, pendingEnd, null);
+                }
+                pending = tmp;
+                pendingStart = 0;
+                pendingEnd = size;
+            }
+            // the stack is in LIFO order
+            pendingEnd += count;
+            for(int idx=pendingEnd ; node!=null ; node=node.next) {
+                pending[--idx] = node.runnable;
+            }
+        }
+        return pendingEnd - pendingStart;
+    }
+
+    /**
+     * Removes the next pending runnable.
+     * Must only be called from the GUI thread.
+     * @return the runnable or null if no runnable is pending
+     * @see #fetch()
+     */
+    Runnable poll() {
+        if(pendingStart == pendingEnd) {
+            return null;
+        }
+        Runnable r = pending[pendingStart];
+        pending[pendingStart++] = null;
+        if(pendingStart == pendingEnd) {
+            pendingStart = 0;
+            pendingEnd = 0;
+        }
+        if(r instanceof Coalesced) {
+            r = coalesced.remove(((Coalesced)r).key);
+        }
+        return r;
+    }
+
+    static final class Node {
+        final Runnable runnable;
+        Node next;
+
+        Node(Runnable runnable) {
+            this.runnable = runnable;
+        }
+    }
+    
+    static final class Coalesced implements Runnable {
+        final Object key;
+
+        Coalesced(Object key) {
+            this.key = key;
+        }
+
+        public void run() {
+        }
+    }
+}
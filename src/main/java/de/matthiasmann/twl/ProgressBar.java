@@ -69,6 +69,7 @@ public class ProgressBar extends TextWidget {
             AnimationState animationState = getAnimationState();
             animationState.setAnimationState(STATE_INDETERMINATE, true);
             animationState.resetAnimationTime(STATE_VALUE_CHANGED);
+            repaint();
         }
     }
 
@@ -89,6 +90,7 @@ public class ProgressBar extends TextWidget {
             AnimationState animationState = getAnimationState();
             animationState.setAnimationState(STATE_INDETERMINATE, false);
             animationState.resetAnimationTime(STATE_VALUE_CHANGED);
+            repaint();
         }
     }
 
@@ -120,7 +122,10 @@ public class ProgressBar extends TextWidget {
      * @param progressImage the progress image, can be null.
      */
     public void setProgressImage(Image progressImage) {
-        this.progressImage = progressImage;
+        if(this.progressImage != progressImage) {
+            this.progressImage = progressImage;
+            repaint();
+        }
     }
 
     protected void applyThemeProgressBar(ThemeInfo themeInfo) {
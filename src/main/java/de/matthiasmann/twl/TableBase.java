@@ -199,6 +199,7 @@ public abstract class TableBase extends Widget implements ScrollPane.Scrollable,
     private final RemoveCellWidgets removeCellWidgetsFunction;
     private final InsertCellWidgets insertCellWidgetsFunction;
     private final CellWidgetContainer cellWidgetContainer;
+    private final Runnable selectionChangeListener;
     
     protected final TypeMapping<CellRenderer> cellRenderers;
     protected final SparseGrid widgetGrid;
@@ -261,6 +262,7 @@ public abstract class TableBase extends Widget implements ScrollPane.Scrollable,
         this.columnModel = new ColumnSizeSequence();
         this.columnDefaultCellRenderer = new CellRenderer[8];
         this.cellWidgetContainer = new CellWidgetContainer();
+        this.selectionChangeListener = new SelectionChangeListener();
 
         super.insertChild(cellWidgetContainer, 0);
         setCanAcceptKeyboardFocus(true);
@@ -274,11 +276,14 @@ public abstract class TableBase extends Widget implements ScrollPane.Scrollable,
         if(this.selectionManager != selectionManager) {
             if(this.selectionManager != null) {
                 this.selectionManager.setAssociatedTable(null);
+                this.selectionManager.getSelectionModel().removeSelectionChangeListener(selectionChangeListener);
             }
             this.selectionManager = selectionManager;
             if(this.selectionManager != null) {
                 this.selectionManager.setAssociatedTable(this);
+                this.selectionManager.getSelectionModel().addSelectionChangeListener(selectionChangeListener);
             }
+            repaint();
         }
     }
 
@@ -1222,6 +1227,8 @@ public abstract class TableBase extends Widget implements ScrollPane.Scrollable,
             if(!selectionManager.handleKeyStrokeAction(action, event)) {
                 return false;
             }
+            // the lead row may have moved without a selection change
+            repaint();
         }
         // remove focus from childs
         requestKeyboardFocus(null);
@@ -1379,8 +1386,8 @@ public abstract class TableBase extends Widget implements ScrollPane.Scrollable,
                 return true;
             }
 
-            if(selectionManager != null) {
-                selectionManager.handleMouseEvent(row, column, evt);
+            if(selectionManager != null && selectionManager.handleMouseEvent(row, column, evt)) {
+                repaint();
             }
             
             if(evtType == Event.Type.MOUSE_CLICKED && evt.getMouseClickCount() == 2) {
@@ -1478,7 +1485,6 @@ public abstract class TableBase extends Widget implements ScrollPane.Scrollable,
             removeColumnHeaders(0, columnHeaders.length);
         }
 
-        dropMarkerRow = -1;
         columnHeaders = new ColumnHeader[numColumns];
         for(int i=0 ; i<numColumns ; i++) {
             columnHeaders[i] = createColumnHeader(i);
@@ -1486,6 +1492,18 @@ public abstract class TableBase extends Widget implements ScrollPane.Scrollable,
         }
         updateColumnHeaderNumbers();
         
+        modelAllRowsChanged();
+    }
+
+    /**
+     * Called when all rows have changed in a way which can't be described by
+     * insert/delete events - eg the row mapping was rebuilt. The column headers
+     * are kept, but the selection is reset and all row sizes are recomputed
+     * once during the next layout.
+     */
+    protected void modelAllRowsChanged() {
+        dropMarkerRow = -1;
+
         if(selectionManager != null) {
             selectionManager.modelChanged();
         }
@@ -1737,6 +1755,12 @@ public abstract class TableBase extends Widget implements ScrollPane.Scrollable,
         }
     }
 
+    class SelectionChangeListener implements Runnable {
+        public void run() {
+            repaint();
+        }
+    }
+
     class RemoveCellWidgets implements SparseGrid.GridFunction {
         public void apply(int row, int column, Entry e) {
             WidgetEntry widgetEntry = (WidgetEntry)e;
@@ -31,17 +31,47 @@ package de.matthiasmann.twl;
 
 import de.matthiasmann.twl.model.TableModel;
 import de.matthiasmann.twl.model.TableSelectionModel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Provides search as you type functionality to a Table.
  *
+ * <p>The search does not block the GUI thread. Large tables are searched in
+ * time slices which are continued via {@link GUI#invokeLater(java.lang.Runnable) },
+ * or on a background thread when a {@link SearchExecutor} is set. The first
+ * match is selected as soon as it is found. Without a column index the search
+ * stops at the first match. With a column index all matches are collected,
+ * and this result is narrowed down when the search text is extended.</p>
+ *
  * @author Matthias Mann
  */
 public class TableSearchWindow extends InfoWindow implements TableBase.KeyboardSearchHandler {
 
+    /**
+     * Executes the background part of a search.
+     * 
+     * <p>On desktop this is usually a thin wrapper around a
+     * {@code java.util.concurrent.Executor}.</p>
+     */
+    public interface SearchExecutor {
+        /**
+         * Executes the given job on a background thread.
+         * @param job the job
+         */
+        public void execute(Runnable job);
+    }
+
+    /**
+     * The maximum time in milliseconds a search is executed on the GUI thread
+     * before it is continued in the next frame.
+     */
+    public static final int MAX_SEARCH_SLICE_TIME = 4;
+
     private final TableSelectionModel selectionModel;
     private final EditField searchTextField;
     private final StringBuilder searchTextBuffer;
+    private final ModelChangeListener modelChangeListener;
 
     private String searchText;
     private String searchTextLowercase;
@@ -51,11 +81,19 @@ public class TableSearchWindow extends InfoWindow implements TableBase.KeyboardS
     private int currentRow;
     private boolean searchStartOnly;
 
+    private SearchExecutor searchExecutor;
+    private SearchJob searchJob;
+    private boolean columnIndexEnabled;
+    private String[] columnIndex;
+    private int columnIndexSize;
+    private boolean columnIndexShared;
+
     public TableSearchWindow(Table table, TableSelectionModel selectionModel) {
         super(table);
         this.selectionModel = selectionModel;
         this.searchTextField = new EditField();
         this.searchTextBuffer = new StringBuilder();
+        this.modelChangeListener = new ModelChangeListener();
         this.searchText = "";
 
         Label label = new Label("Search");
@@ -89,12 +127,69 @@ public class TableSearchWindow extends InfoWindow implements TableBase.KeyboardS
         if(model != null && column >= model.getNumColumns()) {
             throw new IllegalArgumentException("column");
         }
+        if(this.model != null) {
+            this.model.removeChangeListener(modelChangeListener);
+        }
         this.model = model;
         this.column = column;
+        this.columnIndex = null;
+        if(model != null) {
+            model.addChangeListener(modelChangeListener);
+        }
         cancelSearch();
 
     }
 
+    public SearchExecutor getSearchExecutor() {
+        return searchExecutor;
+    }
+
+    /**
+     * Sets the executor used to search in the background.
+     * 
+     * <p>As a {@link TableModel} is not thread safe the executor is only used
+     * when the column index is enabled and this window is part of a GUI tree.
+     * The matches are handed to the GUI thread via
+     * {@link GUI#invokeLater(java.lang.Object, java.lang.Runnable) }.</p>
+     * 
+     * @param searchExecutor the executor or null to search on the GUI thread
+     * @see #setColumnIndexEnabled(boolean) 
+     */
+    public void setSearchExecutor(SearchExecutor searchExecutor) {
+        this.searchExecutor = searchExecutor;
+    }
+
+    public boolean isColumnIndexEnabled() {
+        return columnIndexEnabled;
+    }
+
+    /**
+     * Enables an index of the lower case strings of the searched column.
+     * 
+     * <p>The index is build on the first search and is then updated from
+     * the change events of the model. It avoids the conversion of the
+     * cell values on every search and allows to search on a background
+     * thread.</p>
+     * 
+     * @param columnIndexEnabled true to enable the column index
+     * @see #setSearchExecutor(de.matthiasmann.twl.TableSearchWindow.SearchExecutor) 
+     */
+    public void setColumnIndexEnabled(boolean columnIndexEnabled) {
+        if(this.columnIndexEnabled != columnIndexEnabled) {
+            this.columnIndexEnabled = columnIndexEnabled;
+            this.columnIndex = null;
+            cancelSearchJob();
+        }
+    }
+
+    /**
+     * Returns true while a search has not yet checked all rows.
+     * @return true while a search is in progress
+     */
+    public boolean isSearchInProgress() {
+        return searchJob != null && !searchJob.finished;
+    }
+
     public boolean isActive() {
         return isOpen();
     }
@@ -164,6 +259,7 @@ public class TableSearchWindow extends InfoWindow implements TableBase.KeyboardS
     }
 
     public void cancelSearch() {
+        cancelSearchJob();
         searchTextBuffer.setLength(0);
         updateText();
         closeInfo();
@@ -186,6 +282,7 @@ public class TableSearchWindow extends InfoWindow implements TableBase.KeyboardS
 
     @Override
     protected void beforeRemoveFromGUI(GUI gui) {
+        cancelSearchJob();
         timer.stop();
         timer = null;
         
@@ -205,33 +302,90 @@ public class TableSearchWindow extends InfoWindow implements TableBase.KeyboardS
     }
 
     private void restartTimer() {
-        timer.stop();
-        timer.start();
+        if(timer != null) {
+            timer.stop();
+            timer.start();
+        }
+    }
+
+    private void cancelSearchJob() {
+        if(searchJob != null) {
+            searchJob.canceled = true;
+            searchJob = null;
+        }
     }
 
     private void updateSearch() {
+        SearchJob prevJob = searchJob;
+        if(prevJob != null) {
+            prevJob.canceled = true;
+            searchJob = null;
+        }
+        
         int numRows = model.getNumRows();
         if(numRows == 0) {
             return;
         }
-        for(int row=currentRow ; row<numRows ; row++) {
-            if(checkRow(row)) {
-                setRow(row);
-                return;
+        
+        String[] index = getColumnIndex();
+        GUI gui = getGUI();
+        boolean async = searchExecutor != null && index != null && gui != null;
+        SearchJob job = new SearchJob(gui, searchText, searchStartOnly, numRows, index, async);
+        
+        if(prevJob != null && prevJob.numRows == numRows && prevJob.index == index &&
+                prevJob.startOnly == searchStartOnly && searchText.startsWith(prevJob.text)) {
+            // every match of the new search text is also a match of the old one
+            if(prevJob.finished && prevJob.collectAll) {
+                job.initCandidates(prevJob.getSortedMatches(), currentRow);
+            } else if(!prevJob.async && currentRow == prevJob.getFirstRow()) {
+                job.initCandidates(prevJob);
+            } else {
+                job.startRow = wrap(currentRow, numRows);
             }
+        } else {
+            job.startRow = wrap(currentRow, numRows);
         }
-        if(searchStartOnly) {
-            searchStartOnly = false;
+        
+        startSearchJob(job);
+    }
+
+    private void startSearchJob(SearchJob job) {
+        searchJob = job;
+        if(job.async) {
+            columnIndexShared = true;
+            searchExecutor.execute(job);
         } else {
-            numRows = currentRow;
+            job.runSlice();
+        }
+    }
+
+    void searchMatchFound(SearchJob job, int row) {
+        if(searchJob == job) {
+            setRow(row);
         }
-        for(int row=0 ; row<numRows ; row++) {
-            if(checkRow(row)) {
-                setRow(row);
-                return;
+    }
+
+    void searchFinished(SearchJob job) {
+        if(searchJob != job) {
+            return;
+        }
+        job.finished = true;
+        if(job.numMatches == 0) {
+            if(job.startOnly) {
+                searchStartOnly = false;
+                SearchJob newJob = new SearchJob(job.gui, job.text, false, job.numRows, job.index, job.async);
+                newJob.startRow = job.startRow;
+                if(!job.async && job.gui != null) {
+                    // the time slice of this frame is used up
+                    searchJob = newJob;
+                    job.gui.invokeLater(newJob);
+                } else {
+                    startSearchJob(newJob);
+                }
+            } else {
+                searchTextField.setErrorMessage("'" + job.text + "' not found");
             }
         }
-        searchTextField.setErrorMessage("'" + searchText + "' not found");
     }
 
     private void searchDir(int dir) {
@@ -240,6 +394,19 @@ public class TableSearchWindow extends InfoWindow implements TableBase.KeyboardS
             return;
         }
 
+        SearchJob job = searchJob;
+        if(job != null && job.finished && job.collectAll && job.numMatches > 0 &&
+                job.startOnly == searchStartOnly && job.text.equals(searchText)) {
+            int[] sorted = job.getSortedMatches();
+            int idx = findFirst(sorted, currentRow + ((dir > 0) ? 1 : 0));
+            if(dir > 0) {
+                setRow(sorted[(idx < sorted.length) ? idx : 0]);
+            } else {
+                setRow(sorted[(idx > 0) ? idx - 1 : sorted.length - 1]);
+            }
+            return;
+        }
+        
         int startRow = wrap(currentRow, numRows);
         int row = startRow;
 
@@ -271,19 +438,42 @@ public class TableSearchWindow extends InfoWindow implements TableBase.KeyboardS
     }
 
     private boolean checkRow(int row) {
-        Object data = model.getCell(row, column);
+        if(searchTextLowercase == null) {
+            searchTextLowercase = searchText.toLowerCase();
+        }
+        String[] index = getColumnIndex();
+        if(index != null) {
+            return matchesLowercase(index[row], searchTextLowercase, searchStartOnly);
+        }
+        return matchesCell(model.getCell(row, column), searchText, searchStartOnly);
+    }
+
+    static boolean matchesLowercase(String str, String textLowercase, boolean startOnly) {
+        if(str == null) {
+            return false;
+        }
+        if(startOnly) {
+            return str.startsWith(textLowercase);
+        }
+        return str.contains(textLowercase);
+    }
+
+    static boolean matchesCell(Object data, String text, boolean startOnly) {
         if(data == null) {
             return false;
         }
         String str = data.toString();
-        if(searchStartOnly) {
-            return str.regionMatches(true, 0, searchText, 0, searchText.length());
+        int len = text.length();
+        if(startOnly) {
+            return str.regionMatches(true, 0, text, 0, len);
         }
-        str = str.toLowerCase();
-        if(searchTextLowercase == null) {
-            searchTextLowercase = searchText.toLowerCase();
+        // avoid creating a lower case copy of every cell
+        for(int i=0,n=str.length()-len ; i<=n ; i++) {
+            if(str.regionMatches(true, i, text, 0, len)) {
+                return true;
+            }
         }
-        return str.contains(searchTextLowercase);
+        return false;
     }
 
     private static int wrap(int row, int numRows) {
@@ -295,4 +485,367 @@ public class TableSearchWindow extends InfoWindow implements TableBase.KeyboardS
         }
         return row;
     }
+
+    /**
+     * Returns the index of the first entry which is &gt;= row
+     */
+    static int findFirst(int[] sorted, int row) {
+        int lo = 0;
+        int hi = sorted.length;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(sorted[mid] < row) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private String[] getColumnIndex() {
+        if(columnIndexEnabled && columnIndex == null && model != null) {
+            int numRows = model.getNumRows();
+            columnIndex = new String[numRows];
+            columnIndexSize = numRows;
+            columnIndexShared = false;
+            updateColumnIndex(0, numRows);
+        }
+        return columnIndex;
+    }
+
+    private String[] getWritableColumnIndex(int capacity) {
+        String[] index = columnIndex;
+        if(columnIndexShared || index.length < capacity) {
+            index = new String[Math.max(capacity, columnIndexSize + columnIndexSize/4)];
+            System.arraycopy(columnIndex, 0, index, 0, columnIndexSize);
+            columnIndex = index;
+            columnIndexShared = false;
+        }
+        return index;
+    }
+
+    private void updateColumnIndex(int idx, int count) {
+        String[] index = getWritableColumnIndex(columnIndexSize);
+        for(int i=0 ; i<count ; i++) {
+            Object data = model.getCell(idx + i, column);
+            index[idx + i] = (data != null) ? data.toString().toLowerCase() : null;
+        }
+    }
+
+    void modelRowsInserted(int idx, int count) {
+        if(columnIndex != null) {
+            String[] index = getWritableColumnIndex(columnIndexSize + count);
+            System.arraycopy(index, idx, index, idx + count, columnIndexSize - idx);
+            columnIndexSize += count;
+            updateColumnIndex(idx, count);
+        }
+        modelChanged();
+    }
+
+    void modelRowsDeleted(int idx, int count) {
+        if(columnIndex != null) {
+            String[] index = getWritableColumnIndex(columnIndexSize);
+            System.arraycopy(index, idx + count, index, idx, columnIndexSize - (idx + count));
+            columnIndexSize -= count;
+            for(int i=0 ; i<count ; i++) {
+                index[columnIndexSize + i] = null;
+            }
+        }
+        modelChanged();
+    }
+
+    void modelRowsChanged(int idx, int count) {
+        if(columnIndex != null) {
+            updateColumnIndex(idx, count);
+        }
+        modelChanged();
+    }
+
+    void modelAllChanged() {
+        columnIndex = null;
+        modelChanged();
+    }
+
+    /**
+     * Stops a running search and drops the result as the row numbers may
+     * have changed. A search which was still in progress is restarted after
+     * all listeners have been notified.
+     */
+    private void modelChanged() {
+        SearchJob job = searchJob;
+        if(job != null) {
+            cancelSearchJob();
+            GUI gui = getGUI();
+            if(!job.finished && gui != null) {
+                gui.invokeLater(modelChangeListener, modelChangeListener);
+            }
+        }
+    }
+
+    class ModelChangeListener implements TableModel.ChangeListener, Runnable {
+        public void rowsInserted(int idx, int count) {
+            modelRowsInserted(idx, count);
+        }
+        public void rowsDeleted(int idx, int count) {
+            modelRowsDeleted(idx, count);
+        }
+        public void rowsChanged(int idx, int count) {
+            modelRowsChanged(idx, count);
+        }
+        public void cellChanged(int row, int column) {
+            if(column == TableSearchWindow.this.column) {
+                modelRowsChanged(row, 1);
+            }
+        }
+        public void allChanged() {
+            modelAllChanged();
+        }
+        public void columnInserted(int idx, int count) {
+            modelAllChanged();
+        }
+        public void columnDeleted(int idx, int count) {
+            modelAllChanged();
+        }
+        public void columnHeaderChanged(int column) {
+        }
+        public void run() {
+            // restart the search which was canceled by a model change
+            if(searchJob == null && model != null && isOpen()) {
+                updateSearch();
+            }
+        }
+    }
+
+    /**
+     * Searches the rows starting at {@code startRow}. When the search text was
+     * extended then only the matches of the previous search need to be checked
+     * for the part which that search has already completed.
+     * 
+     * <p>Without a column index the search stops at the first match. Otherwise
+     * all matches are collected for the up/down keys.</p>
+     */
+    final class SearchJob implements Runnable {
+        final GUI gui;
+        final String text;
+        final String textLowercase;
+        final boolean startOnly;
+        final int numRows;
+        final String[] index;
+        final TableModel model;
+        final int column;
+        final boolean async;
+        final boolean collectAll;
+        volatile boolean canceled;
+        boolean finished;
+        
+        int startRow;
+        int[] candidates;
+        int numCandidates;
+        int candidatePos;
+        int position;
+        int[] matches;
+        int numMatches;
+        boolean firstMatchDelivered;
+        private int[] sortedMatches;
+
+        SearchJob(GUI gui, String text, boolean startOnly, int numRows, String[] index, boolean async) {
+            this.gui = gui;
+            this.text = text;
+            this.textLowercase = text.toLowerCase();
+            this.startOnly = startOnly;
+            this.numRows = numRows;
+            this.index = index;
+            this.model = TableSearchWindow.this.model;
+            this.column = TableSearchWindow.this.column;
+            this.async = async;
+            this.collectAll = index != null;
+            this.matches = new int[16];
+        }
+
+        /**
+         * Uses the sorted matches of a finished search as candidates. The
+         * search starts at {@code firstRow}.
+         */
+        void initCandidates(int[] sorted, int firstRow) {
+            int split = findFirst(sorted, firstRow);
+            candidates = new int[sorted.length];
+            System.arraycopy(sorted, split, candidates, 0, sorted.length - split);
+            System.arraycopy(sorted, 0, candidates, sorted.length - split, split);
+            numCandidates = sorted.length;
+            startRow = wrap(firstRow, numRows);
+            position = numRows;
+        }
+
+        /**
+         * Continues an unfinished search, or a search which stopped at the
+         * first match, from the same start row. The rows
+         * which that search has already checked are only checked if they
+         * matched.
+         */
+        void initCandidates(SearchJob prev) {
+            int remaining = prev.numCandidates - prev.candidatePos;
+            candidates = new int[prev.numMatches + remaining];
+            System.arraycopy(prev.matches, 0, candidates, 0, prev.numMatches);
+            if(remaining > 0) {
+                System.arraycopy(prev.candidates, prev.candidatePos, candidates, prev.numMatches, remaining);
+            }
+            numCandidates = candidates.length;
+            startRow = prev.startRow;
+            position = prev.position;
+        }
+
+        /**
+         * Returns the row which was selected by this search.
+         */
+        int getFirstRow() {
+            return (numMatches > 0) ? matches[0] : startRow;
+        }
+
+        int[] getSortedMatches() {
+            assert finished && collectAll;
+            if(sortedMatches == null) {
+                // the matches are in search order: first all rows >= startRow
+                int split = 0;
+                while(split < numMatches && matches[split] >= startRow) {
+                    split++;
+                }
+                sortedMatches = new int[numMatches];
+                System.arraycopy(matches, split, sortedMatches, 0, numMatches - split);
+                System.arraycopy(matches, 0, sortedMatches, numMatches - split, split);
+            }
+            return sortedMatches;
+        }
+
+        public void run() {
+            if(async) {
+                try {
+                    runAsync();
+                } catch(Exception ex) {
+                    Logger.getLogger(TableSearchWindow.class.getName()).log(Level.SEVERE,
+                            "Exception while searching", ex);
+                    gui.invokeLater(new SearchResult(this, -1));
+                }
+            } else if(searchJob == this && !canceled) {
+                runSlice();
+            }
+        }
+
+        private void runAsync() {
+            while(!canceled) {
+                if(scan(0)) {
+                    gui.invokeLater(new SearchResult(this, -1));
+                    return;
+                }
+                if(!firstMatchDelivered) {
+                    firstMatchDelivered = true;
+                    gui.invokeLater(new SearchResult(this, matches[0]));
+                }
+            }
+        }
+
+        /**
+         * Searches on the GUI thread until the time slice is used up. The
+         * search is then continued via {@link GUI#invokeLater(java.lang.Runnable) }
+         */
+        void runSlice() {
+            long endTime = (gui != null) ? gui.getRenderer().getTimeMillis() + MAX_SEARCH_SLICE_TIME : 0;
+            for(;;) {
+                boolean done = scan(endTime);
+                if(numMatches > 0 && !firstMatchDelivered) {
+                    firstMatchDelivered = true;
+                    searchMatchFound(this, matches[0]);
+                    if(searchJob != this) {
+                        return;
+                    }
+                }
+                if(done) {
+                    searchFinished(this);
+                    return;
+                }
+                if(isTimeUp(endTime)) {
+                    if(!canceled) {
+                        gui.invokeLater(this);
+                    }
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Checks rows until all rows are checked, the first match was found
+         * or the time is up.
+         * 
+         * @param endTime the renderer time in milliseconds when to stop, or 0
+         * @return true when all rows have been checked, or when the first match
+         *         was found and not all matches are collected
+         */
+        boolean scan(long endTime) {
+            int count = 0;
+            while(candidatePos < numCandidates) {
+                int row = candidates[candidatePos++];
+                if(checkRow(row) && addMatch(row)) {
+                    return !collectAll;
+                }
+                if((++count & 255) == 0 && isTimeUp(endTime)) {
+                    return false;
+                }
+            }
+            while(position < numRows) {
+                int row = startRow + position++;
+                if(row >= numRows) {
+                    row -= numRows;
+                }
+                if(checkRow(row) && addMatch(row)) {
+                    return !collectAll;
+                }
+                if((++count & 255) == 0 && isTimeUp(endTime)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isTimeUp(long endTime) {
+            return canceled || (endTime != 0 && gui.getRenderer().getTimeMillis() >= endTime);
+        }
+
+        private boolean checkRow(int row) {
+            if(index != null) {
+                return matchesLowercase(index[row], textLowercase, startOnly);
+            }
+            return matchesCell(model.getCell(row, column), text, startOnly);
+        }
+
+        /**
+         * @return true if this was the first match
+         */
+        private boolean addMatch(int row) {
+            if(numMatches == matches.length) {
+                int[] newMatches = new int[numMatches * 2];
+                System.arraycopy(matches, 0, newMatches, 0, numMatches);
+                matches = newMatches;
+            }
+            matches[numMatches++] = row;
+            return numMatches == 1;
+        }
+    }
+
+    final class SearchResult implements Runnable {
+        final SearchJob job;
+        final int row;
+
+        SearchResult(SearchJob job, int row) {
+            this.job = job;
+            this.row = row;
+        }
+
+        public void run() {
+            if(row >= 0) {
+                searchMatchFound(job, row);
+            } else {
+                searchFinished(job);
+            }
+        }
+    }
 }
@@ -60,6 +60,13 @@ import java.util.logging.Logger;
  *
  * It uses a simplified HTML/CSS model.
  * 
+ * <p>The layout is only computed incrementally for an
+ * {@link de.matthiasmann.twl.textarea.AppendableTextAreaModel}. It is
+ * resumed after the last unchanged top level element. All other models -
+ * including {@link de.matthiasmann.twl.textarea.HTMLTextAreaModel} - cause
+ * a complete relayout on every change. There is no cache which reuses the
+ * layout of unchanged blocks.</p>
+ * 
  * @author Matthias Mann
  */
 public class TextArea extends Widget {
@@ -103,6 +110,12 @@ public class TextArea extends Widget {
     
     static final char[] EMPTY_CHAR_ARRAY = new char[0];
     
+    /**
+     * The minimum number of top level elements between two stored layout
+     * checkpoints. The last checkpoint is always kept to allow appending.
+     */
+    static final int CHECKPOINT_DISTANCE = 32;
+    
     private final HashMap<String, Widget> widgets;
     private final HashMap<String, WidgetResolver> widgetResolvers;
     private final HashMap<String, Image> userImages;
@@ -121,9 +134,16 @@ public class TextArea extends Widget {
 
     private final LClip layoutRoot;
     private final ArrayList<LImage> allBGImages;
+    private final ArrayList<TextAreaModel.Element> layoutElements;
+    private final ArrayList<Checkpoint> layoutCheckpoints;
     private final RenderInfo renderInfo;
+    private final Rect paintClipRect;
+    private Box layoutBox;
+    private int layoutModCount;
+    private int layoutChangeCount;
     private boolean inLayoutCode;
     private boolean forceRelayout;
+    private boolean modelChanged;
     private Dimension preferredInnerSize;
     private FontMapper fontMapper;
     private FontMapperCacheEntry[] fontMapperCache;
@@ -143,11 +163,14 @@ public class TextArea extends Widget {
         this.imageResolvers = new ArrayList<ImageResolver>();
         this.layoutRoot = new LClip(null);
         this.allBGImages = new ArrayList<LImage>();
+        this.layoutElements = new ArrayList<TextAreaModel.Element>();
+        this.layoutCheckpoints = new ArrayList<Checkpoint>();
         this.renderInfo = new RenderInfo(getAnimationState());
+        this.paintClipRect = new Rect();
         
         this.modelCB = new Runnable() {
             public void run() {
-                forceRelayout();
+                modelChanged();
             }
         };
     }
@@ -435,24 +458,51 @@ public class TextArea extends Widget {
         //System.out.println(this+" minWidth="+getMinWidth()+" width="+getWidth()+" maxWidth="+getMaxWidth()+" targetWidth="+targetWidth+" preferredInnerSize="+preferredInnerSize);
         
         // only recompute the layout when it has changed
-        if(layoutRoot.width != targetWidth || forceRelayout) {
+        if(layoutRoot.width != targetWidth || forceRelayout || modelChanged) {
+            boolean incremental = !forceRelayout && layoutRoot.width == targetWidth;
             layoutRoot.width = targetWidth;
             inLayoutCode = true;
             forceRelayout = false;
+            modelChanged = false;
             int requiredHeight;
             
             startLayout();
             try {
-                clearLayout();
-                Box box = new Box(layoutRoot, 0, 0, 0, true);
+                int checkpointIdx = incremental ? restoreLayoutCheckpoint() : -1;
+                Box box;
+                if(checkpointIdx < 0) {
+                    clearLayout();
+                    box = new Box(layoutRoot, 0, 0, 0, true);
+                    layoutBox = box;
+                    addLayoutCheckpoint(box);
+                    checkpointIdx = 0;
+                } else {
+                    box = layoutBox;
+                }
                 if(model != null) {
-                    layoutElements(box, model);
+                    final int layoutStart = layoutRoot.layout.size();
+                    if(model instanceof AppendableTextAreaModel) {
+                        AppendableTextAreaModel m = (AppendableTextAreaModel)model;
+                        for(int i=layoutElements.size(),n=m.getNumElements() ; i<n ; i++) {
+                            layoutTopLevelElement(box, m.getElement(i));
+                        }
+                        layoutModCount = m.getModificationCount();
+                        layoutChangeCount = m.getChangeCount();
+                    } else {
+                        for(TextAreaModel.Element e : model) {
+                            layoutTopLevelElement(box, e);
+                        }
+                    }
 
                     box.finish();
 
-                    // set position & size of all widget elements
-                    layoutRoot.adjustWidget(getInnerX(), getInnerY());
-                    layoutRoot.collectBGImages(0, 0, allBGImages);
+                    // set position & size of all new widget elements
+                    final int innerX = getInnerX();
+                    final int innerY = getInnerY();
+                    for(int i=layoutStart,n=layoutRoot.layout.size() ; i<n ; i++) {
+                        layoutRoot.layout.get(i).adjustWidget(innerX, innerY);
+                    }
+                    collectBGImages(checkpointIdx);
                 }
                 updateMouseHover();
                 requiredHeight = box.curY;
@@ -485,7 +535,19 @@ public class TextArea extends Widget {
             bi.get(i).draw(ri);
         }
 
-        layoutRoot.draw(ri);
+        final ArrayList<Checkpoint> cps = layoutCheckpoints;
+        final Rect rect = paintClipRect;
+        if(cps.size() > 1 && ri.renderer.getClipRect(rect)) {
+            // only draw the top level elements between the checkpoints
+            // which enclose the visible area
+            int startIdx = findLayoutCheckpoint(rect.getY() - ri.offsetY);
+            int endIdx = findLayoutCheckpoint(rect.getBottom() - ri.offsetY - 1) + 1;
+            int start = (startIdx >= 0) ? cps.get(startIdx).layoutSize : 0;
+            int end = (endIdx < cps.size()) ? cps.get(endIdx).layoutSize : layoutRoot.layout.size();
+            layoutRoot.draw(ri, start, end);
+        } else {
+            layoutRoot.draw(ri);
+        }
     }
 
     @Override
@@ -638,12 +700,151 @@ public class TextArea extends Widget {
         invalidateLayout();
     }
     
+    void modelChanged() {
+        modelChanged = true;
+        preferredInnerSize = null;
+        invalidateLayout();
+    }
+    
     private void clearLayout() {
         layoutRoot.destroy();
         allBGImages.clear();
+        layoutElements.clear();
+        layoutCheckpoints.clear();
+        layoutBox = null;
         super.removeAllChildren();
     }
     
+    private void layoutTopLevelElement(Box box, TextAreaModel.Element e) {
+        layoutElements.add(e);
+        layoutElement(box, e);
+        if(box.isCheckpoint()) {
+            addLayoutCheckpoint(box);
+        }
+    }
+    
+    private void addLayoutCheckpoint(Box box) {
+        final ArrayList<Checkpoint> cps = layoutCheckpoints;
+        final int numCPs = cps.size();
+        final int numElements = layoutElements.size();
+        Checkpoint cp;
+        if(numCPs >= 2 && numElements - cps.get(numCPs-2).numElements < CHECKPOINT_DISTANCE) {
+            // too close to the previous one - just move the last checkpoint
+            cp = cps.get(numCPs-1);
+        } else {
+            cp = new Checkpoint();
+            cps.add(cp);
+        }
+        cp.numElements = numElements;
+        cp.layoutSize = layoutRoot.layout.size();
+        cp.numAnchors = layoutRoot.anchors.size();
+        cp.numBGImages = layoutRoot.bgImages.size();
+        cp.numChildren = getNumChildren();
+        box.saveState(cp);
+    }
+    
+    /**
+     * Restores the layout state to the last checkpoint before the first
+     * modified top level element of an {@link AppendableTextAreaModel}.
+     * @return the index of the restored checkpoint or -1 if a complete relayout is needed
+     */
+    private int restoreLayoutCheckpoint() {
+        if(!(model instanceof AppendableTextAreaModel) || layoutBox == null || layoutCheckpoints.isEmpty()) {
+            return -1;
+        }
+        final AppendableTextAreaModel m = (AppendableTextAreaModel)model;
+        if(m.getModificationCount() != layoutModCount) {
+            return -1;
+        }
+        
+        final ArrayList<TextAreaModel.Element> le = layoutElements;
+        int firstChanged = le.size();
+        if(m.getChangeCount() != layoutChangeCount) {
+            final int count = Math.min(le.size(), m.getNumElements());
+            firstChanged = 0;
+            while(firstChanged < count && le.get(firstChanged) == m.getElement(firstChanged)) {
+                firstChanged++;
+            }
+        }
+        
+        final ArrayList<Checkpoint> cps = layoutCheckpoints;
+        int cpIdx = cps.size() - 1;
+        while(cps.get(cpIdx).numElements > firstChanged) {
+            cpIdx--;    // the first checkpoint is always at element 0
+        }
+        
+        Checkpoint cp = cps.get(cpIdx);
+        truncate(cps, cpIdx + 1);
+        truncate(le, cp.numElements);
+        final ArrayList<LElement> layout = layoutRoot.layout;
+        for(int i=layout.size() ; i-->cp.layoutSize ;) {
+            layout.remove(i).destroy();
+        }
+        truncate(layoutRoot.anchors, cp.numAnchors);
+        truncate(layoutRoot.bgImages, cp.numBGImages);
+        truncate(allBGImages, cp.numAllBGImages);
+        for(int i=getNumChildren() ; i-->cp.numChildren ;) {
+            super.removeChild(i);
+        }
+        layoutBox.restoreState(cp);
+        return cpIdx;
+    }
+    
+    /**
+     * Collects the background images of all top level elements after the
+     * specified checkpoint. They are collected in checkpoint order so that
+     * restoring a checkpoint only needs to truncate the list.
+     * @param cpIdx the index of the first checkpoint to process
+     */
+    private void collectBGImages(int cpIdx) {
+        final ArrayList<Checkpoint> cps = layoutCheckpoints;
+        final ArrayList<LElement> layout = layoutRoot.layout;
+        final ArrayList<LImage> bgImages = layoutRoot.bgImages;
+        for(int n=cps.size() ; cpIdx<n ; cpIdx++) {
+            Checkpoint cp = cps.get(cpIdx);
+            int layoutEnd = layout.size();
+            int bgImagesEnd = bgImages.size();
+            if(cpIdx+1 < n) {
+                Checkpoint next = cps.get(cpIdx+1);
+                layoutEnd = next.layoutSize;
+                bgImagesEnd = next.numBGImages;
+            }
+            cp.numAllBGImages = allBGImages.size();
+            for(int i=cp.numBGImages ; i<bgImagesEnd ; i++) {
+                allBGImages.add(bgImages.get(i));
+            }
+            for(int i=cp.layoutSize ; i<layoutEnd ; i++) {
+                layout.get(i).collectBGImages(0, 0, allBGImages);
+            }
+        }
+    }
+    
+    /**
+     * Finds the last layout checkpoint which starts at or above the given Y coordinate
+     * @param y the Y coordinate relative to the layout root
+     * @return the checkpoint index or -1
+     */
+    private int findLayoutCheckpoint(int y) {
+        final ArrayList<Checkpoint> cps = layoutCheckpoints;
+        int lo = 0;
+        int hi = cps.size() - 1;
+        while(lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if(cps.get(mid).curY <= y) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return hi;
+    }
+    
+    private static void truncate(ArrayList<?> list, int size) {
+        if(list.size() > size) {
+            list.subList(size, list.size()).clear();
+        }
+    }
+    
     private void startLayout() {
         if(styleClassResolver != null) {
             styleClassResolver.startLayout();
@@ -1831,6 +2032,7 @@ public class TextArea extends Widget {
         final ArrayList<LElement> objLeft = new ArrayList<LElement>();
         final ArrayList<LElement> objRight = new ArrayList<LElement>();
         final StringBuilder lineInfo = new StringBuilder();
+        int lineInfoCopied;
         final int boxLeft;
         final int boxWidth;
         final int boxMarginOffsetLeft;
@@ -1946,6 +2148,71 @@ public class TextArea extends Widget {
             return lineStartIdx == layout.size();
         }
 
+        /**
+         * Checks if the layout can be continued from the current state
+         * without access to any previous layout elements.
+         * @return true if a layout checkpoint can be created
+         */
+        boolean isCheckpoint() {
+            return isAtStartOfLine() && !inParagraph &&
+                    objLeft.isEmpty() && objRight.isEmpty() &&
+                    lastProcessedAnchorIdx == clip.anchors.size();
+        }
+
+        void saveState(Checkpoint cp) {
+            cp.curY = curY;
+            cp.curX = curX;
+            cp.lineStartIdx = lineStartIdx;
+            cp.lastProcessedAnchorIdx = lastProcessedAnchorIdx;
+            cp.marginTop = marginTop;
+            cp.marginLeft = marginLeft;
+            cp.marginRight = marginRight;
+            cp.marginBottomAbs = marginBottomAbs;
+            cp.marginBottomNext = marginBottomNext;
+            cp.lineStartX = lineStartX;
+            cp.lineWidth = lineWidth;
+            cp.fontLineHeight = fontLineHeight;
+            cp.minLineHeight = minLineHeight;
+            cp.lastLineEnd = lastLineEnd;
+            cp.lastLineBottom = lastLineBottom;
+            cp.minRemainingWidth = minRemainingWidth;
+            cp.wasAutoBreak = wasAutoBreak;
+            cp.wasPreformatted = wasPreformatted;
+            cp.textAlignment = textAlignment;
+            cp.href = href;
+            cp.style = style;
+            cp.lineInfoLength = lineInfo.length();
+        }
+
+        void restoreState(Checkpoint cp) {
+            curY = cp.curY;
+            curX = cp.curX;
+            lineStartIdx = cp.lineStartIdx;
+            lastProcessedAnchorIdx = cp.lastProcessedAnchorIdx;
+            marginTop = cp.marginTop;
+            marginLeft = cp.marginLeft;
+            marginRight = cp.marginRight;
+            marginBottomAbs = cp.marginBottomAbs;
+            marginBottomNext = cp.marginBottomNext;
+            lineStartX = cp.lineStartX;
+            lineWidth = cp.lineWidth;
+            fontLineHeight = cp.fontLineHeight;
+            minLineHeight = cp.minLineHeight;
+            lastLineEnd = cp.lastLineEnd;
+            lastLineBottom = cp.lastLineBottom;
+            minRemainingWidth = cp.minRemainingWidth;
+            inParagraph = false;
+            wasAutoBreak = cp.wasAutoBreak;
+            wasPreformatted = cp.wasPreformatted;
+            textAlignment = cp.textAlignment;
+            href = cp.href;
+            style = cp.style;
+            lineInfo.setLength(cp.lineInfoLength);
+            lineInfoCopied = Math.min(lineInfoCopied, cp.lineInfoLength);
+            objLeft.clear();
+            objRight.clear();
+        }
+
         boolean prevOnLineEndsNotWithSpace() {
             int layoutSize = layout.size();
             if(lineStartIdx < layoutSize) {
@@ -2117,8 +2384,17 @@ public class TextArea extends Widget {
             clearFloater(TextAreaModel.Clear.BOTH);
             processAnchors(curY, 0);
             int lineInfoLength = lineInfo.length();
-            clip.lineInfo = new char[lineInfoLength];
-            lineInfo.getChars(0, lineInfoLength, clip.lineInfo, 0);
+            char[] dst = clip.lineInfo;
+            if(dst.length < lineInfoLength) {
+                // grow when the layout is continued after a checkpoint
+                dst = new char[(lineInfoCopied == 0) ? lineInfoLength : lineInfoLength*3/2];
+                lineInfoCopied = 0;
+            }
+            // only copy the line info which was added since the last finish
+            lineInfo.getChars(lineInfoCopied, lineInfoLength, dst, lineInfoCopied);
+            lineInfoCopied = lineInfoLength;
+            clip.lineInfo = dst;
+            clip.lineInfoLength = lineInfoLength;
         }
 
         int computeNextTabStop(Style style, Font font) {
@@ -2195,6 +2471,40 @@ public class TextArea extends Widget {
         }
     }
 
+    /**
+     * The state of the top level layout after a top level element
+     */
+    static class Checkpoint {
+        int numElements;
+        int layoutSize;
+        int numAnchors;
+        int numBGImages;
+        int numAllBGImages;
+        int numChildren;
+        int lineInfoLength;
+        int curY;
+        int curX;
+        int lineStartIdx;
+        int lastProcessedAnchorIdx;
+        int marginTop;
+        int marginLeft;
+        int marginRight;
+        int marginBottomAbs;
+        int marginBottomNext;
+        int lineStartX;
+        int lineWidth;
+        int fontLineHeight;
+        int minLineHeight;
+        int lastLineEnd;
+        int lastLineBottom;
+        int minRemainingWidth;
+        boolean wasAutoBreak;
+        boolean wasPreformatted;
+        HAlignment textAlignment;
+        String href;
+        Style style;
+    }
+
     static class RenderInfo {
         int offsetX;
         int offsetY;
@@ -2381,6 +2691,7 @@ public class TextArea extends Widget {
         final ArrayList<LImage> bgImages;
         final ArrayList<LElement> anchors;
         char[] lineInfo;
+        int lineInfoLength;
 
         LClip(TextAreaModel.Element element) {
             super(element);
@@ -2392,13 +2703,17 @@ public class TextArea extends Widget {
         
         @Override
         void draw(RenderInfo ri) {
+            draw(ri, 0, layout.size());
+        }
+        
+        void draw(RenderInfo ri, int start, int end) {
             ri.offsetX += x;
             ri.offsetY += y;
             ri.renderer.clipEnter(ri.offsetX, ri.offsetY, width, height);
             try {
                 if(!ri.renderer.clipIsEmpty()) {
                     final ArrayList<LElement> ll = layout;
-                    for(int i=0,n=ll.size() ; i<n ; i++) {
+                    for(int i=start ; i<end ; i++) {
                         ll.get(i).draw(ri);
                     }
                 }
@@ -2440,7 +2755,9 @@ public class TextArea extends Widget {
             }
             layout.clear();
             bgImages.clear();
+            anchors.clear();
             lineInfo = EMPTY_CHAR_ARRAY;
+            lineInfoLength = 0;
         }
 
         @Override
@@ -2449,7 +2766,7 @@ public class TextArea extends Widget {
             y -= this.y;
             int lineTop = 0;
             int layoutIdx = 0;
-            for(int lineIdx=0 ; lineIdx<lineInfo.length && y >= lineTop ;) {
+            for(int lineIdx=0 ; lineIdx<lineInfoLength && y >= lineTop ;) {
                 int lineBottom = lineInfo[lineIdx++];
                 int layoutCount = lineInfo[lineIdx++];
                 if(layoutCount > 0) {
@@ -2530,11 +2847,11 @@ public class TextArea extends Widget {
             for(int i=0,n=layout.size() ; i<n ; i++) {
                 layout.get(i).y += amount;
             }
-            if(lineInfo.length > 0) {
+            if(lineInfoLength > 0) {
                 if(lineInfo[1] == 0) {
                     lineInfo[0] += amount;
                 } else {
-                    int n = lineInfo.length;
+                    int n = lineInfoLength;
                     char[] tmpLineInfo = new char[n+2];
                     tmpLineInfo[0] = (char)amount;
                     for(int i=0 ; i<n ; i+=2) {
@@ -2546,6 +2863,7 @@ public class TextArea extends Widget {
                         tmpLineInfo[i+3] = lineInfo[i+1];
                     }
                     lineInfo = tmpLineInfo;
+                    lineInfoLength = n+2;
                 }
             }
         }
@@ -39,15 +39,22 @@ import java.util.logging.Logger;
  */
 public final class Timer {
 
+    private static final int TIMER_STOPPED = 0;
+    private static final int TIMER_RUNNING = 1;
     private static final int TIMER_COUNTER_IN_CALLBACK = -1;
     private static final int TIMER_COUNTER_DO_START = -2;
     private static final int TIMER_COUNTER_DO_STOP = -3;
 
     final GUI gui;
-    int counter;
+    int state;
     int delay = 10;
     boolean continuous;
     Runnable callback;
+    
+    // managed by GUI and TimerQueue
+    long deadline;
+    long sequence;
+    int queueIndex = -1;
 
     /**
      * Constructs a new timer
@@ -67,7 +74,7 @@ public final class Timer {
      * @return true if the timer is already running.
      */
     public boolean isRunning() {
-        return counter > 0 || (continuous && counter == TIMER_COUNTER_IN_CALLBACK);
+        return state > 0 || (continuous && state == TIMER_COUNTER_IN_CALLBACK);
     }
     
     /**
@@ -87,11 +94,11 @@ public final class Timer {
      * Starts the timer. If it is already running then this method does nothing.
      */
     public void start() {
-        if(counter == 0) {
-            counter = delay;
-            gui.activeTimers.add(this);
-        } else if(counter < 0) {
-            counter = TIMER_COUNTER_DO_START;
+        if(state == TIMER_STOPPED) {
+            state = TIMER_RUNNING;
+            gui.scheduleTimer(this, gui.timerTime + delay);
+        } else if(state < 0) {
+            state = TIMER_COUNTER_DO_START;
         }
     }
     
@@ -99,11 +106,11 @@ public final class Timer {
      * Stops the timer. If the timer is not running then this method does nothing.
      */
     public void stop() {
-        if(counter > 0) {
-            counter = 0;
-            gui.activeTimers.remove(this);
-        } else if(counter < 0) {
-            counter = TIMER_COUNTER_DO_STOP;
+        if(state > 0) {
+            state = TIMER_STOPPED;
+            gui.timerQueue.remove(this);
+        } else if(state < 0) {
+            state = TIMER_COUNTER_DO_STOP;
         }
     }
     
@@ -131,25 +138,28 @@ public final class Timer {
         this.continuous = continuous;
     }
     
-    boolean tick(int delta) {
-        int newCounter = counter - delta;
-        if(newCounter <= 0) {
-            boolean doStop = !continuous;
-            counter = TIMER_COUNTER_IN_CALLBACK;
-            doCallback();
-            if(counter == TIMER_COUNTER_DO_STOP) {
-                counter = 0;
-                return false;
-            }
-            if(doStop && counter != TIMER_COUNTER_DO_START) {
-                counter = 0;
-                return false;
-            }
-            // timer is already running
-            counter = Math.max(1, newCounter + delay);
-        } else {
-            counter = newCounter;
+    /**
+     * Called by the GUI after the timer was removed from the timer queue
+     * because its deadline has been reached.
+     * 
+     * @param now the current timer time of the GUI
+     * @return true if the timer must be scheduled again at {@link #deadline}
+     */
+    boolean fire(long now) {
+        boolean doStop = !continuous;
+        state = TIMER_COUNTER_IN_CALLBACK;
+        doCallback();
+        if(state == TIMER_COUNTER_DO_STOP) {
+            state = TIMER_STOPPED;
+            return false;
+        }
+        if(doStop && state != TIMER_COUNTER_DO_START) {
+            state = TIMER_STOPPED;
+            return false;
         }
+        // timer is already running
+        state = TIMER_RUNNING;
+        deadline = Math.max(now + 1, deadline + delay);
         return true;
     }
 
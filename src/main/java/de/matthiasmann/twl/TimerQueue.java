@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl;
+
+/**
+ * A binary min heap of running timers ordered by their deadline.
+ * 
+ * <p>Each timer stores its position in the heap so that it can be
+ * removed in O(log n) when it is stopped.</p>
+ * 
+ * @author Matthias Mann
+ */
+final class TimerQueue {
+
+    private Timer[] heap;
+    private int size;
+
+    TimerQueue() {
+        this.heap = new Timer[16];
+    }
+
+    int size() {
+        return size;
+    }
+    
+    Timer peek() {
+        return (size > 0) ? heap[0] : null;
+    }
+
+    void add(Timer timer) {
+        assert timer.queueIndex < 0;
+        if(size == heap.length) {
+            Timer[] newHeap = new Timer[size * 2];
+            System.arraycopy(heap, 0, newHeap, 0, size);
+            heap = newHeap;
+        }
+        siftUp(size++, timer);
+    }
+
+    Timer poll() {
+        if(size == 0) {
+            return null;
+        }
+        Timer timer = heap[0];
+        removeAt(0);
+        return timer;
+    }
+    
+    void remove(Timer timer) {
+        int idx = timer.queueIndex;
+        if(idx >= 0) {
+            assert heap[idx] == timer;
+            removeAt(idx);
+        }
+    }
+
+    private void removeAt(int idx) {
+        Timer removed = heap[idx];
+        removed.queueIndex = -1;
+        Timer last = heap[--size];
+        heap[size] = null;
+        if(idx < size) {
+            siftDown(idx, last);
+            if(heap[idx] == last) {
+                siftUp(idx, last);
+            }
+        }
+    }
+
+    private void siftUp(int idx, Timer timer) {
+        while(idx > 0) {
+            int parentIdx = (idx - 1) >> 1;
+            Timer parent = heap[parentIdx];
+            if(!isBefore(timer, parent)) {
+                break;
+            }
+            set(idx, parent);
+            idx = parentIdx;
+        }
+        set(idx, timer);
+    }
+
+    private void siftDown(int idx, Timer timer) {
+        int half = size >> 1;
+        while(idx < half) {
+            int childIdx = 2*idx + 1;
+            Timer child = heap[childIdx];
+            int rightIdx = childIdx + 1;
+            if(rightIdx < size && isBefore(heap[rightIdx], child)) {
+                childIdx = rightIdx;
+                child = heap[rightIdx];
+            }
+            if(!isBefore(child, timer)) {
+                break;
+            }
+            set(idx, child);
+            idx = childIdx;
+        }
+        set(idx, timer);
+    }
+    
+    private void set(int idx, Timer timer) {
+        heap[idx] = timer;
+        timer.queueIndex = idx;
+    }
+    
+    /**
+     * Timers with the same deadline fire in the order in which they
+     * were scheduled.
+     */
+    private static boolean isBefore(Timer a, Timer b) {
+        if(a.deadline != b.deadline) {
+            return a.deadline < b.deadline;
+        }
+        return a.sequence < b.sequence;
+    }
+}
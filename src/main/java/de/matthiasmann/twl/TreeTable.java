@@ -35,6 +35,9 @@ import de.matthiasmann.twl.model.TreeTableNode;
 import de.matthiasmann.twl.utils.CallbackSupport;
 import de.matthiasmann.twl.utils.HashEntry;
 import de.matthiasmann.twl.utils.SizeSequence;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
 
 /**
  * A Tree+Table widget.
@@ -141,17 +144,17 @@ public class TreeTable extends TableBase {
                 // parent was not yet expanded, or not part of tree
                 return -1;
             }
-            int idx = parent.getChildIndex(node);
+            int idx = ns.getChildIndex(node);
             if(idx < 0) {
                 // node is not part of the tree
                 return -1;
             }
+            if(!ns.expanded) {
+                // parent is collapsed
+                return -1;
+            }
             if(ns.childSizes == null) {
-                if(ns.expanded) {
-                    ns.initChildSizes();
-                } else {
-                    return -1;
-                }
+                ns.initChildSizes();
             }
             idx = ns.childSizes.getPosition(idx);
             position += idx + 1;
@@ -165,8 +168,8 @@ public class TreeTable extends TableBase {
         if(node.getParent() != null) {
             TreeTableNode parent = node.getParent();
             int row = getRowFromNodeExpand(parent);
-            int idx = parent.getChildIndex(node);
             NodeState ns = getOrCreateNodeState(parent);
+            int idx = ns.getChildIndex(node);
             ns.setValue(true);
             if(ns.childSizes == null) {
                 ns.initChildSizes();
@@ -196,6 +199,14 @@ public class TreeTable extends TableBase {
         }
     }
 
+    /**
+     * Collapses all nodes.
+     *
+     * <p>Each node is collapsed individually so that the selection is
+     * updated by row delete events.</p>
+     *
+     * @see #setNodesExpanded(java.util.Collection, boolean)
+     */
     public void collapseAll() {
         for(int i=0 ; i<nodeStateTable.length ; ++i) {
             for(NodeState ns=nodeStateTable[i] ; ns!=null ; ns=ns.next()) {
@@ -206,6 +217,55 @@ public class TreeTable extends TableBase {
         }
     }
 
+    /**
+     * Expands all non leaf nodes of the model.
+     *
+     * <p>The row mapping is rebuilt once after all nodes have been expanded.
+     * As with {@link #setNodesExpanded(java.util.Collection, boolean) } the
+     * selection is reset.</p>
+     *
+     * @see #setNodesExpanded(java.util.Collection, boolean)
+     */
+    public void expandAll() {
+        if(model != null) {
+            ArrayList<NodeState> changed = new ArrayList<NodeState>();
+            expandAll(rootNodeState, changed);
+            bulkExpandedChanged(changed);
+        }
+    }
+
+    /**
+     * Expands or collapses a set of nodes.
+     *
+     * <p>Unlike calling {@link #setRowExpanded(int, boolean) } for each node
+     * the row mapping and the row sizes are rebuilt only once. As this can't
+     * be described by row insert/delete events the selection is reset.</p>
+     *
+     * <p>Expanding a node does not expand it's parents - the node stays
+     * hidden until all it's parents are expanded. Expand listeners are called
+     * with a row of -1 for hidden nodes.</p>
+     *
+     * @param nodes the nodes to expand or collapse
+     * @param expanded the new expanded state
+     * @throws IllegalArgumentException if a node is not part of the model
+     */
+    public void setNodesExpanded(Collection<? extends TreeTableNode> nodes, boolean expanded) {
+        if(model != null) {
+            ArrayList<NodeState> changed = new ArrayList<NodeState>();
+            for(TreeTableNode node : nodes) {
+                if(node != model) {
+                    NodeState ns = expanded
+                            ? getOrCreateNodeStateWithParents(node)
+                            : HashEntry.get(nodeStateTable, node);
+                    if(ns != null) {
+                        setExpandedNoUpdate(ns, expanded, changed);
+                    }
+                }
+            }
+            bulkExpandedChanged(changed);
+        }
+    }
+
     public boolean isRowExpanded(int row) {
         checkRowIndex(row);
         TreeTableNode node = getNodeFromRow(row);
@@ -251,43 +311,135 @@ public class TreeTable extends TableBase {
         return newNS;
     }
 
-    protected void expandedChanged(NodeState ns) {
+    NodeState getOrCreateNodeStateWithParents(TreeTableNode node) {
+        NodeState ns = HashEntry.get(nodeStateTable, node);
+        if(ns == null) {
+            TreeTableNode parent = node.getParent();
+            if(parent == null) {
+                throw new IllegalArgumentException("node is not part of the model");
+            }
+            getOrCreateNodeStateWithParents(parent);
+            ns = createNodeState(node);
+        }
+        return ns;
+    }
+
+    private void expandAll(NodeState ns, ArrayList<NodeState> changed) {
         TreeTableNode node = ns.key;
+        for(int i=0,n=node.getNumChildren() ; i<n ; i++) {
+            TreeTableNode child = node.getChild(i);
+            if(!child.isLeaf()) {
+                NodeState nsChild = (ns.children != null) ? ns.children[i] : null;
+                if(nsChild == null) {
+                    nsChild = createNodeState(child);
+                }
+                setExpandedNoUpdate(nsChild, true, changed);
+                expandAll(nsChild, changed);
+            }
+        }
+    }
+
+    private static void setExpandedNoUpdate(NodeState ns, boolean expanded, ArrayList<NodeState> changed) {
+        if(ns.expanded != expanded) {
+            ns.expanded = expanded;
+            changed.add(ns);
+            for(; ns != null && !ns.sizesDirty ; ns=ns.parent) {
+                ns.sizesDirty = true;
+            }
+        }
+    }
+
+    /**
+     * Recomputes the child sizes of all dirty node states in a single bottom
+     * up pass.
+     */
+    private static void updateDirtyChildSizes(NodeState ns) {
+        ns.sizesDirty = false;
+        final NodeState[] children = ns.children;
+        if(children != null) {
+            if(ns.childSizes == null) {
+                ns.initChildSizes();
+            }
+            for(int i=0 ; i<children.length ; i++) {
+                NodeState nsChild = children[i];
+                if(nsChild != null && nsChild.sizesDirty) {
+                    updateDirtyChildSizes(nsChild);
+                    ns.childSizes.setSize(i, nsChild.expanded ? nsChild.getChildRows() + 1 : 1);
+                }
+            }
+        }
+    }
+
+    protected void bulkExpandedChanged(ArrayList<NodeState> changed) {
+        if(changed.isEmpty()) {
+            return;
+        }
+        if(rootNodeState.sizesDirty) {
+            updateDirtyChildSizes(rootNodeState);
+        }
+
+        numRows = computeNumRows();
+        modelAllRowsChanged();
+
+        for(int i=0,n=changed.size() ; i<n ; i++) {
+            CallbackSupport.fireCallbacks(changed.get(i).callbacks);
+        }
+        
+        if(expandListeners != null) {
+            for(int i=0,n=changed.size() ; i<n ; i++) {
+                NodeState ns = changed.get(i);
+                int row = isVisible(ns.parent) ? getRowFromNode(ns.key) : -1;
+                for(ExpandListener el : expandListeners) {
+                    if(ns.expanded) {
+                        el.nodeExpanded(row, ns.key);
+                    } else {
+                        el.nodeCollapsed(row, ns.key);
+                    }
+                }
+            }
+        }
+    }
+
+    protected void expandedChanged(NodeState ns) {
         int count = ns.getChildRows();
         int size = ns.expanded ? count : 0;
         
-        TreeTableNode parent = node.getParent();
-        while(parent != null) {
-            NodeState nsParent = HashEntry.get(nodeStateTable, parent);
+        NodeState nsChild = ns;
+        NodeState nsParent = ns.parent;
+        while(nsParent != null) {
             if(nsParent.childSizes == null) {
                 nsParent.initChildSizes();
             }
             
-            int idx = nsParent.key.getChildIndex(node);
+            int idx = nsParent.getChildIndex(nsChild.key);
             nsParent.childSizes.setSize(idx, size + 1);
-            size = nsParent.childSizes.getEndPosition();
+            // a collapsed parent hides the rows of it's children
+            size = nsParent.expanded ? nsParent.childSizes.getEndPosition() : 0;
 
-            node = parent;
-            parent = node.getParent();
+            nsChild = nsParent;
+            nsParent = nsChild.parent;
         }
 
         numRows = computeNumRows();
-        int row = getRowFromNode(ns.key);
-        if(ns.expanded) {
-            modelRowsInserted(row+1, count);
-        } else {
-            modelRowsDeleted(row+1, count);
-        }
-        modelRowsChanged(row, 1);
-
-        if(ns.expanded) {
-            ScrollPane scrollPane = ScrollPane.getContainingScrollPane(this);
-            if(scrollPane != null) {
-                scrollPane.validateLayout();
-                int rowStart = getRowStartPosition(row);
-                int rowEnd = getRowEndPosition(row + count);
-                int height = rowEnd - rowStart;
-                scrollPane.scrollToAreaY(rowStart, height, rowHeight/2);
+        int row = -1;
+        if(isVisible(ns.parent)) {
+            row = getRowFromNode(ns.key);
+            if(ns.expanded) {
+                modelRowsInserted(row+1, count);
+            } else {
+                modelRowsDeleted(row+1, count);
+            }
+            modelRowsChanged(row, 1);
+
+            if(ns.expanded) {
+                ScrollPane scrollPane = ScrollPane.getContainingScrollPane(this);
+                if(scrollPane != null) {
+                    scrollPane.validateLayout();
+                    int rowStart = getRowStartPosition(row);
+                    int rowEnd = getRowEndPosition(row + count);
+                    int height = rowEnd - rowStart;
+                    scrollPane.scrollToAreaY(rowStart, height, rowHeight/2);
+                }
             }
         }
         
@@ -344,7 +496,7 @@ public class TreeTable extends TableBase {
     private boolean updateParentSizes(NodeState ns) {
         while(ns.expanded && ns.parent != null) {
             NodeState parent = ns.parent;
-            int idx = parent.key.getChildIndex(ns.key);
+            int idx = parent.getChildIndex(ns.key);
             assert parent.childSizes.size() == parent.key.getNumChildren();
             parent.childSizes.setSize(idx, ns.getChildRows() + 1);
             ns = parent;
@@ -357,6 +509,7 @@ public class TreeTable extends TableBase {
         NodeState ns = HashEntry.get(nodeStateTable, parent);
         // if ns is null then this node has not yet been displayed
         if(ns != null) {
+            ns.childIndexCache = null;
             if(ns.childSizes != null) {
                 assert idx <= ns.childSizes.size();
                 ns.childSizes.insert(idx, count);
@@ -392,6 +545,7 @@ public class TreeTable extends TableBase {
         NodeState ns = HashEntry.get(nodeStateTable, parent);
         // if ns is null then this node has not yet been displayed
         if(ns != null) {
+            ns.childIndexCache = null;
             int rowsBase = getRowFromNode(parent) + 1;
             int rowsStart = rowsBase + idx;
             int rowsEnd = rowsBase + idx + count;
@@ -467,12 +621,20 @@ public class TreeTable extends TableBase {
         }
     }
 
+    /**
+     * Nodes with more children use a lookup table in {@link NodeState#getChildIndex(de.matthiasmann.twl.model.TreeTableNode) }
+     * instead of {@link TreeTableNode#getChildIndex(de.matthiasmann.twl.model.TreeTableNode) }
+     */
+    static final int CHILD_INDEX_CACHE_THRESHOLD = 16;
+
     protected class NodeState extends HashEntry<TreeTableNode, NodeState> implements BooleanModel {
         final NodeState parent;
         boolean expanded;
         boolean hasNoChildren;
+        boolean sizesDirty;
         SizeSequence childSizes;
         NodeState[] children;
+        IdentityHashMap<TreeTableNode, Integer> childIndexCache;
         Runnable[] callbacks;
         int level;
 
@@ -486,7 +648,7 @@ public class TreeTable extends TableBase {
                 if(parent.children == null) {
                     parent.children = new NodeState[parent.key.getNumChildren()];
                 }
-                parent.children[parent.key.getChildIndex(key)] = this;
+                parent.children[parent.getChildIndex(key)] = this;
             }
         }
 
@@ -510,6 +672,37 @@ public class TreeTable extends TableBase {
             }
         }
 
+        /**
+         * Returns the index of the child node like {@link TreeTableNode#getChildIndex(de.matthiasmann.twl.model.TreeTableNode) }
+         * but in O(1) for nodes with many children.
+         *
+         * @param child the child node
+         * @return the index of the child or -1 if it is not a child of this node
+         */
+        int getChildIndex(TreeTableNode child) {
+            final int numChildren = key.getNumChildren();
+            if(numChildren <= CHILD_INDEX_CACHE_THRESHOLD) {
+                return key.getChildIndex(child);
+            }
+            if(childIndexCache != null) {
+                Integer idx = childIndexCache.get(child);
+                if(idx == null) {
+                    return key.getChildIndex(child);
+                }
+                int i = idx;
+                if(i < numChildren && key.getChild(i) == child) {
+                    return i;
+                }
+            }
+            // the cache is missing or outdated
+            childIndexCache = new IdentityHashMap<TreeTableNode, Integer>(numChildren);
+            for(int i=0 ; i<numChildren ; i++) {
+                childIndexCache.put(key.getChild(i), i);
+            }
+            Integer idx = childIndexCache.get(child);
+            return (idx != null) ? idx : -1;
+        }
+
         void initChildSizes() {
             childSizes = new SizeSequence();
             childSizes.setDefaultValue(1);
@@ -428,6 +428,7 @@ public abstract class ValueAdjuster extends Widget {
     class ModelCallback implements Runnable {
         public void run() {
             syncWithModel();
+            repaint();
         }
     }
 
@@ -100,7 +100,9 @@ public class Widget {
     private int width;
     private int height;
     private int layoutInvalid;
+    private boolean childLayoutInvalid;
     private boolean clip;
+    private boolean paintCulling = true;
     private boolean visible = true;
     private boolean hasOpenPopup;
     private boolean enabled = true;
@@ -206,6 +208,7 @@ public class Widget {
 
         if(animState == null || inherit) {
             this.animState = new AnimationState(animState);
+            this.animState.owner = this;
             this.sharedAnimState = false;
         } else {
             this.animState = animState;
@@ -332,7 +335,9 @@ public class Widget {
      */
     public void setVisible(boolean visible) {
         if(this.visible != visible) {
+            repaint();
             this.visible = visible;
+            repaint();
             if(!visible) {
                 GUI gui = getGUI();
                 if(gui != null) {
@@ -555,7 +560,12 @@ public class Widget {
      * @see #layout()
      */
     public boolean setPosition(int x, int y) {
-        return setPositionImpl(x, y);
+        repaint();
+        if(setPositionImpl(x, y)) {
+            repaint();
+            return true;
+        }
+        return false;
     }
     
     /** 
@@ -586,8 +596,10 @@ public class Widget {
         int oldWidth = this.width;
         int oldHeight = this.height;
         if(oldWidth != width || oldHeight != height) {
+            repaint();
             this.width = width;
             this.height = height;
+            repaint();
 
             sizeChanged();
             
@@ -996,6 +1008,10 @@ public class Widget {
     
     /**
      * Calls layout() if the layout is marked invalid.
+     * 
+     * <p>Only children which have an invalid layout or which contain a
+     * widget with an invalid layout are validated.</p>
+     * 
      * @see #invalidateLayout()
      * @see #layout()
      */
@@ -1006,10 +1022,20 @@ public class Widget {
              */
             layoutInvalid = 0;
             layout();
+            repaint();
         }
-        if(children != null) {
-            for(int i=0,n=children.size() ; i<n ; i++) {
-                children.get(i).validateLayout();
+        if(childLayoutInvalid) {
+            /* Reset the flag before validating the children so that
+             * invalidations from inside layout() are propagated again
+             */
+            childLayoutInvalid = false;
+            if(children != null) {
+                for(int i=0,n=children.size() ; i<n ; i++) {
+                    Widget child = children.get(i);
+                    if(child.layoutInvalid != 0 || child.childLayoutInvalid) {
+                        child.validateLayout();
+                    }
+                }
             }
         }
     }
@@ -1108,6 +1134,33 @@ public class Widget {
         this.clip = clip;
     }
 
+    /**
+     * Returns true if painting of this widget can be skipped when it is
+     * outside of the active clip region.
+     * @return true if paint culling is enabled for this widget
+     * @see #setPaintCulling(boolean) 
+     */
+    public boolean isPaintCulling() {
+        return paintCulling;
+    }
+
+    /**
+     * Sets whether this widget (and all it's children) can be skipped by
+     * {@link #paintChildren(de.matthiasmann.twl.GUI) } when it's outer area
+     * extended by the offscreen extra area does not intersect the active
+     * clip region.
+     *
+     * Widgets which paint outside of this area or which have children
+     * outside of this area must disable paint culling.
+     *
+     * @param paintCulling true if paint culling can be used - default is true
+     * @see #setOffscreenExtra(int, int, int, int) 
+     * @see GUI#getNumCulledWidgets() 
+     */
+    public void setPaintCulling(boolean paintCulling) {
+        this.paintCulling = paintCulling;
+    }
+
     /**
      * Returns if this widget will handle the FOCUS_KEY.
      * @return if this widget will handle the FOCUS_KEY.
@@ -1144,6 +1197,7 @@ public class Widget {
      */
     public void setBackground(Image background) {
         this.background = background;
+        repaint();
     }
 
     /**
@@ -1162,6 +1216,7 @@ public class Widget {
      */
     public void setOverlay(Image overlay) {
         this.overlay = overlay;
+        repaint();
     }
     
     /**
@@ -1252,6 +1307,9 @@ public class Widget {
         }
         child.setParent(this);  // can throw exception - see PopupWindow
         children.add(index, child);
+        if(child.layoutInvalid != 0 || child.childLayoutInvalid) {
+            childLayoutInvalidated();
+        }
         GUI gui = getGUI();
         if(gui != null) {
             child.recursivelySetGUI(gui);
@@ -1264,6 +1322,7 @@ public class Widget {
         if(themeManager != null) {
             child.applyTheme(themeManager);
         }
+        child.repaint();
         try {
             childAdded(child);
         } catch(Exception ex) {
@@ -1320,6 +1379,7 @@ public class Widget {
     public Widget removeChild(int index) throws IndexOutOfBoundsException {
         if(children != null) {
             Widget child = children.remove(index);
+            child.repaint();
             unparentChild(child);
             if(lastChildMouseOver == child) {
                 lastChildMouseOver = null;
@@ -1343,6 +1403,7 @@ public class Widget {
      */
     public void removeAllChildren() {
         if(children != null) {
+            repaint();
             focusChild = null;
             lastChildMouseOver = null;
             for(int i=0,n=children.size() ; i<n ; i++) {
@@ -1490,6 +1551,7 @@ public class Widget {
      */
     public void setTintAnimator(TintAnimator tintAnimator) {
         this.tintAnimator = tintAnimator;
+        repaint();
     }
 
     /**
@@ -2107,14 +2169,17 @@ public class Widget {
 
     /**
      * Paints all children in index order. Invisible children are skipped.
+     * Children which are completely outside of the active clip region are
+     * also skipped unless they disabled paint culling.
      * @param gui the GUI object
      * @see #paint(de.matthiasmann.twl.GUI) 
+     * @see #setPaintCulling(boolean) 
      */
     protected void paintChildren(GUI gui) {
         if(children != null) {
             for(int i=0,n=children.size() ; i<n ; i++) {
                 Widget child = children.get(i);
-                if(child.visible) {
+                if(child.visible && !child.isPaintCulled(gui)) {
                     child.drawWidget(gui);
                 }
             }
@@ -2134,6 +2199,43 @@ public class Widget {
         child.drawWidget(gui);
     }
 
+    /**
+     * Marks the area of this widget (including the offscreen extra area)
+     * as dirty so that it will be redrawn on the next frame when the GUI is
+     * in partial redraw mode. Does nothing otherwise.
+     * 
+     * <p>Subclasses should call this method when their visual appearance
+     * changes without a layout or animation state change - eg from a model
+     * callback or a timer.</p>
+     * 
+     * @see GUI#setPartialRedraw(boolean) 
+     */
+    public void repaint() {
+        GUI gui = guiInstance;
+        if(gui != null && gui.partialRedraw) {
+            gui.addDirtyRect(posX - offscreenExtraLeft, posY - offscreenExtraTop,
+                    width + offscreenExtraLeft + offscreenExtraRight,
+                    height + offscreenExtraTop + offscreenExtraBottom);
+        }
+    }
+    
+    /**
+     * Marks the specified area as dirty so that it will be redrawn on the
+     * next frame when the GUI is in partial redraw mode. Does nothing otherwise.
+     * 
+     * @param x the absolute X coordinate
+     * @param y the absolute Y coordinate
+     * @param w the width
+     * @param h the height
+     * @see #repaint() 
+     */
+    public void repaint(int x, int y, int w, int h) {
+        GUI gui = guiInstance;
+        if(gui != null && gui.partialRedraw) {
+            gui.addDirtyRect(x, y, w, h);
+        }
+    }
+
     /**
      * Called after all other widgets have been rendered when a drag operation is in progress.
      * The mouse position can be outsife of this widget
@@ -2157,6 +2259,9 @@ public class Widget {
     protected final void invalidateLayoutLocally() {
         if(layoutInvalid < LAYOUT_INVALID_LOCAL) {
             layoutInvalid = LAYOUT_INVALID_LOCAL;
+            if(parent != null) {
+                parent.childLayoutInvalidated();
+            }
             GUI gui = getGUI();
             if(gui != null) {
                 gui.hasInvalidLayouts = true;
@@ -2368,6 +2473,16 @@ public class Widget {
         this.parent = parent;
     }
     
+    /**
+     * Marks the path from this widget to the root as containing an
+     * invalid layout so that validateLayout can skip all other subtrees.
+     */
+    private void childLayoutInvalidated() {
+        for(Widget w=this ; w != null && !w.childLayoutInvalid ; w=w.parent) {
+            w.childLayoutInvalid = true;
+        }
+    }
+    
     private void unparentChild(Widget child) {
         GUI gui = getGUI();
         if(child.hasOpenPopup) { 
@@ -2548,6 +2663,13 @@ public class Widget {
         return layoutInvalid != 0;
     }
     
+    private boolean isPaintCulled(GUI gui) {
+        return paintCulling && gui.cullPaint(
+                posX - offscreenExtraLeft, posY - offscreenExtraTop,
+                width + offscreenExtraLeft + offscreenExtraRight,
+                height + offscreenExtraTop + offscreenExtraBottom);
+    }
+
     final void drawWidget(GUI gui) {
         if(renderOffscreen != null) {
             drawWidgetOffscreen(gui);
@@ -2579,6 +2701,9 @@ public class Widget {
         } finally {
             renderer.popGlobalTintColor();
         }
+        if(tintAnimator.isFadeActive()) {
+            repaint();
+        }
     }
 
     private void drawWidgetClip(GUI gui) {
@@ -2607,7 +2732,7 @@ public class Widget {
                 extraRight += effectExtra[2];
                 extraBottom += effectExtra[3];
             }
-            if(offscreenSurface != null && !ro.needPainting(gui, parent, offscreenSurface)) {
+            if(offscreenSurface != null && !ro.needPainting(gui, this, offscreenSurface)) {
                 ro.paintOffscreenSurface(gui, this, offscreenSurface);
                 return;
             }
@@ -2924,7 +3049,7 @@ public class Widget {
         if(layoutInvalid != 0) {
             result.add(this);
         }
-        if(children != null) {
+        if(childLayoutInvalid && children != null) {
             for(int i=0,n=children.size() ; i<n ; i++) {
                 children.get(i).collectLayoutLoop(result);
             }
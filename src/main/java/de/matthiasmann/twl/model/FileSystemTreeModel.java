@@ -105,6 +105,89 @@ public class FileSystemTreeModel extends AbstractTreeTableModel {
         return null;
     }
 
+    /**
+     * Updates the child nodes of a folder after sub folders have been
+     * created, modified or deleted.
+     * 
+     * <p>Nothing is done when the child nodes of that folder have not yet
+     * been requested - they will be listed when they are needed.</p>
+     * 
+     * @param folder the folder which content has changed
+     * @param changed files or folders which have been created or modified - can be null
+     * @param deleted files or folders which have been deleted - can be null
+     */
+    public void updateFolder(Object folder, Object[] changed, Object[] deleted) {
+        FolderNode node = findLoadedNode(folder);
+        if(node == null) {
+            return;
+        }
+        if(deleted != null) {
+            for(Object file : deleted) {
+                int idx = node.findChild(file);
+                if(idx >= 0) {
+                    node.removeChild(idx);
+                }
+            }
+        }
+        if(changed != null) {
+            for(Object file : changed) {
+                int idx = node.findChild(file);
+                boolean isFolder = fsm.isFolder(file);
+                if(idx >= 0) {
+                    if(isFolder) {
+                        fireNodesChanged(node, idx, 1);
+                    } else {
+                        node.removeChild(idx);
+                    }
+                } else if(isFolder) {
+                    node.insertChild(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lists the sub folders of the specified folder again.
+     * 
+     * <p>Nothing is done when the child nodes of that folder have not yet
+     * been requested.</p>
+     * 
+     * @param folder the folder to refresh
+     */
+    public void refreshFolder(Object folder) {
+        FolderNode node = findLoadedNode(folder);
+        if(node != null) {
+            node.refreshChildren();
+        }
+    }
+
+    /**
+     * Finds the node for the specified folder without listing any folders.
+     * @param folder the folder
+     * @return the node or null if the folder was not yet listed
+     */
+    FolderNode findLoadedNode(Object folder) {
+        Object parent = fsm.getParent(folder);
+        if(parent == null) {
+            for(int i=0,n=getNumChildren() ; i<n ; i++) {
+                FolderNode node = (FolderNode)getChild(i);
+                if(fsm.equals(node.folder, folder)) {
+                    return (node.children != null) ? node : null;
+                }
+            }
+            return null;
+        }
+        FolderNode parentNode = findLoadedNode(parent);
+        if(parentNode != null) {
+            int idx = parentNode.findChild(folder);
+            if(idx >= 0) {
+                FolderNode node = parentNode.children[idx];
+                return (node.children != null) ? node : null;
+            }
+        }
+        return null;
+    }
+
     public Comparator<Object> getSorter() {
         return sorter;
     }
@@ -162,6 +245,14 @@ public class FileSystemTreeModel extends AbstractTreeTableModel {
             return sb.toString();
         }
 
+        /**
+         * Returns true if the sub folders of this folder have been listed.
+         * @return true if the child nodes are available without listing the folder
+         */
+        public boolean isLoaded() {
+            return children != null;
+        }
+
         public TreeTableNode getChild(int idx) {
             return children[idx];
         }
@@ -219,6 +310,59 @@ public class FileSystemTreeModel extends AbstractTreeTableModel {
             }
         }
 
+        int findChild(Object file) {
+            for(int i=0,n=children.length ; i<n ; i++) {
+                if(fsm.equals(children[i].folder, file)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void insertChild(Object subFolder) {
+            final FileSystemTreeModel treeModel = getTreeModel();
+            final Comparator<Object> sorter = treeModel.sorter;
+            int idx = children.length;
+            if(sorter != null) {
+                int lo = 0;
+                while(lo < idx) {
+                    int mid = (lo + idx) >>> 1;
+                    if(sorter.compare(children[mid].folder, subFolder) <= 0) {
+                        lo = mid + 1;
+                    } else {
+                        idx = mid;
+                    }
+                }
+            }
+            FolderNode[] newChildren = new FolderNode[children.length + 1];
+            System.arraycopy(children, 0, newChildren, 0, idx);
+            System.arraycopy(children, idx, newChildren, idx+1, children.length - idx);
+            newChildren[idx] = new FolderNode(this, fsm, subFolder);
+            children = newChildren;
+            treeModel.fireNodesAdded(this, idx, 1);
+        }
+
+        void removeChild(int idx) {
+            FolderNode[] newChildren = new FolderNode[children.length - 1];
+            System.arraycopy(children, 0, newChildren, 0, idx);
+            System.arraycopy(children, idx+1, newChildren, idx, newChildren.length - idx);
+            children = newChildren;
+            getTreeModel().fireNodesRemoved(this, idx, 1);
+        }
+
+        void refreshChildren() {
+            final FileSystemTreeModel treeModel = getTreeModel();
+            int oldCount = children.length;
+            children = NO_CHILDREN;
+            if(oldCount > 0) {
+                treeModel.fireNodesRemoved(this, 0, oldCount);
+            }
+            collectChilds();
+            if(children.length > 0) {
+                treeModel.fireNodesAdded(this, 0, children.length);
+            }
+        }
+
         private Date getlastModified() {
             if(parent instanceof FileSystemTreeModel) {
                 // don't call getLastModified on roots - causes bad performance
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl.model;
+
+import de.matthiasmann.twl.utils.CallbackSupport;
+
+/**
+ * An {@code EditFieldModel} based on a gap buffer.
+ * 
+ * <p>The text is stored in a char array with a gap at the last edit
+ * position. Consecutive edits at nearby positions (eg typing) only move a
+ * few characters. The positions of all line breaks are kept in a second
+ * gap buffer which uses the same gap position. Positions after the gap are
+ * stored relative to the end of the text so that edits don't need to
+ * update them. This allows line lookups in O(log n).</p>
+ * 
+ * @author Matthias Mann
+ */
+public class GapBufferEditFieldModel implements MultiLineEditFieldModel {
+
+    private static final int MIN_GAP = 64;
+    
+    private char[] buffer;
+    private int gapStart;
+    private int gapEnd;
+    
+    /** line break positions: absolute before lineGapStart, relative to the end from lineGapEnd */
+    private int[] lineBreaks;
+    private int lineGapStart;
+    private int lineGapEnd;
+    
+    private Callback[] callbacks;
+
+    public GapBufferEditFieldModel() {
+        this.buffer = new char[MIN_GAP];
+        this.gapEnd = buffer.length;
+        this.lineBreaks = new int[16];
+        this.lineGapEnd = lineBreaks.length;
+    }
+
+    public int length() {
+        return buffer.length - (gapEnd - gapStart);
+    }
+
+    public char charAt(int index) {
+        if(index < 0) {
+            throw new StringIndexOutOfBoundsException(index);
+        }
+        if(index >= gapStart) {
+            index += gapEnd - gapStart;
+            if(index >= buffer.length) {
+                throw new StringIndexOutOfBoundsException(index);
+            }
+        }
+        return buffer[index];
+    }
+
+    public CharSequence subSequence(int start, int end) {
+        return substring(start, end);
+    }
+
+    public String substring(int start, int end) {
+        if(start < 0 || start > end || end > length()) {
+            throw new StringIndexOutOfBoundsException();
+        }
+        if(end <= gapStart) {
+            return new String(buffer, start, end - start);
+        }
+        int gapLength = gapEnd - gapStart;
+        if(start >= gapStart) {
+            return new String(buffer, start + gapLength, end - start);
+        }
+        char[] tmp = new char[end - start];
+        System.arraycopy(buffer, start, tmp, 0, gapStart - start);
+        System.arraycopy(buffer, gapEnd, tmp, gapStart - start, end - gapStart);
+        return new String(tmp);
+    }
+
+    @Override
+    public String toString() {
+        return substring(0, length());
+    }
+
+    public void addCallback(Callback callback) {
+        callbacks = CallbackSupport.addCallbackToList(callbacks, callback, Callback.class);
+    }
+
+    public void removeCallback(Callback callback) {
+        callbacks = CallbackSupport.removeCallbackFromList(callbacks, callback);
+    }
+
+    public int replace(int start, int count, String replacement) {
+        checkRange(start, count);
+        int replacementLength = replacement.length();
+        if(count > 0 || replacementLength > 0) {
+            delete(start, count);
+            ensureGap(replacementLength);
+            for(int i=0 ; i<replacementLength ; i++) {
+                insertChar(replacement.charAt(i));
+            }
+            fireCallback(start, count, replacementLength);
+        }
+        return replacementLength;
+    }
+
+    public boolean replace(int start, int count, char replacement) {
+        checkRange(start, count);
+        delete(start, count);
+        ensureGap(1);
+        insertChar(replacement);
+        fireCallback(start, count, 1);
+        return true;
+    }
+
+    public int getNumLines() {
+        return getNumLineBreaks() + 1;
+    }
+
+    public int getLineNumber(int index) {
+        if(index < 0 || index > length()) {
+            throw new StringIndexOutOfBoundsException(index);
+        }
+        // count the line breaks before index
+        int lo = 0;
+        int hi = getNumLineBreaks();
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(getLineBreak(mid) < index) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    public int getLineStart(int line) {
+        checkLine(line);
+        return (line == 0) ? 0 : getLineBreak(line - 1) + 1;
+    }
+
+    public int getLineEnd(int line) {
+        checkLine(line);
+        return (line < getNumLineBreaks()) ? getLineBreak(line) : length();
+    }
+
+    private int getNumLineBreaks() {
+        return lineGapStart + (lineBreaks.length - lineGapEnd);
+    }
+
+    private int getLineBreak(int idx) {
+        if(idx < lineGapStart) {
+            return lineBreaks[idx];
+        }
+        return lineBreaks[idx - lineGapStart + lineGapEnd] + length();
+    }
+
+    private void checkLine(int line) {
+        if(line < 0 || line > getNumLineBreaks()) {
+            throw new IndexOutOfBoundsException(Integer.toString(line));
+        }
+    }
+
+    private void checkRange(int start, int count) {
+        int len = length();
+        if(start < 0 || start > len) {
+            throw new StringIndexOutOfBoundsException(start);
+        }
+        if(count < 0 || count > len - start) {
+            throw new StringIndexOutOfBoundsException();
+        }
+    }
+
+    private void delete(int start, int count) {
+        moveGap(start);
+        if(count > 0) {
+            // the deleted line breaks are at the start of the relative part
+            final int len = length();
+            final int end = start + count;
+            while(lineGapEnd < lineBreaks.length && lineBreaks[lineGapEnd] + len < end) {
+                lineGapEnd++;
+            }
+            gapEnd += count;
+        }
+    }
+
+    private void insertChar(char ch) {
+        if(ch == '\n') {
+            if(lineGapStart == lineGapEnd) {
+                growLineBreaks();
+            }
+            lineBreaks[lineGapStart++] = gapStart;
+        }
+        buffer[gapStart++] = ch;
+    }
+
+    private void moveGap(int pos) {
+        if(pos < gapStart) {
+            final int len = length();
+            while(lineGapStart > 0 && lineBreaks[lineGapStart-1] >= pos) {
+                lineBreaks[--lineGapEnd] = lineBreaks[--lineGapStart] - len;
+            }
+            int count = gapStart - pos;
+            System.arraycopy(buffer, pos, buffer, gapEnd - count, count);
+            gapStart -= count;
+            gapEnd -= count;
+        } else if(pos > gapStart) {
+            final int len = length();
+            while(lineGapEnd < lineBreaks.length && lineBreaks[lineGapEnd] + len < pos) {
+                lineBreaks[lineGapStart++] = lineBreaks[lineGapEnd++] + len;
+            }
+            int count = pos - gapStart;
+            System.arraycopy(buffer, gapEnd, buffer, gapStart, count);
+            gapStart += count;
+            gapEnd += count;
+        }
+    }
+
+    private void ensureGap(int required) {
+        int gapLength = gapEnd - gapStart;
+        if(gapLength < required) {
+            int len = length();
+            int newCapacity = Math.max(len + required + MIN_GAP, buffer.length * 3 / 2);
+            char[] newBuffer = new char[newCapacity];
+            int tailLength = buffer.length - gapEnd;
+            System.arraycopy(buffer, 0, newBuffer, 0, gapStart);
+            System.arraycopy(buffer, gapEnd, newBuffer, newCapacity - tailLength, tailLength);
+            buffer = newBuffer;
+            gapEnd = newCapacity - tailLength;
+        }
+    }
+
+    private void growLineBreaks() {
+        int tailLength = lineBreaks.length - lineGapEnd;
+        int[] newLineBreaks = new int[lineBreaks.length * 2];
+        System.arraycopy(lineBreaks, 0, newLineBreaks, 0, lineGapStart);
+        System.arraycopy(lineBreaks, lineGapEnd, newLineBreaks, newLineBreaks.length - tailLength, tailLength);
+        lineBreaks = newLineBreaks;
+        lineGapEnd = newLineBreaks.length - tailLength;
+    }
+
+    private void fireCallback(int start, int oldCount, int newCount) {
+        Callback[] cbs = this.callbacks;
+        if(cbs != null) {
+            for(Callback cb : cbs) {
+                cb.charactersChanged(start, oldCount, newCount);
+            }
+        }
+    }
+}
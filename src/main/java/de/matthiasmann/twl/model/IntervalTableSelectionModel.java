@@ -0,0 +1,377 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl.model;
+
+/**
+ * A table selection model for multi selection which stores the selection
+ * as sorted list of disjoint intervals.
+ * 
+ * <p>The cost of all operations depends on the number of selected intervals
+ * and not on the number of selected rows. Selecting all rows of a huge
+ * table or inserting rows in front of a large selection is cheap.</p>
+ * 
+ * <p>To iterate over the selection without creating an array use either
+ * the intervals ({@link #getNumIntervals() }, {@link #getIntervalStart(int) },
+ * {@link #getIntervalEnd(int) }) or {@link #getNextSelected(int) }.</p>
+ *
+ * @author Matthias Mann
+ */
+public class IntervalTableSelectionModel extends AbstractTableSelectionModel {
+
+    private static final int MODE_ADD    = 0;
+    private static final int MODE_REMOVE = 1;
+    private static final int MODE_INVERT = 2;
+    
+    private int[] starts;
+    private int[] ends;
+    private int numIntervals;
+    
+    // the interval found by the last isSelected call - rows are usually
+    // queried in ascending order while painting
+    private int lastInterval;
+    
+    // temporary storage for the new intervals of an update
+    private int[] pieces;
+    private int numPieces;
+    
+    public IntervalTableSelectionModel() {
+        this.starts = new int[8];
+        this.ends = new int[8];
+        this.pieces = new int[8];
+    }
+
+    public int getFirstSelected() {
+        return (numIntervals > 0) ? starts[0] : Integer.MAX_VALUE;
+    }
+
+    public int getLastSelected() {
+        return (numIntervals > 0) ? ends[numIntervals-1] : Integer.MIN_VALUE;
+    }
+
+    public boolean hasSelection() {
+        return numIntervals > 0;
+    }
+
+    public boolean isSelected(int index) {
+        int idx = lastInterval;
+        final int n = numIntervals;
+        if(idx >= n || starts[idx] > index) {
+            idx = lastStartAtMost(index);
+            if(idx < 0) {
+                return false;
+            }
+            lastInterval = idx;
+        } else if(idx + 1 < n && starts[idx + 1] <= index) {
+            // when walking down the rows the next interval is the most likely
+            idx++;
+            if(idx + 1 < n && starts[idx + 1] <= index) {
+                idx = lastStartAtMost(index);
+            }
+            lastInterval = idx;
+        }
+        return ends[idx] >= index;
+    }
+
+    /**
+     * Returns the number of disjoint selected intervals.
+     * @return the number of intervals
+     */
+    public int getNumIntervals() {
+        return numIntervals;
+    }
+    
+    /**
+     * Returns the first row of the specified interval.
+     * @param interval the interval index
+     * @return the first row (inclusive)
+     * @see #getNumIntervals()
+     */
+    public int getIntervalStart(int interval) {
+        if(interval < 0 || interval >= numIntervals) {
+            throw new IndexOutOfBoundsException();
+        }
+        return starts[interval];
+    }
+    
+    /**
+     * Returns the last row of the specified interval.
+     * @param interval the interval index
+     * @return the last row (inclusive)
+     * @see #getNumIntervals()
+     */
+    public int getIntervalEnd(int interval) {
+        if(interval < 0 || interval >= numIntervals) {
+            throw new IndexOutOfBoundsException();
+        }
+        return ends[interval];
+    }
+    
+    /**
+     * Returns the first selected row which is equal or greater then the specified row.
+     * 
+     * <p>All selected rows can be iterated with
+     * {@code for(int i=m.getNextSelected(0) ; i>=0 ; i=m.getNextSelected(i+1))}</p>
+     * 
+     * @param index the start row
+     * @return the next selected row or -1 if there are no more selected rows
+     */
+    public int getNextSelected(int index) {
+        int idx = firstEndAtLeast(index);
+        if(idx == numIntervals) {
+            return -1;
+        }
+        return Math.max(index, starts[idx]);
+    }
+    
+    /**
+     * Returns the number of selected rows.
+     * @return the number of selected rows
+     */
+    public int getNumSelected() {
+        int count = 0;
+        for(int i=0 ; i<numIntervals ; i++) {
+            count += ends[i] - starts[i] + 1;
+        }
+        return count;
+    }
+
+    public void clearSelection() {
+        if(hasSelection()) {
+            numIntervals = 0;
+            fireSelectionChange();
+        }
+    }
+
+    public void setSelection(int index0, int index1) {
+        updateLeadAndAnchor(index0, index1);
+        starts[0] = Math.min(index0, index1);
+        ends[0] = Math.max(index0, index1);
+        numIntervals = 1;
+        fireSelectionChange();
+    }
+
+    public void addSelection(int index0, int index1) {
+        updateLeadAndAnchor(index0, index1);
+        update(Math.min(index0, index1), Math.max(index0, index1), MODE_ADD);
+        fireSelectionChange();
+    }
+
+    public void invertSelection(int index0, int index1) {
+        updateLeadAndAnchor(index0, index1);
+        update(Math.min(index0, index1), Math.max(index0, index1), MODE_INVERT);
+        fireSelectionChange();
+    }
+
+    public void removeSelection(int index0, int index1) {
+        updateLeadAndAnchor(index0, index1);
+        if(hasSelection()) {
+            update(Math.min(index0, index1), Math.max(index0, index1), MODE_REMOVE);
+            fireSelectionChange();
+        }
+    }
+
+    public int[] getSelection() {
+        int[] result = new int[getNumSelected()];
+        int pos = 0;
+        for(int i=0 ; i<numIntervals ; i++) {
+            for(int row=starts[i],end=ends[i] ; row<=end ; row++) {
+                result[pos++] = row;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void rowsInserted(int index, int count) {
+        int idx = firstEndAtLeast(index);
+        if(idx < numIntervals) {
+            if(starts[idx] < index) {
+                // split the interval which contains the insert position
+                int end = ends[idx];
+                ends[idx] = index - 1;
+                numPieces = 0;
+                addPiece(index, end);
+                replace(idx+1, idx);
+                idx++;
+            }
+            for(int i=idx ; i<numIntervals ; i++) {
+                starts[i] += count;
+                ends[i] += count;
+            }
+        }
+        super.rowsInserted(index, count);
+    }
+
+    @Override
+    public void rowsDeleted(int index, int count) {
+        if(count > 0 && hasSelection()) {
+            update(index, index + count - 1, MODE_REMOVE);
+            int idx = firstEndAtLeast(index);
+            for(int i=idx ; i<numIntervals ; i++) {
+                starts[i] -= count;
+                ends[i] -= count;
+            }
+            // the intervals left and right of the deleted range may touch now
+            if(idx > 0 && idx < numIntervals && ends[idx-1] + 1 == starts[idx]) {
+                numPieces = 0;
+                addPiece(starts[idx-1], ends[idx]);
+                replace(idx-1, idx);
+            }
+        }
+        super.rowsDeleted(index, count);
+    }
+
+    /**
+     * Applies the operation to the range [min, max]. All intervals which
+     * overlap or touch the range are replaced by the resulting intervals.
+     */
+    private void update(int min, int max, int mode) {
+        int first = firstEndAtLeast(min - 1);
+        int last = lastStartAtMost(max + 1);
+        
+        numPieces = 0;
+        if(first <= last && starts[first] < min) {
+            addPiece(starts[first], Math.min(ends[first], min - 1));
+        }
+        switch(mode) {
+            case MODE_ADD:
+                addPiece(min, max);
+                break;
+            case MODE_INVERT: {
+                int pos = min;
+                for(int i=first ; i<=last ; i++) {
+                    int s = Math.max(starts[i], min);
+                    int e = Math.min(ends[i], max);
+                    if(s <= e) {
+                        if(pos < s) {
+                            addPiece(pos, s - 1);
+                        }
+                        pos = e + 1;
+                    }
+                }
+                if(pos <= max) {
+                    addPiece(pos, max);
+                }
+                break;
+            }
+        }
+        if(first <= last && ends[last] > max) {
+            addPiece(Math.max(starts[last], max + 1), ends[last]);
+        }
+        
+        replace(first, last);
+    }
+    
+    /**
+     * Appends an interval to {@code pieces} and merges it with the previous
+     * one if they touch.
+     */
+    private void addPiece(int start, int end) {
+        if(numPieces > 0 && pieces[numPieces*2 - 1] + 1 >= start) {
+            pieces[numPieces*2 - 1] = Math.max(end, pieces[numPieces*2 - 1]);
+        } else {
+            if(numPieces*2 == pieces.length) {
+                int[] newPieces = new int[pieces.length * 2];
+                System.arraycopy(pieces, 0, newPieces, 0, pieces.length);
+                pieces = newPieces;
+            }
+            pieces[numPieces*2] = start;
+            pieces[numPieces*2 + 1] = end;
+            numPieces++;
+        }
+    }
+    
+    /**
+     * Replaces the intervals [first, last] with the intervals from the
+     * {@code pieces} array. When {@code last < first} the new intervals
+     * are inserted at {@code first}.
+     */
+    private void replace(int first, int last) {
+        int numOld = last - first + 1;
+        int newCount = numIntervals - numOld + numPieces;
+        if(newCount > starts.length) {
+            int newSize = Math.max(newCount, starts.length * 2);
+            starts = grow(starts, newSize);
+            ends = grow(ends, newSize);
+        }
+        if(numOld != numPieces) {
+            int tail = numIntervals - (last + 1);
+            System.arraycopy(starts, last + 1, starts, first + numPieces, tail);
+            System.arraycopy(ends, last + 1, ends, first + numPieces, tail);
+        }
+        for(int i=0 ; i<numPieces ; i++) {
+            starts[first + i] = pieces[i*2];
+            ends[first + i] = pieces[i*2 + 1];
+        }
+        numIntervals = newCount;
+    }
+    
+    private int[] grow(int[] array, int size) {
+        int[] newArray = new int[size];
+        System.arraycopy(array, 0, newArray, 0, numIntervals);
+        return newArray;
+    }
+    
+    /**
+     * @return the index of the first interval which ends at or after value
+     *         or numIntervals if there is none
+     */
+    private int firstEndAtLeast(int value) {
+        int lo = 0;
+        int hi = numIntervals;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(ends[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+    
+    /**
+     * @return the index of the last interval which starts at or before value
+     *         or -1 if there is none
+     */
+    private int lastStartAtMost(int value) {
+        int lo = 0;
+        int hi = numIntervals;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(starts[mid] <= value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo - 1;
+    }
+}
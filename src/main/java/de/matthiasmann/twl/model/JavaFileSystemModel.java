@@ -175,8 +175,8 @@ public class JavaFileSystemModel implements FileSystemModel {
             }
             return ((File)file).listFiles(new FilenameFilter() {
                 @Override
-                public boolean accept(File file, String s) {
-                    return filter.accept(JavaFileSystemModel.this, file);
+                public boolean accept(File dir, String s) {
+                    return filter.accept(JavaFileSystemModel.this, new File(dir, s));
                 }
             });
         } catch (Throwable ex) {
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl.model;
+
+/**
+ * An {@code EditFieldModel} which maintains an index of the line breaks
+ * ('\n' characters) to allow fast line lookups.
+ *
+ * @author Matthias Mann
+ */
+public interface MultiLineEditFieldModel extends EditFieldModel {
+
+    /**
+     * Returns the number of lines. An empty sequence has 1 line.
+     * @return the number of lines
+     */
+    public int getNumLines();
+
+    /**
+     * Returns the line number of the specified character position.
+     * @param index the character position
+     * @return the line number (0 based)
+     * @throws StringIndexOutOfBoundsException if {@code index} is outside the sequence
+     */
+    public int getLineNumber(int index);
+
+    /**
+     * Returns the index of the first character of the specified line.
+     * @param line the line number (0 based)
+     * @return the start index of the line
+     * @throws IndexOutOfBoundsException if {@code line} is not valid
+     */
+    public int getLineStart(int line);
+
+    /**
+     * Returns the index of the line break which ends the specified line,
+     * or the length of the sequence for the last line.
+     * @param line the line number (0 based)
+     * @return the end index of the line
+     * @throws IndexOutOfBoundsException if {@code line} is not valid
+     */
+    public int getLineEnd(int line);
+}
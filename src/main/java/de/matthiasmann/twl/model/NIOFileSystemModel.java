@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl.model;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A file system implementation which uses java.nio.file.Path as base.
+ * 
+ * <p>All attributes of a file are read with a single
+ * {@link Files#readAttributes(java.nio.file.Path, java.lang.Class, java.nio.file.LinkOption[]) }
+ * call and stored in a bounded cache. Cached attributes are used until they
+ * are older then the cache timeout. Folder listings fill the cache for all
+ * listed entries.</p>
+ * 
+ * <p>The attributes of the most recent folder listing are also kept outside
+ * of the bounded cache until the cache timeout has passed after the listing
+ * has completed. This way a caller like the {@link de.matthiasmann.twl.FileTable}
+ * does not need to read the attributes again when the folder has more entries
+ * than the cache can hold or when the listing took longer than the timeout.</p>
+ * 
+ * <p>This class is thread safe.</p>
+ * 
+ * @author Matthias Mann
+ */
+public class NIOFileSystemModel implements FileSystemModel {
+
+    public static final int DEFAULT_CACHE_SIZE = 16384;
+    public static final long DEFAULT_CACHE_TIMEOUT = 2000;
+    
+    private static final NIOFileSystemModel instance = new NIOFileSystemModel();
+
+    public static NIOFileSystemModel getInstance() {
+        return instance;
+    }
+
+    private final FileSystem fileSystem;
+    private final boolean dosAttributes;
+    final AttributeCache cache;
+    private volatile long cacheTimeout;
+    private HashMap<Path, Attributes> listing;
+    private long listingTime;
+
+    public NIOFileSystemModel() {
+        this(FileSystems.getDefault(), DEFAULT_CACHE_SIZE);
+    }
+    
+    /**
+     * Creates a new NIOFileSystemModel
+     * 
+     * @param fileSystem the file system to use
+     * @param cacheSize the maximum number of cached file attributes, 0 disables the cache
+     */
+    public NIOFileSystemModel(FileSystem fileSystem, int cacheSize) {
+        if(fileSystem == null) {
+            throw new NullPointerException("fileSystem");
+        }
+        if(cacheSize < 0) {
+            throw new IllegalArgumentException("cacheSize");
+        }
+        this.fileSystem = fileSystem;
+        // posix file systems may also support the dos view (via extended
+        // attributes) but they use the file name to determine hidden files
+        Set<String> views = fileSystem.supportedFileAttributeViews();
+        this.dosAttributes = views.contains("dos") && !views.contains("posix");
+        this.cache = new AttributeCache(cacheSize);
+        this.cacheTimeout = DEFAULT_CACHE_TIMEOUT;
+    }
+
+    public long getCacheTimeout() {
+        return cacheTimeout;
+    }
+
+    /**
+     * Sets how long cached file attributes are used before they are read again.
+     * @param cacheTimeout the timeout in milliseconds
+     */
+    public void setCacheTimeout(long cacheTimeout) {
+        if(cacheTimeout < 0) {
+            throw new IllegalArgumentException("cacheTimeout");
+        }
+        this.cacheTimeout = cacheTimeout;
+    }
+
+    /**
+     * Removes the cached attributes of the specified file.
+     * @param file the file
+     */
+    public void invalidate(Object file) {
+        synchronized(cache) {
+            cache.remove((Path)file);
+            if(listing != null) {
+                listing.remove((Path)file);
+            }
+        }
+    }
+
+    /**
+     * Removes all cached file attributes.
+     */
+    public void clearCache() {
+        synchronized(cache) {
+            cache.clear();
+            listing = null;
+        }
+    }
+
+    public String getSeparator() {
+        return fileSystem.getSeparator();
+    }
+
+    public Object getFile(String path) {
+        try {
+            Path file = fileSystem.getPath(path);
+            return getAttributes(file).exists ? file : null;
+        } catch(InvalidPathException ex) {
+            return null;
+        }
+    }
+
+    public Object getParent(Object file) {
+        return ((Path)file).getParent();
+    }
+
+    public boolean isFolder(Object file) {
+        return getAttributes((Path)file).isFolder;
+    }
+
+    public boolean isFile(Object file) {
+        return getAttributes((Path)file).isFile;
+    }
+
+    public boolean isHidden(Object file) {
+        return getAttributes((Path)file).isHidden;
+    }
+
+    public String getName(Object file) {
+        Path name = ((Path)file).getFileName();
+        if(name == null) {
+            return file.toString();
+        }
+        return name.toString();
+    }
+
+    public String getPath(Object file) {
+        return file.toString();
+    }
+
+    public String getRelativePath(Object from, Object to) {
+        return JavaFileSystemModel.getRelativePath(this, from, to);
+    }
+
+    public long getSize(Object file) {
+        return getAttributes((Path)file).size;
+    }
+
+    public long getLastModified(Object file) {
+        return getAttributes((Path)file).lastModified;
+    }
+
+    public boolean equals(Object file1, Object file2) {
+        return (file1 != null) && file1.equals(file2);
+    }
+
+    public int find(Object[] list, Object file) {
+        if(file == null) {
+            return -1;
+        }
+        for(int i=0 ; i<list.length ; i++) {
+            if(file.equals(list[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public Object[] listRoots() {
+        ArrayList<Path> roots = new ArrayList<Path>();
+        for(Path root : fileSystem.getRootDirectories()) {
+            roots.add(root);
+        }
+        return roots.toArray();
+    }
+
+    public Object[] listFolder(Object file, FileFilter filter) {
+        ArrayList<Path> result = new ArrayList<Path>();
+        HashMap<Path, Attributes> attributes = (cache.maxSize > 0) ? new HashMap<Path, Attributes>() : null;
+        try {
+            DirectoryStream<Path> ds = Files.newDirectoryStream((Path)file);
+            try {
+                for(Path entry : ds) {
+                    // the attributes are read here so that the filter and
+                    // the caller will find them in the cache
+                    Attributes a = getAttributes(entry);
+                    if(filter == null || filter.accept(this, entry)) {
+                        result.add(entry);
+                        if(attributes != null) {
+                            attributes.put(entry, a);
+                        }
+                    }
+                }
+            } finally {
+                ds.close();
+            }
+        } catch(IOException ex) {
+            return null;
+        } catch(DirectoryIteratorException ex) {
+            return null;
+        } catch(SecurityException ex) {
+            return null;
+        }
+        if(attributes != null) {
+            synchronized(cache) {
+                listing = attributes;
+                listingTime = System.currentTimeMillis();
+            }
+        }
+        return result.toArray();
+    }
+
+    public Object getSpecialFolder(String key) {
+        Path file = null;
+        if(SPECIAL_FOLDER_HOME.equals(key)) {
+            try {
+                file = fileSystem.getPath(System.getProperty("user.home"));
+            } catch(SecurityException ex) {
+                // ignore
+            } catch(InvalidPathException ex) {
+                // ignore
+            }
+        }
+        if(file != null && isFolder(file) && Files.isReadable(file)) {
+            return file;
+        } else {
+            return null;
+        }
+    }
+
+    Attributes getAttributes(Path file) {
+        final long now = System.currentTimeMillis();
+        Attributes attributes;
+        synchronized(cache) {
+            attributes = cache.get(file);
+            if(attributes != null && now - attributes.timestamp <= cacheTimeout) {
+                return attributes;
+            }
+            if(listing != null && now - listingTime <= cacheTimeout) {
+                Attributes listed = listing.get(file);
+                if(listed != null && (attributes == null || listed.timestamp >= attributes.timestamp)) {
+                    return listed;
+                }
+            }
+        }
+        attributes = readAttributes(file, now);
+        if(cache.maxSize > 0) {
+            synchronized(cache) {
+                cache.put(file, attributes);
+            }
+        }
+        return attributes;
+    }
+    
+    private Attributes readAttributes(Path file, long now) {
+        try {
+            return readAttributes(file, now, false);
+        } catch(IOException ex) {
+            // could be a broken link - try the link itself
+            try {
+                return readAttributes(file, now, true);
+            } catch(IOException ex2) {
+                return new Attributes(now);
+            }
+        } catch(SecurityException ex) {
+            return new Attributes(now);
+        }
+    }
+
+    private Attributes readAttributes(Path file, long now, boolean noFollowLinks) throws IOException {
+        LinkOption[] options = noFollowLinks ? NOFOLLOW_LINKS : FOLLOW_LINKS;
+        BasicFileAttributes attributes;
+        boolean hidden;
+        if(dosAttributes) {
+            DosFileAttributes dos = Files.readAttributes(file, DosFileAttributes.class, options);
+            attributes = dos;
+            hidden = dos.isHidden();
+        } else {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class, options);
+            Path name = file.getFileName();
+            hidden = (name != null) && name.toString().startsWith(".");
+        }
+        return new Attributes(now, attributes, hidden);
+    }
+    
+    private static final LinkOption[] FOLLOW_LINKS = new LinkOption[0];
+    private static final LinkOption[] NOFOLLOW_LINKS = new LinkOption[] { LinkOption.NOFOLLOW_LINKS };
+
+    static final class Attributes {
+        final long timestamp;
+        final boolean exists;
+        final boolean isFolder;
+        final boolean isFile;
+        final boolean isHidden;
+        final long size;
+        final long lastModified;
+
+        Attributes(long timestamp) {
+            this.timestamp = timestamp;
+            this.exists = false;
+            this.isFolder = false;
+            this.isFile = false;
+            this.isHidden = false;
+            this.size = 0;
+            this.lastModified = 0;
+        }
+
+        Attributes(long timestamp, BasicFileAttributes attributes, boolean isHidden) {
+            this.timestamp = timestamp;
+            this.exists = true;
+            this.isFolder = attributes.isDirectory();
+            this.isFile = attributes.isRegularFile();
+            this.isHidden = isHidden;
+            this.size = attributes.size();
+            this.lastModified = attributes.lastModifiedTime().toMillis();
+        }
+    }
+    
+    @SuppressWarnings("serial")
+    static final class AttributeCache extends LinkedHashMap<Path, Attributes> {
+        final int maxSize;
+
+        AttributeCache(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Attributes> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
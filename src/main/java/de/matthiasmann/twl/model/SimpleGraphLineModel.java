@@ -34,7 +34,7 @@ package de.matthiasmann.twl.model;
  * 
  * @author Matthias Mann
  */
-public class SimpleGraphLineModel implements GraphLineModel {
+public class SimpleGraphLineModel extends HasCallback implements GraphLineModel {
 
     private String visualStyleName;
     private float minValue = 0;
@@ -57,6 +57,7 @@ public class SimpleGraphLineModel implements GraphLineModel {
             throw new IllegalArgumentException("Invalid style name");
         }
         this.visualStyleName = visualStyleName;
+        doCallback();
     }
 
     public int getNumPoints() {
@@ -78,14 +79,17 @@ public class SimpleGraphLineModel implements GraphLineModel {
     public void addPoint(float value) {
         System.arraycopy(data, 1, data, 0, data.length - 1);
         data[data.length-1] = value;
+        doCallback();
     }
 
     public void setMaxValue(float maxValue) {
         this.maxValue = maxValue;
+        doCallback();
     }
 
     public void setMinValue(float minValue) {
         this.minValue = minValue;
+        doCallback();
     }
 
     public void setNumPoints(int numPoints) {
@@ -95,5 +99,6 @@ public class SimpleGraphLineModel implements GraphLineModel {
                 data, data.length - overlap,
                 newData, numPoints - overlap, overlap);
         this.data = newData;
+        doCallback();
     }
 }
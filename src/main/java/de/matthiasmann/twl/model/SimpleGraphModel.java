@@ -29,21 +29,28 @@
  */
 package de.matthiasmann.twl.model;
 
+import de.matthiasmann.twl.utils.WithRunnableCallback;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 
 /**
+ * A simple graph model which holds a list of lines.
+ *
+ * <p>Callbacks are fired when lines are added or removed, and also when
+ * a line which implements {@link WithRunnableCallback} reports a change.</p>
  *
  * @author Matthias Mann
  */
-public class SimpleGraphModel implements GraphModel {
+public class SimpleGraphModel extends HasCallback implements GraphModel {
 
     private final ArrayList<GraphLineModel> lines;
+    private final Runnable lineCallback;
     private boolean scaleLinesIndependant;
 
     public SimpleGraphModel() {
-        lines = new ArrayList<GraphLineModel>();
+        this.lines = new ArrayList<GraphLineModel>();
+        this.lineCallback = new LineCallback();
     }
 
     public SimpleGraphModel(GraphLineModel ... lines) {
@@ -52,6 +59,10 @@ public class SimpleGraphModel implements GraphModel {
 
     public SimpleGraphModel(Collection<GraphLineModel> lines) {
         this.lines = new ArrayList<GraphLineModel>(lines);
+        this.lineCallback = new LineCallback();
+        for(GraphLineModel line : this.lines) {
+            addLineCallback(line);
+        }
     }
 
     public GraphLineModel getLine(int idx) {
@@ -67,7 +78,10 @@ public class SimpleGraphModel implements GraphModel {
     }
 
     public void setScaleLinesIndependant(boolean scaleLinesIndependant) {
-        this.scaleLinesIndependant = scaleLinesIndependant;
+        if(this.scaleLinesIndependant != scaleLinesIndependant) {
+            this.scaleLinesIndependant = scaleLinesIndependant;
+            doCallback();
+        }
     }
 
     /**
@@ -93,6 +107,8 @@ public class SimpleGraphModel implements GraphModel {
             throw new IllegalArgumentException("line already added");
         }
         lines.add(idx, line);
+        addLineCallback(line);
+        doCallback();
     }
 
     /**
@@ -116,7 +132,24 @@ public class SimpleGraphModel implements GraphModel {
      * @return the line that was removed
      */
     public GraphLineModel removeLine(int idx) {
-        return lines.remove(idx);
+        GraphLineModel line = lines.remove(idx);
+        if(line instanceof WithRunnableCallback) {
+            ((WithRunnableCallback)line).removeCallback(lineCallback);
+        }
+        doCallback();
+        return line;
+    }
+
+    private void addLineCallback(GraphLineModel line) {
+        if(line instanceof WithRunnableCallback) {
+            ((WithRunnableCallback)line).addCallback(lineCallback);
+        }
+    }
+
+    class LineCallback implements Runnable {
+        public void run() {
+            doCallback();
+        }
     }
 
 }
@@ -206,6 +206,13 @@ public interface Renderer {
      */
     public boolean clipIsEmpty();
     
+    /**
+     * Retrieves the active clip region from the top of the stack
+     * @param rect the rect coordinates - may not be updated when clipping is disabled
+     * @return true if clipping is active, false if clipping is disabled
+     */
+    public boolean getClipRect(Rect rect);
+    
     /**
      * Leaves a clip region creeated by {@code #clipEnter}
      * @see #clipEnter(int, int, int, int) 
@@ -213,6 +220,17 @@ public interface Renderer {
      */
     public void clipLeave();
     
+    /**
+     * Clears the active clip region to transparent black. Everything which
+     * has been rendered in this area is discarded.
+     * 
+     * <p>This is used by the partial redraw mode of the GUI so that the dirty
+     * areas do not blend translucent content over the previous frame.</p>
+     * 
+     * @see de.matthiasmann.twl.GUI#setPartialRedraw(boolean) 
+     */
+    public void clipClear();
+    
     public void setCursor(MouseCursor cursor);
 
     /**
@@ -574,6 +574,41 @@ public class BitmapFont {
         GL11.glEnd();
     }
 
+    /**
+     * Returns the texture page of a font file without loading the font.
+     * This is used to decode the page in the background.
+     * 
+     * @param url the font file in XML or text format
+     * @return the texture page or null if it was not found
+     * @throws IOException if an error occured while reading
+     */
+    static FileHandle findPageFile(FileHandle url) throws IOException {
+        BufferedReader br = new BufferedReader(url.reader("UTF-8"));
+        try {
+            String line;
+            while((line = br.readLine()) != null) {
+                line = line.trim();
+                if(line.startsWith("<page ") || line.startsWith("page ")) {
+                    int start = line.indexOf("file=\"");
+                    if(start >= 0) {
+                        start += 6;
+                        int end = line.indexOf('"', start);
+                        if(end > start) {
+                            return url.child(line.substring(start, end));
+                        }
+                    }
+                    return null;
+                }
+                if(line.startsWith("<chars") || line.startsWith("chars ")) {
+                    break;
+                }
+            }
+            return null;
+        } finally {
+            br.close();
+        }
+    }
+
     private static String parseFntLine(BufferedReader br, String tag) throws IOException {
         String line = br.readLine();
         if(line == null || line.length() <= tag.length() ||
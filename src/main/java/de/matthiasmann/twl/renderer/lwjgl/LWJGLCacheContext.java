@@ -51,6 +51,7 @@ public class LWJGLCacheContext implements CacheContext {
     final HashMap<String, BitmapFont> fontCache;
     final ArrayList<LWJGLTexture> allTextures;
     boolean valid;
+    DecodedTextureLoader textureLoader;
 
     protected LWJGLCacheContext(LWJGLRenderer renderer) {
         this.renderer = renderer;
@@ -121,19 +122,47 @@ public class LWJGLCacheContext implements CacheContext {
     }
     
     private LWJGLTexture createPNGTexture(FileHandle textureUrl, LWJGLTexture.Format fmt, LWJGLTexture.Filter filter, TexturePostProcessing tpp) throws IOException {
+        DecodedTexture decoded;
+        if(textureLoader != null) {
+            decoded = textureLoader.loadTexture(textureUrl, fmt);
+        } else {
+            decoded = decodePNG(textureUrl, fmt, renderer.maxTextureSize,
+                    GLContext.getCapabilities().GL_EXT_abgr);
+        }
+
+        if(tpp != null) {
+            tpp.process(decoded.buf, decoded.stride, decoded.width, decoded.height, decoded.fmt);
+        }
+
+        LWJGLTexture texture = new LWJGLTexture(renderer, decoded.width, decoded.height, decoded.buf, decoded.fmt, filter);
+        allTextures.add(texture);
+        return texture;
+    }
+
+    /**
+     * Decodes a PNG file into a direct buffer. Does not use any GL calls and
+     * can be called from any thread.
+     * 
+     * @param textureUrl the PNG file
+     * @param fmt the requested texture format
+     * @param maxTextureSize the maximum texture size of the renderer
+     * @param abgrSupported true if the GL_EXT_abgr extension is available
+     * @return the decoded texture
+     * @throws IOException if the file could not be decoded
+     */
+    static DecodedTexture decodePNG(FileHandle textureUrl, LWJGLTexture.Format fmt, int maxTextureSize, boolean abgrSupported) throws IOException {
         InputStream is = textureUrl.read();
         try {
             PNGDecoder dec = new PNGDecoder(is);
             fmt = decideTextureFormat(dec, fmt);
             int width = dec.getWidth();
             int height = dec.getHeight();
-            int maxTextureSize = renderer.maxTextureSize;
 
             if(width > maxTextureSize || height > maxTextureSize) {
                 throw new IOException("Texture size too large. Maximum supported texture by this system is " + maxTextureSize);
             }
 
-            if(GLContext.getCapabilities().GL_EXT_abgr) {
+            if(abgrSupported) {
                 if(fmt == LWJGLTexture.Format.RGBA) {
                     fmt = LWJGLTexture.Format.ABGR;
                 }
@@ -146,13 +175,7 @@ public class LWJGLCacheContext implements CacheContext {
             dec.decode(buf, stride, fmt.getPngFormat());
             buf.flip();
 
-            if(tpp != null) {
-                tpp.process(buf, stride, width, height, fmt);
-            }
-
-            LWJGLTexture texture = new LWJGLTexture(renderer, width, height, buf, fmt, filter);
-            allTextures.add(texture);
-            return texture;
+            return new DecodedTexture(width, height, stride, buf, fmt);
         } catch (IOException ex) {
             throw (IOException)(new IOException("Unable to load PNG file: " + textureUrl).initCause(ex));
         } finally {
@@ -236,4 +259,23 @@ public class LWJGLCacheContext implements CacheContext {
             return LWJGLTexture.Format.LUMINANCE;
         }
     }
+
+    /**
+     * A decoded texture file which has not yet been uploaded to GL.
+     */
+    static final class DecodedTexture {
+        final int width;
+        final int height;
+        final int stride;
+        final ByteBuffer buf;
+        final LWJGLTexture.Format fmt;
+
+        DecodedTexture(int width, int height, int stride, ByteBuffer buf, LWJGLTexture.Format fmt) {
+            this.width = width;
+            this.height = height;
+            this.stride = stride;
+            this.buf = buf;
+            this.fmt = fmt;
+        }
+    }
 }
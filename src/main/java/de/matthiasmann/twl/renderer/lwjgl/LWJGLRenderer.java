@@ -487,6 +487,13 @@ public class LWJGLRenderer implements Renderer, LineRenderer {
         return clipStack.isClipEmpty();
     }
 
+    public void clipClear() {
+        if(!clipStack.isClipEmpty()) {
+            GL11.glClearColor(0, 0, 0, 0);
+            GL11.glClear(GL11.GL_COLOR_BUFFER_BIT);
+        }
+    }
+
     public void setCursor(MouseCursor cursor) {
         try {
             swCursor = null;
@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2008-2013, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl.renderer.lwjgl;
+
+import com.badlogic.gdx.files.FileHandle;
+import de.matthiasmann.twl.theme.ThemeManager;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.lwjgl.opengl.GLContext;
+
+/**
+ * Loads a theme while the referenced textures and font pages are decoded
+ * in the background.
+ *
+ * <p>A worker scans the theme files for texture and font references and
+ * decodes each PNG file on the supplied executor while the theme XML is
+ * parsed on the calling thread. The GL textures are still created on the
+ * calling thread. When the parser needs a texture which has not been
+ * decoded yet it is decoded on the calling thread. The resulting
+ * ThemeManager is identical to one loaded by
+ * {@link ThemeManager#createThemeManager(com.badlogic.gdx.files.FileHandle, de.matthiasmann.twl.renderer.Renderer) }.</p>
+ *
+ * <p>Only textures which are requested with the same format as announced
+ * by the theme file are taken from the background worker.</p>
+ *
+ * @author Matthias Mann
+ */
+public class LWJGLThemeLoader implements DecodedTextureLoader {
+
+    private final Executor executor;
+    private final ConcurrentHashMap<String, FutureTask<LWJGLCacheContext.DecodedTexture>> textures;
+    private final AtomicLong decodeTime;
+    private final AtomicInteger numPrefetched;
+    private boolean done;
+    private volatile Thread loadingThread;
+    private volatile long scanTime;
+    private long waitTime;
+    private int maxTextureSize;
+    private boolean abgrSupported;
+
+    /**
+     * Creates a new theme loader.
+     *
+     * @param executor the executor used to scan the theme and decode textures
+     */
+    public LWJGLThemeLoader(Executor executor) {
+        if(executor == null) {
+            throw new NullPointerException("executor");
+        }
+        this.executor = executor;
+        this.textures = new ConcurrentHashMap<String, FutureTask<LWJGLCacheContext.DecodedTexture>>();
+        this.decodeTime = new AtomicLong();
+        this.numPrefetched = new AtomicInteger();
+    }
+
+    public ThemeManager loadTheme(FileHandle handle, LWJGLRenderer renderer) throws IOException {
+        return loadTheme(handle, renderer, (LWJGLCacheContext)renderer.createNewCacheContext(), null);
+    }
+
+    /**
+     * Loads the specified theme.
+     *
+     * <p>Must be called on the thread which owns the GL context.</p>
+     *
+     * @param handle the theme file
+     * @param renderer the renderer
+     * @param cacheContext the cache context into which the resources are loaded
+     * @param constants constants which are exposed to the theme, can be null
+     * @return a new ThemeManager
+     * @throws IOException if an error occured while loading
+     * @see ThemeManager#createThemeManager(com.badlogic.gdx.files.FileHandle, de.matthiasmann.twl.renderer.Renderer, de.matthiasmann.twl.renderer.CacheContext, java.util.Map)
+     */
+    public ThemeManager loadTheme(final FileHandle handle, LWJGLRenderer renderer,
+            LWJGLCacheContext cacheContext, Map<String, Object> constants) throws IOException {
+        if(cacheContext.textureLoader != null) {
+            throw new IllegalStateException("cacheContext is already used by a theme loader");
+        }
+        synchronized(this) {
+            done = false;
+        }
+        textures.clear();
+        decodeTime.set(0);
+        numPrefetched.set(0);
+        scanTime = 0;
+        waitTime = 0;
+        // GL state must be queried on this thread
+        maxTextureSize = renderer.maxTextureSize;
+        abgrSupported = GLContext.getCapabilities().GL_EXT_abgr;
+        loadingThread = Thread.currentThread();
+
+        executor.execute(new Runnable() {
+            public void run() {
+                scan(handle);
+            }
+        });
+
+        cacheContext.textureLoader = this;
+        try {
+            return ThemeManager.createThemeManager(handle, renderer, cacheContext, constants);
+        } finally {
+            cacheContext.textureLoader = null;
+            finish();
+            loadingThread = null;
+        }
+    }
+
+    /**
+     * Returns the time the background worker spent scanning the theme files
+     * for textures and font pages during the last {@link #loadTheme}.
+     *
+     * @return the scan time in milliseconds
+     */
+    public long getScanTimeMillis() {
+        return scanTime / 1000000;
+    }
+
+    /**
+     * Returns the time spent decoding textures on all threads during the
+     * last {@link #loadTheme}.
+     *
+     * @return the decode time in milliseconds
+     */
+    public long getDecodeTimeMillis() {
+        return decodeTime.get() / 1000000;
+    }
+
+    /**
+     * Returns the time the loading thread spent waiting for or decoding
+     * textures during the last {@link #loadTheme}.
+     *
+     * @return the wait time in milliseconds
+     */
+    public long getWaitTimeMillis() {
+        return waitTime / 1000000;
+    }
+
+    /**
+     * Returns the number of textures which were decoded by a worker thread
+     * during the last {@link #loadTheme}.
+     *
+     * @return the number of prefetched textures
+     */
+    public int getNumPrefetchedTextures() {
+        return numPrefetched.get();
+    }
+
+    public LWJGLCacheContext.DecodedTexture loadTexture(FileHandle url, LWJGLTexture.Format fmt) throws IOException {
+        final long startTime = System.nanoTime();
+        final String key = makeKey(url, fmt);
+        FutureTask<LWJGLCacheContext.DecodedTexture> task =
+                new FutureTask<LWJGLCacheContext.DecodedTexture>(new Decoder(url, fmt));
+        FutureTask<LWJGLCacheContext.DecodedTexture> existing = textures.putIfAbsent(key, task);
+        if(existing != null) {
+            task = existing;
+        }
+        // decode on this thread if no worker has started it yet
+        task.run();
+        try {
+            return task.get();
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw (IOException)(new IOException("Interrupted while decoding: " + url).initCause(ex));
+        } catch(ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if(cause instanceof IOException) {
+                throw (IOException)cause;
+            }
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if(cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw (IOException)(new IOException("Unable to decode: " + url).initCause(cause));
+        } finally {
+            // keep the (consumed) task so that the scanner doesn't decode it again
+            textures.put(key, CONSUMED);
+            waitTime += System.nanoTime() - startTime;
+        }
+    }
+
+    void scan(FileHandle handle) {
+        final long startTime = System.nanoTime();
+        try {
+            ThemeManager.scanTextureFiles(handle, new ThemeManager.TextureFileVisitor() {
+                public void textureFile(FileHandle textureFile, String format) {
+                    prefetch(textureFile, parseFormat(format));
+                }
+
+                public void fontFile(FileHandle fontFile) {
+                    try {
+                        FileHandle page = BitmapFont.findPageFile(fontFile);
+                        if(page != null) {
+                            prefetch(page, LWJGLTexture.Format.ALPHA);
+                        }
+                    } catch(IOException ex) {
+                        // errors are reported by the theme loading
+                    }
+                }
+            });
+        } catch(Exception ex) {
+            // errors are reported by the theme loading
+        } finally {
+            scanTime = System.nanoTime() - startTime;
+        }
+    }
+
+    void prefetch(FileHandle url, LWJGLTexture.Format fmt) {
+        FutureTask<LWJGLCacheContext.DecodedTexture> task =
+                new FutureTask<LWJGLCacheContext.DecodedTexture>(new Decoder(url, fmt));
+        synchronized(this) {
+            if(done || textures.putIfAbsent(makeKey(url, fmt), task) != null) {
+                return;
+            }
+        }
+        executor.execute(task);
+    }
+
+    private void finish() {
+        synchronized(this) {
+            done = true;
+        }
+        // drop textures which were not used - this only happens when loading failed
+        for(FutureTask<LWJGLCacheContext.DecodedTexture> task : textures.values()) {
+            if(task != CONSUMED) {
+                task.cancel(false);
+            }
+        }
+        textures.clear();
+    }
+
+    static LWJGLTexture.Format parseFormat(String format) {
+        if(format != null) {
+            try {
+                return LWJGLTexture.Format.valueOf(format.toUpperCase(Locale.ENGLISH));
+            } catch(IllegalArgumentException ex) {
+                // LWJGLRenderer.loadTexture falls back to COLOR
+            }
+        }
+        return LWJGLTexture.Format.COLOR;
+    }
+
+    private static String makeKey(FileHandle url, LWJGLTexture.Format fmt) {
+        return fmt.name() + ':' + url.toString();
+    }
+
+    static final FutureTask<LWJGLCacheContext.DecodedTexture> CONSUMED =
+            new FutureTask<LWJGLCacheContext.DecodedTexture>(new Callable<LWJGLCacheContext.DecodedTexture>() {
+        public LWJGLCacheContext.DecodedTexture call() {
+            return null;
+        }
+    });
+
+    final class Decoder implements Callable<LWJGLCacheContext.DecodedTexture> {
+        private final FileHandle url;
+        private final LWJGLTexture.Format fmt;
+
+        Decoder(FileHandle url, LWJGLTexture.Format fmt) {
+            this.url = url;
+            this.fmt = fmt;
+        }
+
+        public LWJGLCacheContext.DecodedTexture call() throws IOException {
+            final long startTime = System.nanoTime();
+            try {
+                return LWJGLCacheContext.decodePNG(url, fmt, maxTextureSize, abgrSupported);
+            } finally {
+                decodeTime.addAndGet(System.nanoTime() - startTime);
+                if(Thread.currentThread() != loadingThread) {
+                    numPrefetched.incrementAndGet();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2008-2013, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl.textarea;
+
+import de.matthiasmann.twl.model.HasCallback;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A text area model which stores a list of top level elements and is
+ * optimized for appending content - eg for chat or log windows.
+ *
+ * <p>The {@link de.matthiasmann.twl.TextArea} only lays out newly appended
+ * elements when this model is used. Because of this elements must not be
+ * modified after they have been added to the model. If an element was
+ * modified then {@link #domModified() } must be called which will cause
+ * a complete relayout.</p>
+ *
+ * @author Matthias Mann
+ */
+public class AppendableTextAreaModel extends HasCallback implements TextAreaModel {
+
+    private final ArrayList<Element> elements;
+    private final List<Element> elementsRO;
+    private int modificationCount;
+    private int changeCount;
+
+    public AppendableTextAreaModel() {
+        this.elements = new ArrayList<Element>();
+        this.elementsRO = Collections.unmodifiableList(elements);
+    }
+
+    public Iterator<Element> iterator() {
+        return elementsRO.iterator();
+    }
+
+    /**
+     * Returns the number of top level elements
+     * @return the number of top level elements
+     */
+    public int getNumElements() {
+        return elements.size();
+    }
+
+    /**
+     * Returns the top level element at the specified index
+     * @param index the index
+     * @return the element
+     */
+    public Element getElement(int index) {
+        return elements.get(index);
+    }
+
+    /**
+     * Appends a top level element.
+     * @param element the element to append
+     * @throws NullPointerException when element is {@code null}
+     */
+    public void add(Element element) {
+        Element.notNull(element, "element");
+        elements.add(element);
+        doCallback();
+    }
+
+    /**
+     * Appends several top level elements and fires the callback only once.
+     * @param elements the elements to append
+     * @throws NullPointerException when one of the elements is {@code null}
+     */
+    public void addAll(Collection<? extends Element> elements) {
+        for(Element e : elements) {
+            Element.notNull(e, "element");
+        }
+        this.elements.addAll(elements);
+        doCallback();
+    }
+
+    /**
+     * Replaces a top level element. Only the replaced element and the
+     * elements after it needs to be laid out again.
+     *
+     * @param index the index of the element to replace
+     * @param element the new element
+     * @return the old element
+     */
+    public Element set(int index, Element element) {
+        Element.notNull(element, "element");
+        Element old = elements.set(index, element);
+        changeCount++;
+        doCallback();
+        return old;
+    }
+
+    /**
+     * Removes a range of top level elements.
+     *
+     * <p>The {@link de.matthiasmann.twl.TextArea} resumes the layout at the
+     * last checkpoint before {@code start} and lays out all remaining elements
+     * after it again. The layout positions are not shifted, so removing
+     * elements from the start - eg to limit the size of a log - causes a
+     * complete relayout. To keep this cheap remove larger batches of elements
+     * at once instead of one element per append.</p>
+     *
+     * @param start the index of the first element to remove
+     * @param count the number of elements to remove
+     */
+    public void remove(int start, int count) {
+        if(start < 0 || count < 0 || start + count > elements.size()) {
+            throw new IndexOutOfBoundsException();
+        }
+        if(count > 0) {
+            elements.subList(start, start + count).clear();
+            changeCount++;
+            doCallback();
+        }
+    }
+
+    /**
+     * Removes all elements
+     */
+    public void clear() {
+        if(!elements.isEmpty()) {
+            elements.clear();
+            changeCount++;
+            doCallback();
+        }
+    }
+
+    /**
+     * Must be called when an element which is already part of this model
+     * has been modified.
+     */
+    public void domModified() {
+        modificationCount++;
+        doCallback();
+    }
+
+    /**
+     * Returns a counter which is changed every time {@link #domModified() }
+     * is called. As long as it does not change the existing elements can
+     * be assumed to be unmodified.
+     * 
+     * @return the modification counter
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Returns a counter which is changed every time top level elements are
+     * replaced or removed. As long as it does not change elements have only
+     * been appended.
+     * 
+     * @return the change counter
+     */
+    public int getChangeCount() {
+        return changeCount;
+    }
+}
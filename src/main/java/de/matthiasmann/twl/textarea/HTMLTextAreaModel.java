@@ -88,6 +88,11 @@ import org.xmlpull.v1.XmlPullParserException;
  *
  * Numeric values must use on of the following units: {@code em}, {@code ex}, {@code px}, {@code %}
  *
+ * <p>Every call to {@link #parseXHTML(java.io.Reader) } or {@link #domModified() }
+ * causes a complete relayout of the {@link de.matthiasmann.twl.TextArea}.
+ * For chat or log windows which append content use an
+ * {@link AppendableTextAreaModel} instead.</p>
+ *
  * @author Matthias Mann
  */
 public class HTMLTextAreaModel extends HasCallback implements TextAreaModel {
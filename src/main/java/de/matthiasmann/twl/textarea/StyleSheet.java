@@ -56,11 +56,18 @@ import java.util.logging.Logger;
  *    white-space: pre
  *}</pre>
  * 
+ * <p>Rules are indexed by the id, class or element of their rightmost
+ * selector so that only a few candidate rules need to be matched against
+ * a style. Resolved styles are cached by the chain of style sheet keys of
+ * the style. This cache is kept across layouts and only invalidated when
+ * additional rules are parsed.</p>
+ * 
  * @author Matthias Mann
  */
 public class StyleSheet implements StyleSheetResolver {
 
     static final Object NULL = new Object();
+    static final Selector[] NO_SELECTORS = new Selector[0];
     
     private static final Selector PRE_SELECTOR = new Selector("pre", null, null, null, null);
     static {
@@ -68,15 +75,30 @@ public class StyleSheet implements StyleSheetResolver {
         PRE_SELECTOR.score = 0x100;
     }
     
+    /**
+     * The maximum number of entries in the resolve cache before it is cleared.
+     */
+    public static final int MAX_RESOLVE_CACHE_SIZE = 4096;
+    
     private final ArrayList<Selector> rules;
+    private final HashMap<String, Selector[]> idRules;
+    private final HashMap<String, Selector[]> classRules;
+    private final HashMap<String, Selector[]> elementRules;
+    private Selector[] universalRules;
     private final IdentityHashMap<Style, Object> cache;
+    private final HashMap<KeyPath, Object> resolveCache;
     private ArrayList<AtRule> atrules;
 
     public StyleSheet() {
         this.rules = new ArrayList<Selector>();
+        this.idRules = new HashMap<String, Selector[]>();
+        this.classRules = new HashMap<String, Selector[]>();
+        this.elementRules = new HashMap<String, Selector[]>();
+        this.universalRules = NO_SELECTORS;
         this.cache = new IdentityHashMap<Style, Object>();
+        this.resolveCache = new HashMap<KeyPath, Object>();
         
-        rules.add(PRE_SELECTOR);
+        addRule(PRE_SELECTOR);
     }
 
     public void parse(FileHandle url) throws IOException {
@@ -94,6 +116,9 @@ public class StyleSheet implements StyleSheetResolver {
     }
     
     public void parse(Reader r) throws IOException {
+        cache.clear();
+        resolveCache.clear();
+        
         Parser parser = new Parser(r);
         ArrayList<Selector> selectors = new ArrayList<Selector>();
         int what;
@@ -216,7 +241,6 @@ public class StyleSheet implements StyleSheetResolver {
                         if(selector.pseudoClass != null) {
                             selectorStyle = transformStyle(style, selector.pseudoClass);
                         }
-                        rules.add(selector);
                         int score = 0;
                         for(Selector s=selector ; s!=null ; s=s.tail) {
                             if(s.directChild) {
@@ -235,6 +259,7 @@ public class StyleSheet implements StyleSheetResolver {
                         // only needed on head
                         selector.score = score;
                         selector.style = selectorStyle;
+                        addRule(selector);
                     }
 
                     selectors.clear();
@@ -294,7 +319,16 @@ public class StyleSheet implements StyleSheetResolver {
     public Style resolve(Style style) {
         Object cacheData = cache.get(style);
         if(cacheData == null) {
-            return resolveSlow(style);
+            KeyPath keyPath = new KeyPath(style);
+            cacheData = resolveCache.get(keyPath);
+            if(cacheData == null) {
+                cacheData = toCacheData(resolveSlow(style));
+                if(resolveCache.size() >= MAX_RESOLVE_CACHE_SIZE) {
+                    resolveCache.clear();
+                }
+                resolveCache.put(keyPath, cacheData);
+            }
+            cache.put(style, cacheData);
         }
         if(cacheData == NULL) {
             return null;
@@ -303,14 +337,33 @@ public class StyleSheet implements StyleSheetResolver {
     }
     
     private Style resolveSlow(Style style) {
-        Selector[] candidates = new Selector[rules.size()];
+        StyleSheetKey key = getFirstKey(style);
+        if(key == null) {
+            return null;
+        }
+        
+        Selector[] candidates = new Selector[16];
         int numCandidates = 0;
         
-        // find all possible candidates
-        for(int i=0,n=rules.size() ; i<n ; i++) {
-            Selector selector = rules.get(i);
-            if(matches(selector, style)) {
-                candidates[numCandidates++] = selector;
+        // only rules which rightmost selector can match the key are candidates
+        Selector[][] buckets = new Selector[][] {
+            (key.id != null) ? idRules.get(key.id) : null,
+            (key.className != null) ? classRules.get(key.className) : null,
+            (key.element != null) ? elementRules.get(key.element) : null,
+            universalRules
+        };
+        for(Selector[] bucket : buckets) {
+            if(bucket != null) {
+                for(Selector selector : bucket) {
+                    if(matches(selector, style)) {
+                        if(numCandidates == candidates.length) {
+                            Selector[] tmp = new Selector[numCandidates*2];
+                            System.arraycopy(candidates, 0, tmp, 0, numCandidates);
+                            candidates = tmp;
+                        }
+                        candidates[numCandidates++] = selector;
+                    }
+                }
             }
         }
 
@@ -336,12 +389,48 @@ public class StyleSheet implements StyleSheetResolver {
             }
         }
 
-        putIntoCache(style, result);
         return result;
     }
     
-    private void putIntoCache(Style key, Style style) {
-        cache.put(key, (style == null) ? NULL : style);
+    private static Object toCacheData(Style style) {
+        return (style == null) ? NULL : style;
+    }
+    
+    private void addRule(Selector selector) {
+        selector.index = rules.size();
+        rules.add(selector);
+        if(selector.id != null) {
+            addToBucket(idRules, selector.id, selector);
+        } else if(selector.className != null) {
+            addToBucket(classRules, selector.className, selector);
+        } else if(selector.element != null) {
+            addToBucket(elementRules, selector.element, selector);
+        } else {
+            universalRules = append(universalRules, selector);
+        }
+    }
+    
+    private static void addToBucket(HashMap<String, Selector[]> map, String name, Selector selector) {
+        Selector[] bucket = map.get(name);
+        map.put(name, append((bucket != null) ? bucket : NO_SELECTORS, selector));
+    }
+    
+    private static Selector[] append(Selector[] bucket, Selector selector) {
+        Selector[] result = new Selector[bucket.length + 1];
+        System.arraycopy(bucket, 0, result, 0, bucket.length);
+        result[bucket.length] = selector;
+        return result;
+    }
+    
+    static StyleSheetKey getFirstKey(Style style) {
+        do {
+            StyleSheetKey styleSheetKey = style.getStyleSheetKey();
+            if(styleSheetKey != null) {
+                return styleSheetKey;
+            }
+            style = style.getParent();
+        }while(style != null);
+        return null;
     }
 
     private boolean matches(Selector selector, Style style) {
@@ -378,6 +467,7 @@ public class StyleSheet implements StyleSheetResolver {
         boolean directChild;
         Style style;
         int score;
+        int index;
 
         Selector(String element, String className, String id, String pseudoClass, Selector tail) {
             super(element, className, id);
@@ -386,7 +476,55 @@ public class StyleSheet implements StyleSheetResolver {
         }
 
         public int compareTo(Selector other) {
-            return this.score - other.score;
+            int diff = this.score - other.score;
+            if(diff == 0) {
+                // keep the rule order for equal scores
+                diff = this.index - other.index;
+            }
+            return diff;
+        }
+    }
+    
+    /**
+     * The chain of style sheet keys of a style. Two styles with the same
+     * chain resolve to the same style sheet rules.
+     */
+    static final class KeyPath {
+        final StyleSheetKey[] keys;
+        final int hash;
+
+        KeyPath(Style style) {
+            int count = 0;
+            for(Style s=style ; s!=null ; s=s.getParent()) {
+                if(s.getStyleSheetKey() != null) {
+                    count++;
+                }
+            }
+            keys = new StyleSheetKey[count];
+            int h = 0;
+            count = 0;
+            for(Style s=style ; s!=null ; s=s.getParent()) {
+                StyleSheetKey key = s.getStyleSheetKey();
+                if(key != null) {
+                    keys[count++] = key;
+                    h = h * 31 + key.hashCode();
+                }
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(obj instanceof KeyPath) {
+                KeyPath other = (KeyPath)obj;
+                return hash == other.hash && Arrays.equals(keys, other.keys);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
         }
     }
     
@@ -0,0 +1,987 @@
+/*
+ * Copyright (c) 2008-2013, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl.theme;
+
+import com.badlogic.gdx.files.FileHandle;
+import de.matthiasmann.twl.Border;
+import de.matthiasmann.twl.Color;
+import de.matthiasmann.twl.Dimension;
+import de.matthiasmann.twl.Gap;
+import de.matthiasmann.twl.InputMap;
+import de.matthiasmann.twl.KeyStroke;
+import de.matthiasmann.twl.renderer.AnimationState.StateKey;
+import de.matthiasmann.twl.utils.AbstractMathInterpreter;
+import de.matthiasmann.twl.utils.StateExpression;
+import de.matthiasmann.twl.utils.StateSelect;
+import de.matthiasmann.twl.utils.XMLParser;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * A precompiled theme.
+ *
+ * <p>A compiled theme contains the XML events of a theme file and all
+ * included files in a compact binary form. Loading a theme from it avoids
+ * reading and parsing the XML text. In addition the following parts of the
+ * theme are stored in their parsed form:</p><ul>
+ * <li>the key strokes of all input maps</li>
+ * <li>constants with a literal int, float, color, border, dimension or gap value</li>
+ * <li>the decision programs of the state select images and fonts</li>
+ * </ul>
+ *
+ * <p>Each source file is stored with it's size, modification time and
+ * checksum. The compiled theme is ignored when one of the source files
+ * has been changed. The checksum is only computed when the size matches
+ * but the modification time is different or not available.</p>
+ *
+ * <p>The remaining parts of the theme (expressions, images, fonts) are
+ * still evaluated when it is loaded as they reference renderer resources
+ * or constants passed to the ThemeManager.</p>
+ *
+ * @author Matthias Mann
+ * @see #compile(com.badlogic.gdx.files.FileHandle, com.badlogic.gdx.files.FileHandle)
+ * @see ThemeManager#createThemeManager(com.badlogic.gdx.files.FileHandle, com.badlogic.gdx.files.FileHandle, de.matthiasmann.twl.renderer.Renderer, de.matthiasmann.twl.renderer.CacheContext, java.util.Map)
+ */
+public final class CompiledTheme {
+
+    private static final int MAGIC = 0x54574C42; // "TWLB"
+    private static final int VERSION = 2;
+
+    static final int EVENT_START_TAG = 1;
+    static final int EVENT_END_TAG = 2;
+    static final int EVENT_TEXT = 3;
+    static final int EVENT_END_DOCUMENT = 4;
+
+    static final int VALUE_INT = 1;
+    static final int VALUE_FLOAT = 2;
+    static final int VALUE_COLOR = 3;
+    static final int VALUE_BORDER = 4;
+    static final int VALUE_DIMENSION = 5;
+    static final int VALUE_GAP = 6;
+    static final int VALUE_INPUT_MAP = 7;
+
+    static final int CONDITION_EXPR = 0;
+    static final int CONDITION_AND = 1;
+
+    final String[] strings;
+    private final FileData[] files;
+    final HashMap<List<StateExpression>, SelectProgram> selects;
+
+    private CompiledTheme(String[] strings, FileData[] files, HashMap<List<StateExpression>, SelectProgram> selects) {
+        this.strings = strings;
+        this.files = files;
+        this.selects = selects;
+    }
+
+    /**
+     * Compiles the specified theme file and all included files.
+     *
+     * @param themeFile the theme file
+     * @param output the destination file for the compiled theme
+     * @throws IOException if an error occured while reading or writing
+     */
+    public static void compile(FileHandle themeFile, FileHandle output) throws IOException {
+        output.writeBytes(compile(themeFile), false);
+    }
+
+    /**
+     * Compiles the specified theme file and all included files.
+     *
+     * @param themeFile the theme file
+     * @return the compiled theme
+     * @throws IOException if an error occured while reading
+     */
+    public static byte[] compile(FileHandle themeFile) throws IOException {
+        Compiler compiler = new Compiler(themeFile);
+        compiler.compileFile(themeFile);
+        for(int i=0 ; i<compiler.files.size() ; i++) {
+            compiler.compileFile(compiler.files.get(i));
+        }
+        return compiler.write();
+    }
+
+    /**
+     * Loads a compiled theme.
+     *
+     * @param compiledFile the compiled theme
+     * @param themeFile the theme file which was compiled
+     * @return the compiled theme or null if it could not be loaded or is out of date
+     */
+    public static CompiledTheme load(FileHandle compiledFile, FileHandle themeFile) {
+        if(!compiledFile.exists()) {
+            return null;
+        }
+        try {
+            Reader r = new Reader(compiledFile.readBytes());
+            if(r.readInt() != MAGIC || r.readInt() != VERSION) {
+                getLogger().log(Level.WARNING, "Not a compiled theme: " + compiledFile);
+                return null;
+            }
+            int numStrings = r.readVarInt();
+            String[] strings = new String[numStrings];
+            for(int i=0 ; i<numStrings ; i++) {
+                strings[i] = r.readString();
+            }
+            int numFiles = r.readVarInt();
+            FileData[] files = new FileData[numFiles];
+            for(int i=0 ; i<numFiles ; i++) {
+                String fileName = strings[r.readVarInt()];
+                int length = r.readVarInt();
+                long lastModified = r.readLong();
+                int checksum = r.readInt();
+                FileHandle sourceFile = resolve(themeFile, fileName);
+                if(sourceFile.exists() && !isSameContent(sourceFile, length, lastModified, checksum)) {
+                    getLogger().log(Level.INFO, "Compiled theme " + compiledFile + " is out of date: " + sourceFile);
+                    return null;
+                }
+                int[] ev = new int[r.readVarInt()];
+                for(int j=0 ; j<ev.length ; j++) {
+                    ev[j] = r.readVarInt();
+                }
+                FileData fd = new FileData(fileName, ev);
+                for(int j=r.readVarInt() ; j>0 ; j--) {
+                    readValue(r, strings, fd);
+                }
+                files[i] = fd;
+            }
+            int numSelects = r.readVarInt();
+            HashMap<List<StateExpression>, SelectProgram> selects =
+                    new HashMap<List<StateExpression>, SelectProgram>(numSelects * 2);
+            for(int i=0 ; i<numSelects ; i++) {
+                readSelect(r, strings, selects);
+            }
+            return new CompiledTheme(strings, files, selects);
+        } catch(Exception ex) {
+            getLogger().log(Level.WARNING, "Unable to load compiled theme: " + compiledFile, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Creates a parser for the compiled version of the given file.
+     *
+     * @param themeFile the root theme file used to load this compiled theme
+     * @param handle the theme file or included file
+     * @return the parser or null if the file is not part of the compiled theme
+     */
+    XMLParser createXMLParser(FileHandle themeFile, FileHandle handle) {
+        CompiledFile cf = openFile(themeFile, handle);
+        return (cf != null) ? cf.xmlp : null;
+    }
+
+    /**
+     * Opens the compiled version of the given file.
+     *
+     * @param themeFile the root theme file used to load this compiled theme
+     * @param handle the theme file or included file
+     * @return the compiled file or null if the file is not part of the compiled theme
+     */
+    CompiledFile openFile(FileHandle themeFile, FileHandle handle) {
+        String name = getFileName(themeFile, handle);
+        for(FileData fd : files) {
+            if(fd.name.equals(name)) {
+                return new CompiledFile(new CompiledXmlPullParser(this, fd.events), fd, handle.toString());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates a StateSelect for the given conditions. When the same conditions
+     * were found while compiling the theme then the stored decision program
+     * is used instead of running the optimizer again.
+     *
+     * @param conditions the conditions
+     * @return a new StateSelect
+     */
+    StateSelect createStateSelect(ArrayList<StateExpression> conditions) {
+        StateExpression[] expressions = conditions.toArray(new StateExpression[conditions.size()]);
+        if(StateSelect.isUseOptimizer()) {
+            SelectProgram program = selects.get(conditions);
+            if(program != null) {
+                return new StateSelect(expressions, program.keys, program.codes, program.start);
+            }
+        }
+        return new StateSelect(expressions);
+    }
+
+    static String getFileName(FileHandle themeFile, FileHandle handle) {
+        String base = themeFile.parent().path();
+        String path = handle.path();
+        if(base.length() > 0 && path.startsWith(base) &&
+                path.length() > base.length() && path.charAt(base.length()) == '/') {
+            return path.substring(base.length() + 1);
+        }
+        return path;
+    }
+
+    private static FileHandle resolve(FileHandle themeFile, String fileName) {
+        return themeFile.sibling(fileName);
+    }
+
+    private static boolean isSameContent(FileHandle file, int length, long lastModified, int checksum) {
+        if(file.length() != length) {
+            return false;
+        }
+        if(lastModified != 0 && file.lastModified() == lastModified) {
+            return true;
+        }
+        byte[] data = file.readBytes();
+        return data.length == length && checksum(data) == checksum;
+    }
+
+    /**
+     * 32 bit FNV-1a hash
+     */
+    static int checksum(byte[] data) {
+        int hash = 0x811C9DC5;
+        for(byte b : data) {
+            hash ^= b & 255;
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+    private static void readValue(Reader r, String[] strings, FileData fd) throws IOException {
+        Integer eventStart = r.readVarInt();
+        int type = r.readVarInt();
+        switch(type) {
+            case VALUE_INT:
+                fd.values.put(eventStart, r.readVarInt());
+                break;
+            case VALUE_FLOAT:
+                fd.values.put(eventStart, Float.valueOf(strings[r.readVarInt()]));
+                break;
+            case VALUE_COLOR:
+                fd.values.put(eventStart, new Color(r.readVarInt()));
+                break;
+            case VALUE_BORDER:
+                fd.values.put(eventStart, new Border(r.readVarInt(), r.readVarInt(), r.readVarInt(), r.readVarInt()));
+                break;
+            case VALUE_DIMENSION:
+                fd.values.put(eventStart, new Dimension(r.readVarInt(), r.readVarInt()));
+                break;
+            case VALUE_GAP:
+                fd.values.put(eventStart, new Gap(r.readVarInt(), r.readVarInt(), r.readVarInt()));
+                break;
+            case VALUE_INPUT_MAP: {
+                int count = r.readVarInt();
+                LinkedHashSet<KeyStroke> keyStrokes = new LinkedHashSet<KeyStroke>(count * 2);
+                for(int i=0 ; i<count ; i++) {
+                    String action = strings[r.readVarInt()];
+                    String stroke = strings[r.readVarInt()];
+                    keyStrokes.add(KeyStroke.parse(stroke, action));
+                }
+                fd.inputMaps.put(eventStart, keyStrokes);
+                break;
+            }
+            default:
+                throw new IOException("Unknown value type: " + type);
+        }
+    }
+
+    private static void readSelect(Reader r, String[] strings, HashMap<List<StateExpression>, SelectProgram> selects) throws IOException, ParseException {
+        int numExpr = r.readVarInt();
+        ArrayList<StateExpression> conditions = new ArrayList<StateExpression>(numExpr);
+        for(int i=0 ; i<numExpr ; i++) {
+            conditions.add(readCondition(r, strings));
+        }
+        int numNodes = r.readVarInt();
+        StateKey[] keys = new StateKey[numNodes];
+        for(int i=0 ; i<numNodes ; i++) {
+            keys[i] = StateKey.get(strings[r.readVarInt()]);
+        }
+        short[] codes = new short[numNodes * 2];
+        for(int i=0 ; i<codes.length ; i++) {
+            codes[i] = (short)r.readVarInt();
+        }
+        int start = (short)r.readVarInt();
+        selects.put(conditions, new SelectProgram(keys, codes, start));
+    }
+
+    private static StateExpression readCondition(Reader r, String[] strings) throws IOException, ParseException {
+        int type = r.readVarInt();
+        switch(type) {
+            case CONDITION_EXPR: {
+                String expr = strings[r.readVarInt()];
+                return StateExpression.parse(expr, r.readVarInt() != 0);
+            }
+            case CONDITION_AND: {
+                StateExpression a = readCondition(r, strings);
+                StateExpression b = readCondition(r, strings);
+                return new StateExpression.Logic('+', a, b);
+            }
+            default:
+                throw new IOException("Unknown condition type: " + type);
+        }
+    }
+
+    static Logger getLogger() {
+        return Logger.getLogger(CompiledTheme.class.getName());
+    }
+
+    static final class FileData {
+        final String name;
+        final int[] events;
+        final HashMap<Integer, Object> values;
+        final HashMap<Integer, LinkedHashSet<KeyStroke>> inputMaps;
+
+        FileData(String name, int[] events) {
+            this.name = name;
+            this.events = events;
+            this.values = new HashMap<Integer, Object>();
+            this.inputMaps = new HashMap<Integer, LinkedHashSet<KeyStroke>>();
+        }
+    }
+
+    static final class SelectProgram {
+        final StateKey[] keys;
+        final short[] codes;
+        final int start;
+
+        SelectProgram(StateKey[] keys, short[] codes, int start) {
+            this.keys = keys;
+            this.codes = codes;
+            this.start = start;
+        }
+    }
+
+    /**
+     * A compiled file while it is parsed by the ThemeManager. The
+     * precompiled values are looked up by the position of their element.
+     */
+    static final class CompiledFile {
+        final XMLParser xmlp;
+        private final CompiledXmlPullParser xpp;
+        private final FileData data;
+
+        CompiledFile(CompiledXmlPullParser xpp, FileData data, String source) {
+            this.xmlp = new XMLParser(xpp, source);
+            this.xpp = xpp;
+            this.data = data;
+        }
+
+        /**
+         * Returns the precompiled constant value of the current element. The
+         * parser is then positioned on the end tag of the element.
+         *
+         * @return the value or null if this element was not precompiled
+         */
+        Object getValue() throws XmlPullParserException, IOException {
+            Object value = data.values.get(xpp.getEventStart());
+            if(value != null) {
+                xpp.skipElement();
+            }
+            return value;
+        }
+
+        /**
+         * Returns the precompiled key strokes of the current inputMapDef
+         * element. The parser is then positioned on the end tag of the element.
+         *
+         * @return the key strokes or null if this element was not precompiled
+         */
+        LinkedHashSet<KeyStroke> getInputMap() throws XmlPullParserException, IOException {
+            LinkedHashSet<KeyStroke> keyStrokes = data.inputMaps.get(xpp.getEventStart());
+            if(keyStrokes != null) {
+                xpp.skipElement();
+            }
+            return keyStrokes;
+        }
+    }
+
+    /**
+     * A condition as written in the theme file, or two conditions combined
+     * by inlining a select into another select.
+     */
+    static final class Condition {
+        final String expr;
+        final boolean negate;
+        final Condition a;
+        final Condition b;
+
+        Condition(String expr, boolean negate) {
+            this.expr = expr;
+            this.negate = negate;
+            this.a = null;
+            this.b = null;
+        }
+
+        Condition(Condition a, Condition b) {
+            this.expr = null;
+            this.negate = false;
+            this.a = a;
+            this.b = b;
+        }
+
+        static Condition and(Condition a, Condition b) {
+            if(a == null) {
+                return b;
+            }
+            if(b == null) {
+                return a;
+            }
+            return new Condition(a, b);
+        }
+
+        StateExpression toStateExpression() throws ParseException {
+            if(expr != null) {
+                return StateExpression.parse(expr, negate);
+            }
+            return new StateExpression.Logic('+', a.toStateExpression(), b.toStateExpression());
+        }
+    }
+
+    /**
+     * The conditions of a select element as computed by the ImageManager.
+     */
+    static final class SelectConditions {
+        final ArrayList<Condition> conditions;
+        final int numImages;
+
+        SelectConditions(ArrayList<Condition> conditions, int numImages) {
+            this.conditions = conditions;
+            this.numImages = numImages;
+        }
+    }
+
+    /**
+     * Evaluates literal values - constants can't be accessed as they may
+     * be different when the theme is loaded.
+     */
+    static final class LiteralMathInterpreter extends AbstractMathInterpreter {
+        public void accessVariable(String name) {
+            throw new IllegalArgumentException("variable not found: " + name);
+        }
+    }
+
+    static final class Compiler {
+        final FileHandle themeFile;
+        final ArrayList<FileHandle> files;
+        final ArrayList<String> strings;
+        final HashMap<String, Integer> stringMap;
+        final ArrayList<int[]> fileInfos;
+        final ArrayList<Long> fileTimes;
+        final ArrayList<int[]> fileEvents;
+        final ArrayList<ArrayList<int[]>> fileValues;
+        final LinkedHashMap<List<StateExpression>, int[]> selects;
+        final LiteralMathInterpreter mathInterpreter;
+        int[] ev;
+        int numEv;
+
+        Compiler(FileHandle themeFile) {
+            this.themeFile = themeFile;
+            this.files = new ArrayList<FileHandle>();
+            this.strings = new ArrayList<String>();
+            this.stringMap = new HashMap<String, Integer>();
+            this.fileInfos = new ArrayList<int[]>();
+            this.fileTimes = new ArrayList<Long>();
+            this.fileEvents = new ArrayList<int[]>();
+            this.fileValues = new ArrayList<ArrayList<int[]>>();
+            this.selects = new LinkedHashMap<List<StateExpression>, int[]>();
+            this.mathInterpreter = new LiteralMathInterpreter();
+        }
+
+        void compileFile(FileHandle handle) throws IOException {
+            byte[] data = handle.readBytes();
+            ev = new int[256];
+            numEv = 0;
+            int[] events;
+            ArrayList<int[]> values = new ArrayList<int[]>();
+            try {
+                XmlPullParser xpp = XMLParser.createParser();
+                InputStream is = handle.read();
+                try {
+                    xpp.setInput(is, "UTF8");
+                    compileEvents(xpp, handle);
+                } finally {
+                    is.close();
+                }
+                events = new int[numEv];
+                System.arraycopy(ev, 0, events, 0, numEv);
+                precompile(handle, events, values);
+            } catch(XmlPullParserException ex) {
+                throw new ThemeException(ex.getMessage(), handle, ex.getLineNumber(), ex.getColumnNumber(), ex);
+            }
+            fileInfos.add(new int[] { intern(getFileName(themeFile, handle)), data.length, checksum(data) });
+            fileTimes.add(handle.lastModified());
+            fileEvents.add(events);
+            fileValues.add(values);
+        }
+
+        private void compileEvents(XmlPullParser xpp, FileHandle handle) throws XmlPullParserException, IOException {
+            int prevType = XmlPullParser.START_DOCUMENT;
+            String pendingText = null;
+            int pendingLine = 0;
+            int pendingColumn = 0;
+            int type;
+            do {
+                type = xpp.next();
+                if(type == XmlPullParser.TEXT) {
+                    String text = xpp.getText();
+                    if(!xpp.isWhitespace()) {
+                        add(EVENT_TEXT, xpp);
+                        add(intern(text));
+                    } else if(prevType == XmlPullParser.START_TAG) {
+                        // whitespace is only significant as content of an element without children
+                        pendingText = text;
+                        pendingLine = xpp.getLineNumber();
+                        pendingColumn = xpp.getColumnNumber();
+                    }
+                    continue;
+                }
+                if(pendingText != null) {
+                    if(type == XmlPullParser.END_TAG) {
+                        add(EVENT_TEXT);
+                        add(pendingLine);
+                        add(pendingColumn);
+                        add(intern(pendingText));
+                    }
+                    pendingText = null;
+                }
+                switch(type) {
+                    case XmlPullParser.START_TAG: {
+                        add(EVENT_START_TAG, xpp);
+                        String name = xpp.getName();
+                        int count = xpp.getAttributeCount();
+                        add(intern(name));
+                        add(count);
+                        for(int i=0 ; i<count ; i++) {
+                            add(intern(xpp.getAttributeName(i)));
+                            add(intern(xpp.getAttributeValue(i)));
+                        }
+                        if(xpp.getDepth() == 2 && "include".equals(name)) {
+                            String fileName = xpp.getAttributeValue(null, "filename");
+                            if(fileName != null) {
+                                addFile(handle.sibling(fileName));
+                            }
+                        }
+                        break;
+                    }
+                    case XmlPullParser.END_TAG:
+                        add(EVENT_END_TAG, xpp);
+                        break;
+                    case XmlPullParser.END_DOCUMENT:
+                        add(EVENT_END_DOCUMENT, xpp);
+                        break;
+                    default:
+                        throw new XmlPullParserException("Unexpected event", xpp, null);
+                }
+                prevType = type;
+            } while(type != XmlPullParser.END_DOCUMENT);
+        }
+
+        /**
+         * Replays the compiled events to precompute input maps, constants and
+         * state select programs. The values are identified by the start of
+         * their element in the compiled events.
+         */
+        private void precompile(FileHandle handle, int[] events, ArrayList<int[]> values) throws XmlPullParserException, IOException {
+            CompiledXmlPullParser xpp = new CompiledXmlPullParser(strings.toArray(new String[strings.size()]), events);
+            XMLParser xmlp = new XMLParser(xpp, handle.toString());
+            xmlp.require(XmlPullParser.START_DOCUMENT, null, null);
+            xmlp.nextTag();
+            precompileElement(xmlp, xpp, null, false, values);
+        }
+
+        /**
+         * Precompiles the current element and it's children.
+         *
+         * @return the conditions if this is a select element of an image, or null
+         */
+        private SelectConditions precompileElement(XMLParser xmlp, CompiledXmlPullParser xpp,
+                String parentName, boolean inImages, ArrayList<int[]> values) throws XmlPullParserException, IOException {
+            final String name = xmlp.getName();
+            final int eventStart = xpp.getEventStart();
+            xmlp.ignoreOtherAttributes();
+
+            if("inputMapDef".equals(name)) {
+                xmlp.nextTag();
+                LinkedHashSet<KeyStroke> keyStrokes = InputMap.parseBody(xmlp);
+                int[] value = new int[3 + keyStrokes.size() * 2];
+                value[0] = eventStart;
+                value[1] = VALUE_INPUT_MAP;
+                value[2] = keyStrokes.size();
+                int idx = 3;
+                for(KeyStroke ks : keyStrokes) {
+                    value[idx++] = intern(ks.getAction());
+                    value[idx++] = intern(ks.getStroke());
+                }
+                values.add(value);
+                return null;
+            }
+            if(xpp.getDepth() == 3 && "constantDef".equals(parentName) && isLiteralType(name)) {
+                int[] value = precompileLiteral(name, xmlp.nextText(), eventStart);
+                if(value != null) {
+                    values.add(value);
+                }
+                return null;
+            }
+
+            final boolean isSelect = inImages && "select".equals(name);
+            final boolean isFontDef = "fontDef".equals(name);
+            final boolean childInImages = inImages || "images".equals(name) || "textures".equals(name);
+            ArrayList<Condition> conditions = (isSelect || isFontDef) ? new ArrayList<Condition>() : null;
+            int numImages = 0;
+            boolean last = false;
+
+            for(;;) {
+                int type = xmlp.next();
+                if(type == XmlPullParser.END_TAG) {
+                    break;
+                }
+                if(type != XmlPullParser.START_TAG) {
+                    continue;
+                }
+                String childName = xmlp.getName();
+                Condition cond = parseCondition(xmlp);
+                SelectConditions childSelect = precompileElement(xmlp, xpp, name, childInImages, values);
+                if(isSelect && !last) {
+                    // same as ImageManager.parseStateSelect()
+                    last = cond == null;
+                    if(childSelect != null) {
+                        int n = childSelect.numImages;
+                        int m = childSelect.conditions.size();
+                        for(int i=0 ; i<n ; i++) {
+                            Condition imgCond = Condition.and((i < m) ? childSelect.conditions.get(i) : null, cond);
+                            if(imgCond != null) {
+                                conditions.add(imgCond);
+                            }
+                        }
+                        numImages += n;
+                        if(n == m && cond != null) {
+                            conditions.add(cond);
+                            numImages++;
+                        }
+                    } else {
+                        if(cond != null) {
+                            conditions.add(cond);
+                        }
+                        numImages++;
+                    }
+                } else if(isFontDef && conditions != null) {
+                    if(cond != null && "fontParam".equals(childName)) {
+                        conditions.add(cond);
+                    } else {
+                        conditions = null;
+                    }
+                }
+            }
+
+            if(conditions != null && !conditions.isEmpty()) {
+                addSelect(conditions);
+                if(isSelect) {
+                    return new SelectConditions(conditions, numImages);
+                }
+            }
+            return null;
+        }
+
+        private static Condition parseCondition(XMLParser xmlp) {
+            String expr = xmlp.getAttributeValue(null, "if");
+            if(expr != null) {
+                return new Condition(expr, false);
+            }
+            expr = xmlp.getAttributeValue(null, "unless");
+            if(expr != null) {
+                return new Condition(expr, true);
+            }
+            return null;
+        }
+
+        private static boolean isLiteralType(String tagName) {
+            return "int".equals(tagName) || "float".equals(tagName) ||
+                    "color".equals(tagName) || "border".equals(tagName) ||
+                    "dimension".equals(tagName) || "gap".equals(tagName) ||
+                    "size".equals(tagName);
+        }
+
+        private int[] precompileLiteral(String tagName, String value, int eventStart) {
+            try {
+                if("int".equals(tagName)) {
+                    return new int[] { eventStart, VALUE_INT, mathInterpreter.execute(value).intValue() };
+                }
+                if("float".equals(tagName)) {
+                    float f = mathInterpreter.execute(value).floatValue();
+                    return new int[] { eventStart, VALUE_FLOAT, intern(Float.toString(f)) };
+                }
+                if("color".equals(tagName)) {
+                    Color color = Color.parserColor(value);
+                    return (color != null) ? new int[] { eventStart, VALUE_COLOR, color.toARGB() } : null;
+                }
+                if("border".equals(tagName)) {
+                    Border b = mathInterpreter.executeCreateObject(value, Border.class);
+                    return new int[] { eventStart, VALUE_BORDER,
+                        b.getBorderTop(), b.getBorderLeft(), b.getBorderBottom(), b.getBorderRight() };
+                }
+                if("dimension".equals(tagName)) {
+                    Dimension d = mathInterpreter.executeCreateObject(value, Dimension.class);
+                    return new int[] { eventStart, VALUE_DIMENSION, d.getX(), d.getY() };
+                }
+                Gap g = mathInterpreter.executeCreateObject(value, Gap.class);
+                return new int[] { eventStart, VALUE_GAP, g.min, g.preferred, g.max };
+            } catch(Exception ex) {
+                // uses a constant or is invalid - evaluated when the theme is loaded
+                return null;
+            }
+        }
+
+        private void addSelect(ArrayList<Condition> conditions) {
+            ArrayList<StateExpression> expressions = new ArrayList<StateExpression>(conditions.size());
+            try {
+                for(Condition cond : conditions) {
+                    expressions.add(cond.toStateExpression());
+                }
+            } catch(ParseException ex) {
+                // reported when the theme is loaded
+                return;
+            }
+            if(selects.containsKey(expressions)) {
+                return;
+            }
+            StateSelect select = new StateSelect(expressions);
+            StateKey[] keys = select.getProgramKeys();
+            if(keys == null) {
+                return;
+            }
+            short[] codes = select.getProgramCodes();
+            ArrayList<Integer> data = new ArrayList<Integer>();
+            data.add(conditions.size());
+            for(Condition cond : conditions) {
+                addCondition(cond, data);
+            }
+            data.add(keys.length);
+            for(StateKey key : keys) {
+                data.add(intern(key.getName()));
+            }
+            for(short code : codes) {
+                data.add(code & 0xFFFF);
+            }
+            data.add(select.getProgramStart() & 0xFFFF);
+            int[] encoded = new int[data.size()];
+            for(int i=0 ; i<encoded.length ; i++) {
+                encoded[i] = data.get(i);
+            }
+            selects.put(expressions, encoded);
+        }
+
+        private void addCondition(Condition cond, ArrayList<Integer> data) {
+            if(cond.expr != null) {
+                data.add(CONDITION_EXPR);
+                data.add(intern(cond.expr));
+                data.add(cond.negate ? 1 : 0);
+            } else {
+                data.add(CONDITION_AND);
+                addCondition(cond.a, data);
+                addCondition(cond.b, data);
+            }
+        }
+
+        private void addFile(FileHandle handle) {
+            String path = handle.path();
+            if(path.equals(themeFile.path())) {
+                return;
+            }
+            for(FileHandle f : files) {
+                if(path.equals(f.path())) {
+                    return;
+                }
+            }
+            files.add(handle);
+        }
+
+        private void add(int type, XmlPullParser xpp) {
+            add(type);
+            add(xpp.getLineNumber());
+            add(xpp.getColumnNumber());
+        }
+
+        private void add(int value) {
+            if(numEv == ev.length) {
+                int[] tmp = new int[numEv * 2];
+                System.arraycopy(ev, 0, tmp, 0, numEv);
+                ev = tmp;
+            }
+            ev[numEv++] = value;
+        }
+
+        private int intern(String str) {
+            Integer idx = stringMap.get(str);
+            if(idx == null) {
+                idx = strings.size();
+                strings.add(str);
+                stringMap.put(str, idx);
+            }
+            return idx;
+        }
+
+        byte[] write() throws IOException {
+            Writer w = new Writer();
+            w.writeInt(MAGIC);
+            w.writeInt(VERSION);
+            w.writeVarInt(strings.size());
+            for(String str : strings) {
+                w.writeString(str);
+            }
+            w.writeVarInt(fileInfos.size());
+            for(int i=0,n=fileInfos.size() ; i<n ; i++) {
+                int[] info = fileInfos.get(i);
+                int[] events = fileEvents.get(i);
+                ArrayList<int[]> values = fileValues.get(i);
+                w.writeVarInt(info[0]);
+                w.writeVarInt(info[1]);
+                w.writeLong(fileTimes.get(i));
+                w.writeInt(info[2]);
+                w.writeVarInt(events.length);
+                w.writeVarInts(events);
+                w.writeVarInt(values.size());
+                for(int[] value : values) {
+                    w.writeVarInts(value);
+                }
+            }
+            w.writeVarInt(selects.size());
+            for(int[] select : selects.values()) {
+                w.writeVarInts(select);
+            }
+            return w.toByteArray();
+        }
+    }
+
+    static final class Writer {
+        private byte[] buf = new byte[4096];
+        private int pos;
+
+        void writeByte(int value) {
+            if(pos == buf.length) {
+                byte[] tmp = new byte[pos * 2];
+                System.arraycopy(buf, 0, tmp, 0, pos);
+                buf = tmp;
+            }
+            buf[pos++] = (byte)value;
+        }
+
+        void writeInt(int value) {
+            writeByte(value >>> 24);
+            writeByte(value >>> 16);
+            writeByte(value >>> 8);
+            writeByte(value);
+        }
+
+        void writeLong(long value) {
+            writeInt((int)(value >>> 32));
+            writeInt((int)value);
+        }
+
+        void writeVarInt(int value) {
+            while((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        void writeVarInts(int[] values) {
+            for(int value : values) {
+                writeVarInt(value);
+            }
+        }
+
+        void writeString(String str) throws UnsupportedEncodingException {
+            byte[] data = str.getBytes("UTF-8");
+            writeVarInt(data.length);
+            for(byte b : data) {
+                writeByte(b);
+            }
+        }
+
+        byte[] toByteArray() {
+            byte[] result = new byte[pos];
+            System.arraycopy(buf, 0, result, 0, pos);
+            return result;
+        }
+    }
+
+    static final class Reader {
+        private final byte[] buf;
+        private int pos;
+
+        Reader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        int readByte() throws IOException {
+            if(pos == buf.length) {
+                throw new IOException("Unexpected end of file");
+            }
+            return buf[pos++] & 255;
+        }
+
+        int readInt() throws IOException {
+            return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+        }
+
+        long readLong() throws IOException {
+            long hi = readInt();
+            return (hi << 32) | (readInt() & 0xFFFFFFFFL);
+        }
+
+        int readVarInt() throws IOException {
+            int value = 0;
+            for(int shift=0 ;; shift+=7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if(b < 0x80) {
+                    return value;
+                }
+            }
+        }
+
+        String readString() throws IOException {
+            int length = readVarInt();
+            if(length > buf.length - pos) {
+                throw new IOException("Unexpected end of file");
+            }
+            String str = new String(buf, pos, length, "UTF-8");
+            pos += length;
+            return str;
+        }
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) 2008-2013, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl.theme;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * A XmlPullParser which replays the events of a compiled theme file.
+ * 
+ * <p>Namespace processing is not supported. Comments, processing
+ * instructions and whitespace between elements are not part of the
+ * compiled events.</p>
+ * 
+ * @author Matthias Mann
+ */
+class CompiledXmlPullParser implements XmlPullParser {
+
+    private final String[] strings;
+    private final int[] events;
+    private int pos;
+    private int eventType;
+    private int eventStart;
+    private int eventPos;
+    private int lineNumber;
+    private int columnNumber;
+    private int depth;
+    private String[] elementStack;
+
+    CompiledXmlPullParser(CompiledTheme theme, int[] events) {
+        this(theme.strings, events);
+    }
+
+    CompiledXmlPullParser(String[] strings, int[] events) {
+        this.strings = strings;
+        this.events = events;
+        this.eventType = START_DOCUMENT;
+        this.lineNumber = 1;
+        this.elementStack = new String[16];
+    }
+
+    public void setFeature(String name, boolean state) throws XmlPullParserException {
+        if(state) {
+            throw new XmlPullParserException("unsupported feature: " + name);
+        }
+    }
+
+    public boolean getFeature(String name) {
+        return false;
+    }
+
+    public void setProperty(String name, Object value) throws XmlPullParserException {
+        throw new XmlPullParserException("unsupported property: " + name);
+    }
+
+    public Object getProperty(String name) {
+        return null;
+    }
+
+    public void setInput(Reader in) throws XmlPullParserException {
+        throw new XmlPullParserException("input can't be changed");
+    }
+
+    public void setInput(InputStream inputStream, String inputEncoding) throws XmlPullParserException {
+        throw new XmlPullParserException("input can't be changed");
+    }
+
+    public String getInputEncoding() {
+        return "UTF-8";
+    }
+
+    public void defineEntityReplacementText(String entityName, String replacementText) throws XmlPullParserException {
+        throw new XmlPullParserException("entities can't be defined");
+    }
+
+    public int getNamespaceCount(int depth) throws XmlPullParserException {
+        return 0;
+    }
+
+    public String getNamespacePrefix(int pos) throws XmlPullParserException {
+        throw new IndexOutOfBoundsException();
+    }
+
+    public String getNamespaceUri(int pos) throws XmlPullParserException {
+        throw new IndexOutOfBoundsException();
+    }
+
+    public String getNamespace(String prefix) {
+        return null;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public String getPositionDescription() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(TYPES[eventType]);
+        if(eventType == START_TAG) {
+            sb.append(" <").append(getName()).append('>');
+        } else if(eventType == END_TAG) {
+            sb.append(" </").append(getName()).append('>');
+        }
+        return sb.append(" @").append(lineNumber).append(':').append(columnNumber).toString();
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public int getColumnNumber() {
+        return columnNumber;
+    }
+
+    public boolean isWhitespace() throws XmlPullParserException {
+        if(eventType != TEXT) {
+            throw new XmlPullParserException("no text available", this, null);
+        }
+        String text = getText();
+        for(int i=0,n=text.length() ; i<n ; i++) {
+            if(text.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getText() {
+        if(eventType == TEXT) {
+            return strings[events[eventPos]];
+        }
+        return null;
+    }
+
+    public char[] getTextCharacters(int[] holderForStartAndLength) {
+        String text = getText();
+        if(text == null) {
+            holderForStartAndLength[0] = -1;
+            holderForStartAndLength[1] = -1;
+            return null;
+        }
+        holderForStartAndLength[0] = 0;
+        holderForStartAndLength[1] = text.length();
+        return text.toCharArray();
+    }
+
+    public String getNamespace() {
+        return (eventType == START_TAG || eventType == END_TAG) ? NO_NAMESPACE : null;
+    }
+
+    public String getName() {
+        if(eventType == START_TAG || eventType == END_TAG) {
+            return elementStack[depth - 1];
+        }
+        return null;
+    }
+
+    public String getPrefix() {
+        return null;
+    }
+
+    public boolean isEmptyElementTag() throws XmlPullParserException {
+        if(eventType != START_TAG) {
+            throw new XmlPullParserException("not a start tag", this, null);
+        }
+        return false;
+    }
+
+    public int getAttributeCount() {
+        if(eventType == START_TAG) {
+            return events[eventPos];
+        }
+        return -1;
+    }
+
+    public String getAttributeNamespace(int index) {
+        checkAttributeIndex(index);
+        return NO_NAMESPACE;
+    }
+
+    public String getAttributeName(int index) {
+        checkAttributeIndex(index);
+        return strings[events[eventPos + 1 + index*2]];
+    }
+
+    public String getAttributePrefix(int index) {
+        checkAttributeIndex(index);
+        return null;
+    }
+
+    public String getAttributeType(int index) {
+        checkAttributeIndex(index);
+        return "CDATA";
+    }
+
+    public boolean isAttributeDefault(int index) {
+        checkAttributeIndex(index);
+        return false;
+    }
+
+    public String getAttributeValue(int index) {
+        checkAttributeIndex(index);
+        return strings[events[eventPos + 2 + index*2]];
+    }
+
+    public String getAttributeValue(String namespace, String name) {
+        if(eventType != START_TAG) {
+            throw new IndexOutOfBoundsException("only START_TAG can have attributes");
+        }
+        for(int i=0,n=events[eventPos] ; i<n ; i++) {
+            if(name.equals(strings[events[eventPos + 1 + i*2]])) {
+                return strings[events[eventPos + 2 + i*2]];
+            }
+        }
+        return null;
+    }
+
+    public int getEventType() throws XmlPullParserException {
+        return eventType;
+    }
+
+    public int next() throws XmlPullParserException, IOException {
+        if(eventType == END_DOCUMENT) {
+            throw new XmlPullParserException("already reached end of document", this, null);
+        }
+        if(eventType == END_TAG) {
+            depth--;
+        }
+        final int[] ev = events;
+        eventStart = pos;
+        int type = ev[pos];
+        lineNumber = ev[pos + 1];
+        columnNumber = ev[pos + 2];
+        eventPos = pos + 3;
+        switch(type) {
+            case CompiledTheme.EVENT_START_TAG:
+                if(depth == elementStack.length) {
+                    String[] tmp = new String[depth * 2];
+                    System.arraycopy(elementStack, 0, tmp, 0, depth);
+                    elementStack = tmp;
+                }
+                elementStack[depth++] = strings[ev[eventPos]];
+                eventPos++;
+                pos = eventPos + 1 + ev[eventPos] * 2;
+                eventType = START_TAG;
+                break;
+            case CompiledTheme.EVENT_END_TAG:
+                pos = eventPos;
+                eventType = END_TAG;
+                break;
+            case CompiledTheme.EVENT_TEXT:
+                pos = eventPos + 1;
+                eventType = TEXT;
+                break;
+            case CompiledTheme.EVENT_END_DOCUMENT:
+                pos = eventPos;
+                eventType = END_DOCUMENT;
+                break;
+            default:
+                throw new XmlPullParserException("corrupted compiled theme", this, null);
+        }
+        return eventType;
+    }
+
+    /**
+     * Returns the offset of the current event in the compiled events. This
+     * is used to identify elements which have precompiled values.
+     * 
+     * @return the offset of the current event
+     */
+    int getEventStart() {
+        return eventStart;
+    }
+
+    /**
+     * Skips the content of the current element. The parser is then
+     * positioned on the matching END_TAG.
+     * 
+     * @throws XmlPullParserException if the parser is not on a START_TAG
+     * @throws IOException never
+     */
+    void skipElement() throws XmlPullParserException, IOException {
+        if(eventType != START_TAG) {
+            throw new XmlPullParserException("parser must be on START_TAG to skip an element", this, null);
+        }
+        int elementDepth = depth;
+        do {
+            next();
+        } while(eventType != END_TAG || depth != elementDepth);
+    }
+
+    public int nextToken() throws XmlPullParserException, IOException {
+        return next();
+    }
+
+    public void require(int type, String namespace, String name) throws XmlPullParserException, IOException {
+        if(type != eventType ||
+                (namespace != null && !namespace.equals(getNamespace())) ||
+                (name != null && !name.equals(getName()))) {
+            throw new XmlPullParserException("expected " + TYPES[type] + getPositionDescription(), this, null);
+        }
+    }
+
+    public String nextText() throws XmlPullParserException, IOException {
+        if(eventType != START_TAG) {
+            throw new XmlPullParserException("parser must be on START_TAG to read next text", this, null);
+        }
+        int type = next();
+        if(type == TEXT) {
+            String result = getText();
+            type = next();
+            if(type != END_TAG) {
+                throw new XmlPullParserException("TEXT must be immediately followed by END_TAG", this, null);
+            }
+            return result;
+        } else if(type == END_TAG) {
+            return "";
+        } else {
+            throw new XmlPullParserException("parser must be on START_TAG or TEXT to read text", this, null);
+        }
+    }
+
+    public int nextTag() throws XmlPullParserException, IOException {
+        next();
+        if(eventType == TEXT && isWhitespace()) {
+            next();
+        }
+        if(eventType != START_TAG && eventType != END_TAG) {
+            throw new XmlPullParserException("expected START_TAG or END_TAG not " + TYPES[eventType], this, null);
+        }
+        return eventType;
+    }
+
+    private void checkAttributeIndex(int index) {
+        if(eventType != START_TAG) {
+            throw new IndexOutOfBoundsException("only START_TAG can have attributes");
+        }
+        if(index < 0 || index >= events[eventPos]) {
+            throw new IndexOutOfBoundsException("attribute position must be 0.." + (events[eventPos] - 1));
+        }
+    }
+}
@@ -60,6 +60,8 @@ class ImageManager {
 
     final ParameterMapImpl constants;
     private final Renderer renderer;
+    long textureLoadTime;
+    CompiledTheme compiledTheme;
     private final TreeMap<String, Image> images;
     private final TreeMap<String, MouseCursor> cursors;
     private final MathInterpreter mathInterpreter;
@@ -132,6 +134,7 @@ class ImageManager {
             // ignore the comment so that it does not cause a warning
             xmlp.getAttributeValue(null, "comment");
 
+            final long startTime = renderer.getTimeMillis();
             try {
                 texture = renderer.loadTexture(fileHandle.sibling(fileName), fmt, filter);
                 if(texture == null) {
@@ -139,6 +142,8 @@ class ImageManager {
                 }
             } catch (IOException ex) {
                 throw xmlp.error("Unable to load image file: " + fileName, ex);
+            } finally {
+                textureLoadTime += renderer.getTimeMillis() - startTime;
             }
         }
 
@@ -329,7 +334,9 @@ class ImageManager {
                 return stateImages.get(0);
             }
         }
-        StateSelect select = new StateSelect(conditions);
+        StateSelect select = (compiledTheme != null)
+                ? compiledTheme.createStateSelect(conditions)
+                : new StateSelect(conditions);
         Image image = new StateSelectImage(select, params.border, stateImages.toArray(new Image[stateImages.size()]));
         return image;
     }
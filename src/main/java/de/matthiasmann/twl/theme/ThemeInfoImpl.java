@@ -44,6 +44,8 @@ class ThemeInfoImpl extends ParameterMapImpl implements ThemeInfo {
     private final CascadedHashMap<String, ThemeInfoImpl> children;
     boolean maybeUsedFromWildcard;
     String wildcardImportPath;
+    private CascadedHashMap<String, ThemeInfoImpl> wildcardCache;
+    private int wildcardCacheModCount;
 
     public ThemeInfoImpl(ThemeManager manager, String name, ThemeInfoImpl parent) {
         super(manager, parent);
@@ -66,24 +68,56 @@ class ThemeInfoImpl extends ParameterMapImpl implements ThemeInfo {
     }
     
     ThemeInfo getChildThemeImpl(String theme, boolean useFallback) {
-        ThemeInfo info = children.get(theme);
+        return getChildThemeImpl(theme, 0, theme.length(), useFallback);
+    }
+
+    /**
+     * Looks up a child theme using the characters {@code start} to
+     * {@code end} of {@code path} as name.
+     */
+    ThemeInfoImpl getChildThemeImpl(String path, int start, int end, boolean useFallback) {
+        ThemeInfoImpl info = children.get(path, start, end);
         if(info == null) {
+            String theme = null;
             if(wildcardImportPath != null) {
+                if(wildcardCache != null && wildcardCacheModCount == manager.themeModCount) {
+                    info = wildcardCache.get(path, start, end);
+                    if(info != null) {
+                        return info;
+                    }
+                }
+                theme = path.substring(start, end);
+                final int startFallbackCount = manager.fallbackCount;
                 info = manager.resolveWildcard(wildcardImportPath, theme, useFallback);
+                if(info != null && manager.fallbackCount == startFallbackCount) {
+                    cacheWildcard(theme, info);
+                }
             }
             if(info == null && useFallback) {
+                if(theme == null) {
+                    theme = path.substring(start, end);
+                }
                 DebugHook.getDebugHook().missingChildTheme(this, theme);
             }
         }
         return info;
     }
 
+    private void cacheWildcard(String theme, ThemeInfoImpl info) {
+        if(wildcardCache == null || wildcardCacheModCount != manager.themeModCount) {
+            wildcardCache = new CascadedHashMap<String, ThemeInfoImpl>();
+            wildcardCacheModCount = manager.themeModCount;
+        }
+        wildcardCache.put(theme, info);
+    }
+
     final ThemeInfoImpl getTheme(String name) {
         return children.get(name);
     }
     
     void putTheme(String name, ThemeInfoImpl child) {
         children.put(name, child);
+        manager.themesChanged();
     }
     
     public String getThemePath() {
@@ -49,6 +49,7 @@ import de.matthiasmann.twl.renderer.FontMapper;
 import de.matthiasmann.twl.renderer.FontParameter;
 import de.matthiasmann.twl.renderer.Renderer;
 import de.matthiasmann.twl.utils.AbstractMathInterpreter;
+import de.matthiasmann.twl.utils.CascadedHashMap;
 import de.matthiasmann.twl.utils.StateExpression;
 import de.matthiasmann.twl.utils.StateSelect;
 import de.matthiasmann.twl.utils.StringList;
@@ -85,11 +86,20 @@ public class ThemeManager {
     private final CacheContext cacheContext;
     private final ImageManager imageManager;
     private final HashMap<String, Font> fonts;
-    private final HashMap<String, ThemeInfoImpl> themes;
+    private final CascadedHashMap<String, ThemeInfoImpl> themes;
+    private final HashMap<String, ThemeInfoImpl> themeInfoCache;
     private final HashMap<String, InputMap> inputMaps;
     private final MathInterpreter mathInterpreter;
     private Font defaultFont;
     private Font firstFont;
+    int themeModCount;
+    int fallbackCount;
+    private long loadTime;
+    private CompiledTheme compiledTheme;
+    private FileHandle compiledThemeRoot;
+    private CompiledTheme.CompiledFile compiledFile;
+    private boolean usedCompiledTheme;
+    private long fontLoadTime;
 
     final ParameterMapImpl emptyMap;
     final ParameterListImpl emptyList;
@@ -100,7 +110,8 @@ public class ThemeManager {
         this.cacheContext = cacheContext;
         this.imageManager = new ImageManager(constants, renderer);
         this.fonts  = new HashMap<String, Font>();
-        this.themes = new HashMap<String, ThemeInfoImpl>();
+        this.themes = new CascadedHashMap<String, ThemeInfoImpl>();
+        this.themeInfoCache = new HashMap<String, ThemeInfoImpl>();
         this.inputMaps = new HashMap<String, InputMap>();
         this.emptyMap = new ParameterMapImpl(this, null);
         this.emptyList = new ParameterListImpl(this, null);
@@ -194,6 +205,29 @@ public class ThemeManager {
      * @see #destroy() 
      */
     public static ThemeManager createThemeManager(FileHandle handle, Renderer renderer, CacheContext cacheContext, Map<String, Object> constants) throws IOException {
+        return createThemeManager(handle, null, renderer, cacheContext, constants);
+    }
+
+    /**
+     * Loads the specified theme using a precompiled version of the theme
+     * when it is available and up to date.
+     *
+     * <p>When the compiled theme doesn't exist, can't be read or doesn't
+     * match the theme files then the theme files are parsed instead.</p>
+     *
+     * @param handle The URL of the theme
+     * @param compiledTheme The compiled theme file, can be null.
+     * @param renderer The renderer which is used to load and render the resources
+     * @param cacheContext The cache context into which the resources are loaded
+     * @param constants A map containing constants which as exposed to the theme
+     *                  as if defined by &lt;constantDef/&gt;, can be null.
+     * @return a new ThemeManager
+     * @throws IOException if an error occured while loading
+     * @throws IllegalArgumentException if one of the passed parameters is {@code null}
+     * @see CompiledTheme#compile(com.badlogic.gdx.files.FileHandle, com.badlogic.gdx.files.FileHandle) 
+     * @see #isLoadedFromCompiledTheme() 
+     */
+    public static ThemeManager createThemeManager(FileHandle handle, FileHandle compiledTheme, Renderer renderer, CacheContext cacheContext, Map<String, Object> constants) throws IOException {
         if(handle == null) {
             throw new IllegalArgumentException("url is null");
         }
@@ -204,22 +238,173 @@ public class ThemeManager {
             throw new IllegalArgumentException("cacheContext is null");
         }
         try {
+            final long startTime = renderer.getTimeMillis();
             renderer.setActiveCacheContext(cacheContext);
             ThemeManager tm = new ThemeManager(renderer, cacheContext);
             tm.insertDefaultConstants();
             if(constants != null && !constants.isEmpty()) {
                 tm.insertConstants(constants);
             }
+            if(compiledTheme != null) {
+                tm.compiledTheme = CompiledTheme.load(compiledTheme, handle);
+                tm.compiledThemeRoot = handle;
+                tm.imageManager.compiledTheme = tm.compiledTheme;
+            }
             tm.parseThemeFile(handle);
+            tm.compiledTheme = null;
+            tm.compiledThemeRoot = null;
+            tm.imageManager.compiledTheme = null;
             if(tm.defaultFont == null) {
                 tm.defaultFont = tm.firstFont;
             }
+            tm.loadTime = renderer.getTimeMillis() - startTime;
             return tm;
         } catch (XmlPullParserException ex) {
             throw (IOException)(new IOException().initCause(ex));
         }
     }
     
+    /**
+     * Returns true if this theme was loaded from a compiled theme.
+     * 
+     * @return true if a compiled theme was used
+     * @see #createThemeManager(com.badlogic.gdx.files.FileHandle, com.badlogic.gdx.files.FileHandle, de.matthiasmann.twl.renderer.Renderer, de.matthiasmann.twl.renderer.CacheContext, java.util.Map) 
+     */
+    public boolean isLoadedFromCompiledTheme() {
+        return usedCompiledTheme;
+    }
+
+    /**
+     * Returns the time it took to load this theme.
+     * 
+     * @return the load time in milliseconds
+     * @see #getParseTimeMillis()
+     * @see #getTextureLoadTimeMillis()
+     * @see #getFontLoadTimeMillis()
+     */
+    public long getLoadTimeMillis() {
+        return loadTime;
+    }
+
+    /**
+     * Returns the part of the load time which was spent parsing the theme
+     * files and evaluating expressions - this excludes loading of textures
+     * and fonts.
+     * 
+     * @return the parse time in milliseconds
+     */
+    public long getParseTimeMillis() {
+        return loadTime - imageManager.textureLoadTime - fontLoadTime;
+    }
+
+    /**
+     * Returns the part of the load time which was spent in
+     * {@link Renderer#loadTexture(com.badlogic.gdx.files.FileHandle, java.lang.String, java.lang.String) }.
+     * 
+     * @return the texture load time in milliseconds
+     */
+    public long getTextureLoadTimeMillis() {
+        return imageManager.textureLoadTime;
+    }
+
+    /**
+     * Returns the part of the load time which was spent in
+     * {@link Renderer#loadFont(com.badlogic.gdx.files.FileHandle, de.matthiasmann.twl.utils.StateSelect, de.matthiasmann.twl.renderer.FontParameter[]) }.
+     * 
+     * @return the font load time in milliseconds
+     */
+    public long getFontLoadTimeMillis() {
+        return fontLoadTime;
+    }
+
+    /**
+     * Receives the texture and font files referenced by a theme.
+     * 
+     * @see ThemeManager#scanTextureFiles(com.badlogic.gdx.files.FileHandle, de.matthiasmann.twl.theme.ThemeManager.TextureFileVisitor) 
+     */
+    public interface TextureFileVisitor {
+        /**
+         * Called for each {@code <images file="..."/>} element in the
+         * order in which the theme loader will load them.
+         * 
+         * @param handle the texture file
+         * @param format the value of the {@code format} attribute - can be null
+         */
+        public void textureFile(FileHandle handle, String format);
+        
+        /**
+         * Called for each top level {@code <fontDef filename="..."/>} element
+         * in the order in which the theme loader will load them.
+         * 
+         * @param handle the font file
+         */
+        public void fontFile(FileHandle handle);
+    }
+
+    /**
+     * Scans a theme file and all included theme files for referenced
+     * texture and font files without loading the theme.
+     * 
+     * <p>This only reads the attributes of top level elements and is much
+     * cheaper then loading the theme. It can be used to start decoding
+     * textures in the background while the theme is loaded.</p>
+     * 
+     * @param handle the theme file
+     * @param visitor the visitor which receives the texture files
+     * @throws IOException if an error occured while reading
+     */
+    public static void scanTextureFiles(FileHandle handle, TextureFileVisitor visitor) throws IOException {
+        try {
+            XMLParser xmlp = new XMLParser(handle);
+            try {
+                xmlp.require(XmlPullParser.START_DOCUMENT, null, null);
+                xmlp.nextTag();
+                xmlp.require(XmlPullParser.START_TAG, null, "themes");
+                xmlp.nextTag();
+                while(!xmlp.isEndTag()) {
+                    xmlp.require(XmlPullParser.START_TAG, null, null);
+                    final String tagName = xmlp.getName();
+                    if("images".equals(tagName) || "textures".equals(tagName)) {
+                        String fileName = xmlp.getAttributeValue(null, "file");
+                        if(fileName != null) {
+                            visitor.textureFile(handle.sibling(fileName),
+                                    xmlp.getAttributeValue(null, "format"));
+                        }
+                    } else if("fontDef".equals(tagName)) {
+                        String fileName = xmlp.getAttributeValue(null, "filename");
+                        if(fileName != null) {
+                            visitor.fontFile(handle.sibling(fileName));
+                        }
+                    } else if("include".equals(tagName)) {
+                        scanTextureFiles(handle.sibling(xmlp.getAttributeNotNull("filename")), visitor);
+                    }
+                    xmlp.ignoreOtherAttributes();
+                    skipElement(xmlp);
+                    xmlp.nextTag();
+                }
+            } finally {
+                xmlp.close();
+            }
+        } catch (XmlPullParserException ex) {
+            throw new ThemeException(ex.getMessage(), handle, ex.getLineNumber(), ex.getColumnNumber(), ex);
+        }
+    }
+
+    private static void skipElement(XMLParser xmlp) throws XmlPullParserException, IOException {
+        int depth = 1;
+        do {
+            int type = xmlp.next();
+            if(type == XmlPullParser.START_TAG) {
+                xmlp.ignoreOtherAttributes();
+                depth++;
+            } else if(type == XmlPullParser.END_TAG) {
+                depth--;
+            } else if(type == XmlPullParser.END_DOCUMENT) {
+                throw xmlp.error("unexpected end of document");
+            }
+        } while(depth > 0);
+    }
+
     public static<E extends Enum<E>> void registerEnumType(String name, Class<E> enumClazz) {
         if(!enumClazz.isEnum()) {
             throw new IllegalArgumentException("not an enum class");
@@ -237,27 +422,48 @@ public class ThemeManager {
     }
 
     private ThemeInfo findThemeInfo(String themePath, boolean warn, boolean useFallback) {
+        ThemeInfoImpl info = themeInfoCache.get(themePath);
+        if(info != null) {
+            return info;
+        }
+        // only results which didn't use a fallback theme are cached
+        // so that the DebugHook is still informed about each use
+        final int startFallbackCount = fallbackCount;
         int start = TextUtil.indexOf(themePath, '.', 0);
-        ThemeInfo info = themes.get(themePath.substring(0, start));
+        info = themes.get(themePath, 0, start);
         if(info == null) {
             info = themes.get("*");
             if(info != null) {
                 if(!useFallback) {
                     return null;
                 }
+                fallbackCount++;
                 DebugHook.getDebugHook().usingFallbackTheme(themePath);
             }
         }
         while(info != null && ++start < themePath.length()) {
             int next = TextUtil.indexOf(themePath, '.', start);
-            info = info.getChildTheme(themePath.substring(start, next));
+            info = info.getChildThemeImpl(themePath, start, next, true);
             start = next;
         }
-        if(info == null && warn) {
-            DebugHook.getDebugHook().missingTheme(themePath);
+        if(info == null) {
+            if(warn) {
+                DebugHook.getDebugHook().missingTheme(themePath);
+            }
+        } else if(fallbackCount == startFallbackCount) {
+            themeInfoCache.put(themePath, info);
         }
         return info;
     }
+
+    /**
+     * Must be called when a theme is added or replaced.
+     * Invalidates all cached theme path lookups.
+     */
+    void themesChanged() {
+        themeModCount++;
+        themeInfoCache.clear();
+    }
     
     public Image getImageNoWarning(String name) {
         return imageManager.getImage(name);
@@ -293,8 +499,19 @@ public class ThemeManager {
     }
     
     private void parseThemeFile(FileHandle handle) throws IOException {
+        CompiledTheme.CompiledFile oldCompiledFile = compiledFile;
         try {
-            XMLParser xmlp = new XMLParser(handle);
+            XMLParser xmlp;
+            compiledFile = null;
+            if(compiledTheme != null) {
+                compiledFile = compiledTheme.openFile(compiledThemeRoot, handle);
+            }
+            if(compiledFile != null) {
+                usedCompiledTheme = true;
+                xmlp = compiledFile.xmlp;
+            } else {
+                xmlp = new XMLParser(handle);
+            }
             try {
                 xmlp.setLoggerName(ThemeManager.class.getName());
                 xmlp.require(XmlPullParser.START_DOCUMENT, null, null);
@@ -309,6 +526,8 @@ public class ThemeManager {
             throw ex;
         } catch (Exception ex) {
             throw (IOException)(new IOException("while parsing Theme XML: " + handle).initCause(ex));
+        } finally {
+            compiledFile = oldCompiledFile;
         }
     }
 
@@ -333,10 +552,11 @@ public class ThemeManager {
             } else {
                 final String name = xmlp.getAttributeNotNull("name");
                 if("theme".equals(tagName)) {
-                    if(themes.containsKey(name)) {
+                    if(themes.get(name) != null) {
                         throw xmlp.error("theme \"" + name + "\" already defined");
                     }
                     themes.put(name, parseTheme(xmlp, name, null, fileHandle));
+                    themesChanged();
                 } else if("inputMapDef".equals(tagName)) {
                     if(inputMaps.containsKey(name)) {
                         throw xmlp.error("inputMap \"" + name + "\" already defined");
@@ -396,9 +616,14 @@ public class ThemeManager {
             base = base.addKeyStrokes(getInputMap(xmlp, baseName));
         }
 
-        xmlp.nextTag();
-
-        LinkedHashSet<KeyStroke> keyStrokes = InputMap.parseBody(xmlp);
+        LinkedHashSet<KeyStroke> keyStrokes = null;
+        if(compiledFile != null) {
+            keyStrokes = compiledFile.getInputMap();
+        }
+        if(keyStrokes == null) {
+            xmlp.nextTag();
+            keyStrokes = InputMap.parseBody(xmlp);
+        }
         InputMap im = base.addKeyStrokes(keyStrokes);
         return im;
     }
@@ -450,7 +675,9 @@ public class ThemeManager {
         }
         
         fontParams.add(baseParams);
-        StateSelect stateSelect = new StateSelect(stateExpr);
+        StateSelect stateSelect = (compiledTheme != null)
+                ? compiledTheme.createStateSelect(stateExpr)
+                : new StateSelect(stateExpr);
         FontParameter[] stateParams = fontParams.toArray(new FontParameter[fontParams.size()]);
         
         if(fontFamilies != null) {
@@ -463,7 +690,12 @@ public class ThemeManager {
             }
         }
         
-        return renderer.loadFont(fileHandle, stateSelect, stateParams);
+        final long startTime = renderer.getTimeMillis();
+        try {
+            return renderer.loadFont(fileHandle, stateSelect, stateParams);
+        } finally {
+            fontLoadTime += renderer.getTimeMillis() - startTime;
+        }
     }
     
     private void parseFontParameter(XMLParser xmlp, FontParameter fp) throws XmlPullParserException {
@@ -609,7 +841,13 @@ public class ThemeManager {
             String name = xmlp.getAttributeNotNull("name");
             xmlp.nextTag();
             String valueTagName = xmlp.getName();
-            Object value = parseValue(xmlp, valueTagName, name, baseHandle, parent);
+            Object value = null;
+            if(parent == null && compiledFile != null) {
+                value = compiledFile.getValue();
+            }
+            if(value == null) {
+                value = parseValue(xmlp, valueTagName, name, baseHandle, parent);
+            }
             xmlp.require(XmlPullParser.END_TAG, null, valueTagName);
             xmlp.nextTag();
             xmlp.require(XmlPullParser.END_TAG, null, tagName);
@@ -800,12 +1038,12 @@ public class ThemeManager {
         }
     }
 
-    ThemeInfo resolveWildcard(String base, String name, boolean useFallback) {
+    ThemeInfoImpl resolveWildcard(String base, String name, boolean useFallback) {
         assert(base.length() == 0 || base.endsWith("."));
         String fullPath = base.concat(name);
         ThemeInfo info = findThemeInfo(fullPath, false, useFallback);
         if(info != null && ((ThemeInfoImpl)info).maybeUsedFromWildcard) {
-            return info;
+            return (ThemeInfoImpl)info;
         }
         return null;
     }
@@ -60,6 +60,32 @@ public class CascadedHashMap<K, V> {
         return null;
     }
     
+    /**
+     * Retrieves a value from this map or it's fallback map when present using
+     * the characters {@code start} to {@code end} of {@code str} as key.
+     * <p>This method can only be used when K is String. It does not create
+     * a sub string.</p>
+     * 
+     * @param str the string which contains the key
+     * @param start the start index of the key in str
+     * @param end the end index (exclusive) of the key in str
+     * @return the value or null when not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get(String str, int start, int end) {
+        CascadedHashMap<K, V> map = this;
+        do {
+            if(map.table != null) {
+                Entry<String,V> entry = HashEntry.get((Entry<String,V>[])(Object)map.table, str, start, end);
+                if(entry != null) {
+                    return entry.value;
+                }
+            }
+            map = map.fallback;
+        } while(map != null);
+        return null;
+    }
+    
     /**
      * Puts an entry into this map
      * 
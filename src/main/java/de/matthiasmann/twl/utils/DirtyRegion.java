@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl.utils;
+
+import de.matthiasmann.twl.Rect;
+
+/**
+ * A small set of rectangles which covers all areas that need to be redrawn.
+ * 
+ * <p>Overlapping rectangles are merged. When the maximum number of rectangles
+ * is reached then the two rectangles which cause the smallest increase
+ * in area are merged.</p>
+ * 
+ * @author Matthias Mann
+ */
+public class DirtyRegion {
+    
+    private final int[] x0;
+    private final int[] y0;
+    private final int[] x1;
+    private final int[] y1;
+    private int numRects;
+
+    /**
+     * Creates a new empty dirty region.
+     * 
+     * @param maxRects the maximum number of rectangles, must be &gt;= 1
+     * @throws IllegalArgumentException if maxRects &lt; 1
+     */
+    public DirtyRegion(int maxRects) {
+        if(maxRects < 1) {
+            throw new IllegalArgumentException("maxRects < 1");
+        }
+        this.x0 = new int[maxRects];
+        this.y0 = new int[maxRects];
+        this.x1 = new int[maxRects];
+        this.y1 = new int[maxRects];
+    }
+
+    /**
+     * Returns true if no area is marked dirty.
+     * @return true if no area is marked dirty
+     */
+    public boolean isEmpty() {
+        return numRects == 0;
+    }
+    
+    /**
+     * Returns the current number of rectangles in this region.
+     * @return the current number of rectangles
+     */
+    public int getNumRects() {
+        return numRects;
+    }
+    
+    /**
+     * Returns the maximum number of rectangles in this region.
+     * @return the maximum number of rectangles
+     */
+    public int getMaxRects() {
+        return x0.length;
+    }
+    
+    /**
+     * Retrieves the specified rectangle.
+     * 
+     * @param idx the index of the rectangle
+     * @param rect the Rect object which receives the coordinates
+     * @throws IndexOutOfBoundsException if idx is not a valid index
+     */
+    public void getRect(int idx, Rect rect) {
+        if(idx < 0 || idx >= numRects) {
+            throw new IndexOutOfBoundsException();
+        }
+        rect.set(x0[idx], y0[idx], x1[idx], y1[idx]);
+    }
+    
+    /**
+     * Removes all rectangles.
+     */
+    public void clear() {
+        numRects = 0;
+    }
+    
+    /**
+     * Adds the specified area. Empty areas are ignored.
+     * 
+     * @param x the left edge
+     * @param y the top edge
+     * @param w the width
+     * @param h the height
+     */
+    public void add(int x, int y, int w, int h) {
+        if(w > 0 && h > 0) {
+            addImpl(x, y, x + w, y + h);
+        }
+    }
+    
+    /**
+     * Adds the specified area. Empty areas are ignored.
+     * 
+     * @param rect the area to add
+     */
+    public void add(Rect rect) {
+        if(!rect.isEmpty()) {
+            addImpl(rect.getX(), rect.getY(), rect.getRight(), rect.getBottom());
+        }
+    }
+    
+    /**
+     * Adds all rectangles of the specified region.
+     * 
+     * @param region the region to add
+     */
+    public void add(DirtyRegion region) {
+        for(int i=0,n=region.numRects ; i<n ; i++) {
+            addImpl(region.x0[i], region.y0[i], region.x1[i], region.y1[i]);
+        }
+    }
+    
+    /**
+     * Restricts all rectangles to the specified area. Rectangles which
+     * are completely outside are removed.
+     * 
+     * @param x the left edge
+     * @param y the top edge
+     * @param w the width
+     * @param h the height
+     */
+    public void intersect(int x, int y, int w, int h) {
+        final int right = x + w;
+        final int bottom = y + h;
+        for(int i=numRects ; i-->0 ;) {
+            x0[i] = Math.max(x0[i], x);
+            y0[i] = Math.max(y0[i], y);
+            x1[i] = Math.min(x1[i], right);
+            y1[i] = Math.min(y1[i], bottom);
+            if(x0[i] >= x1[i] || y0[i] >= y1[i]) {
+                remove(i);
+            }
+        }
+    }
+    
+    private void addImpl(int l, int t, int r, int b) {
+        for(;;) {
+            int idx = findOverlapping(l, t, r, b);
+            if(idx < 0) {
+                break;
+            }
+            if(l >= x0[idx] && t >= y0[idx] && r <= x1[idx] && b <= y1[idx]) {
+                // already covered
+                return;
+            }
+            l = Math.min(l, x0[idx]);
+            t = Math.min(t, y0[idx]);
+            r = Math.max(r, x1[idx]);
+            b = Math.max(b, y1[idx]);
+            remove(idx);
+        }
+        
+        if(numRects == x0.length) {
+            int idx = findCheapestMerge(l, t, r, b);
+            if(idx >= 0) {
+                l = Math.min(l, x0[idx]);
+                t = Math.min(t, y0[idx]);
+                r = Math.max(r, x1[idx]);
+                b = Math.max(b, y1[idx]);
+                remove(idx);
+                // the merged rect can now overlap other rects
+                addImpl(l, t, r, b);
+                return;
+            }
+            mergeCheapestPair();
+            // the merged pair can now overlap the new rect
+            addImpl(l, t, r, b);
+            return;
+        }
+        
+        int idx = numRects++;
+        x0[idx] = l;
+        y0[idx] = t;
+        x1[idx] = r;
+        y1[idx] = b;
+    }
+    
+    private int findOverlapping(int l, int t, int r, int b) {
+        for(int i=0 ; i<numRects ; i++) {
+            if(l < x1[i] && t < y1[i] && r > x0[i] && b > y0[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Finds the rect which causes the smallest increase in area when merged
+     * with the new rect. Returns -1 if it is cheaper to merge two existing rects.
+     */
+    private int findCheapestMerge(int l, int t, int r, int b) {
+        long area = area(l, t, r, b);
+        long bestCost = Long.MAX_VALUE;
+        int bestIdx = -1;
+        for(int i=0 ; i<numRects ; i++) {
+            long cost = mergeCost(i, l, t, r, b, area);
+            if(cost < bestCost) {
+                bestCost = cost;
+                bestIdx = i;
+            }
+        }
+        for(int i=0 ; i<numRects ; i++) {
+            for(int j=i+1 ; j<numRects ; j++) {
+                if(mergeCost(i, x0[j], y0[j], x1[j], y1[j], area(j)) < bestCost) {
+                    return -1;
+                }
+            }
+        }
+        return bestIdx;
+    }
+    
+    private void mergeCheapestPair() {
+        long bestCost = Long.MAX_VALUE;
+        int bestI = 0;
+        int bestJ = 1;
+        for(int i=0 ; i<numRects ; i++) {
+            for(int j=i+1 ; j<numRects ; j++) {
+                long cost = mergeCost(i, x0[j], y0[j], x1[j], y1[j], area(j));
+                if(cost < bestCost) {
+                    bestCost = cost;
+                    bestI = i;
+                    bestJ = j;
+                }
+            }
+        }
+        int l = Math.min(x0[bestI], x0[bestJ]);
+        int t = Math.min(y0[bestI], y0[bestJ]);
+        int r = Math.max(x1[bestI], x1[bestJ]);
+        int b = Math.max(y1[bestI], y1[bestJ]);
+        remove(bestJ);
+        remove(bestI);
+        addImpl(l, t, r, b);
+    }
+    
+    private long mergeCost(int idx, int l, int t, int r, int b, long area) {
+        long merged = area(
+                Math.min(l, x0[idx]), Math.min(t, y0[idx]),
+                Math.max(r, x1[idx]), Math.max(b, y1[idx]));
+        return merged - area - area(idx);
+    }
+    
+    private long area(int idx) {
+        return area(x0[idx], y0[idx], x1[idx], y1[idx]);
+    }
+    
+    private static long area(int l, int t, int r, int b) {
+        return (long)(r - l) * (long)(b - t);
+    }
+    
+    private void remove(int idx) {
+        int last = --numRects;
+        x0[idx] = x0[last];
+        y0[idx] = y0[last];
+        x1[idx] = x1[last];
+        y1[idx] = y1[last];
+    }
+}
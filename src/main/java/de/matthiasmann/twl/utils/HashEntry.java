@@ -63,6 +63,41 @@ public class HashEntry<K, T extends HashEntry<K, T>> {
         return e;
     }
 
+    /**
+     * Looks up an entry with a String key using the characters {@code start}
+     * to {@code end} of {@code str} as key without creating a sub string.
+     *
+     * @param <T> type of the entries
+     * @param table the hash table
+     * @param str the string which contains the key
+     * @param start the start index of the key in str
+     * @param end the end index (exclusive) of the key in str
+     * @return the entry or null if not found
+     */
+    public static<T extends HashEntry<String, T>> T get(T[] table, String str, int start, int end) {
+        int hash = 0;
+        for(int i=start ; i<end ; i++) {
+            hash = 31*hash + str.charAt(i);
+        }
+        T e = table[hash & (table.length-1)];
+        while(e != null && (e.hash != hash || !regionEquals(e.key, str, start, end))) {
+            e = e.next;
+        }
+        return e;
+    }
+
+    private static boolean regionEquals(String key, String str, int start, int end) {
+        if(key.length() != end - start) {
+            return false;
+        }
+        for(int i=0 ; start<end ; i++,start++) {
+            if(key.charAt(i) != str.charAt(start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static<K, T extends HashEntry<K, T>> void insertEntry(T[] table, T newEntry) {
         int idx = newEntry.hash & (table.length-1);
         newEntry.next = table[idx];
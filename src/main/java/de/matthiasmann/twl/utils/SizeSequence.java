@@ -32,6 +32,17 @@ package de.matthiasmann.twl.utils;
 import java.util.Arrays;
 
 /**
+ * A sequence of sizes which supports fast position lookups.
+ *
+ * <p>The sizes are stored in a randomized balanced binary tree which is
+ * ordered by index. Each node stores the sum of the sizes and the number
+ * of elements in its subtree. This makes {@link #getPosition(int) },
+ * {@link #getIndex(int) }, {@link #setSize(int, int) }, {@link #insert(int, int) }
+ * and {@link #remove(int, int) } O(log n) + O(count). Appending elements
+ * one at a time is therefore O(log n) per element.</p>
+ *
+ * <p>Subclasses compute the sizes of new elements in
+ * {@link #initializeSizes(int, int) } by storing them into {@link #table}.</p>
  *
  * @author Matthias Mann
  */
@@ -39,16 +50,41 @@ public class SizeSequence {
     
     private static final int INITIAL_CAPACITY = 64;
 
+    /**
+     * Holds the sizes of the elements for {@link #initializeSizes(int, int) },
+     * {@link #toSizes(int, int, int[]) } and {@link #fromSizes(int, int) }.
+     * Always has room for at least {@link #size} elements.
+     */
     protected int[] table;
     protected int size;
     protected int defaultValue;
 
+    /** The sum of the sizes in the subtree of each node. Entry 0 is the empty tree. */
+    private int[] sums;
+    private int[] sizes;
+    private int[] counts;
+    private int[] left;
+    private int[] right;
+    private int root;
+    private int freeList;
+    private int nextNode;
+    private int seed;
+    private int splitRight;
+
     public SizeSequence() {
         this(INITIAL_CAPACITY);
     }
 
     public SizeSequence(int initialCapacity) {
+        initialCapacity = Math.max(1, initialCapacity) + 1;
         table = new int[initialCapacity];
+        sums = new int[initialCapacity];
+        sizes = new int[initialCapacity];
+        counts = new int[initialCapacity];
+        left = new int[initialCapacity];
+        right = new int[initialCapacity];
+        nextNode = 1;
+        seed = 0x2545F491;
     }
 
     public int size() {
@@ -56,138 +92,330 @@ public class SizeSequence {
     }
 
     public int getPosition(int index) {
-        int low = 0;
-        int high = size;
+        int node = root;
         int result = 0;
-        while(low < high) {
-            int mid = (low + high) >>> 1;
-            if (index <= mid) {
-                high = mid;
+        while(node != 0) {
+            int l = left[node];
+            int leftCount = counts[l];
+            if(index < leftCount) {
+                node = l;
+            } else if(index == leftCount) {
+                return result + sums[l];
             } else {
-                result += table[mid];
-                low = mid + 1;
+                result += sums[l] + sizes[node];
+                index -= leftCount + 1;
+                node = right[node];
             }
         }
         return result;
     }
 
     public int getEndPosition() {
-        int low = 0;
-        int high = size;
-        int result = 0;
-        while(low < high) {
-            int mid = (low + high) >>> 1;
-            result += table[mid];
-            low = mid + 1;
-        }
-        return result;
+        return sums[root];
     }
 
     public int getIndex(int position) {
-        int low = 0;
-        int high = size;
-        while(low < high) {
-            int mid = (low + high) >>> 1;
-            int pos = table[mid];
-            if(position < pos) {
-                high = mid;
+        int node = root;
+        int index = 0;
+        while(node != 0) {
+            int l = left[node];
+            int leftSum = sums[l];
+            if(position < leftSum) {
+                node = l;
             } else {
-                low = mid + 1;
-                position -= pos;
+                position -= leftSum;
+                index += counts[l];
+                int nodeSize = sizes[node];
+                if(position < nodeSize) {
+                    return index;
+                }
+                position -= nodeSize;
+                index++;
+                node = right[node];
             }
         }
-        return low;
+        return index;
     }
 
     public int getSize(int index) {
-        return getPosition(index+1) - getPosition(index);
+        int node = findNode(index);
+        return (node != 0) ? sizes[node] : 0;
     }
 
     public boolean setSize(int index, int size) {
-        int delta = size - getSize(index);
-        if(delta != 0) {
-            adjustSize(index, delta);
-            return true;
+        int node = findNode(index);
+        if(node != 0) {
+            int delta = size - sizes[node];
+            if(delta != 0) {
+                adjustSize(index, delta);
+                return true;
+            }
         }
         return false;
     }
 
     protected void adjustSize(int index, int delta) {
-        int low = 0;
-        int high = size;
-
-        while(low < high) {
-            int mid = (low + high) >>> 1;
-            if(index <= mid) {
-                table[mid] += delta;
-                high = mid;
+        int node = root;
+        while(node != 0) {
+            sums[node] += delta;
+            int l = left[node];
+            int leftCount = counts[l];
+            if(index < leftCount) {
+                node = l;
+            } else if(index == leftCount) {
+                sizes[node] += delta;
+                return;
             } else {
-                low = mid + 1;
+                index -= leftCount + 1;
+                node = right[node];
             }
         }
     }
 
+    public void insert(int index, int count) {
+        if(count <= 0) {
+            return;
+        }
+        ensureCapacity(size + count);
+        initializeSizes(index, count);
+        int middle = build(table, index, index + count);
+        int leftPart = split(root, index);
+        int rightPart = splitRight;
+        root = merge(merge(leftPart, middle), rightPart);
+        size += count;
+    }
+
+    public void remove(int index, int count) {
+        if(count <= 0) {
+            return;
+        }
+        int leftPart = split(root, index);
+        int middle = split(splitRight, count);
+        int rightPart = splitRight;
+        freeNodes(middle);
+        root = merge(leftPart, rightPart);
+        size = counts[root];
+    }
+
+    public void initializeAll(int count) {
+        root = 0;
+        size = 0;
+        freeList = 0;
+        nextNode = 1;
+        insert(0, count);
+    }
+
+    public void setDefaultValue(int defaultValue) {
+        this.defaultValue = defaultValue;
+    }
+
+    /**
+     * Computes the initial sizes of newly inserted elements and stores
+     * them in {@code table[index]} to {@code table[index+count-1]}.
+     * 
+     * <p>Only this range of {@link #table} may be accessed - it does not
+     * contain the sizes of the other elements.</p>
+     *
+     * @param index the index of the first new element
+     * @param count the number of new elements
+     */
+    protected void initializeSizes(int index, int count) {
+        Arrays.fill(table, index, index+count, defaultValue);
+    }
+
+    /**
+     * Stores the sizes of the elements {@code low} to {@code high-1}
+     * at the same indices in {@code dst}.
+     *
+     * @param low the index of the first element
+     * @param high the index after the last element
+     * @param dst the destination array
+     * @return the sum of the sizes
+     */
     protected int toSizes(int low, int high, int[] dst) {
-        int subResult = 0;
-        while(low < high) {
-            int mid = (low + high) >>> 1;
-            int pos = table[mid];
-            dst[mid] = pos - toSizes(low, mid, dst);
-            subResult += pos;
-            low = mid + 1;
+        if(low >= high) {
+            return 0;
         }
-        return subResult;
+        collectSizes(root, 0, low, high, dst);
+        return getPosition(high) - getPosition(low);
     }
 
+    /**
+     * Replaces the sizes of the elements {@code low} to {@code high-1}
+     * with the values stored at the same indices in {@link #table}.
+     *
+     * @param low the index of the first element
+     * @param high the index after the last element
+     * @return the sum of the new sizes
+     */
     protected int fromSizes(int low, int high) {
-        int subResult = 0;
-        while(low < high) {
-            int mid = (low + high) >>> 1;
-            int pos = table[mid] + fromSizes(low, mid);
-            table[mid] = pos;
-            subResult += pos;
-            low = mid + 1;
+        if(low >= high) {
+            return 0;
         }
-        return subResult;
+        int leftPart = split(root, low);
+        int middle = split(splitRight, high - low);
+        int rightPart = splitRight;
+        freeNodes(middle);
+        middle = build(table, low, high);
+        int sum = sums[middle];
+        root = merge(merge(leftPart, middle), rightPart);
+        return sum;
     }
 
-    public void insert(int index, int count) {
-        int newSize = size + count;
-        if(newSize >= table.length) {
-            int[] sizes = new int[newSize];
-            toSizes(0, size, sizes);
-            table = sizes;
+    private void collectSizes(int node, int offset, int low, int high, int[] dst) {
+        while(node != 0) {
+            int l = left[node];
+            int index = offset + counts[l];
+            if(low < index) {
+                collectSizes(l, offset, low, high, dst);
+            }
+            if(index >= high) {
+                return;
+            }
+            if(index >= low) {
+                dst[index] = sizes[node];
+            }
+            offset = index + 1;
+            node = right[node];
+        }
+    }
+
+    private int findNode(int index) {
+        if(index < 0 || index >= size) {
+            return 0;
+        }
+        int node = root;
+        for(;;) {
+            int l = left[node];
+            int leftCount = counts[l];
+            if(index < leftCount) {
+                node = l;
+            } else if(index == leftCount) {
+                return node;
+            } else {
+                index -= leftCount + 1;
+                node = right[node];
+            }
+        }
+    }
+
+    private void update(int node) {
+        int l = left[node];
+        int r = right[node];
+        sums[node] = sums[l] + sums[r] + sizes[node];
+        counts[node] = counts[l] + counts[r] + 1;
+    }
+
+    private int allocNode() {
+        int node = freeList;
+        if(node != 0) {
+            freeList = left[node];
         } else {
-            toSizes(0, size, table);
+            node = nextNode++;
         }
-        System.arraycopy(table, index, table, index+count, size-index);
-        size = newSize;
-        initializeSizes(index, count);
-        fromSizes(0, newSize);
+        return node;
     }
 
-    public void remove(int index, int count) {
-        toSizes(0, size, table);
-        int newSize = size - count;
-        System.arraycopy(table, index+count, table, index, newSize-index);
-        size = newSize;
-        fromSizes(0, newSize);
+    private void freeNodes(int node) {
+        while(node != 0) {
+            freeNodes(left[node]);
+            int next = right[node];
+            left[node] = freeList;
+            freeList = node;
+            node = next;
+        }
     }
 
-    public void initializeAll(int count) {
-        if(table.length < count) {
-            table = new int[count];
+    private void ensureCapacity(int numNodes) {
+        // node 0 is the empty tree - free nodes are reused before new ones are allocated
+        if(numNodes >= sums.length) {
+            int newCapacity = Math.max(numNodes + 1, sums.length * 2);
+            table = grow(table, newCapacity);
+            sums = grow(sums, newCapacity);
+            sizes = grow(sizes, newCapacity);
+            counts = grow(counts, newCapacity);
+            left = grow(left, newCapacity);
+            right = grow(right, newCapacity);
         }
-        size = count;
-        initializeSizes(0, count);
-        fromSizes(0, count);
     }
 
-    public void setDefaultValue(int defaultValue) {
-        this.defaultValue = defaultValue;
+    private static int[] grow(int[] array, int newCapacity) {
+        int[] newArray = new int[newCapacity];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
     }
 
-    protected void initializeSizes(int index, int count) {
-        Arrays.fill(table, index, index+count, defaultValue);
+    /**
+     * Builds a perfectly balanced tree from a range of sizes.
+     */
+    private int build(int[] values, int low, int high) {
+        if(low >= high) {
+            return 0;
+        }
+        int mid = (low + high) >>> 1;
+        int node = allocNode();
+        sizes[node] = values[mid];
+        left[node] = build(values, low, mid);
+        right[node] = build(values, mid + 1, high);
+        update(node);
+        return node;
+    }
+
+    /**
+     * Splits the tree into the first {@code index} elements and the remaining
+     * elements. The root of the second part is stored in {@link #splitRight}.
+     *
+     * @return the root of the first part
+     */
+    private int split(int node, int index) {
+        if(node == 0) {
+            splitRight = 0;
+            return 0;
+        }
+        int l = left[node];
+        int leftCount = counts[l];
+        if(index <= leftCount) {
+            int result = split(l, index);
+            left[node] = splitRight;
+            update(node);
+            splitRight = node;
+            return result;
+        } else {
+            right[node] = split(right[node], index - leftCount - 1);
+            update(node);
+            return node;
+        }
+    }
+
+    /**
+     * Concatenates two trees. The root is selected randomly with a probability
+     * proportional to the subtree sizes which keeps the tree balanced.
+     */
+    private int merge(int a, int b) {
+        if(a == 0) {
+            return b;
+        }
+        if(b == 0) {
+            return a;
+        }
+        int countA = counts[a];
+        if(random(countA + counts[b]) < countA) {
+            right[a] = merge(right[a], b);
+            update(a);
+            return a;
+        } else {
+            left[b] = merge(a, left[b]);
+            update(b);
+            return b;
+        }
+    }
+
+    private int random(int bound) {
+        int x = seed;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        seed = x;
+        return (x >>> 1) % bound;
     }
 }
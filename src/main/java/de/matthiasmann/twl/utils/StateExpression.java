@@ -36,10 +36,13 @@ import gwt.twl.GwtHelper;
 
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * A class to handle animation state expression
  * 
+ * <p>Two expressions are equal when they have the same structure.</p>
+ * 
  * @author Matthias Mann
  */
 public abstract class StateExpression {
@@ -212,6 +215,22 @@ public abstract class StateExpression {
                 e.getUsedStateKeys(bs);
             }
         }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(!(obj instanceof Logic)) {
+                return false;
+            }
+            Logic other = (Logic)obj;
+            return negate == other.negate && and == other.and && xor == other.xor &&
+                    Arrays.equals(children, other.children);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = (and ? 1 : 0) + (xor ? 2 : 0) + (negate ? 4 : 0);
+            return hash * 31 + Arrays.hashCode(children);
+        }
     }
     
     public static class Check extends StateExpression {
@@ -230,5 +249,19 @@ public abstract class StateExpression {
         void getUsedStateKeys(Bits bs) {
             bs.set(state.getID());
         }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(!(obj instanceof Check)) {
+                return false;
+            }
+            Check other = (Check)obj;
+            return negate == other.negate && state == other.state;
+        }
+
+        @Override
+        public int hashCode() {
+            return state.getID() * 2 + (negate ? 1 : 0);
+        }
     }
 }
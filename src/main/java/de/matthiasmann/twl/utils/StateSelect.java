@@ -39,11 +39,13 @@ import java.util.Collection;
  */
 public class StateSelect {
     
-    private static boolean useOptimizer = false;
+    private static boolean useOptimizer = true;
     
     private final StateExpression[] expressions;
     private final StateKey[] programKeys;
+    private final int[] programKeyIDs;
     private final short[] programCodes;
+    private final int programStart;
 
     public static final StateSelect EMPTY = new StateSelect();
     
@@ -61,10 +63,100 @@ public class StateSelect {
         if(sso != null) {
             programKeys = sso.programKeys;
             programCodes = sso.programCodes;
+            programStart = sso.programStart;
+            programKeyIDs = new int[programKeys.length];
+            for(int i=0 ; i<programKeys.length ; i++) {
+                programKeyIDs[i] = programKeys[i].getID();
+            }
         } else {
             programKeys = null;
+            programKeyIDs = null;
             programCodes = null;
+            programStart = 0;
+        }
+    }
+
+    /**
+     * Creates a StateSelect which uses a decision program that was computed
+     * earlier for the same expressions - eg stored in a compiled theme.
+     * 
+     * @param expressions the expressions
+     * @param programKeys the state key of each decision node
+     * @param programCodes the program codes, 2 per decision node
+     * @param programStart the start code of the program
+     * @throws IllegalArgumentException if the program does not fit the expressions
+     * @see #getProgramKeys() 
+     * @see #getProgramCodes() 
+     * @see #getProgramStart() 
+     */
+    public StateSelect(StateExpression[] expressions, StateKey[] programKeys, short[] programCodes, int programStart) {
+        int numNodes = programKeys.length;
+        if(programCodes.length != numNodes * 2) {
+            throw new IllegalArgumentException("programCodes.length");
+        }
+        if(!isValidCode(programStart, numNodes, expressions.length)) {
+            throw new IllegalArgumentException("programStart");
+        }
+        for(short code : programCodes) {
+            if(!isValidCode(code, numNodes, expressions.length)) {
+                throw new IllegalArgumentException("programCodes");
+            }
+        }
+        
+        this.expressions = expressions;
+        this.programKeys = new StateKey[numNodes];
+        this.programKeyIDs = new int[numNodes];
+        this.programCodes = new short[numNodes * 2];
+        this.programStart = programStart;
+        System.arraycopy(programKeys, 0, this.programKeys, 0, numNodes);
+        System.arraycopy(programCodes, 0, this.programCodes, 0, numNodes * 2);
+        for(int i=0 ; i<numNodes ; i++) {
+            programKeyIDs[i] = programKeys[i].getID();
+        }
+    }
+    
+    private static boolean isValidCode(int code, int numNodes, int numExpr) {
+        if((code & CODE_RESULT) != 0) {
+            return (code & CODE_MASK) <= numExpr;
+        }
+        return code >= 0 && code < numNodes * 2 && (code & 1) == 0;
+    }
+
+    /**
+     * Returns the state key of each decision node of the optimized program.
+     * 
+     * @return a copy of the state keys or null if no program is used
+     */
+    public StateKey[] getProgramKeys() {
+        if(programKeys == null) {
+            return null;
         }
+        StateKey[] result = new StateKey[programKeys.length];
+        System.arraycopy(programKeys, 0, result, 0, result.length);
+        return result;
+    }
+
+    /**
+     * Returns the codes of the optimized program.
+     * 
+     * @return a copy of the program codes or null if no program is used
+     */
+    public short[] getProgramCodes() {
+        if(programCodes == null) {
+            return null;
+        }
+        short[] result = new short[programCodes.length];
+        System.arraycopy(programCodes, 0, result, 0, result.length);
+        return result;
+    }
+
+    /**
+     * Returns the start code of the optimized program.
+     * 
+     * @return the start code - only valid if {@link #getProgramKeys() } is not null
+     */
+    public int getProgramStart() {
+        return programStart;
     }
 
     public static boolean isUseOptimizer() {
@@ -72,7 +164,8 @@ public class StateSelect {
     }
 
     /**
-     * Controls the use of the StateSelectOptimizer.
+     * Controls the use of the StateSelectOptimizer which compiles the
+     * expressions into a decision program. This is enabled by default.
      * 
      * @param useOptimizer true if the StateSelectOptimizer should be used
      */
@@ -109,6 +202,9 @@ public class StateSelect {
      */
     public int evaluate(AnimationState as) {
         if(programKeys != null) {
+            if(as instanceof de.matthiasmann.twl.AnimationState) {
+                return evaluateProgram((de.matthiasmann.twl.AnimationState)as);
+            }
             return evaluateProgram(as);
         }
         return evaluateExpr(as);
@@ -125,13 +221,31 @@ public class StateSelect {
     }
     
     private int evaluateProgram(AnimationState as) {
-        int pos = 0;
-        do {
+        int pos = programStart;
+        while(pos >= 0) {
             if(as == null || !as.getAnimationState(programKeys[pos >> 1])) {
                 pos++;
             }
             pos = programCodes[pos];
-        } while(pos >= 0);
+        }
+        return pos & CODE_MASK;
+    }
+    
+    private int evaluateProgram(de.matthiasmann.twl.AnimationState as) {
+        int pos = programStart;
+        int word = -1;
+        long bits = 0;
+        while(pos >= 0) {
+            int id = programKeyIDs[pos >> 1];
+            if((id >>> 6) != word) {
+                word = id >>> 6;
+                bits = as.getActiveStateBits(word);
+            }
+            if((bits & (1L << id)) == 0) {
+                pos++;
+            }
+            pos = programCodes[pos];
+        }
         return pos & CODE_MASK;
     }
 
@@ -29,133 +29,341 @@
  */
 package de.matthiasmann.twl.utils;
 
-import com.badlogic.gdx.utils.Bits;
-import de.matthiasmann.twl.AnimationState;
 import de.matthiasmann.twl.renderer.AnimationState.StateKey;
-import gwt.twl.GwtHelper;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
- *
+ * Compiles a list of state expressions into a decision program.
+ * 
+ * <p>The expressions are converted into hash consed nodes. The compiler
+ * picks a state key from the first expression which is not yet decided,
+ * restricts all remaining expressions to both values of that key and
+ * recursively compiles the two resulting expression lists. Identical
+ * expression lists are compiled only once, so the program is a reduced
+ * decision diagram and no truth table over all keys is needed.</p>
+ * 
  * @author Matthias Mann
  */
 final class StateSelectOptimizer {
     
-    private final StateKey[] keys;
-    private final byte[] matrix;
+    /**
+     * The maximum number of decision nodes - each node uses 2 codes
+     * and the result flag uses the highest bit of the 16 bit code.
+     */
+    static final int MAX_NODES = (StateSelect.CODE_MASK + 1) / 2;
+    
+    private static final int ID_FALSE = 0;
+    private static final int ID_TRUE  = 1;
+    
+    private static final int KIND_CHECK = 0;
+    private static final int KIND_AND   = 1;
+    private static final int KIND_OR    = 2;
+    private static final int KIND_XOR   = 3;
 
-    final StateKey[] programKeys;
-    final short[] programCodes;
-    int programIdx;
+    private final ArrayList<Node> nodes;
+    private final HashMap<Node, Integer> nodeIDs;
+    private final HashMap<Long, Integer> restrictCache;
+    private final HashMap<Residual, Integer> compiled;
+    
+    private StateKey[] keys;
+    private short[] codes;
+    private int numNodes;
+    
+    StateKey[] programKeys;
+    short[] programCodes;
+    int programStart;
     
     static StateSelectOptimizer optimize(StateExpression ... expressions) {
         final int numExpr = expressions.length;
-        if(numExpr == 0 || numExpr >= 255) {
+        if(numExpr == 0 || numExpr > StateSelect.CODE_MASK) {
             return null;
         }
         
-        Bits bs = new Bits();
-        for(StateExpression e : expressions) {
-            e.getUsedStateKeys(bs);
+        StateSelectOptimizer sso = new StateSelectOptimizer();
+        int[] exprIdx = new int[numExpr];
+        int[] exprNode = new int[numExpr];
+        for(int i=0 ; i<numExpr ; i++) {
+            exprIdx[i] = i;
+            exprNode[i] = sso.convert(expressions[i]);
         }
         
-        final int numKeys = GwtHelper.getCardinality(bs);
-        if(numKeys == 0 || numKeys > 16) {
+        try {
+            sso.programStart = (short)sso.compile(exprIdx, exprNode, numExpr, numExpr);
+        } catch (TooComplexException ex) {
+            Logger logger = Logger.getLogger(StateSelectOptimizer.class.getName());
+            if(logger.isLoggable(Level.FINE)) {
+                logger.log(Level.FINE, "State select with " + numExpr +
+                        " expressions exceeds " + MAX_NODES +
+                        " nodes - using linear evaluation");
+            }
             return null;
         }
+        sso.programKeys = new StateKey[sso.numNodes];
+        sso.programCodes = new short[sso.numNodes * 2];
+        System.arraycopy(sso.keys, 0, sso.programKeys, 0, sso.numNodes);
+        System.arraycopy(sso.codes, 0, sso.programCodes, 0, sso.numNodes * 2);
+        return sso;
+    }
+    
+    private StateSelectOptimizer() {
+        this.nodes = new ArrayList<Node>();
+        this.nodeIDs = new HashMap<Node, Integer>();
+        this.restrictCache = new HashMap<Long, Integer>();
+        this.compiled = new HashMap<Residual, Integer>();
+        this.keys = new StateKey[16];
+        this.codes = new short[32];
         
-        final StateKey[] keys = new StateKey[numKeys];
-        for(int keyIdx=0,keyID=-1 ; (keyID=bs.nextSetBit(keyID+1)) >= 0 ; keyIdx++) {
-            keys[keyIdx] = StateKey.get(keyID);
+        intern(new Node(KIND_AND, true, null, null));   // ID_FALSE
+        intern(new Node(KIND_AND, false, null, null));  // ID_TRUE
+    }
+    
+    private int convert(StateExpression expr) {
+        if(expr instanceof StateExpression.Check) {
+            StateKey key = ((StateExpression.Check)expr).state;
+            return intern(new Node(KIND_CHECK, expr.negate, key, null));
+        }
+        StateExpression.Logic logic = (StateExpression.Logic)expr;
+        int kind = logic.xor ? KIND_XOR : logic.and ? KIND_AND : KIND_OR;
+        int[] children = new int[logic.children.length];
+        for(int i=0 ; i<children.length ; i++) {
+            children[i] = convert(logic.children[i]);
+        }
+        return intern(new Node(kind, expr.negate, null, children));
+    }
+    
+    private int intern(Node node) {
+        Integer id = nodeIDs.get(node);
+        if(id != null) {
+            return id;
+        }
+        int newID = nodes.size();
+        nodes.add(node);
+        nodeIDs.put(node, newID);
+        return newID;
+    }
+    
+    private int negate(int id) {
+        if(id <= ID_TRUE) {
+            return id ^ 1;
+        }
+        Node n = nodes.get(id);
+        return intern(new Node(n.kind, !n.negate, n.key, n.children));
+    }
+    
+    /**
+     * Returns the expression which results from setting the specified
+     * key to the given value.
+     */
+    private int restrict(int id, StateKey key, boolean value) {
+        if(id <= ID_TRUE) {
+            return id;
+        }
+        Node n = nodes.get(id);
+        if(n.kind == KIND_CHECK) {
+            if(n.key != key) {
+                return id;
+            }
+            return (value ^ n.negate) ? ID_TRUE : ID_FALSE;
         }
         
-        final int matrixSize = 1 << numKeys;
-        final byte[] matrix = new byte[matrixSize];
-        AnimationState as = new AnimationState(null, keys[numKeys-1].getID()+1);
-
-        for(int matrixIdx=0 ; matrixIdx<matrixSize ; matrixIdx++) {
-            for(int keyIdx=0 ; keyIdx<numKeys ; keyIdx++) {
-                as.setAnimationState(keys[keyIdx], (matrixIdx & (1 << keyIdx)) != 0);
+        Long cacheKey = ((long)id << 32) | ((long)key.getID() << 1) | (value ? 1 : 0);
+        Integer cached = restrictCache.get(cacheKey);
+        if(cached != null) {
+            return cached;
+        }
+        
+        int[] children = new int[n.children.length];
+        int numChildren = 0;
+        boolean negate = n.negate;
+        int result = -1;
+        
+        for(int child : n.children) {
+            int r = restrict(child, key, value);
+            if(r > ID_TRUE) {
+                children[numChildren++] = r;
+            } else if(n.kind == KIND_XOR) {
+                negate ^= (r == ID_TRUE);
+            } else if((r == ID_TRUE) == (n.kind == KIND_OR)) {
+                // short circuit: a true child of an OR or a false child of an AND
+                result = (n.kind == KIND_OR) ^ negate ? ID_TRUE : ID_FALSE;
+                break;
             }
-            int exprIdx = 0;
-            for(; exprIdx<numExpr ; exprIdx++) {
-                if(expressions[exprIdx].evaluate(as)) {
-                    break;
+        }
+        
+        if(result < 0) {
+            if(numChildren == 0) {
+                result = (n.kind == KIND_AND) ^ negate ? ID_TRUE : ID_FALSE;
+            } else if(numChildren == 1) {
+                result = negate ? negate(children[0]) : children[0];
+            } else {
+                if(numChildren < children.length) {
+                    int[] tmp = new int[numChildren];
+                    System.arraycopy(children, 0, tmp, 0, numChildren);
+                    children = tmp;
                 }
+                result = intern(new Node(n.kind, negate, null, children));
             }
-            matrix[matrixIdx] = (byte)exprIdx;
         }
         
-        StateSelectOptimizer sso = new StateSelectOptimizer(keys, matrix);
-        sso.compute(0, 0);
-        return sso;
+        restrictCache.put(cacheKey, result);
+        return result;
     }
     
-    private StateSelectOptimizer(StateKey[] keys, byte[] matrix) {
-        this.keys = keys;
-        this.matrix = matrix;
-        
-        programKeys = new StateKey[matrix.length-1];
-        programCodes = new short[matrix.length*2-2];
+    private StateKey findKey(int id) {
+        Node n = nodes.get(id);
+        while(n.kind != KIND_CHECK) {
+            n = nodes.get(n.children[0]);
+        }
+        return n.key;
     }
 
-    private int compute(int bits, int mask) {
-        if(mask == matrix.length-1) {
-            return (matrix[bits]&255) | StateSelect.CODE_RESULT;
+    /**
+     * Compiles the remaining expressions.
+     * 
+     * @param exprIdx the expression index of each remaining expression
+     * @param exprNode the node of each remaining expression
+     * @param count the number of remaining expressions
+     * @param numExpr the result when no expression matches
+     * @return the program code - either a result or the index of a node
+     */
+    private int compile(int[] exprIdx, int[] exprNode, int count, int numExpr) {
+        // skip all expressions which are false
+        int start = 0;
+        while(start < count && exprNode[start] == ID_FALSE) {
+            start++;
+        }
+        if(start == count) {
+            return numExpr | StateSelect.CODE_RESULT;
+        }
+        if(exprNode[start] == ID_TRUE) {
+            return exprIdx[start] | StateSelect.CODE_RESULT;
         }
-
-        int best = -1;
-        int bestScore = -1;
-        int bestSet0 = 0;
-        int bestSet1 = 0;
         
-        int matrixIdxInc = (bits == 0) ? 1 : Integer.lowestOneBit(bits);
+        Residual residual = new Residual(exprIdx, exprNode, start, count);
+        Integer code = compiled.get(residual);
+        if(code != null) {
+            return code;
+        }
         
-        for(int keyIdx=0 ; keyIdx<keys.length ; keyIdx++) {
-            int test = 1 << keyIdx;
+        StateKey key = findKey(exprNode[start]);
+        int[] idx1 = new int[count - start];
+        int[] node1 = new int[count - start];
+        int[] idx0 = new int[count - start];
+        int[] node0 = new int[count - start];
+        int count1 = 0;
+        int count0 = 0;
+        for(int i=start ; i<count ; i++) {
+            int r1 = restrict(exprNode[i], key, true);
+            int r0 = restrict(exprNode[i], key, false);
+            if(r1 != ID_FALSE) {
+                idx1[count1] = exprIdx[i];
+                node1[count1++] = r1;
+            }
+            if(r0 != ID_FALSE) {
+                idx0[count0] = exprIdx[i];
+                node0[count0++] = r0;
+            }
+        }
+        
+        int code1 = compile(idx1, node1, count1, numExpr);
+        int code0 = compile(idx0, node0, count0, numExpr);
+        int result;
+        if(code1 == code0) {
+            result = code1;
+        } else {
+            result = addNode(key, code1, code0);
+        }
+        compiled.put(residual, result);
+        return result;
+    }
+    
+    private int addNode(StateKey key, int code1, int code0) {
+        if(numNodes == MAX_NODES) {
+            throw new TooComplexException();
+        }
+        if(numNodes == keys.length) {
+            StateKey[] newKeys = new StateKey[numNodes * 2];
+            short[] newCodes = new short[numNodes * 4];
+            System.arraycopy(keys, 0, newKeys, 0, numNodes);
+            System.arraycopy(codes, 0, newCodes, 0, numNodes * 2);
+            keys = newKeys;
+            codes = newCodes;
+        }
+        int idx = numNodes * 2;
+        keys[numNodes++] = key;
+        codes[idx + 0] = (short)code1;
+        codes[idx + 1] = (short)code0;
+        return idx;
+    }
+    
+    static final class Node {
+        final int kind;
+        final boolean negate;
+        final StateKey key;
+        final int[] children;
+        final int hash;
+
+        Node(int kind, boolean negate, StateKey key, int[] children) {
+            this.kind = kind;
+            this.negate = negate;
+            this.key = key;
+            this.children = children;
             
-            if((mask & test) == 0) {
-                int set0 = 0;
-                int set1 = 0;
-                
-                for(int matrixIdx=bits ; matrixIdx<matrix.length ; matrixIdx+=matrixIdxInc) {
-                    if((matrixIdx & mask) == bits) {
-                        int resultMask = 1 << (matrix[matrixIdx]&255);
-                        if((matrixIdx & test) == 0) {
-                            set0 |= resultMask;
-                        } else {
-                            set1 |= resultMask;
-                        }
-                    }
-                }
-                
-                int score = Integer.bitCount(set0 ^ set1);
-                if(score > bestScore) {
-                    bestScore = score;
-                    bestSet0 = set0;
-                    bestSet1 = set1;
-                    best = keyIdx;
-                }
+            int h = kind * 31 + (negate ? 1 : 0);
+            if(key != null) {
+                h = h * 31 + key.getID();
+            }
+            if(children != null) {
+                h = h * 31 + Arrays.hashCode(children);
             }
+            this.hash = h;
         }
 
-        if(best < 0) {
-            throw new AssertionError();
+        @Override
+        public boolean equals(Object obj) {
+            if(!(obj instanceof Node)) {
+                return false;
+            }
+            Node other = (Node)obj;
+            return kind == other.kind && negate == other.negate &&
+                    key == other.key && Arrays.equals(children, other.children);
         }
 
-        if(bestSet0 == bestSet1 && (bestSet0 & (bestSet0-1)) == 0) {
-            int result = Integer.numberOfTrailingZeros(bestSet0);
-            return result | StateSelect.CODE_RESULT;
+        @Override
+        public int hashCode() {
+            return hash;
         }
+    }
+    
+    static final class Residual {
+        final int[] data;
+        final int hash;
 
-        int bestMask = 1 << best;
-        mask |= bestMask;
-        
-        int idx = programIdx;
-        programIdx += 2;
-        programKeys[idx >> 1] = keys[best];
-        programCodes[idx + 0] = (short)compute(bits | bestMask, mask);
-        programCodes[idx + 1] = (short)compute(bits, mask);
-        
-        return idx;
+        Residual(int[] exprIdx, int[] exprNode, int start, int count) {
+            data = new int[(count - start) * 2];
+            for(int i=start,j=0 ; i<count ; i++,j+=2) {
+                data[j+0] = exprIdx[i];
+                data[j+1] = exprNode[i];
+            }
+            hash = Arrays.hashCode(data);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof Residual) && Arrays.equals(data, ((Residual)obj).data);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+    
+    static final class TooComplexException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
     }
 }
@@ -86,6 +86,25 @@ public final class TextUtil {
         return str;
     }
 
+    /**
+     * Compares the content of two character sequences without creating a String.
+     * @param a the first CharSequence
+     * @param b the second CharSequence
+     * @return true if both contain the same characters
+     */
+    public static boolean contentEquals(CharSequence a, CharSequence b) {
+        int len = a.length();
+        if(len != b.length()) {
+            return false;
+        }
+        for(int i=0 ; i<len ; i++) {
+            if(a.charAt(i) != b.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Searches for a specific character.
      * @param cs the CharSequence to search in
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * GWT version of the invokeLater queue. JavaScript is single threaded so no
+ * synchronization is needed.
+ * 
+ * @author Matthias Mann
+ */
+final class InvokeLaterQueue {
+
+    private final ArrayList<Runnable> added;
+    private final HashMap<Object, Runnable> coalesced;
+    private Runnable[] pending;
+    private int pendingStart;
+    private int pendingEnd;
+
+    InvokeLaterQueue() {
+        this.added = new ArrayList<Runnable>();
+        this.coalesced = new HashMap<Object, Runnable>();
+        this.pending = new Runnable[16];
+    }
+
+    void add(Runnable runnable) {
+        added.add(runnable);
+    }
+
+    void add(Object key, Runnable runnable) {
+        if(coalesced.put(key, runnable) == null) {
+            added.add(new Coalesced(key));
+        }
+    }
+
+    int fetch() {
+        int count = added.size();
+        if(count > 0) {
+            int size = pendingEnd - pendingStart;
+            Runnable[] tmp = (size + count > pending.length) ? new Runnable[Math.max(pending.length * 2, size + count)] : pending;
+            System.arraycopy(pending, pendingStart, tmp, 0, size);
+            for(int i=size ; i<pendingEnd ; i++) {
+                tmp[i] = null;
+            }
+            for(int i=0 ; i<count ; i++) {
+                tmp[size + i] = added.get(i);
+            }
+            added.clear();
+            pending = tmp;
+            pendingStart = 0;
+            pendingEnd = size + count;
+        }
+        return pendingEnd - pendingStart;
+    }
+
+    Runnable poll() {
+        if(pendingStart == pendingEnd) {
+            return null;
+        }
+        Runnable r = pending[pendingStart];
+        pending[pendingStart++] = null;
+        if(pendingStart == pendingEnd) {
+            pendingStart = 0;
+            pendingEnd = 0;
+        }
+        if(r instanceof Coalesced) {
+            r = coalesced.remove(((Coalesced)r).key);
+        }
+        return r;
+    }
+    
+    static final class Coalesced implements Runnable {
+        final Object key;
+
+        Coalesced(Object key) {
+            this.key = key;
+        }
+
+        public void run() {
+        }
+    }
+}
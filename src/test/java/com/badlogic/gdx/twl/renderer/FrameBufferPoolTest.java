@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.badlogic.gdx.twl.renderer;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Mann
+ */
+public class FrameBufferPoolTest {
+
+    public FrameBufferPoolTest() {
+    }
+
+    static class TestPool extends FrameBufferPool {
+        int created;
+        int disposed;
+
+        TestPool(long maxMemory) {
+            super(maxMemory);
+        }
+
+        @Override
+        void createFrameBuffer(Entry e) {
+            created++;
+        }
+
+        @Override
+        void disposeFrameBuffer(Entry e) {
+            disposed++;
+        }
+    }
+
+    @Test
+    public void testBucketSize() {
+        assertEquals(64, FrameBufferPool.bucketSize(1));
+        assertEquals(64, FrameBufferPool.bucketSize(64));
+        assertEquals(128, FrameBufferPool.bucketSize(65));
+        assertEquals(256, FrameBufferPool.bucketSize(200));
+        assertEquals(512, FrameBufferPool.bucketSize(512));
+        assertEquals(768, FrameBufferPool.bucketSize(513));
+        assertEquals(1024, FrameBufferPool.bucketSize(1000));
+    }
+
+    @Test
+    public void testReuse() {
+        TestPool pool = new TestPool(1L << 20);
+        FrameBufferPool.Entry e1 = pool.acquire(100, 30);
+        assertEquals(128, e1.width);
+        assertEquals(64, e1.height);
+        assertTrue(FrameBufferPool.isMatching(e1, 120, 50));
+        assertFalse(FrameBufferPool.isMatching(e1, 130, 50));
+        pool.release(e1);
+        assertEquals(1, pool.getNumFree());
+
+        FrameBufferPool.Entry e2 = pool.acquire(110, 60);
+        assertSame(e1, e2);
+        assertEquals(1, pool.created);
+        assertEquals(0, pool.getNumFree());
+        assertEquals(1, pool.getNumInUse());
+        assertEquals(128 * 64 * 4, pool.getUsedMemory());
+    }
+
+    @Test
+    public void testLRUEviction() {
+        final long size = FrameBufferPool.memorySize(64, 64);
+        TestPool pool = new TestPool(size * 2);
+        FrameBufferPool.Entry a = pool.acquire(64, 64);
+        FrameBufferPool.Entry b = pool.acquire(64, 64);
+        pool.release(a);
+        pool.release(b);
+        assertEquals(0, pool.disposed);
+
+        // a is the least recently used and must be disposed first
+        FrameBufferPool.Entry c = pool.acquire(128, 64);
+        assertNotSame(a, c);
+        assertEquals(2, pool.disposed);
+        assertEquals(0, pool.getNumFree());
+
+        pool.release(c);
+        FrameBufferPool.Entry d = pool.acquire(64, 64);
+        FrameBufferPool.Entry e = pool.acquire(64, 64);
+        assertEquals(3, pool.disposed);
+        assertEquals(size * 2, pool.getUsedMemory());
+
+        pool.release(d);
+        pool.release(e);
+        pool.acquire(64, 64);
+        assertEquals(3, pool.disposed);
+    }
+
+    @Test
+    public void testInUseNotEvicted() {
+        final long size = FrameBufferPool.memorySize(64, 64);
+        TestPool pool = new TestPool(size);
+        pool.acquire(64, 64);
+        pool.acquire(64, 64);
+        assertEquals(0, pool.disposed);
+        assertEquals(size * 2, pool.getUsedMemory());
+
+        pool.setMaxMemory(0);
+        assertEquals(0, pool.disposed);
+        pool.dispose();
+        assertEquals(2, pool.disposed);
+        assertEquals(0, pool.getUsedMemory());
+    }
+}
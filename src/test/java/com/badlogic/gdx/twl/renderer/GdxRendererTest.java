@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.badlogic.gdx.twl.renderer;
+
+import com.badlogic.gdx.InputProcessorQueue;
+import com.badlogic.gdx.graphics.Color;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.FloatBuffer;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit test for the per frame paths of GdxRenderer which don't need a GL context.
+ *
+ * @author Matthias Mann
+ */
+public class GdxRendererTest {
+
+    private static final de.matthiasmann.twl.Color TEST_COLOR = new de.matthiasmann.twl.Color(0xFF8040C0);
+    
+    public GdxRendererTest() {
+    }
+
+    @Test
+    public void testTintStack() {
+        GdxRenderer renderer = createRenderer();
+        Color c = renderer.getColor(de.matthiasmann.twl.Color.WHITE);
+        assertEquals(1f, c.a, 1e-5f);
+        renderer.pushGlobalTintColor(1f, 1f, 1f, 0.5f);
+        for(int i=0 ; i<20 ; i++) {
+            renderer.pushGlobalTintColor(1f, 0.5f, 1f, 1f);
+        }
+        assertEquals(0.5f, renderer.getColor(de.matthiasmann.twl.Color.WHITE).a, 1e-5f);
+        assertEquals((float)Math.pow(0.5, 20), renderer.getColor(de.matthiasmann.twl.Color.WHITE).g, 1e-5f);
+        for(int i=0 ; i<20 ; i++) {
+            renderer.popGlobalTintColor();
+        }
+        assertEquals(1f, renderer.getColor(de.matthiasmann.twl.Color.WHITE).g, 1e-5f);
+        renderer.popGlobalTintColor();
+        renderer.popGlobalTintColor();  // underflow stays at the root
+        assertEquals(1f, renderer.getColor(de.matthiasmann.twl.Color.WHITE).a, 1e-5f);
+    }
+
+    @Test
+    public void testLineBuffer() {
+        GdxRenderer renderer = createRenderer();
+        float[] pts = new float[] { 1, 2, 3, 4, 5, 6 };
+        FloatBuffer fb = renderer.fillLineBuffer(pts, 2);
+        assertEquals(0, fb.position());
+        assertEquals(4, fb.remaining());
+        assertEquals(4f, fb.get(3), 0f);
+        assertSame(fb, renderer.fillLineBuffer(pts, 3));
+        assertEquals(6, fb.remaining());
+    }
+
+    @Test
+    public void testNoAllocationsPerFrame() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+        Assume.assumeTrue(sunBean.isThreadAllocatedMemorySupported());
+        sunBean.setThreadAllocatedMemoryEnabled(true);
+        
+        GdxRenderer renderer = createRenderer();
+        float[] pts = new float[2 * 100];
+        
+        // warm up - this grows the tint stack and the line buffer
+        runFrames(renderer, pts, 1000);
+        
+        long threadId = Thread.currentThread().getId();
+        long overhead = sunBean.getThreadAllocatedBytes(threadId);
+        overhead = sunBean.getThreadAllocatedBytes(threadId) - overhead;
+        
+        // a per frame allocation shows up in every run - but the JIT or
+        // class loading can cause a few bytes of noise in a single run
+        long allocated = Long.MAX_VALUE;
+        for(int run=0 ; run<5 && allocated > overhead ; run++) {
+            long start = sunBean.getThreadAllocatedBytes(threadId);
+            runFrames(renderer, pts, 1000);
+            allocated = sunBean.getThreadAllocatedBytes(threadId) - start;
+        }
+        
+        assertTrue("allocated " + allocated + " bytes", allocated <= overhead);
+    }
+    
+    private static void runFrames(GdxRenderer renderer, float[] pts, int frames) {
+        float sum = 0;
+        for(int frame=0 ; frame<frames ; frame++) {
+            // nested tints like a fading tooltip inside a tinted frame
+            for(int depth=0 ; depth<12 ; depth++) {
+                renderer.pushGlobalTintColor(1f, 1f, 1f, 0.9f);
+                sum += renderer.getColor(TEST_COLOR).a;
+            }
+            for(int depth=0 ; depth<12 ; depth++) {
+                renderer.popGlobalTintColor();
+            }
+            // graph lines with varying point counts
+            sum += renderer.fillLineBuffer(pts, 2 + (frame % 99)).remaining();
+        }
+        assertTrue(sum > 0);
+    }
+    
+    private static GdxRenderer createRenderer() {
+        return new GdxRenderer(null, null, new InputProcessorQueue());
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl;
+
+import de.matthiasmann.twl.renderer.AnimationState.StateKey;
+import de.matthiasmann.twl.utils.StateExpression;
+import de.matthiasmann.twl.utils.StateSelect;
+import java.util.Random;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Mann
+ */
+public class AnimationStateTest {
+
+    private static final StateKey A = StateKey.get("asTestA");
+    private static final StateKey B = StateKey.get("asTestB");
+    private static final StateKey C = StateKey.get("asTestC");
+
+    public AnimationStateTest() {
+    }
+
+    @Test
+    public void testParentLookup() {
+        AnimationState root = new AnimationState();
+        AnimationState parent = new AnimationState(root);
+        AnimationState child = new AnimationState(parent);
+        
+        assertFalse(child.getAnimationState(A));
+        root.setAnimationState(A, true);
+        assertTrue(child.getAnimationState(A));
+        assertTrue(child.getShouldAnimateState(A));
+        
+        // an explicit false hides the value of the parent
+        parent.setAnimationState(A, false);
+        assertFalse(child.getAnimationState(A));
+        assertFalse(parent.getAnimationState(A));
+        assertTrue(root.getAnimationState(A));
+        
+        parent.setAnimationState(B, true);
+        child.setAnimationState(C, true);
+        assertTrue(child.getAnimationState(B));
+        assertTrue(child.getAnimationState(C));
+        assertFalse(parent.getAnimationState(C));
+        
+        parent.dontAnimate(B);
+        assertFalse(child.getShouldAnimateState(B));
+        child.resetAnimationTime(B);
+        assertTrue(child.getShouldAnimateState(B));
+        // the child now defines B itself with the default value false
+        assertFalse(child.getAnimationState(B));
+        assertTrue(parent.getAnimationState(B));
+    }
+
+    @Test
+    public void testAnimationTime() {
+        final long[] time = new long[1];
+        GUI gui = TestUtils.createGUI(new Widget(), time);
+        AnimationState parent = new AnimationState();
+        AnimationState child = new AnimationState(parent);
+        parent.setGUI(gui);
+        child.setGUI(gui);
+        
+        time[0] = 100;
+        gui.updateTime();
+        parent.setAnimationState(A, true);
+        time[0] = 150;
+        gui.updateTime();
+        child.setAnimationState(B, true);
+        time[0] = 400;
+        gui.updateTime();
+        assertEquals(300, child.getAnimationTime(A));
+        assertEquals(250, child.getAnimationTime(B));
+        assertEquals(400, child.getAnimationTime(C));
+        
+        child.resetAnimationTime(A);
+        assertEquals(0, child.getAnimationTime(A));
+        assertEquals(300, parent.getAnimationTime(A));
+        assertTrue(parent.getAnimationState(A));
+        assertFalse(child.getAnimationState(A));
+    }
+
+    @Test
+    public void testManyKeys() {
+        Random r = new Random(1234);
+        StateKey[] keys = new StateKey[300];
+        for(int i=0 ; i<keys.length ; i++) {
+            keys[i] = StateKey.get("asTestMany" + i);
+        }
+        AnimationState parent = new AnimationState();
+        AnimationState child = new AnimationState(parent);
+        Boolean[] parentValues = new Boolean[keys.length];
+        Boolean[] childValues = new Boolean[keys.length];
+        for(int i=0 ; i<10000 ; i++) {
+            int k = r.nextInt(keys.length);
+            boolean value = r.nextBoolean();
+            if(r.nextBoolean()) {
+                parent.setAnimationState(keys[k], value);
+                parentValues[k] = value;
+            } else {
+                child.setAnimationState(keys[k], value);
+                childValues[k] = value;
+            }
+            int q = r.nextInt(keys.length);
+            boolean expected = (childValues[q] != null) ? childValues[q]
+                    : (parentValues[q] != null && parentValues[q]);
+            assertEquals(expected, child.getAnimationState(keys[q]));
+        }
+    }
+
+    @Test
+    public void testEvaluateBenchmark() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("twl.benchmark"));
+        StateKey[] keys = new StateKey[8];
+        for(int i=0 ; i<keys.length ; i++) {
+            keys[i] = StateKey.get("asTestBench" + i);
+        }
+        StateExpression[] expressions = new StateExpression[] {
+            StateExpression.parse("asTestBench0 + asTestBench1 + asTestBench2", false),
+            StateExpression.parse("asTestBench3 + asTestBench4", false),
+            StateExpression.parse("asTestBench5 + !asTestBench6", false),
+            StateExpression.parse("asTestBench7", false),
+            StateExpression.parse("asTestBench0 | asTestBench6", false)
+        };
+        StateSelect select = new StateSelect(expressions);
+        boolean useOptimizer = StateSelect.isUseOptimizer();
+        StateSelect.setUseOptimizer(true);
+        StateSelect optimized;
+        try {
+            optimized = new StateSelect(expressions);
+        } finally {
+            StateSelect.setUseOptimizer(useOptimizer);
+        }
+        
+        AnimationState root = new AnimationState();
+        AnimationState parent = new AnimationState(root);
+        AnimationState child = new AnimationState(parent);
+        root.setAnimationState(keys[0], true);
+        root.setAnimationState(keys[6], true);
+        parent.setAnimationState(keys[3], true);
+        child.setAnimationState(keys[5], true);
+        
+        final int iterations = 2000000;
+        for(int round=0 ; round<3 ; round++) {
+            for(StateSelect ss : new StateSelect[] { select, optimized }) {
+                int sum = 0;
+                long start = System.nanoTime();
+                for(int i=0 ; i<iterations ; i++) {
+                    if((i & 1023) == 0) {
+                        // a state change every few frames
+                        child.setAnimationState(keys[1], (i & 1024) != 0);
+                    }
+                    sum += ss.evaluate(child);
+                }
+                long time = System.nanoTime() - start;
+                assertTrue(sum > 0);
+                System.out.println("StateSelect.evaluate on 3 level chain" +
+                        ((ss == optimized) ? " (optimized): " : ": ") +
+                        (iterations * 1000L / Math.max(1, time / 1000)) + " evaluations/ms");
+            }
+            
+            int count = 0;
+            long start = System.nanoTime();
+            for(int i=0 ; i<iterations ; i++) {
+                if(child.getAnimationState(keys[i & 7])) {
+                    count++;
+                }
+            }
+            long time = System.nanoTime() - start;
+            assertTrue(count > 0);
+            System.out.println("AnimationState.getAnimationState on 3 level chain: " +
+                    (iterations * 1000L / Math.max(1, time / 1000)) + " lookups/ms");
+        }
+    }
+}
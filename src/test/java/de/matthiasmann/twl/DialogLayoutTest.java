@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl;
+
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Mann
+ */
+public class DialogLayoutTest {
+
+    public DialogLayoutTest() {
+    }
+
+    @Test
+    public void testSimpleLayout() {
+        DialogLayout dl = new DialogLayout();
+        SizedWidget a = new SizedWidget(10, 30, 100, 20);
+        SizedWidget b = new SizedWidget(20, 40, 0, 20);
+        SizedWidget c = new SizedWidget(5, 50, 200, 10);
+        dl.setHorizontalGroup(dl.createParallelGroup()
+                .addGroup(dl.createSequentialGroup(a, b))
+                .addWidget(c));
+        dl.setVerticalGroup(dl.createSequentialGroup()
+                .addGroup(dl.createParallelGroup(a, b))
+                .addWidget(c));
+        
+        assertEquals(70, dl.getPreferredInnerWidth());
+        assertEquals(30, dl.getPreferredInnerHeight());
+        assertEquals(30, dl.getMinWidth());
+        
+        dl.setSize(70, 30);
+        dl.validateLayout();
+        assertEquals(0, a.getX());
+        assertEquals(30, a.getWidth());
+        assertEquals(30, b.getX());
+        assertEquals(40, b.getWidth());
+        assertEquals(20, c.getY());
+        assertEquals(70, c.getWidth());
+        
+        // change a preferred size - the cached group sizes must be updated
+        a.prefWidth = 50;
+        a.invalidateLayout();
+        assertEquals(90, dl.getPreferredInnerWidth());
+        dl.setSize(90, 30);
+        dl.validateLayout();
+        assertEquals(50, a.getWidth());
+        assertEquals(50, b.getX());
+        
+        // change the group structure
+        SizedWidget d = new SizedWidget(0, 15, 15, 15);
+        dl.getHorizontalGroup().addWidget(d);
+        dl.getVerticalGroup().addWidget(d);
+        assertEquals(45, dl.getPreferredInnerHeight());
+        
+        // a gap setting change
+        dl.setAddDefaultGaps(false);
+        dl.getVerticalGroup().addGap(5);
+        assertEquals(50, dl.getPreferredInnerHeight());
+        dl.setDefaultGap(new Dimension(0, 0));
+        assertEquals(50, dl.getPreferredInnerHeight());
+    }
+
+    @Test
+    public void testInvisibleWidgets() {
+        DialogLayout dl = new DialogLayout();
+        dl.setIncludeInvisibleWidgets(false);
+        SizedWidget a = new SizedWidget(0, 30, 30, 20);
+        SizedWidget b = new SizedWidget(0, 40, 40, 20);
+        dl.setHorizontalGroup(dl.createSequentialGroup(a, b));
+        dl.setVerticalGroup(dl.createParallelGroup(a, b));
+        assertEquals(70, dl.getPreferredInnerWidth());
+        b.setVisible(false);
+        assertEquals(30, dl.getPreferredInnerWidth());
+        b.setVisible(true);
+        assertEquals(70, dl.getPreferredInnerWidth());
+    }
+
+    /**
+     * Lays out a random nested dialog at several sizes and compares a
+     * checksum of all widget positions with the uncached implementation.
+     */
+    @Test
+    public void testNestedChecksum() {
+        ArrayList<SizedWidget> widgets = new ArrayList<SizedWidget>();
+        DialogLayout dl = createNestedDialog(new Random(4711), 4, 3, widgets);
+        long checksum = 0;
+        for(int size=100 ; size<2000 ; size+=97) {
+            dl.setSize(size, size / 2);
+            dl.validateLayout();
+            for(SizedWidget w : widgets) {
+                checksum = checksum * 31 + w.getX();
+                checksum = checksum * 31 + w.getY();
+                checksum = checksum * 31 + w.getWidth();
+                checksum = checksum * 31 + w.getHeight();
+            }
+        }
+        assertEquals(widgets.size() + " widgets", CHECKSUM, checksum);
+    }
+    
+    private static final long CHECKSUM = 3182450717631420385L;
+
+    @Test
+    public void testNestedBenchmark() {
+        Assume.assumeTrue(Boolean.getBoolean("twl.benchmark"));
+        ArrayList<SizedWidget> widgets = new ArrayList<SizedWidget>();
+        DialogLayout dl = createNestedDialog(new Random(42), 6, 3, widgets);
+        dl.setSize(1000, 800);
+        final int passes = 200;
+        for(int round=0 ; round<3 ; round++) {
+            long start = System.nanoTime();
+            for(int i=0 ; i<passes ; i++) {
+                dl.invalidateLayout();
+                dl.getPreferredInnerWidth();
+                dl.getPreferredInnerHeight();
+                dl.setSize(1000 + (i & 1), 800);
+                dl.validateLayout();
+            }
+            long time = System.nanoTime() - start;
+            System.out.println("DialogLayout with " + widgets.size() + " widgets nested 6 levels: " +
+                    (time / passes / 1000) + " us per layout pass");
+        }
+    }
+
+    private static DialogLayout createNestedDialog(Random r, int depth, int fanOut, ArrayList<SizedWidget> widgets) {
+        DialogLayout dl = new DialogLayout();
+        dl.setHorizontalGroup(dl.createParallelGroup());
+        dl.setVerticalGroup(dl.createSequentialGroup());
+        // alternate between rows and columns on each level
+        addNested(dl, r, dl.getHorizontalGroup(), dl.getVerticalGroup(), depth, fanOut, widgets);
+        return dl;
+    }
+    
+    private static void addNested(DialogLayout dl, Random r, DialogLayout.Group across, DialogLayout.Group along,
+            int depth, int fanOut, ArrayList<SizedWidget> widgets) {
+        for(int i=0 ; i<fanOut ; i++) {
+            if(depth == 0) {
+                SizedWidget w = new SizedWidget(r.nextInt(20), 20 + r.nextInt(50), r.nextBoolean() ? 0 : 300, 10 + r.nextInt(20));
+                widgets.add(w);
+                across.addWidget(w);
+                along.addWidget(w);
+            } else {
+                DialogLayout.Group subAcross = dl.createSequentialGroup();
+                DialogLayout.Group subAlong = dl.createParallelGroup();
+                across.addGroup(subAcross);
+                along.addGroup(subAlong);
+                if(r.nextBoolean()) {
+                    along.addGap("named");
+                } else {
+                    subAcross.addGap(0, 5, 20);
+                }
+                addNested(dl, r, subAlong, subAcross, depth-1, fanOut, widgets);
+            }
+        }
+    }
+    
+    static class SizedWidget extends Widget {
+        int minWidth;
+        int prefWidth;
+        int maxWidth;
+        int prefHeight;
+
+        SizedWidget(int minWidth, int prefWidth, int maxWidth, int prefHeight) {
+            this.minWidth = minWidth;
+            this.prefWidth = prefWidth;
+            this.maxWidth = maxWidth;
+            this.prefHeight = prefHeight;
+        }
+
+        @Override
+        public int getMinWidth() {
+            return minWidth;
+        }
+
+        @Override
+        public int getPreferredInnerWidth() {
+            return prefWidth;
+        }
+
+        @Override
+        public int getMaxWidth() {
+            return maxWidth;
+        }
+
+        @Override
+        public int getPreferredInnerHeight() {
+            return prefHeight;
+        }
+    }
+}
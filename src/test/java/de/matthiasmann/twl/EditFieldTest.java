@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl;
+
+import de.matthiasmann.twl.model.GapBufferEditFieldModel;
+import de.matthiasmann.twl.model.SimpleStringModel;
+import de.matthiasmann.twl.renderer.Font;
+import de.matthiasmann.twl.renderer.FontCache;
+import de.matthiasmann.twl.renderer.Renderer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Mann
+ */
+public class EditFieldTest {
+
+    public EditFieldTest() {
+    }
+
+    @Test
+    public void testLineIndex() {
+        EditField ef = new EditField(null, new GapBufferEditFieldModel());
+        ef.setMultiLine(true);
+        ef.setText("first\nsecond line\n\nlast");
+        assertEquals(0, ef.computeLineNumber(3));
+        assertEquals(1, ef.computeLineNumber(6));
+        assertEquals(6, ef.computeLineStart(10));
+        assertEquals(17, ef.computeLineEnd(10));
+        assertEquals(18, ef.computeLineStart(18));
+        assertEquals(18, ef.computeLineEnd(18));
+        assertEquals(3, ef.computeLineNumber(ef.getTextLength()));
+    }
+
+    @Test
+    public void testLineNumberFromLineStarts() {
+        EditField ef = new EditField();
+        ef.setMultiLine(true);
+        Widget root = new Widget();
+        root.add(ef);
+        TestUtils.createGUI(root);
+        ef.setText("first\nsecond line\n\nlast\n");
+        for(int i=0 ; i<=ef.getTextLength() ; i++) {
+            assertEquals(ef.computeLineNumber(i), ef.getLineNumber(i));
+        }
+        
+        // the line starts are build again after a change
+        ef.setCursorPos(6);
+        ef.insertText("x\ny\n");
+        for(int i=0 ; i<=ef.getTextLength() ; i++) {
+            assertEquals(ef.computeLineNumber(i), ef.getLineNumber(i));
+        }
+        assertEquals(7, ef.getNumLines());
+    }
+
+    @Test
+    public void testModelUpdateDelay() {
+        SimpleStringModel model = new SimpleStringModel("abc");
+        EditField ef = new EditField();
+        ef.setModel(model);
+        Widget root = new Widget();
+        root.add(ef);
+        TestUtils.createGUI(root);
+        assertEquals("abc", ef.getText());
+        
+        ef.setModelUpdateDelay(500);
+        ef.setCursorPos(3);
+        ef.insertText("def");
+        assertEquals("abcdef", ef.getText());
+        assertEquals("abc", model.getValue());
+        
+        ef.flushModelUpdate();
+        assertEquals("abcdef", model.getValue());
+        
+        // a model change replaces pending edits
+        ef.insertText("g");
+        model.setValue("xyz");
+        assertEquals("xyz", ef.getText());
+        ef.flushModelUpdate();
+        assertEquals("xyz", model.getValue());
+        
+        ef.insertText("!");
+        root.removeChild(ef);
+        assertEquals("xyz!", model.getValue());
+    }
+
+    @Test
+    public void testPaintVisibleLines() {
+        Rect clip = new Rect(0, 0, 200, 100);
+        int[] counts = new int[2];
+        EditField ef = createMultiLineEditField(clip, counts, 10000);
+        EditField.TextRenderer tr = (EditField.TextRenderer)ef.getChild(0);
+        GUI gui = ef.getGUI();
+        
+        tr.paintWidget(gui);
+        assertEquals(0, tr.firstVisibleLine);
+        assertEquals(9, tr.lastVisibleLine);
+        assertEquals(10, counts[0]);
+        assertEquals(10, tr.getNumLineCaches());
+        
+        // unchanged lines are not cached again
+        tr.paintWidget(gui);
+        assertEquals(10, counts[0]);
+        
+        // only the changed line is cached again
+        ef.setCursorPos(ef.getLineStart(3));
+        ef.insertText("x");
+        tr.paintWidget(gui);
+        assertEquals(11, counts[0]);
+        assertEquals(10, tr.getNumLineCaches());
+        
+        // scroll down by 500 pixel (eg inside a ScrollPane)
+        tr.setPosition(0, -500);
+        tr.paintWidget(gui);
+        assertEquals(50, tr.firstVisibleLine);
+        assertEquals(59, tr.lastVisibleLine);
+        assertEquals(21, counts[0]);
+        assertEquals(10, tr.getNumLineCaches());
+    }
+
+    @Test
+    public void testFontChangeDestroysLineCaches() {
+        Rect clip = new Rect(0, 0, 200, 100);
+        int[] counts = new int[2];
+        EditField ef = createMultiLineEditField(clip, counts, 100);
+        EditField.TextRenderer tr = (EditField.TextRenderer)ef.getChild(0);
+        GUI gui = ef.getGUI();
+
+        tr.paintWidget(gui);
+        assertEquals(10, counts[0]);
+        assertEquals(10, tr.getNumLineCaches());
+
+        // the line caches were created with the old font
+        tr.setFont(tr.getFont());
+        assertEquals(0, tr.getNumLineCaches());
+        tr.paintWidget(gui);
+        assertEquals(20, counts[0]);
+        assertEquals(10, tr.getNumLineCaches());
+    }
+
+    @Test
+    public void testPaintBenchmark() {
+        Assume.assumeTrue(Boolean.getBoolean("twl.benchmark"));
+        for(int numLines : new int[] { 1000, 100000 }) {
+            int[] counts = new int[2];
+            EditField ef = createMultiLineEditField(new Rect(0, 0, 200, 500), counts, numLines);
+            EditField.TextRenderer tr = (EditField.TextRenderer)ef.getChild(0);
+            GUI gui = ef.getGUI();
+            for(int i=0 ; i<100 ; i++) {
+                tr.paintWidget(gui);
+            }
+            long start = System.nanoTime();
+            for(int i=0 ; i<1000 ; i++) {
+                tr.paintWidget(gui);
+            }
+            long time = System.nanoTime() - start;
+            System.out.println("Painting " + numLines + " lines: " + (time / 1000000) + " us per frame");
+            assertEquals(50, tr.getNumLineCaches());
+        }
+    }
+    
+    private static EditField createMultiLineEditField(final Rect clip, final int[] counts, int numLines) {
+        final FontCache fontCache = (FontCache)Proxy.newProxyInstance(
+                FontCache.class.getClassLoader(), new Class<?>[] { FontCache.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return (method.getReturnType() == int.class) ? (Object)0 : null;
+                    }
+                });
+        Font font = (Font)Proxy.newProxyInstance(
+                Font.class.getClassLoader(), new Class<?>[] { Font.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if(name.equals("getLineHeight")) {
+                            return 10;
+                        }
+                        if(name.equals("cacheText")) {
+                            counts[0]++;
+                            return fontCache;
+                        }
+                        if(name.equals("drawText")) {
+                            counts[1]++;
+                        }
+                        return TestUtils.defaultValue(method.getReturnType());
+                    }
+                });
+        Renderer renderer = (Renderer)Proxy.newProxyInstance(
+                Renderer.class.getClassLoader(), new Class<?>[] { Renderer.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if(method.getName().equals("getClipRect")) {
+                            ((Rect)args[0]).set(clip);
+                            return Boolean.TRUE;
+                        }
+                        return TestUtils.defaultValue(method.getReturnType());
+                    }
+                });
+        
+        StringBuilder sb = new StringBuilder();
+        for(int i=0 ; i<numLines ; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+        EditField ef = new EditField(null, new GapBufferEditFieldModel());
+        ef.setMultiLine(true);
+        ef.setMaxTextLength(Integer.MAX_VALUE);
+        new GUI(ef, renderer, null);
+        ef.setText(sb.toString());
+        TextWidget tr = (TextWidget)ef.getChild(0);
+        tr.setFont(font);
+        tr.setPosition(0, 0);
+        tr.setSize(200, 1000000);
+        return ef;
+    }
+}
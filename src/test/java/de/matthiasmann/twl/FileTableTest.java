@@ -0,0 +1,369 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl;
+
+import de.matthiasmann.twl.model.FileSystemModel;
+import de.matthiasmann.twl.model.JavaFileSystemModel;
+import de.matthiasmann.twl.model.NIOFileSystemModel;
+import de.matthiasmann.twl.model.SortOrder;
+import de.matthiasmann.twl.model.TableModel;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Mann
+ */
+public class FileTableTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+    
+    public FileTableTest() {
+    }
+
+    @Test
+    public void testMerge() {
+        Random r = new Random(1234);
+        FileTable.Entry[] a = createEntries(r, 100);
+        FileTable.Entry[] b = createEntries(r, 37);
+        Arrays.sort(a, FileTable.NameComparator.instance);
+        Arrays.sort(b, FileTable.NameComparator.instance);
+        FileTable.Entry[] dst = new FileTable.Entry[a.length + b.length];
+        FileTable.merge(a, 0, a.length, b, 0, b.length, FileTable.NameComparator.instance, dst, 0);
+        for(int i=1 ; i<dst.length ; i++) {
+            assertTrue(FileTable.NameComparator.instance.compare(dst[i-1], dst[i]) <= 0);
+        }
+    }
+
+    @Test
+    public void testInsertSorted() {
+        Random r = new Random(1234);
+        FileTable.Entry[] a = createEntries(r, 100);
+        FileTable.Entry[] b = createEntries(r, 37);
+        Arrays.sort(a, FileTable.NameComparator.instance);
+        Arrays.sort(b, FileTable.NameComparator.instance);
+        
+        FileTable table = new FileTable();
+        table.setAllowMultiSelection(true);
+        FileTable.FileTableModel model = (FileTable.FileTableModel)table.getModel();
+        model.insertSorted(a, 0, FileTable.NameComparator.instance);
+        table.getSelectionManager().getSelectionModel().setSelection(50, 50);
+        
+        final ArrayList<Integer> inserted = new ArrayList<Integer>();
+        model.addChangeListener(new TableModel.ChangeListener() {
+            public void rowsInserted(int idx, int count) {
+                inserted.add(count);
+            }
+            public void rowsDeleted(int idx, int count) {
+                fail("no rows should be deleted");
+            }
+            public void rowsChanged(int idx, int count) {
+            }
+            public void cellChanged(int row, int column) {
+            }
+            public void allChanged() {
+                fail("the model should not be replaced");
+            }
+            public void columnInserted(int idx, int count) {
+            }
+            public void columnDeleted(int idx, int count) {
+            }
+            public void columnHeaderChanged(int column) {
+            }
+        });
+        model.insertSorted(b, 0, FileTable.NameComparator.instance);
+        
+        assertEquals(a.length + b.length, table.getNumRows());
+        for(int i=1 ; i<table.getNumRows() ; i++) {
+            assertTrue(FileTable.NameComparator.instance.compare(
+                    model.getEntry(i-1), model.getEntry(i)) <= 0);
+        }
+        int sum = 0;
+        for(int count : inserted) {
+            sum += count;
+        }
+        assertEquals(b.length, sum);
+        assertTrue(inserted.size() <= b.length);
+        
+        // the selection follows the entry without a snapshot
+        FileTable.Entry[] selection = table.getSelection();
+        assertEquals(1, selection.length);
+        assertSame(a[50], selection[0]);
+    }
+
+    @Test
+    public void testAsyncListing() throws IOException {
+        File folder = createFolder(1000, 20);
+        
+        FileTable syncTable = new FileTable();
+        syncTable.setAllowMultiSelection(true);
+        syncTable.setSortColumn(FileTable.SortColumn.SIZE);
+        syncTable.setCurrentFolder(JavaFileSystemModel.getInstance(), folder);
+        
+        final ArrayList<Runnable> jobs = new ArrayList<Runnable>();
+        FileTable asyncTable = new FileTable();
+        asyncTable.setAllowMultiSelection(true);
+        asyncTable.setSortColumn(FileTable.SortColumn.SIZE);
+        asyncTable.setListingExecutor(new FileTable.ListingExecutor() {
+            public void execute(Runnable job) {
+                jobs.add(job);
+            }
+        });
+        GUI gui = TestUtils.createGUI(asyncTable);
+        asyncTable.setCurrentFolder(JavaFileSystemModel.getInstance(), folder);
+        assertTrue(asyncTable.isListingInProgress());
+        assertEquals(0, asyncTable.getNumRows());
+        assertFalse(asyncTable.setSelection(new File(folder, "file42.txt")));
+        
+        assertEquals(1, jobs.size());
+        jobs.get(0).run();
+        
+        // change sort order while the batches are delivered
+        gui.invokeRunables();
+        asyncTable.setSortOrder(SortOrder.DESCENDING);
+        syncTable.setSortOrder(SortOrder.DESCENDING);
+        gui.invokeRunables();
+        
+        assertFalse(asyncTable.isListingInProgress());
+        assertSameEntries(syncTable, asyncTable);
+        
+        FileTable.Entry[] selection = asyncTable.getSelection();
+        assertEquals(1, selection.length);
+        assertEquals("file42.txt", selection[0].name);
+    }
+
+    @Test
+    public void testCancelListing() throws IOException {
+        File folder1 = createFolder(500, 0);
+        File folder2 = tmpFolder.newFolder();
+        new File(folder2, "single").createNewFile();
+        
+        final ArrayList<Runnable> jobs = new ArrayList<Runnable>();
+        FileTable table = new FileTable();
+        table.setAllowMultiSelection(false);
+        table.setListingExecutor(new FileTable.ListingExecutor() {
+            public void execute(Runnable job) {
+                jobs.add(job);
+            }
+        });
+        GUI gui = TestUtils.createGUI(table);
+        table.setCurrentFolder(JavaFileSystemModel.getInstance(), folder1);
+        jobs.get(0).run();
+        table.setCurrentFolder(JavaFileSystemModel.getInstance(), folder2);
+        jobs.get(1).run();
+        gui.invokeRunables();
+        
+        assertEquals(1, table.getNumRows());
+        assertFalse(table.isListingInProgress());
+    }
+    
+    @Test
+    public void testUpdateFiles() throws IOException {
+        File folder = createFolder(50, 3);
+        FileTable table = new FileTable();
+        table.setAllowMultiSelection(false);
+        table.setCurrentFolder(JavaFileSystemModel.getInstance(), folder);
+        assertTrue(table.setSelection(new File(folder, "file20.txt")));
+        
+        File newFile = new File(folder, "file200.txt");
+        newFile.createNewFile();
+        File newFolder = new File(folder, "folder9");
+        newFolder.mkdir();
+        File deleted = new File(folder, "file7.txt");
+        assertTrue(deleted.delete());
+        File modified = new File(folder, "file3.txt");
+        FileOutputStream fos = new FileOutputStream(modified);
+        try {
+            fos.write(new byte[12345]);
+        } finally {
+            fos.close();
+        }
+        
+        table.updateFiles(new Object[] { newFile, newFolder, modified }, new Object[] { deleted });
+        
+        FileTable expected = new FileTable();
+        expected.setAllowMultiSelection(false);
+        expected.setCurrentFolder(JavaFileSystemModel.getInstance(), folder);
+        assertSameEntries(expected, table);
+        
+        FileTable.Entry[] selection = table.getSelection();
+        assertEquals(1, selection.length);
+        assertEquals("file20.txt", selection[0].name);
+        
+        // files which do no longer pass the filter are removed
+        table.setFileFilter(new FileSystemModel.FileFilter() {
+            public boolean accept(FileSystemModel fsm, Object file) {
+                return fsm.getName(file).endsWith(".txt");
+            }
+        });
+        File other = new File(folder, "other.dat");
+        other.createNewFile();
+        int numRows = table.getNumRows();
+        table.updateFiles(new Object[] { other }, null);
+        assertEquals(numRows, table.getNumRows());
+    }
+
+    @Test
+    public void testFolderWatcher() throws Exception {
+        File folder = createFolder(20, 0);
+        FileTable table = new FileTable();
+        table.setAllowMultiSelection(false);
+        GUI gui = TestUtils.createGUI(table);
+        table.setCurrentFolder(JavaFileSystemModel.getInstance(), folder);
+        
+        FolderWatcher watcher = new FolderWatcher(gui);
+        try {
+            watcher.watchFileTable(table);
+            new File(folder, "created.txt").createNewFile();
+            assertTrue(new File(folder, "file5.txt").delete());
+            
+            FileTable expected = new FileTable();
+            expected.setAllowMultiSelection(false);
+            expected.setCurrentFolder(JavaFileSystemModel.getInstance(), folder);
+            long timeout = System.currentTimeMillis() + 10000;
+            while(table.getNumRows() != expected.getNumRows() || !containsFile(table, "created.txt")) {
+                assertTrue("timeout waiting for watch events", System.currentTimeMillis() < timeout);
+                Thread.sleep(10);
+                gui.invokeRunables();
+            }
+            assertSameEntries(expected, table);
+        } finally {
+            watcher.close();
+        }
+    }
+    
+    @Test
+    public void testFolderWatcherInvalidatesCache() throws Exception {
+        File folder = createFolder(20, 0);
+        NIOFileSystemModel nio = new NIOFileSystemModel(FileSystems.getDefault(), 1000);
+        nio.setCacheTimeout(Long.MAX_VALUE);
+        FileTable table = new FileTable();
+        table.setAllowMultiSelection(false);
+        GUI gui = TestUtils.createGUI(table);
+        table.setCurrentFolder(nio, nio.getFile(folder.getPath()));
+        // caches that the file does not exist
+        assertNull(nio.getFile(new File(folder, "created.txt").getPath()));
+        
+        FolderWatcher watcher = new FolderWatcher(gui);
+        try {
+            watcher.watchFileTable(table);
+            new File(folder, "created.txt").createNewFile();
+            FileOutputStream fos = new FileOutputStream(new File(folder, "file3.txt"));
+            try {
+                fos.write(new byte[12345]);
+            } finally {
+                fos.close();
+            }
+            
+            long timeout = System.currentTimeMillis() + 10000;
+            while(!containsFile(table, "created.txt") || findEntry(table, "file3.txt").size != 12345) {
+                assertTrue("timeout waiting for watch events", System.currentTimeMillis() < timeout);
+                Thread.sleep(10);
+                gui.invokeRunables();
+            }
+        } finally {
+            watcher.close();
+        }
+    }
+    
+    private static FileTable.Entry findEntry(FileTable table, String name) {
+        for(int row=0 ; row<table.getNumRows() ; row++) {
+            FileTable.Entry e = (FileTable.Entry)getEntry(table, row);
+            if(name.equals(e.name)) {
+                return e;
+            }
+        }
+        return null;
+    }
+    
+    private static boolean containsFile(FileTable table, String name) {
+        for(int row=0 ; row<table.getNumRows() ; row++) {
+            if(name.equals(((FileTable.Entry)getEntry(table, row)).name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private File createFolder(int numFiles, int numFolders) throws IOException {
+        File folder = tmpFolder.newFolder();
+        Random r = new Random(42);
+        for(int i=0 ; i<numFiles ; i++) {
+            FileOutputStream fos = new FileOutputStream(new File(folder, "file" + i + ".txt"));
+            try {
+                fos.write(new byte[r.nextInt(2000)]);
+            } finally {
+                fos.close();
+            }
+        }
+        for(int i=0 ; i<numFolders ; i++) {
+            new File(folder, "folder" + i).mkdir();
+        }
+        return folder;
+    }
+    
+    private static void assertSameEntries(FileTable expected, FileTable actual) {
+        assertEquals(expected.getNumRows(), actual.getNumRows());
+        for(int row=0 ; row<expected.getNumRows() ; row++) {
+            FileTable.Entry e = (FileTable.Entry)getEntry(expected, row);
+            FileTable.Entry a = (FileTable.Entry)getEntry(actual, row);
+            assertEquals(e.isFolder, a.isFolder);
+            if(e.isFolder) {
+                assertEquals(e.name, a.name);
+            } else {
+                assertEquals(e.size, a.size);
+            }
+        }
+    }
+
+    private static Object getEntry(FileTable table, int row) {
+        return ((FileTable.FileTableModel)table.getModel()).getEntry(row);
+    }
+    
+    private static FileTable.Entry[] createEntries(Random r, int count) {
+        File base = new File("base");
+        FileTable.Entry[] entries = new FileTable.Entry[count];
+        for(int i=0 ; i<count ; i++) {
+            entries[i] = new FileTable.Entry(JavaFileSystemModel.getInstance(),
+                    new File(base, "entry" + r.nextInt(10000)), true);
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Mann
+ */
+public class GUITest {
+
+    public GUITest() {
+    }
+
+    @Test
+    public void testInvokeLaterOrder() {
+        final GUI gui = TestUtils.createGUI(new Widget());
+        final ArrayList<Integer> result = new ArrayList<Integer>();
+        for(int i=0 ; i<100 ; i++) {
+            final int value = i;
+            gui.invokeLater(new Runnable() {
+                public void run() {
+                    result.add(value);
+                    if(value == 50) {
+                        // runs in the next call
+                        gui.invokeLater(new Runnable() {
+                            public void run() {
+                                result.add(1000);
+                            }
+                        });
+                    }
+                }
+            });
+        }
+        gui.invokeRunables();
+        assertEquals(100, result.size());
+        for(int i=0 ; i<100 ; i++) {
+            assertEquals(i, result.get(i).intValue());
+        }
+        gui.invokeRunables();
+        assertEquals(101, result.size());
+        assertEquals(1000, result.get(100).intValue());
+    }
+
+    @Test
+    public void testInvokeLaterCoalesced() {
+        GUI gui = TestUtils.createGUI(new Widget());
+        final ArrayList<String> result = new ArrayList<String>();
+        gui.invokeLater(new Add(result, "first"));
+        gui.invokeLater("key", new Add(result, "a1"));
+        gui.invokeLater("other", new Add(result, "b1"));
+        gui.invokeLater("key", new Add(result, "a2"));
+        gui.invokeLater(new Add(result, "last"));
+        gui.invokeLater("key", new Add(result, "a3"));
+        gui.invokeRunables();
+        assertEquals("[first, a3, b1, last]", result.toString());
+        
+        gui.invokeLater("key", new Add(result, "a4"));
+        gui.invokeRunables();
+        assertEquals("[first, a3, b1, last, a4]", result.toString());
+    }
+
+    @Test
+    public void testInvokeRunablesTimeBudget() {
+        final long[] time = new long[1];
+        GUI gui = TestUtils.createGUI(new Widget(), time);
+        gui.setInvokeRunablesTimeBudget(10);
+        
+        final int[] count = new int[1];
+        for(int i=0 ; i<10 ; i++) {
+            gui.invokeLater(new Runnable() {
+                public void run() {
+                    count[0]++;
+                    time[0] += 4;
+                }
+            });
+        }
+        gui.invokeRunables();
+        assertEquals(3, count[0]);
+        gui.invokeLater(new Runnable() {
+            public void run() {
+                count[0] += 100;
+            }
+        });
+        gui.invokeRunables();
+        assertEquals(6, count[0]);
+        gui.setInvokeRunablesTimeBudget(0);
+        gui.invokeRunables();
+        assertEquals(110, count[0]);
+    }
+
+    @Test
+    public void testAsyncInvoker() throws Exception {
+        GUI gui = TestUtils.createGUI(new Widget());
+        ExecutorService executor = AsyncInvoker.newVirtualThreadExecutor();
+        AsyncInvoker invoker = new AsyncInvoker(gui, executor);
+        final ArrayList<Object> result = new ArrayList<Object>();
+        GUI.AsyncCompletionListener<Integer> listener = new GUI.AsyncCompletionListener<Integer>() {
+            public void completed(Integer value) {
+                result.add(value);
+            }
+            public void failed(Exception ex) {
+                result.add(ex.getMessage());
+            }
+        };
+        
+        invoker.invokeAsync(new Callable<Integer>() {
+            public Integer call() {
+                return 42;
+            }
+        }, listener).get();
+        invoker.invokeAsync(new Callable<Integer>() {
+            public Integer call() throws Exception {
+                throw new Exception("failed");
+            }
+        }, listener);
+        for(int i=0 ; i<5 ; i++) {
+            final int value = i;
+            invoker.invokeAsync("key", new Callable<Integer>() {
+                public Integer call() {
+                    return value;
+                }
+            }, listener).get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, java.util.concurrent.TimeUnit.SECONDS);
+        
+        gui.invokeRunables();
+        assertTrue(result.toString(), result.contains(42));
+        assertTrue(result.toString(), result.contains("failed"));
+        // only the last keyed completion is reported
+        assertEquals(result.toString(), 3, result.size());
+        assertTrue(result.toString(), result.contains(4));
+    }
+
+    @Test
+    public void testContentionBenchmark() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("twl.benchmark"));
+        final int numThreads = 8;
+        final int numPosts = 200000;
+        for(int round=0 ; round<3 ; round++) {
+            final GUI gui = TestUtils.createGUI(new Widget());
+            final AtomicInteger executed = new AtomicInteger();
+            final Runnable r = new Runnable() {
+                public void run() {
+                    executed.incrementAndGet();
+                }
+            };
+            long timeGUI = runProducers(numThreads, numPosts, new Runnable() {
+                public void run() {
+                    for(int i=0 ; i<numPosts ; i++) {
+                        gui.invokeLater(r);
+                    }
+                }
+            }, new Runnable() {
+                public void run() {
+                    gui.invokeRunables();
+                }
+            });
+            gui.invokeRunables();
+            assertEquals(numThreads * numPosts, executed.get());
+            
+            final SynchronizedQueue syncQueue = new SynchronizedQueue();
+            long timeSync = runProducers(numThreads, numPosts, new Runnable() {
+                public void run() {
+                    for(int i=0 ; i<numPosts ; i++) {
+                        syncQueue.add(r);
+                    }
+                }
+            }, new Runnable() {
+                public void run() {
+                    syncQueue.runAll();
+                }
+            });
+            
+            System.out.println("invokeLater with " + numThreads + " threads x " + numPosts +
+                    " posts: lock free " + (timeGUI/1000000) + " ms, synchronized " + (timeSync/1000000) + " ms");
+        }
+    }
+    
+    private static long runProducers(int numThreads, int numPosts, Runnable producer, Runnable consumer) throws Exception {
+        final CountDownLatch done = new CountDownLatch(numThreads);
+        Thread[] threads = new Thread[numThreads];
+        for(int i=0 ; i<numThreads ; i++) {
+            final Runnable p = producer;
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    p.run();
+                    done.countDown();
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for(Thread t : threads) {
+            t.start();
+        }
+        // the GUI thread drains the queue while the producers are running
+        while(done.getCount() > 0) {
+            consumer.run();
+        }
+        consumer.run();
+        long time = System.nanoTime() - start;
+        for(Thread t : threads) {
+            t.join();
+        }
+        return time;
+    }
+    
+    /**
+     * The previous invokeLater implementation used as base line.
+     */
+    static class SynchronizedQueue {
+        private final Object lock = new Object();
+        private Runnable[] queue = new Runnable[16];
+        private Runnable[] running = new Runnable[16];
+        private int size;
+        
+        void add(Runnable r) {
+            synchronized(lock) {
+                if(size == queue.length) {
+                    Runnable[] tmp = new Runnable[size*2];
+                    System.arraycopy(queue, 0, tmp, 0, size);
+                    queue = tmp;
+                }
+                queue[size++] = r;
+            }
+        }
+        
+        void runAll() {
+            Runnable[] runnables;
+            int count;
+            synchronized(lock) {
+                count = size;
+                size = 0;
+                runnables = queue;
+                queue = running;
+                running = runnables;
+            }
+            for(int i=0 ; i<count ; i++) {
+                Runnable r = runnables[i];
+                runnables[i] = null;
+                r.run();
+            }
+        }
+    }
+    
+    static class Add implements Runnable {
+        final ArrayList<String> list;
+        final String value;
+
+        Add(ArrayList<String> list, String value) {
+            this.list = list;
+            this.value = value;
+        }
+
+        public void run() {
+            list.add(value);
+        }
+    }
+}
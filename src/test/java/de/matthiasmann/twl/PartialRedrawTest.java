@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl;
+
+import de.matthiasmann.twl.model.SimpleGraphLineModel;
+import de.matthiasmann.twl.model.SimpleGraphModel;
+import de.matthiasmann.twl.model.SimpleIntegerModel;
+import de.matthiasmann.twl.model.AbstractTableModel;
+import de.matthiasmann.twl.renderer.Image;
+import de.matthiasmann.twl.renderer.Renderer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that widgets report model and selection changes in partial redraw mode.
+ *
+ * @author Matthias Mann
+ */
+public class PartialRedrawTest {
+
+    private final long[] time = new long[1];
+
+    public PartialRedrawTest() {
+    }
+
+    @Test
+    public void testTableSelection() {
+        Table table = new Table(new AbstractTableModel() {
+            public int getNumRows() {
+                return 10;
+            }
+            public int getNumColumns() {
+                return 1;
+            }
+            public Object getCell(int row, int column) {
+                return "row" + row;
+            }
+            public String getColumnHeaderText(int column) {
+                return "A";
+            }
+        });
+        table.setDefaultSelectionManager();
+        GUI gui = createGUI(table);
+        
+        table.getSelectionManager().getSelectionModel().setSelection(2, 2);
+        assertTrue(gui.isRedrawNeeded());
+        clearDirty(gui);
+        
+        // changing the selection manager must move the listener
+        TableRowSelectionManager old = (TableRowSelectionManager)table.getSelectionManager();
+        table.setDefaultSelectionManager();
+        clearDirty(gui);
+        old.getSelectionModel().setSelection(3, 3);
+        assertFalse(gui.isRedrawNeeded());
+        table.getSelectionManager().getSelectionModel().setSelection(3, 3);
+        assertTrue(gui.isRedrawNeeded());
+    }
+
+    @Test
+    public void testProgressBar() {
+        ProgressBar progressBar = new ProgressBar();
+        GUI gui = createGUI(progressBar);
+        
+        progressBar.setValue(0.5f);
+        assertTrue(gui.isRedrawNeeded());
+        clearDirty(gui);
+        progressBar.setValue(0.5f);
+        assertFalse(gui.isRedrawNeeded());
+        progressBar.setIndeterminate();
+        assertTrue(gui.isRedrawNeeded());
+    }
+
+    @Test
+    public void testValueAdjuster() {
+        SimpleIntegerModel model = new SimpleIntegerModel(0, 100, 10);
+        ValueAdjusterInt adjuster = new ValueAdjusterInt(model);
+        GUI gui = createGUI(adjuster);
+        
+        model.setValue(20);
+        assertTrue(gui.isRedrawNeeded());
+    }
+
+    @Test
+    public void testGraph() {
+        SimpleGraphLineModel line = new SimpleGraphLineModel("default", 10, 0, 100);
+        SimpleGraphModel model = new SimpleGraphModel(line);
+        Graph graph = new Graph(model);
+        GUI gui = createGUI(graph);
+        
+        line.addPoint(50);
+        assertTrue(gui.isRedrawNeeded());
+        clearDirty(gui);
+        
+        graph.setModel(new SimpleGraphModel());
+        clearDirty(gui);
+        line.addPoint(60);
+        assertFalse(gui.isRedrawNeeded());
+    }
+    
+    @Test
+    public void testTranslucentRedraw() {
+        final int width = 200;
+        final int height = 100;
+        final float[] pixels = new float[width * height];
+        final ArrayList<Rect> clipStack = new ArrayList<Rect>();
+        
+        Renderer renderer = (Renderer)Proxy.newProxyInstance(
+                Renderer.class.getClassLoader(), new Class<?>[] { Renderer.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if(name.equals("startRendering")) {
+                            clipStack.clear();
+                            clipStack.add(new Rect(0, 0, width, height));
+                            return Boolean.TRUE;
+                        }
+                        if(name.equals("clipEnter")) {
+                            Rect rect = (args.length == 1) ? new Rect((Rect)args[0]) :
+                                new Rect((Integer)args[0], (Integer)args[1], (Integer)args[2], (Integer)args[3]);
+                            rect.intersect(clipStack.get(clipStack.size()-1));
+                            clipStack.add(rect);
+                            return null;
+                        }
+                        if(name.equals("clipLeave")) {
+                            clipStack.remove(clipStack.size()-1);
+                            return null;
+                        }
+                        if(name.equals("clipClear")) {
+                            fill(pixels, width, clipStack.get(clipStack.size()-1), 0, 0);
+                            return null;
+                        }
+                        return TestUtils.defaultValue(method.getReturnType());
+                    }
+                });
+        
+        // blends 50% white over the existing pixels
+        Image translucent = (Image)Proxy.newProxyInstance(
+                Image.class.getClassLoader(), new Class<?>[] { Image.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if(method.getName().equals("draw") && args.length == 5) {
+                            Rect rect = new Rect((Integer)args[1], (Integer)args[2], (Integer)args[3], (Integer)args[4]);
+                            rect.intersect(clipStack.get(clipStack.size()-1));
+                            fill(pixels, width, rect, 0.5f, 0.5f);
+                            return null;
+                        }
+                        return TestUtils.defaultValue(method.getReturnType());
+                    }
+                });
+        
+        Widget widget = new Widget();
+        widget.setBackground(translucent);
+        Widget root = new Widget();
+        root.add(widget);
+        GUI gui = new GUI(root, renderer, null);
+        gui.setSize(width, height);
+        widget.setPosition(10, 10);
+        widget.setSize(50, 50);
+        gui.setPartialRedraw(true);
+        gui.validateLayout();
+        gui.draw();
+        
+        float[] firstFrame = new float[pixels.length];
+        System.arraycopy(pixels, 0, firstFrame, 0, pixels.length);
+        assertEquals(0.5f, pixels[20 * width + 20], 0f);
+        assertEquals(0f, pixels[80 * width + 150], 0f);
+        
+        for(int i=0 ; i<2 ; i++) {
+            widget.repaint();
+            assertTrue(gui.isRedrawNeeded());
+            gui.draw();
+            assertTrue(Arrays.equals(firstFrame, pixels));
+        }
+    }
+    
+    static void fill(float[] pixels, int stride, Rect rect, float alpha, float value) {
+        for(int y=rect.getY() ; y<rect.getBottom() ; y++) {
+            for(int x=rect.getX() ; x<rect.getRight() ; x++) {
+                int idx = y*stride + x;
+                pixels[idx] = pixels[idx] * alpha + value;
+            }
+        }
+    }
+    
+    private GUI createGUI(Widget widget) {
+        Widget root = new Widget();
+        root.add(widget);
+        GUI gui = TestUtils.createGUI(root, time);
+        gui.setSize(400, 300);
+        widget.setPosition(10, 10);
+        widget.setSize(100, 100);
+        gui.setPartialRedraw(true);
+        clearDirty(gui);
+        return gui;
+    }
+    
+    private void clearDirty(GUI gui) {
+        // let pending animations like STATE_VALUE_CHANGED expire and
+        // process layout changes which are caused by the first paint
+        for(int i=0 ; i<2 ; i++) {
+            time[0] += 10000;
+            gui.updateTime();
+            gui.validateLayout();
+            gui.draw();
+        }
+        assertFalse(gui.isRedrawNeeded());
+    }
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl;
+
+import de.matthiasmann.twl.model.AbstractTableModel;
+import de.matthiasmann.twl.model.TableSelectionModel;
+import de.matthiasmann.twl.renderer.Renderer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Mann
+ */
+public class TableSearchWindowTest {
+
+    /**
+     * The upper bound in milliseconds for a single keystroke or frame in
+     * {@link #testBenchmark() }. A search slice should only take
+     * {@link TableSearchWindow#MAX_SEARCH_SLICE_TIME} but the test machine
+     * may be busy.
+     */
+    private static final int MAX_GUI_BLOCK_TIME = 40;
+
+    public TableSearchWindowTest() {
+    }
+
+    @Test
+    public void testSearchOnGUIThread() {
+        checkSearch(false, false);
+    }
+
+    @Test
+    public void testSearchWithColumnIndex() {
+        checkSearch(true, false);
+    }
+
+    @Test
+    public void testSearchWithExecutor() {
+        checkSearch(true, true);
+    }
+
+    private void checkSearch(boolean columnIndex, boolean async) {
+        Model model = createModel(new Random(1234), 20000);
+        Setup s = new Setup(model);
+        s.tsw.setColumnIndexEnabled(columnIndex);
+        if(async) {
+            s.useJobList();
+        }
+
+        String text = "";
+        for(char ch : "qxz".toCharArray()) {
+            text += ch;
+            s.type(ch);
+            s.finish();
+            int lead = s.getLeadRow();
+            assertTrue(model.rows.get(lead).toLowerCase().contains(text));
+            // the up/down keys cycle through all matches
+            ArrayList<Integer> expected = findMatches(model, text);
+            for(int i=0 ; i<expected.size() ; i++) {
+                s.key(Event.KEY_DOWN);
+                int idx = expected.indexOf(lead);
+                assertEquals(expected.get((idx + 1) % expected.size()).intValue(), s.getLeadRow());
+                lead = s.getLeadRow();
+            }
+            s.key(Event.KEY_UP);
+            int idx = expected.indexOf(lead);
+            assertEquals(expected.get((idx + expected.size() - 1) % expected.size()).intValue(), s.getLeadRow());
+        }
+
+        s.type('?');
+        s.finish();
+        assertEquals("'qxz?' not found", s.getErrorMessage());
+    }
+
+    @Test
+    public void testStartOnly() {
+        Model model = new Model();
+        model.add("beta", "alpha", "gamma", "alphabet", "delta");
+        Setup s = new Setup(model);
+        s.type('a');
+        s.finish();
+        assertEquals(1, s.getLeadRow());
+        s.type('l');
+        s.type('p');
+        s.type('h');
+        s.type('a');
+        s.type('b');
+        s.finish();
+        assertEquals(3, s.getLeadRow());
+        s.tsw.cancelSearch();
+
+        // no prefix match falls back to a substring match
+        s.table.getSelectionManager().getSelectionModel().setLeadIndex(0);
+        s.type('e');
+        s.type('t');
+        s.finish();
+        assertEquals(0, s.getLeadRow());
+    }
+
+    @Test
+    public void testStopAtFirstMatch() {
+        Model model = createModel(new Random(7), 10000);
+        model.rows.set(5, "xyzzy");
+        Setup s = new Setup(model);
+        model.numCellReads = 0;
+        s.type('x');
+        assertFalse(s.tsw.isSearchInProgress());
+        assertEquals(5, s.getLeadRow());
+        // without a column index the remaining rows are not checked
+        assertTrue(model.numCellReads < 10);
+        s.type('y');
+        assertFalse(s.tsw.isSearchInProgress());
+        assertEquals(5, s.getLeadRow());
+        assertTrue(model.numCellReads < 20);
+    }
+
+    @Test
+    public void testCancel() {
+        Model model = createModel(new Random(42), 1000);
+        Setup s = new Setup(model);
+        s.tsw.setColumnIndexEnabled(true);
+        ArrayList<Runnable> jobs = s.useJobList();
+        s.table.getSelectionManager().getSelectionModel().setLeadIndex(500);
+        s.type('#');
+        s.type('b');
+        assertEquals(2, jobs.size());
+        assertTrue(s.tsw.isSearchInProgress());
+        // the superseded job does not deliver any results
+        jobs.get(0).run();
+        s.gui.invokeRunables();
+        assertEquals(500, s.getLeadRow());
+        assertTrue(s.tsw.isSearchInProgress());
+        jobs.get(1).run();
+        s.gui.invokeRunables();
+        assertFalse(s.tsw.isSearchInProgress());
+        assertEquals(findFirstMatch(model, "#b", 500), s.getLeadRow());
+
+        s.type('c');
+        s.tsw.cancelSearch();
+        jobs.get(2).run();
+        s.gui.invokeRunables();
+        assertFalse(s.tsw.isSearchInProgress());
+        assertEquals(findFirstMatch(model, "#b", 500), s.getLeadRow());
+    }
+
+    @Test
+    public void testColumnIndexUpdates() {
+        Model model = new Model();
+        model.add("one", "two", "three");
+        Setup s = new Setup(model);
+        s.tsw.setColumnIndexEnabled(true);
+        s.type('t');
+        s.finish();
+        assertEquals(1, s.getLeadRow());
+        s.tsw.cancelSearch();
+
+        model.insert(0, "zero");
+        model.insert(4, "four");
+        model.set(2, "eleven");
+        model.remove(1);
+        // zero, eleven, three, four
+        s.type('t');
+        s.finish();
+        assertEquals(2, s.getLeadRow());
+        s.type('w');
+        s.finish();
+        assertEquals("'tw' not found", s.getErrorMessage());
+        s.tsw.cancelSearch();
+        s.table.getSelectionManager().getSelectionModel().setLeadIndex(0);
+        s.type('f');
+        s.finish();
+        assertEquals(3, s.getLeadRow());
+    }
+
+    @Test
+    public void testBenchmark() {
+        Assume.assumeTrue(Boolean.getBoolean("twl.benchmark"));
+        final int numRows = 1000000;
+        Model model = createModel(new Random(4711), numRows);
+        String target = model.rows.get(numRows - 1000);
+        // a prefix search and a substring search which first has to check all rows for a prefix
+        String[] queries = { target, target.substring(5, 11) };
+        for(int mode=0 ; mode<3 ; mode++) {
+            for(String query : queries) {
+                benchmark(model, mode, query);
+            }
+        }
+    }
+
+    private void benchmark(Model model, int mode, String query) {
+        // the search slices are measured with the renderer time
+        Renderer renderer = (Renderer)Proxy.newProxyInstance(
+                Renderer.class.getClassLoader(), new Class<?>[] { Renderer.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if(method.getName().equals("getTimeMillis")) {
+                            return System.nanoTime() / 1000000;
+                        }
+                        return TestUtils.defaultValue(method.getReturnType());
+                    }
+                });
+        Setup s = new Setup(model, renderer);
+        s.tsw.setColumnIndexEnabled(mode > 0);
+        if(mode == 2) {
+            s.tsw.setSearchExecutor(new TableSearchWindow.SearchExecutor() {
+                public void execute(Runnable job) {
+                    Thread t = new Thread(job);
+                    t.setDaemon(true);
+                    t.start();
+                }
+            });
+        }
+        long indexTime = 0;
+        if(mode > 0) {
+            // the first search builds the column index
+            long start = System.nanoTime();
+            s.type(query.charAt(0));
+            s.finish();
+            s.tsw.cancelSearch();
+            indexTime = System.nanoTime() - start;
+        }
+        long maxBlocked = 0;
+        long sumLatency = 0;
+        long maxLatency = 0;
+        for(int i=0 ; i<query.length() ; i++) {
+            String text = query.substring(0, i+1).toLowerCase();
+            long start = System.nanoTime();
+            s.type(query.charAt(i));
+            maxBlocked = Math.max(maxBlocked, System.nanoTime() - start);
+            while(!model.rows.get(s.getLeadRow()).toLowerCase().contains(text)) {
+                long frameStart = System.nanoTime();
+                s.gui.invokeRunables();
+                maxBlocked = Math.max(maxBlocked, System.nanoTime() - frameStart);
+                Thread.yield();
+            }
+            long latency = System.nanoTime() - start;
+            sumLatency += latency;
+            maxLatency = Math.max(maxLatency, latency);
+        }
+        assertEquals(model.rows.size() - 1000, s.getLeadRow());
+        assertTrue("GUI blocked for " + (maxBlocked / 1000) + " us", maxBlocked < MAX_GUI_BLOCK_TIME * 1000000L);
+        System.out.println("Search '" + query + "' in " + model.rows.size() + " rows, " +
+                (mode == 0 ? "model" : (mode == 1) ? "index" : "index+thread") +
+                ": keystroke to highlight avg " + (sumLatency / query.length() / 1000) +
+                " us, max " + (maxLatency / 1000) + " us, max GUI block " + (maxBlocked / 1000) + " us" +
+                ((mode > 0) ? ", index build " + (indexTime / 1000000) + " ms" : ""));
+        s.tsw.cancelSearch();
+    }
+
+    private static int findFirstMatch(Model model, String text, int startRow) {
+        int numRows = model.rows.size();
+        for(int i=0 ; i<numRows ; i++) {
+            int row = (startRow + i) % numRows;
+            if(model.rows.get(row).regionMatches(true, 0, text, 0, text.length())) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    private static ArrayList<Integer> findMatches(Model model, String text) {
+        ArrayList<Integer> result = new ArrayList<Integer>();
+        for(int row=0 ; row<model.rows.size() ; row++) {
+            if(model.rows.get(row).toLowerCase().contains(text)) {
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    private static Model createModel(Random r, int numRows) {
+        Model model = new Model();
+        char[] buf = new char[12];
+        for(int i=0 ; i<numRows ; i++) {
+            for(int j=0 ; j<buf.length ; j++) {
+                buf[j] = (char)('a' + r.nextInt(26));
+            }
+            buf[1] = Character.toUpperCase(buf[1]);
+            model.rows.add("#" + new String(buf));
+        }
+        return model;
+    }
+
+    static class Setup {
+        final Table table;
+        final TableSearchWindow tsw;
+        final GUI gui;
+        final ArrayList<Runnable> jobs = new ArrayList<Runnable>();
+
+        Setup(Model model) {
+            this(model, TestUtils.createRenderer());
+        }
+
+        Setup(Model model, Renderer renderer) {
+            table = new Table(model);
+            table.setDefaultSelectionManager();
+            TableSelectionModel selectionModel = table.getSelectionManager().getSelectionModel();
+            tsw = new TableSearchWindow(table, selectionModel);
+            tsw.setModel(model, 0);
+            gui = new GUI(table, renderer, null);
+            selectionModel.setLeadIndex(0);
+        }
+
+        int getLeadRow() {
+            return table.getSelectionManager().getLeadRow();
+        }
+
+        void type(char ch) {
+            Event evt = new Event();
+            evt.type = Event.Type.KEY_PRESSED;
+            evt.keyCode = Event.KEY_NONE;
+            evt.keyChar = ch;
+            assertTrue(tsw.handleKeyEvent(evt));
+        }
+
+        void key(int keyCode) {
+            Event evt = new Event();
+            evt.type = Event.Type.KEY_PRESSED;
+            evt.keyCode = keyCode;
+            evt.keyChar = Event.CHAR_NONE;
+            assertTrue(tsw.handleKeyEvent(evt));
+        }
+
+        Object getErrorMessage() {
+            Widget layout = tsw.getChild(0);
+            for(int i=0 ; i<layout.getNumChildren() ; i++) {
+                if(layout.getChild(i) instanceof EditField) {
+                    return layout.getChild(i).getTooltipContent();
+                }
+            }
+            return null;
+        }
+
+        ArrayList<Runnable> useJobList() {
+            tsw.setSearchExecutor(new TableSearchWindow.SearchExecutor() {
+                public void execute(Runnable job) {
+                    jobs.add(job);
+                }
+            });
+            return jobs;
+        }
+
+        void finish() {
+            while(tsw.isSearchInProgress()) {
+                while(!jobs.isEmpty()) {
+                    jobs.remove(0).run();
+                }
+                gui.invokeRunables();
+            }
+        }
+    }
+
+    static class Model extends AbstractTableModel {
+        final ArrayList<String> rows = new ArrayList<String>();
+        int numCellReads;
+
+        public int getNumColumns() {
+            return 1;
+        }
+        public String getColumnHeaderText(int column) {
+            return "Name";
+        }
+        public int getNumRows() {
+            return rows.size();
+        }
+        public Object getCell(int row, int column) {
+            numCellReads++;
+            return rows.get(row);
+        }
+        void add(String ... names) {
+            for(String name : names) {
+                rows.add(name);
+            }
+            fireAllChanged();
+        }
+        void insert(int idx, String name) {
+            rows.add(idx, name);
+            fireRowsInserted(idx, 1);
+        }
+        void remove(int idx) {
+            rows.remove(idx);
+            fireRowsDeleted(idx, 1);
+        }
+        void set(int idx, String name) {
+            rows.set(idx, name);
+            fireCellChanged(idx, 0);
+        }
+    }
+}
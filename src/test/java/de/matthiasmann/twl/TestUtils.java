@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl;
+
+import de.matthiasmann.twl.renderer.Renderer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Shared fixtures for the widget tests.
+ *
+ * @author Matthias Mann
+ */
+final class TestUtils {
+
+    private TestUtils() {
+    }
+
+    /**
+     * Returns the default value which a proxy must return for the given type.
+     * @param type the return type of the proxied method
+     * @return FALSE, 0, 0L or null
+     */
+    static Object defaultValue(Class<?> type) {
+        if(type == boolean.class) {
+            return Boolean.FALSE;
+        }
+        if(type == int.class) {
+            return 0;
+        }
+        if(type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    /**
+     * Creates a renderer proxy which does nothing and returns default values.
+     * @return the renderer proxy
+     */
+    static Renderer createRenderer() {
+        return createRenderer(null);
+    }
+
+    /**
+     * Creates a renderer proxy which returns {@code time[0]} from getTimeMillis.
+     * @param time the time source or null to always return 0
+     * @return the renderer proxy
+     */
+    static Renderer createRenderer(final long[] time) {
+        return (Renderer)Proxy.newProxyInstance(
+                Renderer.class.getClassLoader(), new Class<?>[] { Renderer.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if(time != null && method.getName().equals("getTimeMillis")) {
+                            return time[0];
+                        }
+                        return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    /**
+     * Creates a GUI with a dummy renderer for the given root widget.
+     * @param widget the root widget
+     * @return the GUI
+     */
+    static GUI createGUI(Widget widget) {
+        return new GUI(widget, createRenderer(), null);
+    }
+
+    /**
+     * Creates a GUI with a renderer whose time is controlled by {@code time[0]}.
+     * @param widget the root widget
+     * @param time the time source
+     * @return the GUI
+     */
+    static GUI createGUI(Widget widget, long[] time) {
+        return new GUI(widget, createRenderer(time), null);
+    }
+}
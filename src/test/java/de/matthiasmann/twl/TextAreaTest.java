@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl;
+
+import de.matthiasmann.twl.renderer.AnimationState;
+import de.matthiasmann.twl.renderer.Image;
+import de.matthiasmann.twl.textarea.AppendableTextAreaModel;
+import de.matthiasmann.twl.textarea.Style;
+import de.matthiasmann.twl.textarea.StyleAttribute;
+import de.matthiasmann.twl.textarea.TextAreaModel;
+import de.matthiasmann.twl.textarea.Value;
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Mann
+ */
+public class TextAreaTest {
+
+    private static final int WIDTH = 200;
+    
+    public TextAreaTest() {
+    }
+
+    @Test
+    public void testAppendMatchesFullLayout() {
+        AppendableTextAreaModel model = new AppendableTextAreaModel();
+        TextArea ta = createTextArea(model);
+        Random r = new Random(1234);
+        
+        for(int i=0 ; i<300 ; i++) {
+            model.add(createParagraph(r));
+            if(i % 7 == 0) {
+                model.add(createFloater(r));
+            }
+            ta.validateLayout();
+        }
+        
+        assertSameLayout(ta, model);
+    }
+
+    @Test
+    public void testReplaceAndRemove() {
+        AppendableTextAreaModel model = new AppendableTextAreaModel();
+        TextArea ta = createTextArea(model);
+        Random r = new Random(4321);
+        
+        for(int i=0 ; i<200 ; i++) {
+            model.add(createParagraph(r));
+        }
+        ta.validateLayout();
+        
+        model.set(150, createParagraph(r));
+        ta.validateLayout();
+        assertSameLayout(ta, model);
+        
+        model.set(10, createFloater(r));
+        ta.validateLayout();
+        assertSameLayout(ta, model);
+        
+        model.remove(100, 20);
+        ta.validateLayout();
+        assertSameLayout(ta, model);
+        
+        model.remove(0, 50);
+        model.add(createParagraph(r));
+        ta.validateLayout();
+        assertSameLayout(ta, model);
+        
+        model.clear();
+        ta.validateLayout();
+        assertEquals(0, ta.getPreferredInnerHeight());
+    }
+
+    @Test
+    public void testDomModified() {
+        AppendableTextAreaModel model = new AppendableTextAreaModel();
+        TextArea ta = createTextArea(model);
+        Random r = new Random(42);
+        
+        for(int i=0 ; i<100 ; i++) {
+            model.add(createParagraph(r));
+        }
+        ta.validateLayout();
+        
+        TextAreaModel.ParagraphElement pe = (TextAreaModel.ParagraphElement)model.getElement(20);
+        pe.add(new TextAreaModel.ImageElement(new Style(), "big"));
+        model.domModified();
+        ta.validateLayout();
+        assertSameLayout(ta, model);
+    }
+
+    @Test
+    public void testWidthChange() {
+        AppendableTextAreaModel model = new AppendableTextAreaModel();
+        TextArea ta = createTextArea(model);
+        Random r = new Random(7);
+        
+        for(int i=0 ; i<100 ; i++) {
+            model.add(createParagraph(r));
+        }
+        ta.validateLayout();
+        ta.setSize(WIDTH / 2, 100);
+        model.add(createParagraph(r));
+        ta.validateLayout();
+        
+        TextArea ref = createTextArea(copy(model));
+        ref.setSize(WIDTH / 2, 100);
+        assertEquals(ref.getPreferredInnerHeight(), ta.getPreferredInnerHeight());
+    }
+
+    /**
+     * Appends 100k paragraphs one at a time and lays out after each one.
+     * Without incremental layout this would take quadratic time.
+     */
+    @Test(timeout = 60000)
+    public void testAppend100kParagraphs() {
+        Assume.assumeTrue(Boolean.getBoolean("twl.benchmark"));
+        AppendableTextAreaModel model = new AppendableTextAreaModel();
+        TextArea ta = createTextArea(model);
+        Style style = new Style();
+        
+        long startTime = System.nanoTime();
+        for(int i=0 ; i<100000 ; i++) {
+            TextAreaModel.ParagraphElement pe = new TextAreaModel.ParagraphElement(style);
+            pe.add(new TextAreaModel.ImageElement(style, "small"));
+            model.add(pe);
+            ta.validateLayout();
+        }
+        long time = System.nanoTime() - startTime;
+        System.out.println("Appending 100000 paragraphs took " + (time / 1000000) + " ms");
+        
+        assertEquals(100000 * 10, ta.getPreferredInnerHeight());
+    }
+    
+    private static TextArea createTextArea(TextAreaModel model) {
+        TextArea ta = new TextArea(model);
+        ta.registerImage("small", new TestImage(30, 10));
+        ta.registerImage("wide", new TestImage(120, 14));
+        ta.registerImage("big", new TestImage(50, 40));
+        ta.setSize(WIDTH, 100);
+        return ta;
+    }
+
+    private static TextAreaModel.Element createParagraph(Random r) {
+        Style style = new Style().with(StyleAttribute.MARGIN_BOTTOM, new Value(r.nextInt(5), Value.Unit.PX));
+        TextAreaModel.ParagraphElement pe = new TextAreaModel.ParagraphElement(style);
+        Style imgStyle = new Style();
+        for(int i=0,n=1+r.nextInt(6) ; i<n ; i++) {
+            pe.add(new TextAreaModel.ImageElement(imgStyle, r.nextBoolean() ? "small" : "wide"));
+        }
+        return pe;
+    }
+
+    private static TextAreaModel.Element createFloater(Random r) {
+        Style style = new Style().with(StyleAttribute.FLOAT_POSITION,
+                r.nextBoolean() ? TextAreaModel.FloatPosition.LEFT : TextAreaModel.FloatPosition.RIGHT);
+        return new TextAreaModel.ImageElement(style, "big");
+    }
+    
+    private static AppendableTextAreaModel copy(AppendableTextAreaModel model) {
+        AppendableTextAreaModel result = new AppendableTextAreaModel();
+        ArrayList<TextAreaModel.Element> elements = new ArrayList<TextAreaModel.Element>();
+        for(TextAreaModel.Element e : model) {
+            elements.add(e);
+        }
+        result.addAll(elements);
+        return result;
+    }
+    
+    private static void assertSameLayout(TextArea ta, AppendableTextAreaModel model) {
+        TextArea ref = createTextArea(copy(model));
+        assertEquals(ref.getPreferredInnerHeight(), ta.getPreferredInnerHeight());
+        for(TextAreaModel.Element e : model) {
+            assertSameRect(ref.getElementRect(e), ta.getElementRect(e));
+            if(e instanceof TextAreaModel.ContainerElement) {
+                for(TextAreaModel.Element child : (TextAreaModel.ContainerElement)e) {
+                    assertSameRect(ref.getElementRect(child), ta.getElementRect(child));
+                }
+            }
+        }
+    }
+    
+    private static void assertSameRect(Rect expected, Rect actual) {
+        assertEquals(String.valueOf(expected), String.valueOf(actual));
+    }
+    
+    static class TestImage implements Image {
+        final int width;
+        final int height;
+
+        TestImage(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public void draw(AnimationState as, int x, int y) {
+        }
+
+        public void draw(AnimationState as, int x, int y, int width, int height) {
+        }
+
+        public Image createTintedVersion(Color color) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl;
+
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Mann
+ */
+public class TimerTest {
+
+    private final long[] time = new long[1];
+    private final GUI gui;
+
+    public TimerTest() {
+        gui = TestUtils.createGUI(new Widget(), time);
+    }
+    
+    private void frame(int delta) {
+        time[0] += delta;
+        gui.updateTime();
+        gui.updateTimers();
+    }
+
+    @Test
+    public void testSingleShot() {
+        Counter c = new Counter();
+        Timer t = createTimer(c, 50, false);
+        t.start();
+        assertTrue(t.isRunning());
+        frame(20);
+        frame(20);
+        assertEquals(0, c.count);
+        frame(20);
+        assertEquals(1, c.count);
+        assertFalse(t.isRunning());
+        assertEquals(0, gui.getNumActiveTimers());
+        frame(100);
+        assertEquals(1, c.count);
+    }
+
+    @Test
+    public void testContinuous() {
+        Counter c = new Counter();
+        Timer t = createTimer(c, 30, true);
+        t.start();
+        frame(20);  // 20
+        assertEquals(0, c.count);
+        frame(20);  // 40 -> fires, next at 60
+        assertEquals(1, c.count);
+        frame(20);  // 60 -> fires, next at 90
+        assertEquals(2, c.count);
+        frame(100); // 160 -> fires only once per frame, next at 161
+        assertEquals(3, c.count);
+        frame(1);
+        assertEquals(4, c.count);
+        assertTrue(t.isRunning());
+        t.stop();
+        assertFalse(t.isRunning());
+        frame(100);
+        assertEquals(4, c.count);
+    }
+
+    @Test
+    public void testStopInCallback() {
+        final Timer[] t = new Timer[1];
+        final int[] count = new int[1];
+        t[0] = createTimer(new Runnable() {
+            public void run() {
+                assertTrue(t[0].isRunning());
+                if(++count[0] == 3) {
+                    t[0].stop();
+                }
+            }
+        }, 10, true);
+        t[0].start();
+        for(int i=0 ; i<10 ; i++) {
+            frame(10);
+        }
+        assertEquals(3, count[0]);
+        assertFalse(t[0].isRunning());
+        assertEquals(0, gui.getNumActiveTimers());
+    }
+
+    @Test
+    public void testStartInCallback() {
+        final Timer[] t = new Timer[1];
+        final int[] count = new int[1];
+        t[0] = createTimer(new Runnable() {
+            public void run() {
+                assertFalse(t[0].isRunning());
+                if(++count[0] < 3) {
+                    t[0].start();
+                }
+            }
+        }, 10, false);
+        t[0].start();
+        for(int i=0 ; i<10 ; i++) {
+            frame(10);
+        }
+        assertEquals(3, count[0]);
+        assertFalse(t[0].isRunning());
+        
+        // start followed by stop inside the callback stops the timer
+        count[0] = 0;
+        final Timer t2 = gui.createTimer();
+        t2.setDelay(10);
+        t2.setCallback(new Runnable() {
+            public void run() {
+                count[0]++;
+                t2.start();
+                t2.stop();
+            }
+        });
+        t2.start();
+        frame(10);
+        frame(10);
+        assertEquals(1, count[0]);
+        assertFalse(t2.isRunning());
+    }
+
+    @Test
+    public void testStartOtherTimerInCallback() {
+        final Counter c = new Counter();
+        final Timer other = createTimer(c, 5, false);
+        Timer t = createTimer(new Runnable() {
+            public void run() {
+                other.start();
+            }
+        }, 10, false);
+        t.start();
+        frame(20);
+        assertEquals(0, c.count);
+        assertTrue(other.isRunning());
+        frame(5);
+        assertEquals(1, c.count);
+    }
+
+    @Test
+    public void testFiringOrder() {
+        final ArrayList<Integer> order = new ArrayList<Integer>();
+        int[] delays = { 40, 10, 30, 10, 20 };
+        for(int i=0 ; i<delays.length ; i++) {
+            final int id = i;
+            createTimer(new Runnable() {
+                public void run() {
+                    order.add(id);
+                }
+            }, delays[i], false).start();
+        }
+        frame(50);
+        assertEquals("[1, 3, 4, 2, 0]", order.toString());
+    }
+
+    /**
+     * Compares the timers against the per frame count down used before
+     * timers were kept in a queue.
+     */
+    @Test
+    public void testRandomAgainstCountDown() {
+        Random r = new Random(4711);
+        final int numTimers = 200;
+        Timer[] timers = new Timer[numTimers];
+        Counter[] counters = new Counter[numTimers];
+        int[] expectedCounter = new int[numTimers];
+        int[] expectedCount = new int[numTimers];
+        
+        for(int i=0 ; i<numTimers ; i++) {
+            counters[i] = new Counter();
+            timers[i] = createTimer(counters[i], 1 + r.nextInt(200), r.nextBoolean());
+        }
+        
+        for(int frame=0 ; frame<2000 ; frame++) {
+            for(int i=0 ; i<numTimers ; i++) {
+                Timer t = timers[i];
+                switch(r.nextInt(50)) {
+                    case 0:
+                        t.start();
+                        if(expectedCounter[i] == 0) {
+                            expectedCounter[i] = t.delay;
+                        }
+                        break;
+                    case 1:
+                        t.stop();
+                        expectedCounter[i] = 0;
+                        break;
+                    case 2:
+                        t.setDelay(1 + r.nextInt(200));
+                        break;
+                }
+            }
+            
+            int delta = r.nextInt(40);
+            for(int i=0 ; i<numTimers ; i++) {
+                if(expectedCounter[i] > 0) {
+                    int newCounter = expectedCounter[i] - delta;
+                    if(newCounter <= 0) {
+                        expectedCount[i]++;
+                        expectedCounter[i] = timers[i].isContinuous()
+                                ? Math.max(1, newCounter + timers[i].delay) : 0;
+                    } else {
+                        expectedCounter[i] = newCounter;
+                    }
+                }
+            }
+            
+            frame(delta);
+            
+            for(int i=0 ; i<numTimers ; i++) {
+                assertEquals(expectedCount[i], counters[i].count);
+                assertEquals(expectedCounter[i] > 0, timers[i].isRunning());
+            }
+        }
+    }
+
+    @Test
+    public void testManyIdleTimersBenchmark() {
+        Assume.assumeTrue(Boolean.getBoolean("twl.benchmark"));
+        final int numTimers = 10000;
+        final int numFrames = 2000;
+        Counter c = new Counter();
+        for(int i=0 ; i<numTimers ; i++) {
+            // long running timers like tooltip or key repeat delays
+            createTimer(c, 1000000 + i, true).start();
+        }
+        Counter fast = new Counter();
+        createTimer(fast, 16, true).start();
+        
+        for(int round=0 ; round<3 ; round++) {
+            long start = System.nanoTime();
+            for(int i=0 ; i<numFrames ; i++) {
+                frame(16);
+            }
+            long timeQueue = System.nanoTime() - start;
+
+            ArrayList<CountDownTimer> countDown = new ArrayList<CountDownTimer>();
+            for(int i=0 ; i<numTimers ; i++) {
+                countDown.add(new CountDownTimer(1000000 + i));
+            }
+            countDown.add(new CountDownTimer(16));
+            start = System.nanoTime();
+            for(int i=0 ; i<numFrames ; i++) {
+                for(int j=0 ; j<countDown.size() ; j++) {
+                    countDown.get(j).tick(16);
+                }
+            }
+            long timeCountDown = System.nanoTime() - start;
+            
+            System.out.println(numFrames + " frames with " + numTimers + " idle timers: queue " +
+                    (timeQueue/1000) + " us, count down " + (timeCountDown/1000) + " us");
+        }
+        assertEquals(0, c.count);
+        assertEquals(3 * numFrames, fast.count);
+    }
+    
+    private Timer createTimer(Runnable cb, int delay, boolean continuous) {
+        Timer t = gui.createTimer();
+        t.setDelay(delay);
+        t.setContinuous(continuous);
+        t.setCallback(cb);
+        return t;
+    }
+    
+    static class Counter implements Runnable {
+        int count;
+        public void run() {
+            count++;
+        }
+    }
+    
+    static class CountDownTimer {
+        final int delay;
+        int counter;
+        int fired;
+
+        CountDownTimer(int delay) {
+            this.delay = delay;
+            this.counter = delay;
+        }
+        
+        void tick(int delta) {
+            int newCounter = counter - delta;
+            if(newCounter <= 0) {
+                fired++;
+                counter = Math.max(1, newCounter + delay);
+            } else {
+                counter = newCounter;
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl;
+
+import de.matthiasmann.twl.model.AbstractTreeTableModel;
+import de.matthiasmann.twl.model.AbstractTreeTableNode;
+import de.matthiasmann.twl.model.TreeTableNode;
+import de.matthiasmann.twl.model.TableSelectionModel;
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Mann
+ */
+public class TreeTableTest {
+
+    public TreeTableTest() {
+    }
+
+    @Test
+    public void testExpandAll() {
+        Model model = createModel(4, 3, 5);
+        TreeTable tt = new TreeTable(model);
+        assertEquals(model.getNumChildren(), tt.getNumRows());
+
+        tt.expandAll();
+        checkRows(tt, model);
+        assertEquals(countNodes(model), tt.getNumRows());
+
+        tt.collapseAll();
+        checkRows(tt, model);
+        assertEquals(model.getNumChildren(), tt.getNumRows());
+    }
+
+    @Test
+    public void testCollapseAllKeepsSelection() {
+        Model model = createModel(3, 2, 4);
+        TreeTable tt = new TreeTable(model);
+        tt.setDefaultSelectionManager();
+        tt.setRowExpanded(0, true);
+        TableSelectionModel sm = tt.getSelectionManager().getSelectionModel();
+        int row = tt.getRowFromNode(model.getChild(1));
+        sm.setSelection(row, row);
+        sm.setLeadIndex(row);
+
+        tt.collapseAll();
+        assertEquals(model.getNumChildren(), tt.getNumRows());
+        assertEquals(1, sm.getLeadIndex());
+        assertTrue(sm.isSelected(1));
+    }
+
+    @Test
+    public void testSetNodesExpanded() {
+        Model model = createModel(3, 4, 20);
+        Random r = new Random(4711);
+        ArrayList<TreeTableNode> all = new ArrayList<TreeTableNode>();
+        collect(model, all);
+
+        TreeTable bulk = new TreeTable(model);
+        TreeTable single = new TreeTable(model);
+        for(int pass=0 ; pass<20 ; pass++) {
+            boolean expanded = r.nextInt(3) > 0;
+            ArrayList<TreeTableNode> nodes = new ArrayList<TreeTableNode>();
+            for(int i=0 ; i<40 ; i++) {
+                nodes.add(all.get(r.nextInt(all.size())));
+            }
+            bulk.setNodesExpanded(nodes, expanded);
+            for(TreeTableNode node : nodes) {
+                TreeTable.NodeState ns = single.getOrCreateNodeStateWithParents(node);
+                ns.setValue(expanded);
+            }
+            checkRows(bulk, model);
+            checkRows(single, model);
+            assertEquals(single.getNumRows(), bulk.getNumRows());
+        }
+    }
+
+    @Test
+    public void testHiddenNodeExpand() {
+        Model model = createModel(3, 2, 4);
+        TreeTable tt = new TreeTable(model);
+        TreeTableNode top = model.getChild(1);
+        TreeTableNode inner = top.getChild(0);
+
+        final int[] events = new int[2];
+        tt.addExpandListener(new TreeTable.ExpandListener() {
+            public void nodeExpanded(int row, TreeTableNode node) {
+                events[0]++;
+                events[1] = row;
+            }
+            public void nodeCollapsed(int row, TreeTableNode node) {
+            }
+        });
+
+        tt.setNodesExpanded(java.util.Collections.singleton(inner), true);
+        assertEquals(2, tt.getNumRows());
+        assertEquals(-1, tt.getRowFromNode(inner));
+        assertEquals(1, events[0]);
+        assertEquals(-1, events[1]);
+
+        tt.setRowExpanded(1, true);
+        checkRows(tt, model);
+        assertEquals(2 + 4 + 2, tt.getNumRows());
+        assertEquals(2, tt.getRowFromNode(inner));
+        assertTrue(tt.isRowExpanded(2));
+    }
+
+    @Test
+    public void testChildIndexCache() {
+        Model model = createModel(2, 2, 100);
+        TreeTable tt = new TreeTable(model);
+        tt.expandAll();
+        checkRows(tt, model);
+
+        // structural changes must invalidate the cached child indices
+        Node parent = (Node)model.getChild(0);
+        Node child = new Node(parent, "new");
+        parent.insertChild(child, 10);
+        Node child2 = new Node(model, "new2");
+        model.insertChild(child2, 0);
+        parent.removeChild(50);
+        checkRows(tt, model);
+        assertEquals(1 + 1 + 10, tt.getRowFromNode(child));
+    }
+
+    @Test
+    public void testBenchmark() {
+        Assume.assumeTrue(Boolean.getBoolean("twl.benchmark"));
+        Model model = createModel(3, 60, 80);
+        int numNodes = countNodes(model);
+        for(int run=0 ; run<3 ; run++) {
+            TreeTable single = new TreeTable(model);
+            long start = System.nanoTime();
+            for(int row=0 ; row<single.getNumRows() ; row++) {
+                if(!single.getNodeFromRow(row).isLeaf()) {
+                    single.setRowExpanded(row, true);
+                }
+            }
+            long timeSingle = System.nanoTime() - start;
+            assertEquals(numNodes, single.getNumRows());
+
+            TreeTable bulk = new TreeTable(model);
+            start = System.nanoTime();
+            bulk.expandAll();
+            long timeBulk = System.nanoTime() - start;
+            assertEquals(numNodes, bulk.getNumRows());
+
+            System.out.println("Expand " + numNodes + " nodes: setRowExpanded " +
+                    (timeSingle / 1000000) + " ms, expandAll " + (timeBulk / 1000000) + " ms");
+        }
+    }
+
+    private static void checkRows(TreeTable tt, TreeTableNode root) {
+        ArrayList<TreeTableNode> visible = new ArrayList<TreeTableNode>();
+        collectVisible(tt, root, visible);
+        assertEquals(visible.size(), tt.getNumRows());
+        for(int row=0 ; row<visible.size() ; row++) {
+            assertSame(visible.get(row), tt.getNodeFromRow(row));
+            assertEquals(row, tt.getRowFromNode(visible.get(row)));
+        }
+    }
+
+    private static void collectVisible(TreeTable tt, TreeTableNode node, ArrayList<TreeTableNode> visible) {
+        for(int i=0,n=node.getNumChildren() ; i<n ; i++) {
+            TreeTableNode child = node.getChild(i);
+            int row = visible.size();
+            visible.add(child);
+            if(!child.isLeaf() && tt.getRowFromNode(child) == row && tt.isRowExpanded(row)) {
+                collectVisible(tt, child, visible);
+            }
+        }
+    }
+
+    private static void collect(TreeTableNode node, ArrayList<TreeTableNode> all) {
+        for(int i=0,n=node.getNumChildren() ; i<n ; i++) {
+            TreeTableNode child = node.getChild(i);
+            all.add(child);
+            collect(child, all);
+        }
+    }
+
+    private static int countNodes(TreeTableNode node) {
+        int count = node.getNumChildren();
+        for(int i=0,n=node.getNumChildren() ; i<n ; i++) {
+            count += countNodes(node.getChild(i));
+        }
+        return count;
+    }
+
+    private static Model createModel(int depth, int numTop, int numChildren) {
+        Model model = new Model();
+        for(int i=0 ; i<numTop ; i++) {
+            Node node = new Node(model, "n" + i);
+            model.insertChild(node, i);
+            createChildren(node, depth - 1, numChildren);
+        }
+        return model;
+    }
+
+    private static void createChildren(Node parent, int depth, int numChildren) {
+        if(depth == 0) {
+            parent.setLeaf(true);
+            return;
+        }
+        for(int i=0 ; i<numChildren ; i++) {
+            Node node = new Node(parent, parent.name + "." + i);
+            parent.insertChild(node, i);
+            createChildren(node, depth - 1, Math.max(1, numChildren / 2));
+        }
+    }
+
+    static class Model extends AbstractTreeTableModel {
+        public int getNumColumns() {
+            return 1;
+        }
+        public String getColumnHeaderText(int column) {
+            return "Name";
+        }
+        @Override
+        protected void insertChild(TreeTableNode node, int idx) {
+            super.insertChild(node, idx);
+        }
+    }
+
+    static class Node extends AbstractTreeTableNode {
+        final String name;
+
+        Node(TreeTableNode parent, String name) {
+            super(parent);
+            this.name = name;
+        }
+        public Object getData(int column) {
+            return name;
+        }
+        @Override
+        protected void setLeaf(boolean leaf) {
+            super.setLeaf(leaf);
+        }
+        @Override
+        protected void insertChild(TreeTableNode node, int idx) {
+            super.insertChild(node, idx);
+        }
+        @Override
+        protected void removeChild(int idx) {
+            super.removeChild(idx);
+        }
+    }
+}
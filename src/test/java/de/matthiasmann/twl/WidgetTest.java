@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl;
+
+import java.util.ArrayList;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Mann
+ */
+public class WidgetTest {
+
+    public WidgetTest() {
+    }
+
+    @Test
+    public void testValidateLayout() {
+        Widget root = new Widget();
+        GUI gui = TestUtils.createGUI(root);
+        ArrayList<CountingWidget> leaves = new ArrayList<CountingWidget>();
+        CountingWidget[] groups = new CountingWidget[4];
+        for(int i=0 ; i<groups.length ; i++) {
+            groups[i] = new CountingWidget();
+            root.add(groups[i]);
+            for(int j=0 ; j<4 ; j++) {
+                CountingWidget leaf = new CountingWidget();
+                groups[i].add(leaf);
+                leaves.add(leaf);
+            }
+        }
+        gui.validateLayout();
+        assertFalse(gui.hasInvalidLayouts);
+        resetCounts(groups, leaves);
+        
+        // a local invalidation only lays out that widget
+        CountingWidget leaf = leaves.get(5);
+        leaf.invalidateLayoutLocally();
+        gui.validateLayout();
+        assertEquals(1, leaf.layoutCount);
+        assertEquals(0, groups[1].layoutCount);
+        assertEquals(1, totalLayouts(groups, leaves));
+        assertEquals(1, totalValidates(groups, leaves) - groups[1].validateCount);
+        assertEquals(1, groups[1].validateCount);
+        resetCounts(groups, leaves);
+        
+        // invalidateLayout also lays out the parent
+        leaf.invalidateLayout();
+        gui.validateLayout();
+        assertEquals(1, leaf.layoutCount);
+        assertEquals(1, groups[1].layoutCount);
+        assertEquals(2, totalLayouts(groups, leaves));
+        resetCounts(groups, leaves);
+        
+        gui.validateLayout();
+        assertEquals(0, totalValidates(groups, leaves));
+    }
+
+    @Test
+    public void testInvalidateDuringLayout() {
+        Widget root = new Widget();
+        GUI gui = TestUtils.createGUI(root);
+        final CountingWidget a = new CountingWidget();
+        final CountingWidget b = new CountingWidget();
+        final CountingWidget bChild = new CountingWidget();
+        CountingWidget trigger = new CountingWidget() {
+            @Override
+            protected void layout() {
+                super.layout();
+                if(layoutCount == 1) {
+                    // invalidate widgets before and after this one
+                    a.invalidateLayoutLocally();
+                    bChild.invalidateLayoutLocally();
+                }
+            }
+        };
+        root.add(a);
+        root.add(trigger);
+        root.add(b);
+        b.add(bChild);
+        gui.validateLayout();
+        a.layoutCount = 0;
+        bChild.layoutCount = 0;
+        trigger.layoutCount = 0;
+        
+        trigger.invalidateLayoutLocally();
+        gui.validateLayout();
+        assertEquals(1, trigger.layoutCount);
+        assertEquals(1, a.layoutCount);
+        assertEquals(1, bChild.layoutCount);
+        assertFalse(gui.hasInvalidLayouts);
+        assertFalse(a.isLayoutInvalid());
+        assertFalse(bChild.isLayoutInvalid());
+    }
+
+    @Test
+    public void testAddInvalidSubtree() {
+        Widget root = new Widget();
+        GUI gui = TestUtils.createGUI(root);
+        CountingWidget group = new CountingWidget();
+        root.add(group);
+        gui.validateLayout();
+        
+        CountingWidget subtree = new CountingWidget();
+        CountingWidget child = new CountingWidget();
+        subtree.add(child);
+        child.invalidateLayoutLocally();
+        group.add(subtree);
+        gui.validateLayout();
+        assertEquals(1, child.layoutCount);
+        assertFalse(child.isLayoutInvalid());
+    }
+
+    @Test
+    public void testValidateLayoutBenchmark() {
+        Assume.assumeTrue(Boolean.getBoolean("twl.benchmark"));
+        Widget root = new Widget();
+        GUI gui = TestUtils.createGUI(root);
+        ArrayList<Widget> leaves = new ArrayList<Widget>();
+        // 50 x 100 x 10 = 50000 leaves
+        for(int i=0 ; i<50 ; i++) {
+            Widget a = new Widget();
+            root.add(a);
+            for(int j=0 ; j<100 ; j++) {
+                Widget b = new Widget();
+                a.add(b);
+                for(int k=0 ; k<10 ; k++) {
+                    Widget leaf = new Widget();
+                    b.add(leaf);
+                    leaves.add(leaf);
+                }
+            }
+        }
+        gui.validateLayout();
+        
+        final int frames = 1000;
+        for(int round=0 ; round<3 ; round++) {
+            long start = System.nanoTime();
+            for(int i=0 ; i<frames ; i++) {
+                gui.validateLayout();
+            }
+            long timeStatic = System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            for(int i=0 ; i<frames ; i++) {
+                leaves.get((i * 7919) % leaves.size()).invalidateLayoutLocally();
+                gui.validateLayout();
+            }
+            long timeOne = System.nanoTime() - start;
+            
+            System.out.println("validateLayout of 55050 widgets, " + frames + " frames: static " +
+                    (timeStatic/1000) + " us, one invalid widget per frame " + (timeOne/1000) + " us");
+        }
+    }
+    
+    private static void resetCounts(CountingWidget[] groups, ArrayList<CountingWidget> leaves) {
+        for(CountingWidget w : groups) {
+            w.layoutCount = 0;
+            w.validateCount = 0;
+        }
+        for(CountingWidget w : leaves) {
+            w.layoutCount = 0;
+            w.validateCount = 0;
+        }
+    }
+    
+    private static int totalLayouts(CountingWidget[] groups, ArrayList<CountingWidget> leaves) {
+        int sum = 0;
+        for(CountingWidget w : groups) {
+            sum += w.layoutCount;
+        }
+        for(CountingWidget w : leaves) {
+            sum += w.layoutCount;
+        }
+        return sum;
+    }
+    
+    private static int totalValidates(CountingWidget[] groups, ArrayList<CountingWidget> leaves) {
+        int sum = 0;
+        for(CountingWidget w : groups) {
+            sum += w.validateCount;
+        }
+        for(CountingWidget w : leaves) {
+            sum += w.validateCount;
+        }
+        return sum;
+    }
+    
+    static class CountingWidget extends Widget {
+        int layoutCount;
+        int validateCount;
+
+        @Override
+        protected void layout() {
+            layoutCount++;
+        }
+
+        @Override
+        public void validateLayout() {
+            validateCount++;
+            super.validateLayout();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl.model;
+
+import java.io.File;
+import java.util.Comparator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Mann
+ */
+public class FileSystemTreeModelTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+    
+    public FileSystemTreeModelTest() {
+    }
+
+    @Test
+    public void testUpdateFolder() throws Exception {
+        File folder = tmpFolder.newFolder();
+        new File(folder, "a").mkdir();
+        new File(folder, "c").mkdir();
+        
+        final JavaFileSystemModel fsm = JavaFileSystemModel.getInstance();
+        FileSystemTreeModel model = new FileSystemTreeModel(fsm);
+        model.setSorter(new Comparator<Object>() {
+            public int compare(Object o1, Object o2) {
+                return fsm.getName(o1).compareTo(fsm.getName(o2));
+            }
+        });
+        
+        FileSystemTreeModel.FolderNode node = model.getNodeForFolder(folder);
+        assertNotNull(node);
+        assertEquals(2, node.getNumChildren());
+        
+        File b = new File(folder, "b");
+        b.mkdir();
+        File file = new File(folder, "file.txt");
+        file.createNewFile();
+        model.updateFolder(folder, new Object[] { b, file }, null);
+        assertEquals(3, node.getNumChildren());
+        assertEquals("a", getName(node, 0));
+        assertEquals("b", getName(node, 1));
+        assertEquals("c", getName(node, 2));
+        
+        // not yet listed folders are ignored
+        new File(b, "sub").mkdir();
+        model.updateFolder(b, new Object[] { new File(b, "sub") }, null);
+        assertFalse(((FileSystemTreeModel.FolderNode)node.getChild(1)).isLoaded());
+        
+        File c = new File(folder, "c");
+        c.delete();
+        model.updateFolder(folder, null, new Object[] { c });
+        assertEquals(2, node.getNumChildren());
+        assertEquals("b", getName(node, 1));
+        
+        new File(folder, "d").mkdir();
+        model.refreshFolder(folder);
+        assertEquals(3, node.getNumChildren());
+        assertEquals("d", getName(node, 2));
+    }
+    
+    private static String getName(TreeTableNode node, int idx) {
+        return (String)node.getChild(idx).getData(0);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl.model;
+
+import java.util.Random;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Mann
+ */
+public class GapBufferEditFieldModelTest {
+
+    public GapBufferEditFieldModelTest() {
+    }
+
+    @Test
+    public void testRandomEdits() {
+        Random r = new Random(4711);
+        GapBufferEditFieldModel model = new GapBufferEditFieldModel();
+        StringBuilder expected = new StringBuilder();
+        final int[] lastChange = new int[3];
+        model.addCallback(new ObservableCharSequence.Callback() {
+            public void charactersChanged(int start, int oldCount, int newCount) {
+                lastChange[0] = start;
+                lastChange[1] = oldCount;
+                lastChange[2] = newCount;
+            }
+        });
+        
+        for(int i=0 ; i<5000 ; i++) {
+            int start = r.nextInt(expected.length() + 1);
+            int count = r.nextInt(Math.min(20, expected.length() - start) + 1);
+            if(r.nextInt(10) == 0) {
+                char ch = r.nextBoolean() ? '\n' : 'x';
+                assertTrue(model.replace(start, count, ch));
+                expected.replace(start, start+count, String.valueOf(ch));
+                assertEquals(1, lastChange[2]);
+            } else {
+                String text = randomText(r, 1 + r.nextInt(30));
+                assertEquals(text.length(), model.replace(start, count, text));
+                expected.replace(start, start+count, text);
+            }
+            assertEquals(start, lastChange[0]);
+            assertEquals(count, lastChange[1]);
+            if((i % 50) == 0) {
+                assertSameContent(expected, model);
+            }
+        }
+        assertSameContent(expected, model);
+    }
+
+    @Test
+    public void testLines() {
+        GapBufferEditFieldModel model = new GapBufferEditFieldModel();
+        assertEquals(1, model.getNumLines());
+        assertEquals(0, model.getLineEnd(0));
+        
+        model.replace(0, 0, "abc\ndef\n\nghi");
+        assertEquals(4, model.getNumLines());
+        assertEquals(0, model.getLineNumber(3));
+        assertEquals(1, model.getLineNumber(4));
+        assertEquals(3, model.getLineNumber(12));
+        assertEquals(4, model.getLineStart(1));
+        assertEquals(7, model.getLineEnd(1));
+        assertEquals(8, model.getLineStart(2));
+        assertEquals(8, model.getLineEnd(2));
+        assertEquals(12, model.getLineEnd(3));
+        
+        // edit in the middle and check lines after the gap
+        model.replace(5, 2, "XYZ\nW");
+        assertEquals("abc\ndXYZ\nW\n\nghi", model.toString());
+        assertEquals(5, model.getNumLines());
+        assertEquals(9, model.getLineStart(2));
+        assertEquals(15, model.getLineEnd(4));
+        assertEquals("d", model.substring(4, 5));
+        assertEquals("XYZ\nW\n\ng", model.substring(5, 13));
+        
+        model.replace(0, model.length(), "");
+        assertEquals(1, model.getNumLines());
+    }
+
+    @Test
+    public void testTypingBenchmark() {
+        Assume.assumeTrue(Boolean.getBoolean("twl.benchmark"));
+        for(int size : new int[] { 10*1024, 1024*1024, 10*1024*1024 }) {
+            String text = createText(size);
+            long timeDefault = typeText(new DefaultEditFieldModel(), text, 200);
+            long timeGapBuffer = typeText(new GapBufferEditFieldModel(), text, 200);
+            System.out.println("Typing 200 chars into " + (size/1024) + " KB: DefaultEditFieldModel " +
+                    (timeDefault/1000) + " us, GapBufferEditFieldModel " + (timeGapBuffer/1000) + " us");
+        }
+    }
+    
+    private static long typeText(EditFieldModel model, String text, int count) {
+        model.replace(0, 0, text);
+        int pos = text.length() / 10;
+        long start = System.nanoTime();
+        int lines = 0;
+        for(int i=0 ; i<count ; i++) {
+            model.replace(pos++, 0, ((i % 40) == 39) ? '\n' : 'a');
+            // what the edit field does after each key stroke
+            lines += lineNumber(model, pos);
+            lines += lineStart(model, pos);
+        }
+        long time = System.nanoTime() - start;
+        assertTrue(lines > 0);
+        assertEquals(text.length() + count, model.length());
+        return time;
+    }
+    
+    private static int lineNumber(EditFieldModel model, int pos) {
+        if(model instanceof MultiLineEditFieldModel) {
+            return ((MultiLineEditFieldModel)model).getLineNumber(pos);
+        }
+        int lineNr = 0;
+        for(int i=0 ; i<pos ; i++) {
+            if(model.charAt(i) == '\n') {
+                lineNr++;
+            }
+        }
+        return lineNr;
+    }
+    
+    private static int lineStart(EditFieldModel model, int pos) {
+        if(model instanceof MultiLineEditFieldModel) {
+            MultiLineEditFieldModel m = (MultiLineEditFieldModel)model;
+            return m.getLineStart(m.getLineNumber(pos));
+        }
+        while(pos > 0 && model.charAt(pos-1) != '\n') {
+            pos--;
+        }
+        return pos;
+    }
+    
+    private static String createText(int size) {
+        Random r = new Random(size);
+        StringBuilder sb = new StringBuilder(size);
+        while(sb.length() < size) {
+            sb.append(randomText(r, 80).replace('\n', ' ')).append('\n');
+        }
+        sb.setLength(size);
+        return sb.toString();
+    }
+    
+    private static String randomText(Random r, int length) {
+        char[] chars = new char[length];
+        for(int i=0 ; i<length ; i++) {
+            chars[i] = (r.nextInt(8) == 0) ? '\n' : (char)('a' + r.nextInt(26));
+        }
+        return new String(chars);
+    }
+    
+    private static void assertSameContent(CharSequence expected, GapBufferEditFieldModel model) {
+        assertEquals(expected.toString(), model.toString());
+        int line = 0;
+        int lineStart = 0;
+        for(int i=0 ; i<=expected.length() ; i++) {
+            assertEquals(line, model.getLineNumber(i));
+            if(i == expected.length() || expected.charAt(i) == '\n') {
+                assertEquals(lineStart, model.getLineStart(line));
+                assertEquals(i, model.getLineEnd(line));
+                line++;
+                lineStart = i + 1;
+            }
+        }
+        assertEquals(line, model.getNumLines());
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl.model;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Mann
+ */
+public class IntervalTableSelectionModelTest {
+
+    public IntervalTableSelectionModelTest() {
+    }
+
+    @Test
+    public void testIntervals() {
+        IntervalTableSelectionModel m = new IntervalTableSelectionModel();
+        assertFalse(m.hasSelection());
+        m.addSelection(10, 20);
+        m.addSelection(30, 40);
+        assertEquals(2, m.getNumIntervals());
+        m.addSelection(21, 29);
+        assertEquals(1, m.getNumIntervals());
+        assertEquals(10, m.getIntervalStart(0));
+        assertEquals(40, m.getIntervalEnd(0));
+        
+        m.invertSelection(15, 35);
+        assertEquals(2, m.getNumIntervals());
+        assertEquals(14, m.getIntervalEnd(0));
+        assertEquals(36, m.getIntervalStart(1));
+        assertEquals(15, m.getAnchorIndex());
+        assertEquals(35, m.getLeadIndex());
+        
+        m.rowsInserted(12, 5);
+        assertEquals(3, m.getNumIntervals());
+        assertEquals(11, m.getIntervalEnd(0));
+        assertEquals(17, m.getIntervalStart(1));
+        assertEquals(19, m.getIntervalEnd(1));
+        assertEquals(41, m.getIntervalStart(2));
+        
+        m.rowsDeleted(12, 5);
+        assertEquals(2, m.getNumIntervals());
+        assertEquals(14, m.getIntervalEnd(0));
+        
+        m.rowsDeleted(15, 21);
+        assertEquals(1, m.getNumIntervals());
+        assertEquals(10, m.getIntervalStart(0));
+        assertEquals(19, m.getIntervalEnd(0));
+        assertEquals(10, m.getNumSelected());
+        
+        m.removeSelection(0, 100);
+        assertFalse(m.hasSelection());
+        assertEquals(-1, m.getNextSelected(0));
+    }
+
+    @Test
+    public void testRandomAgainstDefault() {
+        Random r = new Random(1234);
+        for(int round=0 ; round<50 ; round++) {
+            DefaultTableSelectionModel ref = new DefaultTableSelectionModel();
+            IntervalTableSelectionModel m = new IntervalTableSelectionModel();
+            for(int op=0 ; op<300 ; op++) {
+                int a = r.nextInt(200);
+                int b = r.nextInt(200);
+                switch(r.nextInt(9)) {
+                    case 0:
+                        ref.setSelection(a, b);
+                        m.setSelection(a, b);
+                        break;
+                    case 1:
+                    case 2:
+                        ref.addSelection(a, Math.min(199, a + (b & 15)));
+                        m.addSelection(a, Math.min(199, a + (b & 15)));
+                        break;
+                    case 3:
+                    case 4:
+                        ref.invertSelection(a, b);
+                        m.invertSelection(a, b);
+                        break;
+                    case 5:
+                        ref.removeSelection(a, Math.min(199, a + (b & 31)));
+                        m.removeSelection(a, Math.min(199, a + (b & 31)));
+                        break;
+                    case 6:
+                        ref.rowsInserted(a, 1 + (b & 7));
+                        m.rowsInserted(a, 1 + (b & 7));
+                        break;
+                    case 7:
+                        ref.rowsDeleted(a, 1 + (b & 7));
+                        m.rowsDeleted(a, 1 + (b & 7));
+                        break;
+                    case 8:
+                        if(r.nextInt(10) == 0) {
+                            ref.clearSelection();
+                            m.clearSelection();
+                        }
+                        break;
+                }
+                assertEquals(ref.hasSelection(), m.hasSelection());
+                assertEquals(ref.getFirstSelected(), m.getFirstSelected());
+                assertEquals(ref.getLastSelected(), m.getLastSelected());
+                assertEquals(ref.getLeadIndex(), m.getLeadIndex());
+                assertEquals(ref.getAnchorIndex(), m.getAnchorIndex());
+                int[] expected = ref.getSelection();
+                assertTrue(Arrays.equals(expected, m.getSelection()));
+                for(int i=0 ; i<250 ; i++) {
+                    assertEquals(ref.isSelected(i), m.isSelected(i));
+                }
+                for(int i=0 ; i<50 ; i++) {
+                    int idx = r.nextInt(250);
+                    assertEquals(ref.isSelected(idx), m.isSelected(idx));
+                }
+                int count = 0;
+                for(int i=m.getNextSelected(0) ; i>=0 ; i=m.getNextSelected(i+1)) {
+                    assertEquals(expected[count++], i);
+                }
+                assertEquals(expected.length, count);
+                for(int i=1 ; i<m.getNumIntervals() ; i++) {
+                    assertTrue(m.getIntervalEnd(i-1) + 1 < m.getIntervalStart(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSelectionChangeEvents() {
+        IntervalTableSelectionModel m = new IntervalTableSelectionModel();
+        final int[] count = new int[1];
+        m.addSelectionChangeListener(new Runnable() {
+            public void run() {
+                count[0]++;
+            }
+        });
+        m.removeSelection(0, 10);
+        assertEquals(0, count[0]);
+        m.setSelection(0, 10);
+        m.invertSelection(5, 5);
+        m.clearSelection();
+        m.clearSelection();
+        assertEquals(3, count[0]);
+    }
+
+    @Test
+    public void testBenchmark() {
+        Assume.assumeTrue(Boolean.getBoolean("twl.benchmark"));
+        final int rows = 2000000;
+        for(int round=0 ; round<2 ; round++) {
+            for(TableSelectionModel m : new TableSelectionModel[] {
+                    new DefaultTableSelectionModel(), new IntervalTableSelectionModel() }) {
+                long start = System.nanoTime();
+                m.setSelection(0, rows-1);                      // Ctrl+A
+                long timeSelectAll = System.nanoTime() - start;
+                
+                start = System.nanoTime();
+                m.rowsInserted(10, 5);                          // insert above the selection
+                m.rowsDeleted(10, 5);
+                long timeInsert = System.nanoTime() - start;
+                
+                start = System.nanoTime();
+                for(int i=0 ; i<1000 ; i++) {
+                    m.invertSelection(i * 1000, i * 1000 + 500);
+                }
+                long timeInvert = System.nanoTime() - start;
+                
+                // the first passes only measure the JIT
+                long timeIsSelected = Long.MAX_VALUE;
+                for(int pass=0 ; pass<20 ; pass++) {
+                    start = System.nanoTime();
+                    int selected = 0;
+                    for(int i=0 ; i<rows ; i+=7) {
+                        if(m.isSelected(i)) {
+                            selected++;
+                        }
+                    }
+                    timeIsSelected = Math.min(timeIsSelected, System.nanoTime() - start);
+                    assertTrue(selected > 0);
+                }
+                
+                System.out.println(m.getClass().getSimpleName() + " with " + rows + " rows: select all " +
+                        (timeSelectAll/1000) + " us, insert+delete " + (timeInsert/1000) +
+                        " us, 1000 inverts " + (timeInvert/1000) + " us, isSelected " +
+                        (timeIsSelected/1000) + " us");
+            }
+        }
+    }
+}
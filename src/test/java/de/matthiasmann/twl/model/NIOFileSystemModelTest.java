@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl.model;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.HashMap;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Mann
+ */
+public class NIOFileSystemModelTest {
+
+    /**
+     * The number of files used by {@link #testListFolderPerformance() }
+     */
+    private static final int NUM_BENCHMARK_FILES = 100000;
+    
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+    
+    public NIOFileSystemModelTest() {
+    }
+
+    @Test
+    public void testSameAsJavaFileSystemModel() throws IOException {
+        File folder = createFolder(200);
+        new File(folder, "subfolder").mkdir();
+        writeFile(new File(folder, ".hidden"), 5);
+        
+        NIOFileSystemModel nio = new NIOFileSystemModel();
+        JavaFileSystemModel jfs = JavaFileSystemModel.getInstance();
+        
+        Object[] javaFiles = jfs.listFolder(folder, null);
+        Object[] nioFiles = nio.listFolder(nio.getFile(folder.getPath()), null);
+        assertEquals(javaFiles.length, nioFiles.length);
+        
+        HashMap<String, Object> byName = new HashMap<String, Object>();
+        for(Object f : nioFiles) {
+            byName.put(nio.getName(f), f);
+        }
+        for(Object jf : javaFiles) {
+            Object nf = byName.get(jfs.getName(jf));
+            assertNotNull(nf);
+            assertEquals(jfs.isFolder(jf), nio.isFolder(nf));
+            assertEquals(jfs.isFile(jf), nio.isFile(nf));
+            assertEquals(jfs.isHidden(jf), nio.isHidden(nf));
+            assertEquals(jfs.getLastModified(jf), nio.getLastModified(nf));
+            if(jfs.isFile(jf)) {
+                assertEquals(jfs.getSize(jf), nio.getSize(nf));
+            }
+            assertEquals(jfs.getPath(jf), nio.getPath(nf));
+        }
+    }
+
+    @Test
+    public void testFilter() throws IOException {
+        File folder = createFolder(20);
+        new File(folder, "subfolder").mkdir();
+        
+        NIOFileSystemModel nio = new NIOFileSystemModel();
+        Object[] folders = nio.listFolder(nio.getFile(folder.getPath()), new FileSystemModel.FileFilter() {
+            public boolean accept(FileSystemModel model, Object file) {
+                return model.isFolder(file);
+            }
+        });
+        assertEquals(1, folders.length);
+        assertEquals("subfolder", nio.getName(folders[0]));
+    }
+
+    @Test
+    public void testCache() throws IOException {
+        File folder = tmpFolder.newFolder();
+        File file = new File(folder, "test");
+        writeFile(file, 10);
+        
+        NIOFileSystemModel nio = new NIOFileSystemModel(FileSystems.getDefault(), 16);
+        nio.setCacheTimeout(Long.MAX_VALUE);
+        Object f = nio.getFile(file.getPath());
+        assertEquals(10, nio.getSize(f));
+        
+        writeFile(file, 20);
+        assertEquals(10, nio.getSize(f));
+        nio.invalidate(f);
+        assertEquals(20, nio.getSize(f));
+        
+        writeFile(file, 30);
+        nio.setCacheTimeout(0);
+        sleep(5);
+        assertEquals(30, nio.getSize(f));
+        
+        assertTrue(file.delete());
+        nio.clearCache();
+        assertFalse(nio.isFile(f));
+        assertNull(nio.getFile(file.getPath()));
+    }
+
+    @Test
+    public void testCacheSizeLimit() throws IOException {
+        File folder = createFolder(100);
+        NIOFileSystemModel nio = new NIOFileSystemModel(FileSystems.getDefault(), 16);
+        nio.setCacheTimeout(Long.MAX_VALUE);
+        Object[] files = nio.listFolder(nio.getFile(folder.getPath()), null);
+        assertEquals(100, files.length);
+        assertEquals(16, nio.cache.size());
+        // the last listed files are still cached
+        NIOFileSystemModel.Attributes a = nio.getAttributes((Path)files[99]);
+        assertSame(a, nio.getAttributes((Path)files[99]));
+    }
+
+    @Test
+    public void testListingIsPinned() throws IOException {
+        File folder = createFolder(100);
+        NIOFileSystemModel nio = new NIOFileSystemModel(FileSystems.getDefault(), 16);
+        nio.setCacheTimeout(Long.MAX_VALUE);
+        Object[] files = nio.listFolder(nio.getFile(folder.getPath()), null);
+        assertEquals(16, nio.cache.size());
+        
+        // evicted entries are served from the listing without reading them again
+        Path first = (Path)files[0];
+        int size = (int)first.toFile().length();
+        writeFile(first.toFile(), size + 50);
+        assertEquals(size, nio.getSize(first));
+        nio.invalidate(first);
+        assertEquals(size + 50, nio.getSize(first));
+        
+        // the listing expires with the cache timeout
+        Path second = (Path)files[1];
+        size = (int)second.toFile().length();
+        writeFile(second.toFile(), size + 50);
+        nio.setCacheTimeout(0);
+        sleep(5);
+        assertEquals(size + 50, nio.getSize(second));
+    }
+
+    @Test
+    public void testRelativePath() {
+        NIOFileSystemModel nio = new NIOFileSystemModel();
+        JavaFileSystemModel jfs = JavaFileSystemModel.getInstance();
+        assertEquals(jfs.getRelativePath(new File("/a/b/c"), new File("/a/d")),
+                nio.getRelativePath(FileSystems.getDefault().getPath("/a/b/c"),
+                        FileSystems.getDefault().getPath("/a/d")));
+    }
+
+    /**
+     * Lists a large folder and reads all attributes which are used by the
+     * FileTable with both file system models and prints the times.
+     */
+    @Test
+    public void testListFolderPerformance() throws IOException {
+        Assume.assumeTrue(Boolean.getBoolean("twl.benchmark"));
+        File folder = createFolder(NUM_BENCHMARK_FILES);
+        
+        // the default cache is smaller than the folder
+        NIOFileSystemModel nio = new NIOFileSystemModel();
+        // first round is warm up
+        listAndStat(JavaFileSystemModel.getInstance(), folder);
+        listAndStat(nio, folder);
+        nio.clearCache();
+        
+        long javaTime = listAndStat(JavaFileSystemModel.getInstance(), folder);
+        long nioTime = listAndStat(nio, folder);
+        
+        System.out.println("Listing " + NUM_BENCHMARK_FILES + " files: JavaFileSystemModel " +
+                (javaTime / 1000000) + " ms, NIOFileSystemModel " + (nioTime / 1000000) + " ms");
+    }
+    
+    private static long listAndStat(FileSystemModel fsm, File folder) {
+        long startTime = System.nanoTime();
+        Object[] files = fsm.listFolder(fsm.getFile(folder.getPath()), new FileSystemModel.FileFilter() {
+            public boolean accept(FileSystemModel model, Object file) {
+                return !model.isHidden(file);
+            }
+        });
+        long sum = 0;
+        for(Object file : files) {
+            if(!fsm.isFolder(file)) {
+                sum += fsm.getSize(file);
+            }
+            sum += fsm.getLastModified(file);
+        }
+        assertTrue(sum > 0);
+        return System.nanoTime() - startTime;
+    }
+    
+    private File createFolder(int numFiles) throws IOException {
+        File folder = tmpFolder.newFolder();
+        for(int i=0 ; i<numFiles ; i++) {
+            writeFile(new File(folder, "file" + i), i & 127);
+        }
+        return folder;
+    }
+    
+    private static void writeFile(File file, int size) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(new byte[size]);
+        } finally {
+            fos.close();
+        }
+    }
+    
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl.renderer.lwjgl;
+
+import com.badlogic.gdx.files.FileHandle;
+import java.io.File;
+import java.io.IOException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Mann
+ */
+public class BitmapFontTest {
+
+    public BitmapFontTest() {
+    }
+
+    @Test
+    public void testFindPageFile() throws IOException {
+        File file = File.createTempFile("font", ".fnt");
+        try {
+            FileHandle handle = new FileHandle(file);
+            handle.writeString(
+                    "<?xml version=\"1.0\"?>\n" +
+                    "<font>\n" +
+                    "  <info face=\"Arial\" size=\"12\"/>\n" +
+                    "  <common lineHeight=\"15\" base=\"12\" pages=\"1\"/>\n" +
+                    "  <pages>\n" +
+                    "    <page id=\"0\" file=\"arial_00.png\" />\n" +
+                    "  </pages>\n" +
+                    "  <chars count=\"0\">\n" +
+                    "  </chars>\n" +
+                    "</font>\n", false, "UTF-8");
+            assertEquals("arial_00.png", BitmapFont.findPageFile(handle).name());
+            
+            handle.writeString(
+                    "info face=\"Arial\" size=12\n" +
+                    "common lineHeight=15 base=12 pages=1\n" +
+                    "page id=0 file=\"arial_text.png\"\n" +
+                    "chars count=0\n", false, "UTF-8");
+            assertEquals("arial_text.png", BitmapFont.findPageFile(handle).name());
+            
+            handle.writeString(
+                    "info face=\"Arial\" size=12\n" +
+                    "chars count=0\n" +
+                    "page id=0 file=\"ignored.png\"\n", false, "UTF-8");
+            assertNull(BitmapFont.findPageFile(handle));
+        } finally {
+            file.delete();
+        }
+    }
+}
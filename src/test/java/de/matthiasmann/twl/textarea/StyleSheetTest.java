@@ -29,7 +29,9 @@
  */
 package de.matthiasmann.twl.textarea;
 
+import java.io.IOException;
 import java.io.StringReader;
+import org.junit.Assume;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import static de.matthiasmann.twl.textarea.StyleAttribute.*;
@@ -283,6 +285,90 @@ public class StyleSheetTest {
         test(ss, WIDTH, Value.AUTO, new Style(styleA_42, null));
     }
 
+    @Test
+    public void testRuleOrderAcrossBuckets() throws Exception {
+        StyleSheet ss = new StyleSheet();
+        ss.parse(new StringReader(".y p { height: 5% } p .x { height: 7% }"));
+        test(ss, HEIGHT, new Value(7, PERCENT), new StyleSheetKey("p", "y", null), new StyleSheetKey("p", "x", null));
+        
+        ss = new StyleSheet();
+        ss.parse(new StringReader("p .x { height: 7% } .y p { height: 5% }"));
+        test(ss, HEIGHT, new Value(5, PERCENT), new StyleSheetKey("p", "y", null), new StyleSheetKey("p", "x", null));
+    }
+    
+    @Test
+    public void testResolveCache() throws Exception {
+        StyleSheet ss = new StyleSheet();
+        ss.parse(new StringReader("div a { width: 10px } a { height: 5px }"));
+        
+        ss.startLayout();
+        Style style1 = ss.resolve(makeStyle(new StyleSheetKey("div", null, null), new StyleSheetKey("a", null, null)));
+        ss.layoutFinished();
+        
+        // a structurally equal style resolves to the cached result
+        ss.startLayout();
+        Style style2 = ss.resolve(makeStyle(new StyleSheetKey("div", null, null), new StyleSheetKey("a", null, null)));
+        ss.layoutFinished();
+        assertSame(style1, style2);
+        
+        // parsing more rules invalidates the cache
+        ss.parse(new StringReader("div a { width: 20px }"));
+        test(ss, WIDTH, new Value(20, PX), new StyleSheetKey("div", null, null), new StyleSheetKey("a", null, null));
+        test(ss, HEIGHT, new Value(5, PX), new StyleSheetKey("div", null, null), new StyleSheetKey("a", null, null));
+    }
+    
+    @Test
+    public void testLargeStyleSheet() throws Exception {
+        StyleSheet ss = createLargeStyleSheet();
+        test(ss, MARGIN_LEFT, new Value(1, PX), new StyleSheetKey("div", "c1", null));
+        test(ss, MARGIN_LEFT, new Value(2, PX), new StyleSheetKey("p", null, "id2"));
+        test(ss, MARGIN_LEFT, new Value(4, PX), new StyleSheetKey("div", "c4", null), new StyleSheetKey("p", null, null));
+        test(ss, MARGIN_LEFT, new Value(7, PX), new StyleSheetKey("e7", null, null), new StyleSheetKey("span", null, null));
+        test(ss, MARGIN_LEFT, Value.ZERO_PX, new StyleSheetKey("e7", null, null), new StyleSheetKey("p", null, null), new StyleSheetKey("span", null, null));
+    }
+
+    @Test
+    public void testLargeStyleSheetBenchmark() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("twl.benchmark"));
+        StyleSheet ss = createLargeStyleSheet();
+        
+        // a document with 10000 elements spread over 100 distinct key chains
+        Style[] styles = new Style[10000];
+        for(int i=0 ; i<styles.length ; i++) {
+            int n = i % 100;
+            styles[i] = makeStyle(new StyleSheetKey("div", "c" + (n*4), null),
+                    new StyleSheetKey("p", null, null),
+                    new StyleSheetKey("span", "c" + (n*4+1), null));
+        }
+        
+        long start = System.nanoTime();
+        for(int layout=0 ; layout<10 ; layout++) {
+            ss.startLayout();
+            for(Style style : styles) {
+                assertNotNull(ss.resolve(style));
+            }
+            ss.layoutFinished();
+        }
+        long time = System.nanoTime() - start;
+        System.out.println("Resolved 10 layouts of " + styles.length + " styles with 2000 rules in " + (time/1000000) + " ms");
+    }
+
+    private static StyleSheet createLargeStyleSheet() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for(int i=0 ; i<2000 ; i++) {
+            switch(i % 4) {
+                case 0: sb.append("div.c").append(i).append(" p"); break;
+                case 1: sb.append(".c").append(i); break;
+                case 2: sb.append("#id").append(i); break;
+                case 3: sb.append("e").append(i).append(" > span"); break;
+            }
+            sb.append(" { margin-left: ").append(i).append("px }\n");
+        }
+        StyleSheet ss = new StyleSheet();
+        ss.parse(new StringReader(sb.toString()));
+        return ss;
+    }
+
     private Style makeStyle(StyleSheetKey ... keys) {
         Style style = null;
         for(StyleSheetKey key : keys) {
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl.theme;
+
+import com.badlogic.gdx.files.FileHandle;
+import de.matthiasmann.twl.Border;
+import de.matthiasmann.twl.Color;
+import de.matthiasmann.twl.KeyStroke;
+import de.matthiasmann.twl.utils.StateExpression;
+import de.matthiasmann.twl.utils.StateSelect;
+import de.matthiasmann.twl.utils.XMLParser;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Mann
+ */
+public class CompiledThemeTest {
+
+    private File dir;
+    private FileHandle main;
+    private FileHandle other;
+
+    public CompiledThemeTest() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("theme", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdir());
+        main = new FileHandle(new File(dir, "main.xml"));
+        main.writeString(
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<!-- comment -->\n" +
+                "<themes>\n" +
+                "  <images file=\"widgets.png\" format=\"COLOR\">\n" +
+                "    <area name=\"x\" xywh=\"0,0,1,1\"/>\n" +
+                "    <select name=\"sel\">\n" +
+                "      <alias ref=\"x\" if=\"hover\"/>\n" +
+                "      <select if=\"pressed\">\n" +
+                "        <alias ref=\"x\" if=\"selected\"/>\n" +
+                "        <alias ref=\"x\"/>\n" +
+                "      </select>\n" +
+                "      <alias ref=\"x\"/>\n" +
+                "    </select>\n" +
+                "  </images>\n" +
+                "  <include filename=\"sub/other.xml\"/>\n" +
+                "  <theme name=\"button\" ref=\"*\">\n" +
+                "    <param name=\"text\"><string>a &amp; b</string></param>\n" +
+                "    <param name=\"space\"><string> </string></param>\n" +
+                "    <param name=\"empty\"><string></string></param>\n" +
+                "  </theme>\n" +
+                "</themes>\n", false, "UTF8");
+        other = new FileHandle(new File(dir, "sub/other.xml"));
+        other.writeString(
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<themes>\n" +
+                "  <constantDef name=\"c\"><int>42</int></constantDef>\n" +
+                "  <constantDef name=\"d\"><int>c+1</int></constantDef>\n" +
+                "  <constantDef name=\"col\"><color>#FF0000</color></constantDef>\n" +
+                "  <constantDef name=\"b\"><border>1,2,3,4</border></constantDef>\n" +
+                "  <constantDef name=\"f\"><float>0.5</float></constantDef>\n" +
+                "  <inputMapDef name=\"keys\">\n" +
+                "    <action name=\"selectAll\">ctrl A</action>\n" +
+                "    <action name=\"copy\">ctrl C</action>\n" +
+                "  </inputMapDef>\n" +
+                "</themes>\n", false, "UTF8");
+    }
+
+    @After
+    public void tearDown() {
+        new FileHandle(dir).deleteDirectory();
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        CompiledTheme ct = loadCompiled();
+        assertNotNull(ct);
+
+        assertEquals(trace(new XMLParser(main)), trace(ct.createXMLParser(main, main)));
+        assertEquals(trace(new XMLParser(other)), trace(ct.createXMLParser(main, other)));
+        assertNull(ct.createXMLParser(main, main.sibling("unknown.xml")));
+    }
+
+    @Test
+    public void testStale() throws Exception {
+        assertNotNull(loadCompiled());
+        FileHandle compiled = main.sibling("main.bin");
+        other.writeString("<themes/>", false, "UTF8");
+        assertNull(CompiledTheme.load(compiled, main));
+    }
+
+    @Test
+    public void testMissingSource() throws Exception {
+        assertNotNull(loadCompiled());
+        FileHandle compiled = main.sibling("main.bin");
+        assertTrue(other.delete());
+        assertNotNull(CompiledTheme.load(compiled, main));
+    }
+
+    @Test
+    public void testPrecompiledValues() throws Exception {
+        CompiledTheme ct = loadCompiled();
+        CompiledTheme.CompiledFile cf = ct.openFile(main, other);
+        XMLParser xmlp = cf.xmlp;
+        xmlp.require(XmlPullParser.START_DOCUMENT, null, null);
+
+        skipTo(xmlp, "int");
+        assertEquals(42, cf.getValue());
+        xmlp.require(XmlPullParser.END_TAG, null, "int");
+
+        // a value which uses a constant is evaluated when the theme is loaded
+        skipTo(xmlp, "int");
+        assertNull(cf.getValue());
+        assertEquals("c+1", xmlp.nextText());
+
+        skipTo(xmlp, "color");
+        assertEquals(new Color(0xFFFF0000), cf.getValue());
+        skipTo(xmlp, "border");
+        Border border = (Border)cf.getValue();
+        assertEquals(1, border.getBorderTop());
+        assertEquals(4, border.getBorderRight());
+        skipTo(xmlp, "float");
+        assertEquals(0.5f, cf.getValue());
+
+        skipTo(xmlp, "inputMapDef");
+        LinkedHashSet<KeyStroke> keyStrokes = cf.getInputMap();
+        xmlp.require(XmlPullParser.END_TAG, null, "inputMapDef");
+        assertEquals(2, keyStrokes.size());
+        Iterator<KeyStroke> iter = keyStrokes.iterator();
+        KeyStroke ks = iter.next();
+        assertEquals("selectAll", ks.getAction());
+        assertEquals(KeyStroke.parse("ctrl A", "selectAll"), ks);
+        assertEquals("copy", iter.next().getAction());
+    }
+
+    @Test
+    public void testSelectPrograms() throws Exception {
+        CompiledTheme ct = loadCompiled();
+        ArrayList<StateExpression> inner = new ArrayList<StateExpression>();
+        inner.add(StateExpression.parse("selected", false));
+        assertTrue(ct.selects.containsKey(inner));
+
+        // the inner select is inlined into the outer select
+        ArrayList<StateExpression> outer = new ArrayList<StateExpression>();
+        outer.add(StateExpression.parse("hover", false));
+        outer.add(new StateExpression.Logic('+',
+                StateExpression.parse("selected", false), StateExpression.parse("pressed", false)));
+        outer.add(StateExpression.parse("pressed", false));
+        assertTrue(ct.selects.containsKey(outer));
+
+        StateSelect compiled = ct.createStateSelect(outer);
+        StateSelect optimized = new StateSelect(outer);
+        assertArrayEquals(optimized.getProgramKeys(), compiled.getProgramKeys());
+        assertArrayEquals(optimized.getProgramCodes(), compiled.getProgramCodes());
+        assertEquals(optimized.getProgramStart(), compiled.getProgramStart());
+        assertFalse(ct.selects.containsKey(Collections.singletonList(StateExpression.parse("disabled", false))));
+    }
+
+    @Test
+    public void testModificationTime() throws Exception {
+        assertNotNull(loadCompiled());
+        FileHandle compiled = main.sibling("main.bin");
+        File file = other.file();
+        long lastModified = file.lastModified();
+        String content = other.readString("UTF8");
+
+        // the checksum is verified when the modification time differs
+        assertTrue(file.setLastModified(lastModified - 10000));
+        assertNotNull(CompiledTheme.load(compiled, main));
+        other.writeString(content.replace("42", "43"), false, "UTF8");
+        assertTrue(file.setLastModified(lastModified - 10000));
+        assertNull(CompiledTheme.load(compiled, main));
+
+        // same size and modification time is trusted without reading the file
+        assertTrue(file.setLastModified(lastModified));
+        assertNotNull(CompiledTheme.load(compiled, main));
+    }
+
+    @Test
+    public void testCorrupted() throws Exception {
+        assertNotNull(loadCompiled());
+        FileHandle compiled = main.sibling("main.bin");
+        byte[] data = compiled.readBytes();
+        compiled.writeBytes(java.util.Arrays.copyOf(data, data.length / 2), false);
+        assertNull(CompiledTheme.load(compiled, main));
+    }
+
+    private CompiledTheme loadCompiled() throws IOException {
+        FileHandle compiled = main.sibling("main.bin");
+        CompiledTheme.compile(main, compiled);
+        return CompiledTheme.load(compiled, main);
+    }
+
+    private static void skipTo(XMLParser xmlp, String tagName) throws XmlPullParserException, IOException {
+        do {
+            xmlp.ignoreOtherAttributes();
+        } while(xmlp.next() != XmlPullParser.START_TAG || !tagName.equals(xmlp.getName()));
+    }
+
+    private static String trace(XMLParser xmlp) throws XmlPullParserException, IOException {
+        StringBuilder sb = new StringBuilder();
+        try {
+            xmlp.require(XmlPullParser.START_DOCUMENT, null, null);
+            xmlp.nextTag();
+            traceElement(xmlp, sb);
+            assertEquals(XmlPullParser.END_DOCUMENT, xmlp.next());
+        } finally {
+            xmlp.close();
+        }
+        return sb.toString();
+    }
+
+    private static void traceElement(XMLParser xmlp, StringBuilder sb) throws XmlPullParserException, IOException {
+        xmlp.require(XmlPullParser.START_TAG, null, null);
+        String name = xmlp.getName();
+        sb.append('<').append(name).append('@').append(xmlp.getLineNumber());
+        for(int i=0,n=xmlp.getAttributeCount() ; i<n ; i++) {
+            sb.append(' ').append(xmlp.getAttributeName(i)).append('=').append(xmlp.getAttributeValue(i));
+        }
+        xmlp.ignoreOtherAttributes();
+        sb.append('>');
+        if("string".equals(name) || "int".equals(name) || "color".equals(name) ||
+                "border".equals(name) || "float".equals(name) || "action".equals(name)) {
+            sb.append('[').append(xmlp.nextText()).append(']');
+        } else {
+            xmlp.nextTag();
+            while(!xmlp.isEndTag()) {
+                traceElement(xmlp, sb);
+                xmlp.nextTag();
+            }
+        }
+        xmlp.require(XmlPullParser.END_TAG, null, name);
+        sb.append("</").append(name).append('>');
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl.theme;
+
+import com.badlogic.gdx.files.FileHandle;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Mann
+ */
+public class ThemeManagerTest {
+
+    public ThemeManagerTest() {
+    }
+
+    @Test
+    public void testScanTextureFiles() throws IOException {
+        File dir = File.createTempFile("theme", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdir());
+        try {
+            FileHandle main = new FileHandle(new File(dir, "main.xml"));
+            main.writeString(
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                    "<themes>\n" +
+                    "  <images file=\"widgets.png\" format=\"COLOR\">\n" +
+                    "    <area name=\"x\" xywh=\"0,0,1,1\"/>\n" +
+                    "    <images file=\"nested.png\"/>\n" +
+                    "  </images>\n" +
+                    "  <include filename=\"other.xml\"/>\n" +
+                    "  <fontDef name=\"normal\" filename=\"font.fnt\" color=\"white\"/>\n" +
+                    "  <theme name=\"button\" ref=\"*\">\n" +
+                    "    <param name=\"background\"><image>x</image></param>\n" +
+                    "  </theme>\n" +
+                    "  <textures file=\"last.png\"/>\n" +
+                    "</themes>\n", false, "UTF8");
+            FileHandle other = new FileHandle(new File(dir, "other.xml"));
+            other.writeString(
+                    "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                    "<themes>\n" +
+                    "  <images><area name=\"none\" xywh=\"0,0,1,1\"/></images>\n" +
+                    "  <images file=\"font.png\"/>\n" +
+                    "</themes>\n", false, "UTF8");
+
+            final ArrayList<String> files = new ArrayList<String>();
+            ThemeManager.scanTextureFiles(main, new ThemeManager.TextureFileVisitor() {
+                public void textureFile(FileHandle handle, String format) {
+                    files.add(handle.name() + ":" + format);
+                }
+                public void fontFile(FileHandle handle) {
+                    files.add(handle.name());
+                }
+            });
+
+            assertEquals(4, files.size());
+            assertEquals("widgets.png:COLOR", files.get(0));
+            assertEquals("font.png:null", files.get(1));
+            assertEquals("font.fnt", files.get(2));
+            assertEquals("last.png:null", files.get(3));
+        } finally {
+            new FileHandle(dir).deleteDirectory();
+        }
+    }
+}
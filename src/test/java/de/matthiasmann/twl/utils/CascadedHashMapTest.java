@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl.utils;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Mann
+ */
+public class CascadedHashMapTest {
+
+    public CascadedHashMapTest() {
+    }
+
+    @Test
+    public void testGetRange() {
+        CascadedHashMap<String, Integer> map = new CascadedHashMap<String, Integer>();
+        for(int i=0 ; i<100 ; i++) {
+            map.put("theme" + i, i);
+        }
+
+        String path = "a.theme42.theme7.theme";
+        assertEquals(Integer.valueOf(42), map.get(path, 2, 9));
+        assertEquals(Integer.valueOf(7), map.get(path, 10, 16));
+        assertNull(map.get(path, 17, 22));
+        assertNull(map.get(path, 0, 1));
+        assertEquals(Integer.valueOf(4), map.get(path, 2, 8));
+        assertNull(map.get(path, 3, 9));
+        assertNull(map.get(path, 0, 0));
+    }
+
+    @Test
+    public void testGetRangeFallback() {
+        CascadedHashMap<String, Integer> base = new CascadedHashMap<String, Integer>();
+        base.put("button", 1);
+        base.put("label", 2);
+
+        CascadedHashMap<String, Integer> map = new CascadedHashMap<String, Integer>();
+        map.put("label", 3);
+        map.collapseAndSetFallback(base);
+
+        String path = "label.button";
+        assertEquals(Integer.valueOf(3), map.get(path, 0, 5));
+        assertEquals(Integer.valueOf(1), map.get(path, 6, 12));
+        assertEquals(map.get("button"), map.get(path, 6, 12));
+    }
+
+    @Test
+    public void testGetRangeEmpty() {
+        CascadedHashMap<String, Integer> map = new CascadedHashMap<String, Integer>();
+        assertNull(map.get("abc", 0, 3));
+        map.put("", 5);
+        assertEquals(Integer.valueOf(5), map.get("abc", 1, 1));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl.utils;
+
+import de.matthiasmann.twl.Rect;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * JUnit test for DirtyRegion
+ *
+ * @author Matthias Mann
+ */
+public class DirtyRegionTest {
+
+    public DirtyRegionTest() {
+    }
+
+    @Test
+    public void testEmpty() {
+        DirtyRegion dr = new DirtyRegion(4);
+        assertTrue(dr.isEmpty());
+        dr.add(10, 10, 0, 5);
+        dr.add(10, 10, 5, -1);
+        assertTrue(dr.isEmpty());
+    }
+
+    @Test
+    public void testMergeOverlapping() {
+        DirtyRegion dr = new DirtyRegion(4);
+        dr.add(0, 0, 10, 10);
+        dr.add(5, 5, 10, 10);
+        assertEquals(1, dr.getNumRects());
+        Rect rect = new Rect();
+        dr.getRect(0, rect);
+        assertEquals(0, rect.getX());
+        assertEquals(0, rect.getY());
+        assertEquals(15, rect.getRight());
+        assertEquals(15, rect.getBottom());
+        
+        dr.add(2, 2, 3, 3);
+        assertEquals(1, dr.getNumRects());
+    }
+
+    @Test
+    public void testDisjoint() {
+        DirtyRegion dr = new DirtyRegion(4);
+        dr.add(0, 0, 10, 10);
+        dr.add(100, 100, 10, 10);
+        assertEquals(2, dr.getNumRects());
+        dr.intersect(50, 50, 100, 100);
+        assertEquals(1, dr.getNumRects());
+        Rect rect = new Rect();
+        dr.getRect(0, rect);
+        assertEquals(100, rect.getX());
+    }
+
+    @Test
+    public void testRandomCoverage() {
+        Random r = new Random(4711);
+        for(int run=0 ; run<100 ; run++) {
+            DirtyRegion dr = new DirtyRegion(1 + r.nextInt(6));
+            Rect[] added = new Rect[1 + r.nextInt(30)];
+            for(int i=0 ; i<added.length ; i++) {
+                added[i] = new Rect(r.nextInt(1000), r.nextInt(1000), 1 + r.nextInt(100), 1 + r.nextInt(100));
+                dr.add(added[i]);
+                assertTrue(dr.getNumRects() <= dr.getMaxRects());
+            }
+            for(Rect a : added) {
+                assertTrue(isCovered(dr, a.getX(), a.getY()));
+                assertTrue(isCovered(dr, a.getRight()-1, a.getBottom()-1));
+            }
+            assertNoOverlap(dr);
+        }
+    }
+    
+    private static boolean isCovered(DirtyRegion dr, int x, int y) {
+        Rect rect = new Rect();
+        for(int i=0 ; i<dr.getNumRects() ; i++) {
+            dr.getRect(i, rect);
+            if(rect.isInside(x, y)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static void assertNoOverlap(DirtyRegion dr) {
+        Rect a = new Rect();
+        Rect b = new Rect();
+        for(int i=0 ; i<dr.getNumRects() ; i++) {
+            for(int j=i+1 ; j<dr.getNumRects() ; j++) {
+                dr.getRect(i, a);
+                dr.getRect(j, b);
+                b.intersect(a);
+                assertTrue(b.isEmpty());
+            }
+        }
+    }
+}
@@ -175,4 +175,116 @@ public class SizeSequenceTest {
         System.out.println("maxValue=" + maxValue);
     }
 
+    @Test
+    public void testRandomOperations() {
+        final int maxSize = 50;
+        Random r = new Random(0x87654321L);
+
+        SizeSequence ss = new SizeSequence(4);
+        java.util.ArrayList<Integer> ref = new java.util.ArrayList<Integer>();
+
+        for(int iter=0 ; iter<2000 ; iter++) {
+            int op = r.nextInt(4);
+            if(op == 0 || ref.isEmpty()) {
+                int index = r.nextInt(ref.size() + 1);
+                int count = 1 + r.nextInt(20);
+                int value = r.nextInt(maxSize);
+                ss.setDefaultValue(value);
+                ss.insert(index, count);
+                for(int i=0 ; i<count ; i++) {
+                    ref.add(index, value);
+                }
+            } else if(op == 1) {
+                int index = r.nextInt(ref.size());
+                int count = 1 + r.nextInt(Math.min(10, ref.size() - index));
+                ss.remove(index, count);
+                for(int i=0 ; i<count ; i++) {
+                    ref.remove(index);
+                }
+            } else {
+                int index = r.nextInt(ref.size());
+                int value = r.nextInt(maxSize);
+                assertEquals(ref.get(index) != value, ss.setSize(index, value));
+                ref.set(index, value);
+            }
+            assertEquals(ref.size(), ss.size());
+        }
+
+        int pos = 0;
+        for(int i=0 ; i<ref.size() ; i++) {
+            int value = ref.get(i);
+            assertEquals(pos, ss.getPosition(i));
+            assertEquals(value, ss.getSize(i));
+            for(int p=pos ; p<pos+value ; p++) {
+                assertEquals(i, ss.getIndex(p));
+            }
+            pos += value;
+        }
+        assertEquals(pos, ss.getEndPosition());
+        assertEquals(pos, ss.getPosition(ref.size()));
+        assertEquals(ref.size(), ss.getIndex(pos));
+        assertEquals(0, ss.getIndex(-1));
+    }
+
+    @Test
+    public void testSubclassSizes() {
+        SizeSequence ss = new SizeSequence(4) {
+            @Override
+            protected void initializeSizes(int index, int count) {
+                for(int i=0 ; i<count ; i++) {
+                    table[index+i] = (index+i) * 2;
+                }
+            }
+        };
+        ss.insert(0, 100);
+        ss.insert(50, 10);
+        for(int i=0 ; i<50 ; i++) {
+            assertEquals(i*2, ss.getSize(i));
+        }
+        for(int i=50 ; i<60 ; i++) {
+            assertEquals(i*2, ss.getSize(i));
+        }
+        for(int i=60 ; i<110 ; i++) {
+            assertEquals((i-10)*2, ss.getSize(i));
+        }
+        
+        int[] sizes = new int[ss.size()];
+        assertEquals(ss.getPosition(70) - ss.getPosition(20), ss.toSizes(20, 70, sizes));
+        for(int i=20 ; i<70 ; i++) {
+            assertEquals(ss.getSize(i), sizes[i]);
+        }
+        
+        ss.toSizes(0, ss.size(), ss.table);
+        for(int i=30 ; i<40 ; i++) {
+            ss.table[i] = 1;
+        }
+        assertEquals(10, ss.fromSizes(30, 40));
+        assertEquals(1, ss.getSize(30));
+        assertEquals(1, ss.getSize(39));
+        assertEquals(40*2, ss.getSize(40));
+        assertEquals(110, ss.size());
+    }
+
+    @Test
+    public void testStreamingInsert() {
+        final int count = 500000;
+
+        SizeSequence ss = new SizeSequence();
+        for(int i=0 ; i<count ; i++) {
+            ss.setDefaultValue(1 + (i & 7));
+            ss.insert(ss.size(), 1);
+        }
+        for(int i=0 ; i<1000 ; i++) {
+            ss.setDefaultValue(10);
+            ss.insert(count / 2, 1);
+            ss.remove(ss.size() - 1, 1);
+        }
+
+        assertEquals(count, ss.size());
+        assertEquals(10, ss.getSize(count / 2));
+        assertEquals(10, ss.getSize(count / 2 + 999));
+        assertEquals(1 + ((count / 2 - 1) & 7), ss.getSize(count / 2 - 1));
+        assertEquals(ss.getPosition(count / 2), ss.getPosition(ss.getIndex(ss.getPosition(count / 2))));
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2008-2012, Matthias Mann
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of Matthias Mann nor the names of its contributors may
+ *       be used to endorse or promote products derived from this software
+ *       without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package de.matthiasmann.twl.utils;
+
+import de.matthiasmann.twl.AnimationState;
+import de.matthiasmann.twl.renderer.AnimationState.StateKey;
+import java.text.ParseException;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Mann
+ */
+public class StateSelectTest {
+
+    private boolean useOptimizer;
+    
+    public StateSelectTest() {
+    }
+    
+    @Before
+    public void setUp() {
+        useOptimizer = StateSelect.isUseOptimizer();
+    }
+    
+    @After
+    public void tearDown() {
+        StateSelect.setUseOptimizer(useOptimizer);
+    }
+
+    @Test
+    public void testSimple() throws ParseException {
+        StateSelect.setUseOptimizer(true);
+        StateSelect ss = new StateSelect(
+                StateExpression.parse("ssA + ssB", false),
+                StateExpression.parse("ssA", false),
+                StateExpression.parse("!ssB ^ ssC", false));
+        AnimationState as = new AnimationState();
+        assertEquals(2, ss.evaluate(as));
+        as.setAnimationState(StateKey.get("ssB"), true);
+        assertEquals(3, ss.evaluate(as));
+        as.setAnimationState(StateKey.get("ssA"), true);
+        assertEquals(0, ss.evaluate(as));
+        as.setAnimationState(StateKey.get("ssB"), false);
+        assertEquals(1, ss.evaluate(as));
+        assertEquals(2, ss.evaluate(null));
+    }
+
+    @Test
+    public void testRandomSmall() throws ParseException {
+        testRandom(1, 6, 8, 500);
+    }
+
+    @Test
+    public void testRandomManyKeys() throws ParseException {
+        testRandom(2, 24, 30, 200);
+    }
+
+    @Test
+    public void testRandomHugeKeyIDs() throws ParseException {
+        // spread the keys over several 64 bit words
+        for(int i=0 ; i<200 ; i++) {
+            StateKey.get("ssFiller" + i);
+        }
+        testRandom(3, 70, 20, 100);
+    }
+
+    @Test
+    public void testManyExpressions() throws ParseException {
+        testRandom(4, 10, 300, 50);
+    }
+
+    private void testRandom(long seed, int numKeys, int numExpr, int rounds) throws ParseException {
+        Random r = new Random(seed);
+        StateKey[] keys = createKeys(numKeys);
+        for(int round=0 ; round<rounds ; round++) {
+            StateExpression[] expr = createExpressions(r, keys, numExpr);
+            StateSelect.setUseOptimizer(false);
+            StateSelect interpreted = new StateSelect(expr);
+            StateSelect.setUseOptimizer(true);
+            StateSelect optimized = new StateSelect(expr);
+            
+            AnimationState parent = new AnimationState();
+            AnimationState as = new AnimationState(parent);
+            for(int i=0 ; i<20 ; i++) {
+                for(StateKey key : keys) {
+                    switch(r.nextInt(3)) {
+                        case 0: as.setAnimationState(key, r.nextBoolean()); break;
+                        case 1: parent.setAnimationState(key, r.nextBoolean()); break;
+                    }
+                }
+                assertEquals(interpreted.evaluate(as), optimized.evaluate(as));
+                assertEquals(interpreted.evaluate(parent), optimized.evaluate(parent));
+            }
+        }
+    }
+
+    @Test
+    public void testCompileBenchmark() throws ParseException {
+        Assume.assumeTrue(Boolean.getBoolean("twl.benchmark"));
+        Random r = new Random(42);
+        for(int numKeys : new int[] { 12, 16, 24, 32 }) {
+            StateKey[] keys = createKeys(numKeys);
+            StateExpression[][] sets = new StateExpression[200][];
+            for(int i=0 ; i<sets.length ; i++) {
+                sets[i] = createExpressions(r, keys, 20);
+            }
+            StateSelect.setUseOptimizer(true);
+            for(int round=0 ; round<2 ; round++) {
+                long start = System.nanoTime();
+                int compiled = 0;
+                for(StateExpression[] set : sets) {
+                    if(StateSelectOptimizer.optimize(set) != null) {
+                        compiled++;
+                    }
+                }
+                long time = System.nanoTime() - start;
+                System.out.println("compiled " + compiled + " of " + sets.length + " selects with " +
+                        numKeys + " keys in " + (time/1000000) + " ms");
+            }
+        }
+    }
+
+    @Test
+    public void testEvaluateBenchmark() throws ParseException {
+        Assume.assumeTrue(Boolean.getBoolean("twl.benchmark"));
+        Random r = new Random(43);
+        for(int numKeys : new int[] { 8, 24 }) {
+            StateKey[] keys = createKeys(numKeys);
+            StateExpression[] expr = createExpressions(r, keys, 20);
+            StateSelect.setUseOptimizer(false);
+            StateSelect interpreted = new StateSelect(expr);
+            StateSelect.setUseOptimizer(true);
+            StateSelect optimized = new StateSelect(expr);
+            
+            AnimationState parent = new AnimationState();
+            AnimationState as = new AnimationState(parent);
+            for(StateKey key : keys) {
+                parent.setAnimationState(key, r.nextBoolean());
+                if(r.nextBoolean()) {
+                    as.setAnimationState(key, r.nextBoolean());
+                }
+            }
+            
+            final int iterations = 1000000;
+            for(int round=0 ; round<3 ; round++) {
+                for(StateSelect ss : new StateSelect[] { interpreted, optimized }) {
+                    int sum = 0;
+                    long start = System.nanoTime();
+                    for(int i=0 ; i<iterations ; i++) {
+                        sum += ss.evaluate(as);
+                    }
+                    long time = System.nanoTime() - start;
+                    assertTrue(sum >= 0);
+                    System.out.println("evaluate with " + numKeys + " keys" +
+                            ((ss == optimized) ? " (optimized): " : ": ") +
+                            (iterations * 1000L / Math.max(1, time / 1000)) + " evaluations/ms");
+                }
+            }
+        }
+    }
+    
+    private static StateKey[] createKeys(int numKeys) {
+        StateKey[] keys = new StateKey[numKeys];
+        for(int i=0 ; i<numKeys ; i++) {
+            keys[i] = StateKey.get("ssKey" + i);
+        }
+        return keys;
+    }
+
+    private static StateExpression[] createExpressions(Random r, StateKey[] keys, int numExpr) throws ParseException {
+        StateExpression[] expr = new StateExpression[numExpr];
+        for(int i=0 ; i<numExpr ; i++) {
+            StringBuilder sb = new StringBuilder();
+            createExpression(r, keys, sb, 2);
+            expr[i] = StateExpression.parse(sb.toString(), r.nextInt(4) == 0);
+        }
+        return expr;
+    }
+    
+    private static void createExpression(Random r, StateKey[] keys, StringBuilder sb, int depth) {
+        if(r.nextInt(3) == 0) {
+            sb.append('!');
+        }
+        if(depth == 0 || r.nextInt(3) == 0) {
+            sb.append(keys[r.nextInt(keys.length)].getName());
+            return;
+        }
+        char op = "|+^".charAt(r.nextInt(3));
+        int numChildren = 2 + r.nextInt(2);
+        sb.append('(');
+        for(int i=0 ; i<numChildren ; i++) {
+            if(i > 0) {
+                sb.append(' ').append(op).append(' ');
+            }
+            createExpression(r, keys, sb, depth-1);
+        }
+        sb.append(')');
+    }
+}